@@ -0,0 +1,85 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.geogit.api.Context;
+import org.geogit.api.GeoGIT;
+import org.geogit.api.plumbing.RevObjectParse;
+import org.geogit.api.porcelain.CommitOp;
+import org.geogit.api.porcelain.LogOp;
+import org.geogit.storage.ObjectDatabase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.Files;
+
+/**
+ * Measures the cost of creating commands and looking up repository components through the
+ * {@link Context}, as done thousands of times per operation by the commands that call other
+ * commands in a loop.
+ * <p>
+ * {@link RevObjectParse} is a plumbing command no decorator applies to, {@link LogOp} gets
+ * checked for merge conflicts and {@link CommitOp} gets its hooks attached too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CommandDispatchBenchmark {
+
+    private File directory;
+
+    private GeoGIT geogit;
+
+    private Context context;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        directory = Files.createTempDir();
+        geogit = new SyntheticDataset().createRepository(directory, 1, 10, 0);
+        context = geogit.getContext();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        geogit.close();
+        ObjectDatabaseBenchmark.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public RevObjectParse plumbingCommand() {
+        return context.command(RevObjectParse.class);
+    }
+
+    @Benchmark
+    public LogOp porcelainCommand() {
+        return context.command(LogOp.class);
+    }
+
+    @Benchmark
+    public CommitOp hookableCommand() {
+        return context.command(CommitOp.class);
+    }
+
+    @Benchmark
+    public ObjectDatabase objectDatabase() {
+        return context.objectDatabase();
+    }
+}
@@ -0,0 +1,118 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.benchmarks;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.geogit.api.Bucket;
+import org.geogit.api.GeoGIT;
+import org.geogit.api.Node;
+import org.geogit.api.RevTree;
+import org.geogit.api.plumbing.DiffTree;
+import org.geogit.api.plumbing.diff.DiffEntry;
+import org.geogit.api.plumbing.diff.DiffTreeVisitor;
+import org.geogit.storage.ObjectDatabase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.Files;
+
+/**
+ * Measures computing the differences between two synthetic feature trees of the same size, where
+ * one out of every {@code changeInterval} features differs, both through
+ * {@link DiffTreeVisitor} and the {@link DiffTree} command.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DiffTreeBenchmark {
+
+    @Param({ "10000", "1000000" })
+    public int treeSize;
+
+    @Param({ "10", "1000" })
+    public int changeInterval;
+
+    private File directory;
+
+    private GeoGIT geogit;
+
+    private ObjectDatabase db;
+
+    private RevTree left;
+
+    private RevTree right;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticDataset dataset = new SyntheticDataset();
+        directory = Files.createTempDir();
+        geogit = dataset.createRepository(directory, 0, 0, 0);
+        db = geogit.getRepository().objectDatabase();
+        left = dataset.createTree(db, treeSize, 0, changeInterval);
+        right = dataset.createTree(db, treeSize, 1, changeInterval);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        geogit.close();
+        ObjectDatabaseBenchmark.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public int diffTreeVisitor() {
+        CountingConsumer consumer = new CountingConsumer();
+        new DiffTreeVisitor(left, right, db, db).walk(consumer);
+        return consumer.count;
+    }
+
+    @Benchmark
+    public int diffTree() {
+        Iterator<DiffEntry> entries = geogit.command(DiffTree.class).setOldTree(left.getId())
+                .setNewTree(right.getId()).call();
+        int count = 0;
+        while (entries.hasNext()) {
+            entries.next();
+            count++;
+        }
+        return count;
+    }
+
+    private static class CountingConsumer implements DiffTreeVisitor.Consumer {
+
+        int count;
+
+        @Override
+        public void feature(Node left, Node right) {
+            count++;
+        }
+
+        @Override
+        public boolean tree(Node left, Node right) {
+            return true;
+        }
+
+        @Override
+        public boolean bucket(int bucketIndex, int bucketDepth, Bucket left, Bucket right) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.benchmarks;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.geogit.api.GeoGIT;
+import org.geogit.api.NodeRef;
+import org.geogit.api.RevCommit;
+import org.geogit.api.porcelain.LogOp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.Files;
+
+/**
+ * Measures {@link LogOp} history walks over a synthetic linear history.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LogOpBenchmark {
+
+    private static final int NUM_FEATURES = 1000;
+
+    private static final int CHANGES_PER_COMMIT = 10;
+
+    @Param({ "1000", "10000" })
+    public int numCommits;
+
+    private File directory;
+
+    private GeoGIT geogit;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        directory = Files.createTempDir();
+        geogit = new SyntheticDataset().createRepository(directory, numCommits, NUM_FEATURES,
+                CHANGES_PER_COMMIT);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        geogit.close();
+        ObjectDatabaseBenchmark.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public int fullHistory() {
+        return count(geogit.command(LogOp.class).call());
+    }
+
+    @Benchmark
+    public int firstPage() {
+        return count(geogit.command(LogOp.class).setLimit(100).call());
+    }
+
+    @Benchmark
+    public int topoOrder() {
+        return count(geogit.command(LogOp.class).setTopoOrder(true).call());
+    }
+
+    @Benchmark
+    public int pathFiltered() {
+        String path = NodeRef.appendChild(SyntheticDataset.TYPE_NAME,
+                SyntheticDataset.featureName(0));
+        return count(geogit.command(LogOp.class).addPath(path).call());
+    }
+
+    private static int count(Iterator<RevCommit> commits) {
+        int count = 0;
+        while (commits.hasNext()) {
+            commits.next();
+            count++;
+        }
+        return count;
+    }
+}
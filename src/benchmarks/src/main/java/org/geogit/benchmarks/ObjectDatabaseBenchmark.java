@@ -0,0 +1,251 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.benchmarks;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.geogit.api.DefaultPlatform;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevFeature;
+import org.geogit.api.RevObject;
+import org.geogit.repository.Hints;
+import org.geogit.storage.ConfigDatabase;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.bdbje.EnvironmentBuilder;
+import org.geogit.storage.bdbje.JEObjectDatabase;
+import org.geogit.storage.fs.FileObjectDatabase;
+import org.geogit.storage.fs.IniFileConfigDatabase;
+import org.geogit.storage.memory.HeapObjectDatabse;
+import org.geogit.storage.sqlite.XerialObjectDatabase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+/**
+ * Measures {@link ObjectDatabase} single and bulk reads and writes for the heap, file, BDB JE and
+ * SQLite backends.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ObjectDatabaseBenchmark {
+
+    /**
+     * Number of ids requested per {@code getAll} and objects inserted per {@code putAll} call,
+     * matches the size of a leaf tree
+     */
+    private static final int BATCH_SIZE = 512;
+
+    @State(Scope.Benchmark)
+    public static class Database {
+
+        @Param({ "heap", "file", "je", "sqlite" })
+        public String backend;
+
+        @Param({ "100000" })
+        public int numObjects;
+
+        File directory;
+
+        ObjectDatabase db;
+
+        /**
+         * The ids of the objects in the database, in a random but fixed order
+         */
+        List<ObjectId> ids;
+
+        SyntheticDataset dataset;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            dataset = new SyntheticDataset();
+            directory = Files.createTempDir();
+            db = createDatabase(backend, directory);
+
+            ids = Lists.newArrayListWithCapacity(numObjects);
+            Iterator<RevFeature> features = dataset.features(numObjects);
+            while (features.hasNext()) {
+                List<RevFeature> batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+                for (int i = 0; i < BATCH_SIZE && features.hasNext(); i++) {
+                    RevFeature feature = features.next();
+                    batch.add(feature);
+                    ids.add(feature.getId());
+                }
+                db.putAll(batch.iterator());
+            }
+            Collections.shuffle(ids, new Random(SyntheticDataset.DEFAULT_SEED));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            db.close();
+            deleteRecursively(directory);
+        }
+    }
+
+    /**
+     * Per thread read position, so that consecutive invocations request different objects
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int position;
+
+        ObjectId next(List<ObjectId> ids) {
+            position = (position + 1) % ids.size();
+            return ids.get(position);
+        }
+
+        List<ObjectId> nextBatch(List<ObjectId> ids) {
+            int from = position;
+            position = (position + BATCH_SIZE) % (ids.size() - BATCH_SIZE);
+            return ids.subList(from, from + BATCH_SIZE);
+        }
+    }
+
+    /**
+     * An empty database per iteration, and the features to insert into it. Iterations are time
+     * bound, so the number of invocations isn't known in advance; features are generated as they
+     * are inserted so that every put writes a new object rather than hitting an existing one.
+     */
+    @State(Scope.Thread)
+    public static class WriteTarget {
+
+        @Param({ "heap", "file", "je", "sqlite" })
+        public String backend;
+
+        File directory;
+
+        ObjectDatabase db;
+
+        SyntheticDataset dataset;
+
+        int position;
+
+        @Setup(Level.Trial)
+        public void createDataset() {
+            dataset = new SyntheticDataset();
+        }
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            directory = Files.createTempDir();
+            db = createDatabase(backend, directory);
+            position = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            db.close();
+            deleteRecursively(directory);
+        }
+
+        /**
+         * @return a feature that is not in the database yet
+         */
+        RevFeature nextFeature() {
+            return dataset.feature(position++, 0);
+        }
+
+        /**
+         * @return a batch of features that are not in the database yet
+         */
+        List<RevFeature> nextBatch() {
+            List<RevFeature> batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                batch.add(nextFeature());
+            }
+            return batch;
+        }
+    }
+
+    @Benchmark
+    public RevObject get(Database state, Cursor cursor) {
+        return state.db.get(cursor.next(state.ids));
+    }
+
+    @Benchmark
+    public boolean exists(Database state, Cursor cursor) {
+        return state.db.exists(cursor.next(state.ids));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @BenchmarkMode(Mode.AverageTime)
+    public void getAll(Database state, Cursor cursor, Blackhole blackhole) {
+        Iterator<RevObject> objects = state.db.getAll(cursor.nextBatch(state.ids));
+        while (objects.hasNext()) {
+            blackhole.consume(objects.next());
+        }
+    }
+
+    @Benchmark
+    public boolean put(WriteTarget target) {
+        return target.db.put(target.nextFeature());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @BenchmarkMode(Mode.AverageTime)
+    public void putAll(WriteTarget target) {
+        target.db.putAll(target.nextBatch().iterator());
+    }
+
+    static ObjectDatabase createDatabase(final String backend, final File directory) {
+        File geogitDir = new File(directory, ".geogit");
+        if (!geogitDir.mkdirs()) {
+            throw new IllegalStateException("Unable to create " + geogitDir);
+        }
+        DefaultPlatform platform = new DefaultPlatform();
+        platform.setWorkingDir(directory);
+        ConfigDatabase config = new IniFileConfigDatabase(platform);
+
+        final ObjectDatabase db;
+        if ("heap".equals(backend)) {
+            db = new HeapObjectDatabse();
+        } else if ("file".equals(backend)) {
+            db = new FileObjectDatabase(platform, config);
+        } else if ("je".equals(backend)) {
+            db = new JEObjectDatabase(config, new EnvironmentBuilder(platform), new Hints());
+        } else if ("sqlite".equals(backend)) {
+            db = new XerialObjectDatabase(config, platform);
+        } else {
+            throw new IllegalArgumentException("Unknown backend: " + backend);
+        }
+        db.open();
+        return db;
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
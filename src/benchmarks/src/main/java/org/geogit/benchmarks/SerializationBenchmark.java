@@ -0,0 +1,105 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevObject;
+import org.geogit.api.RevTree;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.ObjectReader;
+import org.geogit.storage.ObjectWriter;
+import org.geogit.storage.datastream.DataStreamSerializationFactory;
+import org.geogit.storage.memory.HeapObjectDatabse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Measures {@link DataStreamSerializationFactory} write and read throughput per object type.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    /**
+     * The kind of object to serialize: a commit, a feature type, a feature, a leaf tree with
+     * {@link RevTree#NORMALIZED_SIZE_LIMIT} nodes, or a tree with {@link RevTree#MAX_BUCKETS}
+     * buckets.
+     */
+    @Param({ "COMMIT", "FEATURETYPE", "FEATURE", "LEAF_TREE", "BUCKET_TREE" })
+    public String objectType;
+
+    private RevObject object;
+
+    private ObjectWriter<RevObject> writer;
+
+    private ObjectReader<RevObject> reader;
+
+    private byte[] serialized;
+
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setUp() throws IOException {
+        final SyntheticDataset dataset = new SyntheticDataset();
+        final ObjectDatabase db = new HeapObjectDatabse();
+        db.open();
+
+        if ("COMMIT".equals(objectType)) {
+            object = dataset.commit(ObjectId.forString("tree"),
+                    ImmutableList.of(ObjectId.forString("parent")), 0);
+        } else if ("FEATURETYPE".equals(objectType)) {
+            object = dataset.featureType();
+        } else if ("FEATURE".equals(objectType)) {
+            object = dataset.feature(0, 0);
+        } else if ("LEAF_TREE".equals(objectType)) {
+            object = dataset.createTree(db, RevTree.NORMALIZED_SIZE_LIMIT, 0, 1);
+        } else if ("BUCKET_TREE".equals(objectType)) {
+            object = dataset.createTree(db, 4 * RevTree.NORMALIZED_SIZE_LIMIT
+                    * RevTree.MAX_BUCKETS, 0, 1);
+        } else {
+            throw new IllegalArgumentException("Unknown object type: " + objectType);
+        }
+
+        DataStreamSerializationFactory factory = DataStreamSerializationFactory.INSTANCE;
+        writer = factory.createObjectWriter(object.getType());
+        reader = factory.createObjectReader();
+
+        out = new ByteArrayOutputStream();
+        writer.write(object, out);
+        serialized = out.toByteArray();
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        out.reset();
+        writer.write(object, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public RevObject read() {
+        return reader.read(object.getId(), new ByteArrayInputStream(serialized));
+    }
+}
@@ -0,0 +1,253 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.benchmarks;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.geogit.api.CommitBuilder;
+import org.geogit.api.ContextBuilder;
+import org.geogit.api.GeoGIT;
+import org.geogit.api.Node;
+import org.geogit.api.ObjectId;
+import org.geogit.api.Ref;
+import org.geogit.api.RevCommit;
+import org.geogit.api.RevFeature;
+import org.geogit.api.RevFeatureType;
+import org.geogit.api.RevObject.TYPE;
+import org.geogit.api.RevTree;
+import org.geogit.api.RevTreeBuilder;
+import org.geogit.api.plumbing.UpdateRef;
+import org.geogit.repository.Repository;
+import org.geogit.storage.ObjectDatabase;
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.SchemaException;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Generates reproducible synthetic data for the benchmarks: the same seed always produces the same
+ * features, nodes, trees and commits, and hence the same object ids, so results from different
+ * runs and different versions of the code can be compared.
+ * <p>
+ * Features are points with a string and an integer attribute, named {@code Points.<index>}. A
+ * feature is identified by its index and a version number, changing the version produces a
+ * different feature (and object id) at the same location in the tree.
+ */
+public class SyntheticDataset {
+
+    public static final long DEFAULT_SEED = 20140301L;
+
+    public static final String TYPE_NAME = "Points";
+
+    private static final String TYPE_SPEC = "sp:String,ip:Integer,pp:Point:srid=4326";
+
+    /**
+     * Fixed timestamp for the first commit, so that commit ids are stable across runs
+     */
+    private static final long BASE_TIMESTAMP = 1388534400000L;
+
+    private final long seed;
+
+    private final RevFeatureType featureType;
+
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    public SyntheticDataset() {
+        this(DEFAULT_SEED);
+    }
+
+    public SyntheticDataset(final long seed) {
+        this.seed = seed;
+        SimpleFeatureType type;
+        try {
+            type = DataUtilities.createType("http://geogit.org/benchmarks", TYPE_NAME, TYPE_SPEC);
+        } catch (SchemaException e) {
+            throw Throwables.propagate(e);
+        }
+        this.featureType = RevFeatureType.build(type);
+    }
+
+    public RevFeatureType featureType() {
+        return featureType;
+    }
+
+    /**
+     * @return the {@code version}th version of the feature at {@code index}
+     */
+    public RevFeature feature(final int index, final int version) {
+        Random random = random(index, version);
+        double x = -180 + 360 * random.nextDouble();
+        double y = -90 + 180 * random.nextDouble();
+        ImmutableList<Optional<Object>> values = ImmutableList.<Optional<Object>> of(//
+                Optional.<Object> of("StringProp_" + index + "_" + version),//
+                Optional.<Object> of(Integer.valueOf(random.nextInt())),//
+                Optional.<Object> of(geometryFactory.createPoint(new Coordinate(x, y))));
+        return RevFeature.build(values);
+    }
+
+    /**
+     * @return the tree node pointing to the given feature
+     */
+    public Node featureNode(final int index, final RevFeature feature) {
+        Geometry geometry = (Geometry) feature.getValues().get(2).get();
+        return Node.create(featureName(index), feature.getId(), featureType.getId(),
+                TYPE.FEATURE, geometry.getEnvelopeInternal());
+    }
+
+    /**
+     * @return a node for the {@code version}th version of the feature at {@code index}, with a
+     *         synthetic object id that doesn't require building the actual feature
+     */
+    public Node fakeFeatureNode(final int index, final int version) {
+        Random random = random(index, version);
+        double x = -180 + 360 * random.nextDouble();
+        double y = -90 + 180 * random.nextDouble();
+        ObjectId id = ObjectId.forString(seed + ":" + index + ":" + version);
+        return Node.create(featureName(index), id, featureType.getId(), TYPE.FEATURE,
+                new Envelope(x, x, y, y));
+    }
+
+    /**
+     * @return {@code count} feature nodes with synthetic object ids, in index order
+     */
+    public List<Node> fakeFeatureNodes(final int count) {
+        List<Node> nodes = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            nodes.add(fakeFeatureNode(i, 0));
+        }
+        return nodes;
+    }
+
+    public static String featureName(final int index) {
+        return TYPE_NAME + "." + index;
+    }
+
+    /**
+     * Builds a feature tree with {@code size} synthetic feature nodes, where every
+     * {@code changeInterval}th node is at its {@code version}th version and the rest at version
+     * zero, and saves it to {@code db}.
+     */
+    public RevTree createTree(final ObjectDatabase db, final int size, final int version,
+            final int changeInterval) {
+        RevTreeBuilder builder = new RevTreeBuilder(db);
+        for (int i = 0; i < size; i++) {
+            int v = (version > 0 && i % changeInterval == 0) ? version : 0;
+            builder.put(fakeFeatureNode(i, v));
+        }
+        RevTree tree = builder.build();
+        db.put(tree);
+        return tree;
+    }
+
+    /**
+     * @return a commit with fixed author, committer and timestamps, so that its id only depends on
+     *         the tree, the parents and the commit index
+     */
+    public RevCommit commit(final ObjectId treeId, final List<ObjectId> parents, final int index) {
+        final long timestamp = BASE_TIMESTAMP + 60000L * index;
+        CommitBuilder builder = new CommitBuilder();
+        builder.setAuthor("benchmarks");
+        builder.setAuthorEmail("benchmarks@geogit.org");
+        builder.setCommitter("benchmarks");
+        builder.setCommitterEmail("benchmarks@geogit.org");
+        builder.setAuthorTimestamp(timestamp);
+        builder.setCommitterTimestamp(timestamp);
+        builder.setAuthorTimeZoneOffset(0);
+        builder.setCommitterTimeZoneOffset(0);
+        builder.setMessage("Commit " + index);
+        builder.setParentIds(parents);
+        builder.setTreeId(treeId);
+        return builder.build();
+    }
+
+    /**
+     * Creates a repository at {@code directory} with a linear history of {@code numCommits}
+     * commits on the master branch. The first commit adds {@code numFeatures} features to the
+     * {@link #TYPE_NAME} tree, and each following one modifies {@code changesPerCommit} of them.
+     * <p>
+     * Objects are written straight to the repository's object database, bypassing the working
+     * tree and index, so that creating large repositories is cheap.
+     *
+     * @return the {@link GeoGIT} facade for the new repository, to be closed by the caller
+     */
+    public GeoGIT createRepository(final File directory, final int numCommits,
+            final int numFeatures, final int changesPerCommit) {
+        GeoGIT geogit = new GeoGIT(new ContextBuilder().build(), directory);
+        Repository repo = geogit.getOrCreateRepository();
+        ObjectDatabase db = repo.objectDatabase();
+        db.put(featureType);
+
+        RevTree featureTree = RevTree.EMPTY;
+        ImmutableList<ObjectId> parents = ImmutableList.of();
+        for (int c = 0; c < numCommits; c++) {
+            RevTreeBuilder builder = new RevTreeBuilder(db, featureTree);
+            List<RevFeature> features = Lists.newArrayList();
+            if (c == 0) {
+                for (int i = 0; i < numFeatures; i++) {
+                    RevFeature feature = feature(i, 0);
+                    features.add(feature);
+                    builder.put(featureNode(i, feature));
+                }
+            } else {
+                for (int k = 0; k < changesPerCommit; k++) {
+                    int index = ((c - 1) * changesPerCommit + k) % numFeatures;
+                    RevFeature feature = feature(index, c);
+                    features.add(feature);
+                    builder.put(featureNode(index, feature));
+                }
+            }
+            db.putAll(features.iterator());
+            featureTree = builder.build();
+            db.put(featureTree);
+
+            RevTree root = new RevTreeBuilder(db).put(
+                    Node.tree(TYPE_NAME, featureTree.getId(), featureType.getId())).build();
+            db.put(root);
+
+            RevCommit commit = commit(root.getId(), parents, c);
+            db.put(commit);
+            repo.graphDatabase().put(commit.getId(), commit.getParentIds());
+            parents = ImmutableList.of(commit.getId());
+        }
+        if (!parents.isEmpty()) {
+            geogit.command(UpdateRef.class).setName(Ref.MASTER).setNewValue(parents.get(0))
+                    .call();
+        }
+        return geogit;
+    }
+
+    /**
+     * @return an iterator over {@code count} features, at version zero
+     */
+    public Iterator<RevFeature> features(final int count) {
+        return new AbstractIterator<RevFeature>() {
+            private int index;
+
+            @Override
+            protected RevFeature computeNext() {
+                if (index == count) {
+                    return endOfData();
+                }
+                return feature(index++, 0);
+            }
+        };
+    }
+
+    private Random random(final int index, final int version) {
+        return new Random(seed ^ (31L * index + version));
+    }
+}
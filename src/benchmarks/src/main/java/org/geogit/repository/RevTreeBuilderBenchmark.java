@@ -0,0 +1,105 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.repository;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.geogit.api.Node;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevTree;
+import org.geogit.api.RevTreeBuilder;
+import org.geogit.benchmarks.SyntheticDataset;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.memory.HeapObjectDatabse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Measures building a tree out of unsorted feature nodes with {@link RevTreeBuilder} and
+ * {@link RevTreeBuilder2}.
+ * <p>
+ * Lives in the {@code org.geogit.repository} package as {@code RevTreeBuilder2} is package
+ * private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RevTreeBuilderBenchmark {
+
+    @Param({ "10000", "100000", "1000000" })
+    public int numNodes;
+
+    private List<Node> nodes;
+
+    private ObjectId metadataId;
+
+    private ObjectDatabase db;
+
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void createNodes() {
+        SyntheticDataset dataset = new SyntheticDataset();
+        metadataId = dataset.featureType().getId();
+        nodes = Lists.newArrayList(dataset.fakeFeatureNodes(numNodes));
+        Collections.shuffle(nodes, new Random(SyntheticDataset.DEFAULT_SEED));
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void shutDown() {
+        executor.shutdownNow();
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        db = new HeapObjectDatabse();
+        db.open();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        db.close();
+    }
+
+    @Benchmark
+    public RevTree revTreeBuilder() {
+        RevTreeBuilder builder = new RevTreeBuilder(db);
+        for (Node node : nodes) {
+            builder.put(node);
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public RevTree revTreeBuilder2() {
+        RevTreeBuilder2 builder = new RevTreeBuilder2(db, RevTree.EMPTY, metadataId, executor);
+        for (Node node : nodes) {
+            builder.put(node);
+        }
+        return builder.build();
+    }
+}
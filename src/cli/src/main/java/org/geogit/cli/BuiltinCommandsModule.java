@@ -10,6 +10,7 @@ import org.geogit.cli.plumbing.Insert;
 import org.geogit.cli.plumbing.LsTree;
 import org.geogit.cli.plumbing.MergeBase;
 import org.geogit.cli.plumbing.RebuildGraph;
+import org.geogit.cli.plumbing.RebuildHistoryIndex;
 import org.geogit.cli.plumbing.RevList;
 import org.geogit.cli.plumbing.RevParse;
 import org.geogit.cli.plumbing.ShowRef;
@@ -28,6 +29,7 @@ import org.geogit.cli.porcelain.Conflicts;
 import org.geogit.cli.porcelain.Diff;
 import org.geogit.cli.porcelain.Fetch;
 import org.geogit.cli.porcelain.FormatPatch;
+import org.geogit.cli.porcelain.GarbageCollect;
 import org.geogit.cli.porcelain.Help;
 import org.geogit.cli.porcelain.Init;
 import org.geogit.cli.porcelain.Log;
@@ -79,6 +81,7 @@ import com.google.inject.AbstractModule;
  * @see Fetch
  * @see Version
  * @see RebuildGraph
+ * @see RebuildHistoryIndex
  */
 public class BuiltinCommandsModule extends AbstractModule implements CLIModule {
 
@@ -99,6 +102,7 @@ public class BuiltinCommandsModule extends AbstractModule implements CLIModule {
         bind(Diff.class);
         bind(DiffTree.class);
         bind(FormatPatch.class);
+        bind(GarbageCollect.class);
         bind(Help.class);
         bind(Init.class);
         bind(Insert.class);
@@ -126,6 +130,7 @@ public class BuiltinCommandsModule extends AbstractModule implements CLIModule {
         bind(WalkGraph.class);
         bind(Version.class);
         bind(RebuildGraph.class);
+        bind(RebuildHistoryIndex.class);
     }
 
 }
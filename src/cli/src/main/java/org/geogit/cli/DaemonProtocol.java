@@ -0,0 +1,151 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+
+package org.geogit.cli;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import javax.annotation.Nullable;
+
+/**
+ * The wire protocol between {@link GeogitDaemon} and {@link GeogitDaemonClient}.
+ * <p>
+ * A request is the {@link #VERSION protocol version}, the daemon's secret token, an operation
+ * code, the client's working directory, whether the client's console supports ANSI colors and
+ * the command arguments, followed by the client's standard input as
+ * {@link #writeChunk(DataOutputStream, byte[], int, int) chunks}. The daemon answers with
+ * {@link #OUTPUT} chunks of the console output and a final {@link #EXIT} code.
+ * <p>
+ * The daemon listens on the loopback interface only and publishes its port and token in
+ * {@link #daemonFile()}, readable by its owner only, so that other users of the machine can't
+ * run commands on its behalf.
+ */
+final class DaemonProtocol {
+
+    static final String VERSION = "geogit-daemon-1";
+
+    /** Operation: run the command given by the arguments */
+    static final byte RUN = 'R';
+
+    /** Operation: close all the repositories and stop the daemon */
+    static final byte STOP = 'S';
+
+    /** Response frame: a chunk of console output */
+    static final byte OUTPUT = 'O';
+
+    /** Response frame: the command exit code, last frame of a response */
+    static final byte EXIT = 'X';
+
+    /** Length of the chunk that signals the end of a stream */
+    static final int END_OF_STREAM = -1;
+
+    static final int DEFAULT_PORT = 38765;
+
+    private static final String PORT_KEY = "port";
+
+    private static final String TOKEN_KEY = "token";
+
+    private DaemonProtocol() {
+        // constants and helpers only
+    }
+
+    /**
+     * @return the file the running daemon publishes its port and token to
+     */
+    static File daemonFile() {
+        return new File(System.getProperty("user.home"), ".geogit-daemon");
+    }
+
+    static void writeChunk(DataOutputStream out, byte[] b, int off, int len) throws IOException {
+        out.writeInt(len);
+        out.write(b, off, len);
+    }
+
+    /**
+     * Reads the next chunk of a stream written with {@link #writeChunk}
+     *
+     * @return the chunk contents, or {@code null} at the end of the stream
+     */
+    @Nullable
+    static byte[] readChunk(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len == END_OF_STREAM) {
+            return null;
+        }
+        byte[] chunk = new byte[len];
+        in.readFully(chunk);
+        return chunk;
+    }
+
+    /**
+     * Publishes the daemon port and token in {@link #daemonFile()}, making it private to the user
+     * running the daemon
+     */
+    static void publish(int port, String token) throws IOException {
+        File file = daemonFile();
+        file.delete();
+        if (!file.createNewFile()) {
+            throw new IOException("Can't create " + file);
+        }
+        file.setReadable(false, false);
+        file.setWritable(false, false);
+        file.setReadable(true, true);
+        file.setWritable(true, true);
+
+        Properties properties = new Properties();
+        properties.setProperty(PORT_KEY, String.valueOf(port));
+        properties.setProperty(TOKEN_KEY, token);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            properties.store(out, "GeoGit daemon, do not share");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return the {@link #publish published} daemon port and token, or {@code null} if no daemon
+     *         is running
+     */
+    @Nullable
+    static Properties published() {
+        File file = daemonFile();
+        if (!file.isFile()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try {
+            // no Guava here, the client shall load as few classes as possible
+            InputStream in = new FileInputStream(file);
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        if (properties.getProperty(PORT_KEY) == null || properties.getProperty(TOKEN_KEY) == null) {
+            return null;
+        }
+        return properties;
+    }
+
+    static int port(Properties published) {
+        return Integer.parseInt(published.getProperty(PORT_KEY));
+    }
+
+    static String token(Properties published) {
+        return published.getProperty(TOKEN_KEY);
+    }
+}
@@ -112,6 +112,8 @@ public class GeogitCLI {
 
     private boolean progressListenerDisabled;
 
+    private boolean keepRepositoryOpen;
+
     /**
      * Construct a GeogitCLI with the given console reader.
      * 
@@ -148,6 +150,20 @@ public class GeogitCLI {
         this.progressListenerDisabled = true;
     }
 
+    /**
+     * Sets whether the repository is kept open across {@link #execute(String...) executions}
+     * instead of being closed after each command, to save the cost of reopening it when running
+     * many commands in a row.
+     * <p>
+     * A repository kept open is always opened for read-write regardless of the commands' hints,
+     * and the calling code is responsible for calling {@link #close()} when done.
+     * 
+     * @param keepOpen {@code true} to keep the repository open between commands
+     */
+    public void setKeepRepositoryOpen(boolean keepOpen) {
+        this.keepRepositoryOpen = keepOpen;
+    }
+
     /**
      * Provides a GeoGIT facade configured for the current repository if inside a repository,
      * {@code null} otherwise.
@@ -498,12 +514,17 @@ public class GeogitCLI {
         } finally {
             // close after executing a command for the next one to reopen with its own hints and not
             // to keep the db's open for write meanwhile
-            close();
+            if (!keepRepositoryOpen) {
+                close();
+            } else if (geogit != null && !geogit.isOpen()) {
+                // the command closed it (e.g. re-init)
+                close();
+            }
         }
         if (printError) {
             try {
-                consoleReader.println(Optional.fromNullable(consoleMessage).or("Unknown Error"));
-                consoleReader.flush();
+                getConsole().println(Optional.fromNullable(consoleMessage).or("Unknown Error"));
+                getConsole().flush();
             } catch (IOException e) {
                 LOGGER.error("Error writing to the console. Original error: {}", consoleMessage, e);
             }
@@ -532,20 +553,20 @@ public class GeogitCLI {
             JCommander commandParser = mainCommander.getCommands().get(commandName);
 
             if (commandParser == null) {
-                consoleReader.println(args[0] + " is not a geogit command. See geogit --help.");
+                getConsole().println(args[0] + " is not a geogit command. See geogit --help.");
                 // check for similar commands
                 Map<String, JCommander> candidates = spellCheck(mainCommander.getCommands(),
                         commandName);
                 if (!candidates.isEmpty()) {
                     String msg = candidates.size() == 1 ? "Did you mean this?"
                             : "Did you mean one of these?";
-                    consoleReader.println();
-                    consoleReader.println(msg);
+                    getConsole().println();
+                    getConsole().println(msg);
                     for (String name : candidates.keySet()) {
-                        consoleReader.println("\t" + name);
+                        getConsole().println("\t" + name);
                     }
                 }
-                consoleReader.flush();
+                getConsole().flush();
                 throw new CommandFailedException();
             }
 
@@ -584,7 +605,7 @@ public class GeogitCLI {
                 getConsole().flush();
                 return;
             }
-            Hints hints = gatherHints(cmdClass);
+            Hints hints = keepRepositoryOpen ? READ_WRITE : gatherHints(cmdClass);
             this.hints = hints;
 
             if (cmdClass.isAnnotationPresent(RequiresRepository.class)
@@ -0,0 +1,409 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+
+package org.geogit.cli;
+
+import static org.geogit.cli.DaemonProtocol.EXIT;
+import static org.geogit.cli.DaemonProtocol.OUTPUT;
+import static org.geogit.cli.DaemonProtocol.RUN;
+import static org.geogit.cli.DaemonProtocol.STOP;
+import static org.geogit.cli.DaemonProtocol.VERSION;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import jline.UnsupportedTerminal;
+import jline.console.ConsoleReader;
+
+import org.geogit.api.DefaultPlatform;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A long running process that runs the commands sent by {@link GeogitDaemonClient}, saving the
+ * cost of starting a JVM, setting up the command line interface and opening the repository for
+ * every command.
+ * <p>
+ * Like {@link GeogitPy4JEntryPoint}, commands run on a repository folder share a session that
+ * keeps the repository open, and sessions are closed after {@link #setSessionTimeout(long) being
+ * idle} for a while so that other processes get a chance to open the repository for writing.
+ * Commands are run one at a time.
+ * <p>
+ * Usage:
+ * <ul>
+ * <li> {@code geogit-daemon [port]} starts the daemon
+ * <li> {@code geogit-daemon stop} stops the running daemon
+ * </ul>
+ *
+ * @see DaemonProtocol
+ */
+public class GeogitDaemon {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GeogitDaemon.class);
+
+    /**
+     * Default number of seconds a session can be idle before its repository is closed
+     */
+    public static final long DEFAULT_SESSION_TIMEOUT = 5 * 60;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * A terminal without line editing, whose ANSI support is the one of the client's
+     */
+    private static class ClientTerminal extends UnsupportedTerminal {
+
+        ClientTerminal(boolean ansiSupported) {
+            setAnsiSupported(ansiSupported);
+        }
+    }
+
+    /**
+     * A command line interface whose console is replaced for every client connection
+     */
+    private static class SessionCLI extends GeogitCLI {
+
+        private ConsoleReader console;
+
+        SessionCLI(ConsoleReader console) {
+            super(console);
+            this.console = console;
+            setKeepRepositoryOpen(true);
+            setPlatform(new DefaultPlatform());
+        }
+
+        @Override
+        public synchronized ConsoleReader getConsole() {
+            return console;
+        }
+
+        synchronized void setConsole(ConsoleReader console) {
+            this.console = console;
+            // the progress listener writes to the console it was created with
+            super.progressListener = null;
+        }
+    }
+
+    private static class Session {
+
+        final SessionCLI cli;
+
+        long lastAccess;
+
+        Session(SessionCLI cli) {
+            this.cli = cli;
+        }
+    }
+
+    /**
+     * Sends whatever is written to it as {@link DaemonProtocol#OUTPUT} chunks
+     */
+    private static class OutputChunks extends OutputStream {
+
+        private final DataOutputStream out;
+
+        OutputChunks(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            out.writeByte(OUTPUT);
+            DaemonProtocol.writeChunk(out, b, off, len);
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    private final Map<File, Session> sessions = Maps.newHashMap();
+
+    private final ServerSocket serverSocket;
+
+    private final String token;
+
+    private final ExecutorService connections;
+
+    private final ScheduledExecutorService evictor;
+
+    private long sessionTimeoutMillis = TimeUnit.SECONDS.toMillis(DEFAULT_SESSION_TIMEOUT);
+
+    private volatile boolean running = true;
+
+    /**
+     * Binds the daemon to the given port of the loopback interface
+     *
+     * @param port the port to listen on, {@code 0} for any free port
+     */
+    public GeogitDaemon(int port) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getByName(null));
+        this.token = new BigInteger(130, new SecureRandom()).toString(32);
+        this.connections = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setDaemon(true).setNameFormat("geogit-daemon-connection-%d").build());
+        this.evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setDaemon(true).setNameFormat("geogit-daemon-session-evictor").build());
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdleSessions();
+            }
+        }, 30, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return the port the daemon listens on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return the secret clients have to present for their commands to be run
+     */
+    String getToken() {
+        return token;
+    }
+
+    /**
+     * Sets the number of seconds a session can be idle before its repository is closed
+     *
+     * @param seconds
+     */
+    public synchronized void setSessionTimeout(long seconds) {
+        this.sessionTimeoutMillis = TimeUnit.SECONDS.toMillis(seconds);
+    }
+
+    /**
+     * Accepts client connections until the daemon is {@link #stop() stopped}
+     */
+    public void run() throws IOException {
+        try {
+            while (running) {
+                final Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketException e) {
+                    if (!running) {
+                        break;
+                    }
+                    throw e;
+                }
+                connections.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            }
+        } finally {
+            stop();
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes all the open sessions
+     */
+    public void stop() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            LOGGER.warn("Error closing the daemon socket", e);
+        }
+        evictor.shutdownNow();
+        connections.shutdown();
+        closeSessions();
+    }
+
+    private void serve(Socket socket) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    socket.getOutputStream()));
+            if (!VERSION.equals(in.readUTF()) || !token.equals(in.readUTF())) {
+                LOGGER.warn("Rejected daemon connection from {}", socket.getRemoteSocketAddress());
+                return;
+            }
+            final byte operation = in.readByte();
+            final File workingDir = new File(in.readUTF()).getCanonicalFile();
+            final boolean ansiSupported = in.readBoolean();
+            final String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = in.readUTF();
+            }
+
+            int exitCode = 0;
+            if (operation == RUN) {
+                exitCode = run(workingDir, ansiSupported, args, in, out);
+            }
+            out.writeByte(EXIT);
+            out.writeInt(exitCode);
+            out.flush();
+
+            if (operation == STOP) {
+                stop();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Error serving daemon client", e);
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LOGGER.debug("Error closing daemon connection", e);
+            }
+        }
+    }
+
+    private synchronized int run(final File workingDir, final boolean ansiSupported,
+            final String[] args, final DataInputStream in, final DataOutputStream out)
+            throws IOException {
+
+        final PipedInputStream stdin = new PipedInputStream(BUFFER_SIZE);
+        final PipedOutputStream stdinSink = new PipedOutputStream(stdin);
+        Thread stdinPump = new Thread("geogit-daemon-stdin") {
+            @Override
+            public void run() {
+                try {
+                    byte[] chunk;
+                    while ((chunk = DaemonProtocol.readChunk(in)) != null) {
+                        stdinSink.write(chunk);
+                        stdinSink.flush();
+                    }
+                } catch (IOException e) {
+                    // the command finished or the client went away
+                } finally {
+                    try {
+                        stdinSink.close();
+                    } catch (IOException e) {
+                        LOGGER.debug("Error closing client input", e);
+                    }
+                }
+            }
+        };
+        stdinPump.setDaemon(true);
+        stdinPump.start();
+
+        OutputStream stdout = new BufferedOutputStream(new OutputChunks(out), BUFFER_SIZE);
+        ConsoleReader console = new ConsoleReader(stdin, stdout, new ClientTerminal(ansiSupported));
+
+        Session session = sessions.get(workingDir);
+        if (session == null) {
+            session = new Session(new SessionCLI(console));
+            sessions.put(workingDir, session);
+        }
+        SessionCLI cli = session.cli;
+        cli.setConsole(console);
+        if (!workingDir.equals(cli.getPlatform().pwd())) {
+            // a previous command (e.g. clone) moved to another directory
+            cli.close();
+            cli.getPlatform().setWorkingDir(workingDir);
+        }
+        try {
+            return cli.execute(args);
+        } finally {
+            session.lastAccess = System.currentTimeMillis();
+            console.flush();
+            stdout.flush();
+            console.shutdown();
+            // unblocks the pump if the command didn't read all the input
+            stdin.close();
+        }
+    }
+
+    private synchronized void closeSessions() {
+        for (Session session : sessions.values()) {
+            session.cli.close();
+        }
+        sessions.clear();
+    }
+
+    private synchronized void evictIdleSessions() {
+        final long now = System.currentTimeMillis();
+        for (Iterator<Session> it = sessions.values().iterator(); it.hasNext();) {
+            Session session = it.next();
+            if (now - session.lastAccess > sessionTimeoutMillis) {
+                session.cli.close();
+                it.remove();
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        int port = DaemonProtocol.DEFAULT_PORT;
+        if (args.length != 0) {
+            if (args.length > 1) {
+                System.out.println("Too many arguments.\nUsage: geogit-daemon [port|stop]");
+                System.exit(1);
+            }
+            if ("stop".equals(args[0])) {
+                System.exit(GeogitDaemonClient.stopDaemon());
+            }
+            try {
+                port = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                System.out.println("Wrong argument: " + args[0]
+                        + "\nUsage: geogit-daemon [port|stop]");
+                System.exit(1);
+            }
+        }
+
+        final GeogitDaemon daemon;
+        try {
+            daemon = new GeogitDaemon(port);
+            DaemonProtocol.publish(daemon.getPort(), daemon.getToken());
+        } catch (IOException e) {
+            System.out.println("Can't start the GeoGit daemon on port " + port + ": "
+                    + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                daemon.stop();
+                DaemonProtocol.daemonFile().delete();
+            }
+        });
+        System.out.println("GeoGit daemon started and waiting for connections at port "
+                + daemon.getPort());
+        try {
+            daemon.run();
+        } catch (IOException e) {
+            LOGGER.error("GeoGit daemon stopped unexpectedly", e);
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,173 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+
+package org.geogit.cli;
+
+import static org.geogit.cli.DaemonProtocol.END_OF_STREAM;
+import static org.geogit.cli.DaemonProtocol.EXIT;
+import static org.geogit.cli.DaemonProtocol.OUTPUT;
+import static org.geogit.cli.DaemonProtocol.RUN;
+import static org.geogit.cli.DaemonProtocol.STOP;
+import static org.geogit.cli.DaemonProtocol.VERSION;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Properties;
+
+import javax.annotation.Nullable;
+
+/**
+ * A thin command line client that runs the given command on the {@link GeogitDaemon}, forwarding
+ * its standard input and output, and exits with the command's exit code.
+ * <p>
+ * If no daemon is running the command is run in-process by {@link GeogitCLI}, so the client can
+ * be used as a drop-in replacement of {@code geogit} in scripts.
+ * <p>
+ * This class shall not load anything but the JDK and {@link DaemonProtocol} unless it has to fall
+ * back to running the command itself, as starting up fast is its whole point.
+ */
+public class GeogitDaemonClient {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    public static void main(String[] args) {
+        Properties published = DaemonProtocol.published();
+        Socket socket = connect(published);
+        if (socket == null) {
+            GeogitCLI.main(args);
+            return;
+        }
+        int exitCode;
+        try {
+            exitCode = run(socket, DaemonProtocol.token(published), RUN,
+                    new File(System.getProperty("user.dir")), System.console() != null, args,
+                    System.in, System.out);
+        } catch (IOException e) {
+            System.err.println("Lost connection to the GeoGit daemon: " + e.getMessage());
+            exitCode = -1;
+        }
+        System.exit(exitCode);
+    }
+
+    /**
+     * Stops the running daemon, if any
+     *
+     * @return the exit code for the {@code geogit-daemon stop} command
+     */
+    static int stopDaemon() {
+        Properties published = DaemonProtocol.published();
+        Socket socket = connect(published);
+        if (socket == null) {
+            System.out.println("The GeoGit daemon is not running");
+            return 1;
+        }
+        try {
+            return run(socket, DaemonProtocol.token(published), STOP,
+                    new File(System.getProperty("user.dir")), false, new String[0], null,
+                    System.out);
+        } catch (IOException e) {
+            System.err.println("Error stopping the GeoGit daemon: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * @param published the daemon port and token, as {@link DaemonProtocol#published()
+     *        published}
+     * @return a connection to the running daemon, or {@code null} if there's none
+     */
+    @Nullable
+    private static Socket connect(@Nullable Properties published) {
+        if (published == null) {
+            return null;
+        }
+        try {
+            return new Socket(InetAddress.getByName(null), DaemonProtocol.port(published));
+        } catch (IOException e) {
+            // the daemon died without cleaning up
+            return null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Sends a request to the daemon and copies the command output to {@code stdout} until the
+     * daemon sends the exit code
+     *
+     * @param stdin the command input, or {@code null} if it takes none
+     * @return the command exit code
+     */
+    static int run(final Socket socket, final String token, final byte operation,
+            final File workingDir, final boolean ansiSupported, final String[] args,
+            @Nullable final InputStream stdin, final OutputStream stdout) throws IOException {
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    socket.getOutputStream()));
+            out.writeUTF(VERSION);
+            out.writeUTF(token);
+            out.writeByte(operation);
+            out.writeUTF(workingDir.getAbsolutePath());
+            out.writeBoolean(ansiSupported);
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+
+            if (stdin != null) {
+                Thread stdinPump = new Thread("geogit-client-stdin") {
+                    @Override
+                    public void run() {
+                        byte[] buff = new byte[BUFFER_SIZE];
+                        try {
+                            int read;
+                            while ((read = stdin.read(buff)) != -1) {
+                                DaemonProtocol.writeChunk(out, buff, 0, read);
+                                out.flush();
+                            }
+                            out.writeInt(END_OF_STREAM);
+                            out.flush();
+                        } catch (IOException e) {
+                            // the command finished and the daemon closed the connection
+                        }
+                    }
+                };
+                stdinPump.setDaemon(true);
+                stdinPump.start();
+            }
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    socket.getInputStream()));
+            while (true) {
+                final byte frame;
+                try {
+                    frame = in.readByte();
+                } catch (EOFException e) {
+                    throw new IOException("the daemon closed the connection");
+                }
+                if (frame == OUTPUT) {
+                    stdout.write(DaemonProtocol.readChunk(in));
+                } else if (frame == EXIT) {
+                    stdout.flush();
+                    return in.readInt();
+                } else {
+                    throw new IOException("unexpected response from the daemon");
+                }
+            }
+        } finally {
+            socket.close();
+        }
+    }
+}
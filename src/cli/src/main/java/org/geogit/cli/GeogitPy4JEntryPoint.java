@@ -5,12 +5,19 @@
 
 package org.geogit.cli;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.charset.Charset;
 import java.util.Iterator;
-import java.util.NoSuchElementException;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
 
 import jline.console.ConsoleReader;
 
@@ -20,60 +27,76 @@ import org.geogit.api.ProgressListener;
 
 import py4j.GatewayServer;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
-import com.google.common.base.Splitter;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Provides an entry point using the py4j library, to expose GeoGit functionality to python
  * applications
+ * <p>
+ * Commands run on a repository folder share a session that keeps the repository open between
+ * calls. Sessions are closed after {@link #setSessionTimeout(long) being idle} for a while, so
+ * that other processes get a chance to open the repository databases for writing.
  */
 public class GeogitPy4JEntryPoint {
 
-    ConsoleReader consoleReader;
-
     /**
-     * A class to parse and store console output of GeoGit commands
+     * Default number of seconds a session can be idle before its repository is closed
      */
-    public class ToStringOutputStream extends OutputStream {
+    public static final long DEFAULT_SESSION_TIMEOUT = 5 * 60;
 
-        private static final int PAGE_SIZE = 1000;
+    private static final int PAGE_SIZE = 1000;
 
-        StringBuffer sb = new StringBuffer();
+    ConsoleReader consoleReader;
 
-        @Override
-        public void write(int b) throws IOException {
-            char c = (char) b;
-            String s = String.valueOf(c);
-            sb.append(s);
-        }
+    /**
+     * Buffers the console output of GeoGit commands as raw bytes, only decoding them once the
+     * command has finished
+     */
+    private static class OutputBuffer extends ByteArrayOutputStream {
 
-        public void clear() {
-            sb = new StringBuffer();
+        OutputBuffer() {
+            super(8 * 1024);
         }
 
-        public String asString() {
-            return sb.toString();
+        String asString() {
+            return new String(buf, 0, count, Charset.defaultCharset());
         }
+    }
 
-        public Iterator<String> getIterator() {
-            Splitter page = Splitter.fixedLength(PAGE_SIZE);
-            return page.split(sb.toString()).iterator();
-        }
+    private static class Session {
+
+        final GeogitCLI cli;
 
+        long lastAccess;
+
+        Session(GeogitCLI cli) {
+            this.cli = cli;
+        }
     }
 
+    private final Map<File, Session> sessions = Maps.newHashMap();
+
+    private final ScheduledExecutorService evictor;
+
+    private long sessionTimeoutMillis = TimeUnit.SECONDS.toMillis(DEFAULT_SESSION_TIMEOUT);
+
     private PrintStream stream;
 
-    private ToStringOutputStream os;
+    private OutputBuffer os;
 
-    private Iterator<String> pages = null;
+    private String output = "";
+
+    private int outputOffset;
 
     private GeoGitPy4JProgressListener listener;
 
     public GeogitPy4JEntryPoint() {
         listener = new SilentProgressListener();
-        os = new ToStringOutputStream();
+        os = new OutputBuffer();
         stream = new PrintStream(os);
         try {
             consoleReader = new ConsoleReader(System.in, stream);
@@ -81,6 +104,15 @@ public class GeogitPy4JEntryPoint {
         } catch (Exception e) {
             throw Throwables.propagate(e);
         }
+        ThreadFactory threadFactory = new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("geogit-py4j-session-evictor").build();
+        evictor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdleSessions();
+            }
+        }, 30, 30, TimeUnit.SECONDS);
     }
 
     /**
@@ -91,8 +123,38 @@ public class GeogitPy4JEntryPoint {
      * @return
      * @throws IOException
      */
-    public int runCommand(String folder, String[] args) throws IOException {
-        System.gc();
+    public synchronized int runCommand(String folder, String[] args) throws IOException {
+        final File workingDir = new File(folder).getCanonicalFile();
+        Session session = sessions.get(workingDir);
+        if (session == null) {
+            session = new Session(newCLI());
+            sessions.put(workingDir, session);
+        }
+        GeogitCLI cli = session.cli;
+        if (!workingDir.equals(cli.getPlatform().pwd())) {
+            // a previous command (e.g. clone) moved to another directory
+            cli.close();
+            cli.getPlatform().setWorkingDir(workingDir);
+        }
+        cli.tryConfigureLogging();
+        String command = Joiner.on(" ").join(args);
+        os.reset();
+        output = "";
+        outputOffset = 0;
+        System.out.print("Running command: " + command);
+        int ret = cli.execute(args);
+        session.lastAccess = System.currentTimeMillis();
+        if (ret == 0) {
+            System.out.println(" [OK]");
+        } else {
+            System.out.println(" [Error]");
+        }
+        stream.flush();
+        output = os.asString();
+        return ret;
+    }
+
+    private GeogitCLI newCLI() {
         GeogitCLI cli = new GeogitCLI(consoleReader) {
             @Override
             public synchronized ProgressListener getProgressListener() {
@@ -114,37 +176,88 @@ public class GeogitPy4JEntryPoint {
                 return super.progressListener;
             }
         };
-        cli.tryConfigureLogging();
-        DefaultPlatform platform = new DefaultPlatform();
-        platform.setWorkingDir(new File(folder));
-        cli.setPlatform(platform);
-        String command = Joiner.on(" ").join(args);
-        os.clear();
-        pages = null;
-        System.out.print("Running command: " + command);
-        int ret = cli.execute(args);
-        cli.close();
-        if (ret == 0) {
-            System.out.println(" [OK]");
-        } else {
-            System.out.println(" [Error]");
+        cli.setKeepRepositoryOpen(true);
+        cli.setPlatform(new DefaultPlatform());
+        return cli;
+    }
+
+    /**
+     * @return the next chunk of the output of the last command, or {@code null} if it has been
+     *         fully read
+     */
+    public synchronized String nextOutputPage() throws IOException {
+        if (outputOffset >= output.length()) {
+            return null;
+        }
+        int end = Math.min(output.length(), outputOffset + PAGE_SIZE);
+        String next = output.substring(outputOffset, end);
+        outputOffset = end;
+        return next;
+    }
+
+    /**
+     * @return the whole output of the last command
+     */
+    public synchronized String getOutput() {
+        return output;
+    }
+
+    /**
+     * Sets the number of seconds a session can be idle before its repository is closed
+     * 
+     * @param seconds
+     */
+    public synchronized void setSessionTimeout(long seconds) {
+        this.sessionTimeoutMillis = TimeUnit.SECONDS.toMillis(seconds);
+    }
+
+    /**
+     * Closes the session of the given repository folder, if any, releasing the repository
+     * 
+     * @param folder the repository folder
+     */
+    public synchronized void closeSession(String folder) throws IOException {
+        Session session = sessions.remove(new File(folder).getCanonicalFile());
+        if (session != null) {
+            session.cli.close();
         }
-        stream.flush();
-        os.flush();
-        return ret;
     }
 
-    public String nextOutputPage() throws IOException {
-        if (pages == null) {
-            pages = os.getIterator();
+    /**
+     * Closes all the open sessions
+     */
+    public synchronized void closeSessions() {
+        for (Session session : sessions.values()) {
+            session.cli.close();
         }
-        String next;
-        try {
-            next = pages.next();
-        } catch (NoSuchElementException e) {
-            next = null;
+        sessions.clear();
+    }
+
+    /**
+     * @return the command line interface of the session of the given repository folder, or
+     *         {@code null} if it has no open session
+     */
+    @VisibleForTesting
+    @Nullable
+    public synchronized GeogitCLI getSession(String folder) throws IOException {
+        Session session = sessions.get(new File(folder).getCanonicalFile());
+        return session == null ? null : session.cli;
+    }
+
+    /**
+     * Closes the sessions that have been idle for longer than the session timeout. Called
+     * periodically.
+     */
+    @VisibleForTesting
+    public synchronized void evictIdleSessions() {
+        final long now = System.currentTimeMillis();
+        for (Iterator<Session> it = sessions.values().iterator(); it.hasNext();) {
+            Session session = it.next();
+            if (now - session.lastAccess > sessionTimeoutMillis) {
+                session.cli.close();
+                it.remove();
+            }
         }
-        return next;
     }
 
     public boolean isGeoGitServer() {
@@ -156,6 +269,8 @@ public class GeogitPy4JEntryPoint {
      */
     public void shutdown() {
         System.out.println("Shutting down GeoGit server.");
+        evictor.shutdownNow();
+        closeSessions();
         System.exit(0);
     }
 
@@ -0,0 +1,35 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+
+package org.geogit.cli.plumbing;
+
+import java.io.IOException;
+
+import org.geogit.api.plumbing.UpdateHistoryIndex;
+import org.geogit.cli.AbstractCommand;
+import org.geogit.cli.CLICommand;
+import org.geogit.cli.GeogitCLI;
+import org.geogit.cli.annotation.ReadOnly;
+
+import com.beust.jcommander.Parameters;
+
+/**
+ * Creates the history index used to speed up path filtered {@code log} and {@code blame}, or
+ * rebuilds it from scratch if it already exists. Once created, the index is kept up to date on
+ * every commit and fetch.
+ * 
+ * @see UpdateHistoryIndex
+ */
+@ReadOnly
+@Parameters(commandNames = "rebuild-history-index", commandDescription = "Creates or rebuilds the path history index.")
+public class RebuildHistoryIndex extends AbstractCommand implements CLICommand {
+
+    @Override
+    public void runInternal(GeogitCLI cli) throws IOException {
+        Integer indexed = cli.getGeogit().command(UpdateHistoryIndex.class).setRebuild(true)
+                .setProgressListener(cli.getProgressListener()).call();
+        cli.getConsole().println(indexed + " commits indexed.");
+    }
+}
@@ -0,0 +1,50 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.cli.porcelain;
+
+import java.io.IOException;
+
+import jline.console.ConsoleReader;
+
+import org.geogit.api.porcelain.GarbageCollectOp;
+import org.geogit.api.porcelain.GarbageCollectOp.GarbageCollectReport;
+import org.geogit.cli.AbstractCommand;
+import org.geogit.cli.CLICommand;
+import org.geogit.cli.GeogitCLI;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+
+/**
+ * Deletes the objects that are not reachable from any ref of the repository.
+ * <p>
+ * CLI proxy for {@link GarbageCollectOp}
+ * <p>
+ * Usage:
+ * <ul>
+ * <li> {@code geogit gc [--dry-run]}
+ * </ul>
+ *
+ * @see GarbageCollectOp
+ */
+@Parameters(commandNames = "gc", commandDescription = "Delete unreachable objects from the repository")
+public class GarbageCollect extends AbstractCommand implements CLICommand {
+
+    @Parameter(names = { "--dry-run", "-n" }, description = "Don't actually delete anything, just report what would be deleted.")
+    private boolean dryRun;
+
+    @Override
+    public void runInternal(GeogitCLI cli) throws IOException {
+        final ConsoleReader console = cli.getConsole();
+
+        GarbageCollectReport report = cli.getGeogit().command(GarbageCollectOp.class)
+                .setDryRun(dryRun).setProgressListener(cli.getProgressListener()).call();
+
+        console.println(String.format("%,d reachable objects.", report.getReachable()));
+        console.println(String.format("%s %,d unreachable objects (%,d bytes).",
+                dryRun ? "Would delete" : "Deleted", report.getDeleted(),
+                report.getBytesReclaimed()));
+    }
+}
@@ -0,0 +1,110 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import org.geogit.api.GlobalContextBuilder;
+import org.geogit.api.TestPlatform;
+import org.geogit.cli.test.functional.CLITestContextBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GeogitDaemonTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File repoFolder;
+
+    private GeogitDaemon daemon;
+
+    private Thread daemonThread;
+
+    private ByteArrayOutputStream output;
+
+    @Before
+    public void setUp() throws Exception {
+        File homeDirectory = tempFolder.newFolder("fakeHomeDir").getCanonicalFile();
+        repoFolder = tempFolder.newFolder("testrepo").getCanonicalFile();
+        GlobalContextBuilder.builder = new CLITestContextBuilder(new TestPlatform(repoFolder,
+                homeDirectory));
+
+        daemon = new GeogitDaemon(0);
+        daemonThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    daemon.run();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        daemonThread.start();
+        output = new ByteArrayOutputStream();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        daemon.stop();
+        daemonThread.join();
+    }
+
+    private int run(String... args) throws IOException {
+        output.reset();
+        Socket socket = new Socket(InetAddress.getByName(null), daemon.getPort());
+        return GeogitDaemonClient.run(socket, daemon.getToken(), DaemonProtocol.RUN, repoFolder,
+                false, args, new ByteArrayInputStream(new byte[0]), output);
+    }
+
+    @Test
+    public void testRunCommands() throws Exception {
+        assertEquals(0, run("init"));
+        assertTrue(output.toString().contains("Initialized empty Geogit repository"));
+
+        assertEquals(0, run("config", "user.name", "name"));
+        assertEquals(0, run("config", "user.name"));
+        assertTrue(output.toString().contains("name"));
+
+        assertEquals(-1, run("nonexistent"));
+        assertTrue(output.toString().contains("is not a geogit command"));
+    }
+
+    @Test
+    public void testWrongToken() throws Exception {
+        Socket socket = new Socket(InetAddress.getByName(null), daemon.getPort());
+        try {
+            GeogitDaemonClient.run(socket, "wrong", DaemonProtocol.RUN, repoFolder, false,
+                    new String[] { "init" }, null, output);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertTrue(true);
+        }
+        assertEquals(0, repoFolder.list().length);
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        Socket socket = new Socket(InetAddress.getByName(null), daemon.getPort());
+        assertEquals(0, GeogitDaemonClient.run(socket, daemon.getToken(), DaemonProtocol.STOP,
+                repoFolder, false, new String[0], null, output));
+        daemonThread.join(10000);
+        assertFalse(daemonThread.isAlive());
+    }
+}
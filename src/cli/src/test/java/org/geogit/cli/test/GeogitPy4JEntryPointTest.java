@@ -10,15 +10,22 @@ import static org.geogit.cli.test.functional.TestFeatures.points1_modified;
 import static org.geogit.cli.test.functional.TestFeatures.points2;
 import static org.geogit.cli.test.functional.TestFeatures.points3;
 import static org.geogit.cli.test.functional.TestFeatures.setupFeatures;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 
+import org.geogit.api.GeoGIT;
 import org.geogit.api.GlobalContextBuilder;
 import org.geogit.api.TestPlatform;
 import org.geogit.api.porcelain.AddOp;
 import org.geogit.api.porcelain.CommitOp;
+import org.geogit.cli.GeogitCLI;
 import org.geogit.cli.GeogitPy4JEntryPoint;
 import org.geogit.cli.test.functional.CLITestContextBuilder;
 import org.geogit.cli.test.functional.GlobalState;
@@ -68,7 +75,63 @@ public class GeogitPy4JEntryPointTest {
         output = py4j.nextOutputPage();
         System.out.println(output);
         assertTrue(output.contains("a commit message"));
+        assertEquals(output, py4j.getOutput());
+        assertNull(py4j.nextOutputPage());
 
+        py4j.closeSessions();
         gatewayServer.shutdown();
     }
+
+    @Test
+    public void testSessionReusedAcrossCalls() throws Exception {
+        String repoFolder = platform.pwd().getAbsolutePath();
+        GeogitPy4JEntryPoint py4j = new GeogitPy4JEntryPoint();
+        py4j.runCommand(repoFolder, new String[] { "init" });
+        py4j.runCommand(repoFolder, "config user.name name".split(" "));
+
+        GeogitCLI cli = py4j.getSession(repoFolder);
+        assertNotNull(cli);
+        py4j.runCommand(repoFolder, new String[] { "status" });
+        GeoGIT geogit = cli.getGeogit();
+        assertNotNull(geogit);
+
+        assertEquals(0, py4j.runCommand(repoFolder, new String[] { "log" }));
+        assertEquals(0, py4j.runCommand(repoFolder, new String[] { "status" }));
+        assertSame(cli, py4j.getSession(repoFolder));
+        assertSame(geogit, cli.getGeogit());
+        assertTrue(geogit.isOpen());
+
+        py4j.closeSession(repoFolder);
+        assertNull(py4j.getSession(repoFolder));
+        assertFalse(geogit.isOpen());
+    }
+
+    @Test
+    public void testIdleSessionsEvicted() throws Exception {
+        String repoFolder = platform.pwd().getAbsolutePath();
+        GeogitPy4JEntryPoint py4j = new GeogitPy4JEntryPoint();
+        py4j.runCommand(repoFolder, new String[] { "init" });
+        py4j.runCommand(repoFolder, new String[] { "status" });
+        GeogitCLI cli = py4j.getSession(repoFolder);
+        GeoGIT geogit = cli.getGeogit();
+
+        // not idle for long enough
+        py4j.evictIdleSessions();
+        assertSame(cli, py4j.getSession(repoFolder));
+        assertTrue(geogit.isOpen());
+
+        py4j.setSessionTimeout(0);
+        Thread.sleep(10);
+        py4j.evictIdleSessions();
+        assertNull(py4j.getSession(repoFolder));
+        assertFalse(geogit.isOpen());
+
+        // the next call opens a new session
+        assertEquals(0, py4j.runCommand(repoFolder, new String[] { "status" }));
+        GeogitCLI newCli = py4j.getSession(repoFolder);
+        assertNotNull(newCli);
+        assertFalse(cli == newCli);
+        py4j.closeSessions();
+        assertNull(py4j.getSession(repoFolder));
+    }
 }
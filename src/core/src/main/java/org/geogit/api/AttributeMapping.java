@@ -0,0 +1,150 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.api;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.feature.type.PropertyDescriptor;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.google.common.collect.BiMap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * The correspondence between the attributes of a {@link SimpleFeatureType} and the values of a
+ * {@link RevFeature}, which are stored in the order of {@link RevFeatureType#sortedDescriptors()}
+ * rather than in the order of the type's descriptors.
+ * <p>
+ * Instances are immutable, so all the {@link GeogitSimpleFeature features} built for the same
+ * type share a single one, computed once by the type's {@link FeatureBuilder}.
+ */
+final class AttributeMapping {
+
+    final SimpleFeatureType featureType;
+
+    /**
+     * The feature type's default geometry descriptor, or {@code null}
+     */
+    @Nullable
+    final GeometryDescriptor geometryDescriptor;
+
+    /**
+     * The feature type's CRS, or {@code null}
+     */
+    @Nullable
+    final CoordinateReferenceSystem crs;
+
+    /**
+     * Index of the default geometry value, or {@code -1} if the type has no geometry
+     */
+    final int defaultGeometryIndex;
+
+    private final Map<String, Integer> nameToRevTypeIndex;
+
+    private final int[] typeToRevTypeIndex;
+
+    private final int[] revTypeToTypeIndex;
+
+    private AttributeMapping(SimpleFeatureType featureType, Map<String, Integer> nameToRevTypeIndex,
+            int[] typeToRevTypeIndex, int defaultGeometryIndex) {
+        this.featureType = featureType;
+        this.geometryDescriptor = featureType.getGeometryDescriptor();
+        this.crs = featureType.getCoordinateReferenceSystem();
+        this.nameToRevTypeIndex = Collections.unmodifiableMap(nameToRevTypeIndex);
+        this.typeToRevTypeIndex = typeToRevTypeIndex;
+        this.defaultGeometryIndex = defaultGeometryIndex;
+        this.revTypeToTypeIndex = new int[typeToRevTypeIndex.length];
+        Arrays.fill(revTypeToTypeIndex, -1);
+        for (int typeIndex = 0; typeIndex < typeToRevTypeIndex.length; typeIndex++) {
+            if (typeToRevTypeIndex[typeIndex] >= 0) {
+                revTypeToTypeIndex[typeToRevTypeIndex[typeIndex]] = typeIndex;
+            }
+        }
+    }
+
+    static AttributeMapping create(RevFeatureType revType) {
+        final SimpleFeatureType featureType = (SimpleFeatureType) revType.type();
+        final List<PropertyDescriptor> sortedDescriptors = revType.sortedDescriptors();
+        final List<PropertyDescriptor> unsortedDescriptors = ImmutableList.copyOf(featureType
+                .getDescriptors());
+        final GeometryDescriptor defaultGeometry = featureType.getGeometryDescriptor();
+
+        Map<String, Integer> nameToRevTypeIndex = Maps.newHashMap();
+        int[] typeToRevTypeIndex = new int[unsortedDescriptors.size()];
+        Arrays.fill(typeToRevTypeIndex, -1);
+        int defaultGeometryIndex = -1;
+        for (int revFeatureIndex = 0; revFeatureIndex < sortedDescriptors.size(); revFeatureIndex++) {
+            PropertyDescriptor prop = sortedDescriptors.get(revFeatureIndex);
+            nameToRevTypeIndex.put(prop.getName().getLocalPart(), Integer.valueOf(revFeatureIndex));
+            int typeIndex = unsortedDescriptors.indexOf(prop);
+            if (typeIndex >= 0) {
+                typeToRevTypeIndex[typeIndex] = revFeatureIndex;
+            }
+            if (prop.equals(defaultGeometry)) {
+                defaultGeometryIndex = revFeatureIndex;
+            }
+        }
+        return new AttributeMapping(featureType, nameToRevTypeIndex, typeToRevTypeIndex,
+                defaultGeometryIndex);
+    }
+
+    /**
+     * Adapts the index maps of the {@link GeogitSimpleFeature} public constructor, where the
+     * {@code null} name maps to the default geometry.
+     */
+    static AttributeMapping create(SimpleFeatureType featureType,
+            Map<String, Integer> nameToRevTypeIndex, BiMap<Integer, Integer> typeToRevTypeIndex) {
+        int[] typeToRevType = new int[featureType.getAttributeCount()];
+        Arrays.fill(typeToRevType, -1);
+        for (Map.Entry<Integer, Integer> e : typeToRevTypeIndex.entrySet()) {
+            typeToRevType[e.getKey().intValue()] = e.getValue().intValue();
+        }
+        Map<String, Integer> names = Maps.newHashMap(nameToRevTypeIndex);
+        Integer defaultGeometryIndex = names.remove(null);
+        GeometryDescriptor geometryDescriptor = featureType.getGeometryDescriptor();
+        if (defaultGeometryIndex == null && geometryDescriptor != null) {
+            defaultGeometryIndex = names.get(geometryDescriptor.getLocalName());
+        }
+        return new AttributeMapping(featureType, names, typeToRevType,
+                defaultGeometryIndex == null ? -1 : defaultGeometryIndex.intValue());
+    }
+
+    /**
+     * @return the index of the value for the attribute at {@code typeIndex} in the feature type
+     * @throws IndexOutOfBoundsException if there's no such attribute
+     */
+    int revTypeIndex(int typeIndex) throws IndexOutOfBoundsException {
+        int revTypeIndex = typeToRevTypeIndex[typeIndex];
+        if (revTypeIndex < 0) {
+            throw new IndexOutOfBoundsException("No value for attribute " + typeIndex);
+        }
+        return revTypeIndex;
+    }
+
+    /**
+     * @return the index of the value for the named attribute, or {@code -1} if there's no such
+     *         attribute
+     */
+    int revTypeIndex(@Nullable String name) {
+        Integer revTypeIndex = nameToRevTypeIndex.get(name);
+        return revTypeIndex == null ? -1 : revTypeIndex.intValue();
+    }
+
+    /**
+     * @return the index in the feature type of the attribute whose value is at
+     *         {@code revTypeIndex}
+     */
+    int typeIndex(int revTypeIndex) {
+        return revTypeToTypeIndex[revTypeIndex];
+    }
+}
@@ -5,22 +5,37 @@
 
 package org.geogit.api;
 
-import java.util.Map;
+import javax.annotation.Nullable;
 
+import org.geogit.storage.ObjectDatabase;
 import org.geotools.filter.identity.FeatureIdVersionedImpl;
+import org.geotools.metadata.iso.citation.Citations;
+import org.geotools.referencing.CRS;
 import org.opengis.feature.Feature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.FeatureType;
+import org.opengis.feature.type.GeometryType;
+import org.opengis.feature.type.PropertyDescriptor;
+import org.opengis.feature.type.PropertyType;
 import org.opengis.filter.identity.FeatureId;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.BiMap;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 
 /**
  * Provides a method of building features from {@link RevFeature} objects that have the type
  * specified by the given {@link RevFeatureType}.
+ * <p>
+ * Mapping the attributes of the feature type to the values of its {@code RevFeature}s is computed
+ * once per builder and shared by all the features it builds, so building a feature does not copy
+ * or index its values. Builders are immutable and thread safe, and {@link #forType(RevFeatureType)}
+ * keeps the most recently used ones around by feature type id so they can be shared across
+ * commands instead of being recreated for every feature or type lookup.
  * 
  * @see RevFeatureType
  * @see RevFeature
@@ -28,24 +43,32 @@ import com.google.common.collect.ImmutableList;
  */
 public class FeatureBuilder {
 
-    private FeatureType featureType;
+    /**
+     * Max number of builders kept by {@link #forType}
+     */
+    private static final int MAX_CACHED_TYPES = 1000;
+
+    private static final Cache<ObjectId, FeatureBuilder> BUILDERS = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_TYPES).build();
 
-    private Map<String, Integer> attNameToRevTypeIndex;
+    private final AttributeMapping mapping;
 
-    private BiMap<Integer, Integer> typeToRevTypeIndex;
+    private final RevFeatureType type;
 
-    private RevFeatureType type;
+    /**
+     * The code of the CRS of the first geometry attribute, looked up on demand
+     */
+    private volatile Optional<String> crsCode;
 
     /**
      * Constructs a new {@code FeatureBuilder} with the given {@link RevFeatureType feature type}.
      * 
      * @param type the feature type of the features that will be built
+     * @see #forType(RevFeatureType)
      */
     public FeatureBuilder(RevFeatureType type) {
         this.type = type;
-        this.featureType = type.type();
-        this.attNameToRevTypeIndex = GeogitSimpleFeature.buildAttNameToRevTypeIndex(type);
-        this.typeToRevTypeIndex = GeogitSimpleFeature.buildTypeToRevTypeIndex(type);
+        this.mapping = AttributeMapping.create(type);
     }
 
     public RevFeatureType getType() {
@@ -62,6 +85,78 @@ public class FeatureBuilder {
         this(RevFeatureType.build(type));
     }
 
+    /**
+     * Returns the shared builder for the given feature type, creating it if it's not one of the
+     * recently used ones.
+     * 
+     * @param type the feature type of the features that will be built
+     * @return a builder for {@code type}
+     */
+    public static FeatureBuilder forType(final RevFeatureType type) {
+        Preconditions.checkNotNull(type);
+        FeatureBuilder builder = BUILDERS.getIfPresent(type.getId());
+        if (builder == null) {
+            builder = new FeatureBuilder(type);
+            BUILDERS.put(type.getId(), builder);
+        }
+        return builder;
+    }
+
+    /**
+     * Returns the shared builder for the feature type with the given id, reading the type from
+     * the given database only if it's not one of the recently used ones.
+     * 
+     * @param typeId the id of the feature type of the features that will be built
+     * @param database the database to read the feature type from
+     * @return a builder for the feature type
+     */
+    public static FeatureBuilder forType(final ObjectId typeId, final ObjectDatabase database) {
+        Preconditions.checkNotNull(typeId);
+        FeatureBuilder builder = BUILDERS.getIfPresent(typeId);
+        if (builder == null) {
+            builder = forType(database.getFeatureType(typeId));
+        }
+        return builder;
+    }
+
+    /**
+     * Returns the EPSG code of the CRS of the first geometry attribute of the feature type, as
+     * {@code EPSG:<code>}. Looking up the code is expensive, so it's only done once per builder.
+     * 
+     * @return the CRS code, or {@code null} if the type has no geometry attribute, its CRS is not
+     *         set or it has no EPSG code
+     */
+    @Nullable
+    public String getCrsCode() {
+        Optional<String> code = crsCode;
+        if (code == null) {
+            code = Optional.fromNullable(lookupCrsCode(type.type()));
+            crsCode = code;
+        }
+        return code.orNull();
+    }
+
+    @Nullable
+    private static String lookupCrsCode(FeatureType featureType) {
+        for (PropertyDescriptor descriptor : featureType.getDescriptors()) {
+            PropertyType attrType = descriptor.getType();
+            if (attrType instanceof GeometryType) {
+                CoordinateReferenceSystem crs = ((GeometryType) attrType)
+                        .getCoordinateReferenceSystem();
+                if (crs == null) {
+                    return null;
+                }
+                try {
+                    String code = CRS.lookupIdentifier(Citations.EPSG, crs, false);
+                    return code == null ? null : "EPSG:" + code;
+                } catch (FactoryException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
     /**
      * Builds a {@link Feature} from the provided {@link RevFeature}.
      * 
@@ -77,8 +172,7 @@ public class FeatureBuilder {
         final FeatureId fid = new FeatureIdVersionedImpl(id, version);
 
         ImmutableList<Optional<Object>> values = revFeature.getValues();
-        GeogitSimpleFeature feature = new GeogitSimpleFeature(values,
-                (SimpleFeatureType) featureType, fid, attNameToRevTypeIndex, typeToRevTypeIndex);
+        GeogitSimpleFeature feature = new GeogitSimpleFeature(values, mapping, fid);
         return feature;
     }
 
@@ -53,7 +53,7 @@ public class GeogitSimpleFeature implements SimpleFeature {
 
     private final FeatureId id;
 
-    private SimpleFeatureType featureType;
+    private final SimpleFeatureType featureType;
 
     /**
      * The actual values held by this feature
@@ -61,11 +61,9 @@ public class GeogitSimpleFeature implements SimpleFeature {
     private List<Optional<Object>> revFeatureValues;
 
     /**
-     * The attribute name -> position index
+     * The attribute to value index mappings, shared by all the features of the same type
      */
-    private Map<String, Integer> nameToRevTypeIndex;
-
-    private BiMap<Integer, Integer> typeToRevTypeIndex;
+    private final AttributeMapping mapping;
 
     /**
      * The set of user data attached to the feature (lazily created)
@@ -93,11 +91,21 @@ public class GeogitSimpleFeature implements SimpleFeature {
     public GeogitSimpleFeature(ImmutableList<Optional<Object>> values,
             SimpleFeatureType featureType, FeatureId id, Map<String, Integer> nameToRevTypeInded,
             BiMap<Integer, Integer> typeToRevTypeIndex) {
+        this(values, AttributeMapping.create(featureType, nameToRevTypeInded, typeToRevTypeIndex),
+                id);
+    }
+
+    /**
+     * Constructs a feature sharing the attribute mappings of its type.
+     * 
+     * @see FeatureBuilder
+     */
+    GeogitSimpleFeature(ImmutableList<Optional<Object>> values, AttributeMapping mapping,
+            FeatureId id) {
         this.id = id;
-        this.featureType = featureType;
+        this.featureType = mapping.featureType;
         this.revFeatureValues = values;
-        this.nameToRevTypeIndex = nameToRevTypeInded;
-        this.typeToRevTypeIndex = typeToRevTypeIndex;
+        this.mapping = mapping;
     }
 
     private List<Optional<Object>> mutableValues() {
@@ -128,14 +136,13 @@ public class GeogitSimpleFeature implements SimpleFeature {
     }
 
     private int typeToRevTypeIndex(int index) {
-        int revTypeIndex = typeToRevTypeIndex.get(Integer.valueOf(index)).intValue();
-        return revTypeIndex;
+        return mapping.revTypeIndex(index);
     }
 
     @Override
     public Object getAttribute(String name) {
-        Integer revTypeIndex = nameToRevTypeIndex.get(name);
-        if (revTypeIndex != null)
+        int revTypeIndex = mapping.revTypeIndex(name);
+        if (revTypeIndex >= 0)
             return revFeatureValues.get(revTypeIndex).orNull();
         else
             return null;
@@ -163,21 +170,8 @@ public class GeogitSimpleFeature implements SimpleFeature {
 
     @Override
     public Object getDefaultGeometry() {
-        // should be specified in the index as the default key (null)
-        Integer idx = nameToRevTypeIndex.get(null);
-        Object defaultGeometry = idx != null ? revFeatureValues.get(idx).orNull() : null;
-
-        // not found? do we have a default geometry at all?
-        if (defaultGeometry == null) {
-            GeometryDescriptor geometryDescriptor = featureType.getGeometryDescriptor();
-            if (geometryDescriptor != null) {
-                Integer defaultGeomIndex = nameToRevTypeIndex.get(geometryDescriptor.getName()
-                        .getLocalPart());
-                defaultGeometry = revFeatureValues.get(defaultGeomIndex.intValue()).get();
-            }
-        }
-
-        return defaultGeometry;
+        final int idx = mapping.defaultGeometryIndex;
+        return idx < 0 ? null : revFeatureValues.get(idx).orNull();
     }
 
     @Override
@@ -197,18 +191,16 @@ public class GeogitSimpleFeature implements SimpleFeature {
         Object converted = Converters.convert(value, binding);
 
         // finally set the value into the feature
-        Integer revFeatureIndex = typeToRevTypeIndex.get(index);
-        mutableValues().set(revFeatureIndex.intValue(), Optional.fromNullable(converted));
+        mutableValues().set(typeToRevTypeIndex(index), Optional.fromNullable(converted));
     }
 
     @Override
     public void setAttribute(String name, Object value) {
-        final Integer revTypeIndex = nameToRevTypeIndex.get(name);
-        if (revTypeIndex == null) {
+        final int revTypeIndex = mapping.revTypeIndex(name);
+        if (revTypeIndex < 0) {
             throw new IllegalAttributeException(null, "Unknown attribute " + name);
         }
-        Integer schemaIndex = typeToRevTypeIndex.inverse().get(revTypeIndex);
-        setAttribute(schemaIndex, value);
+        setAttribute(mapping.typeIndex(revTypeIndex), value);
     }
 
     @Override
@@ -231,15 +223,15 @@ public class GeogitSimpleFeature implements SimpleFeature {
 
     @Override
     public void setDefaultGeometry(Object geometry) {
-        Integer geometryIndex = nameToRevTypeIndex.get(null);
-        if (geometryIndex != null) {
-            mutableValues().set(geometryIndex.intValue(), Optional.fromNullable(geometry));
+        final int geometryIndex = mapping.defaultGeometryIndex;
+        if (geometryIndex >= 0) {
+            mutableValues().set(geometryIndex, Optional.fromNullable(geometry));
         }
     }
 
     @Override
     public BoundingBox getBounds() {
-        CoordinateReferenceSystem crs = featureType.getCoordinateReferenceSystem();
+        CoordinateReferenceSystem crs = mapping.crs;
         Envelope bounds = ReferencedEnvelope.create(crs);
 
         Optional<Object> o;
@@ -262,7 +254,7 @@ public class GeogitSimpleFeature implements SimpleFeature {
 
     @Override
     public GeometryAttribute getDefaultGeometryProperty() {
-        GeometryDescriptor geometryDescriptor = featureType.getGeometryDescriptor();
+        GeometryDescriptor geometryDescriptor = mapping.geometryDescriptor;
         GeometryAttribute geometryAttribute = null;
         if (geometryDescriptor != null) {
             Object defaultGeometry = getDefaultGeometry();
@@ -292,10 +284,11 @@ public class GeogitSimpleFeature implements SimpleFeature {
 
     @Override
     public Collection<Property> getProperties(String name) {
-        final Integer idx = nameToRevTypeIndex.get(name);
-        if (idx != null) {
+        final int idx = mapping.revTypeIndex(name);
+        if (idx >= 0) {
             // cast temporarily to a plain collection to avoid type problems with generics
-            Collection<Property> c = Collections.singleton((Property) new Attribute(idx));
+            Collection<Property> c = Collections.singleton((Property) new Attribute(mapping
+                    .typeIndex(idx)));
             return c;
         } else {
             return Collections.emptyList();
@@ -309,15 +302,15 @@ public class GeogitSimpleFeature implements SimpleFeature {
 
     @Override
     public Property getProperty(String name) {
-        final Integer revTypeIdx = nameToRevTypeIndex.get(name);
-        if (revTypeIdx == null) {
+        final int revTypeIdx = mapping.revTypeIndex(name);
+        if (revTypeIdx < 0) {
             return null;
         } else {
-            int index = typeToRevTypeIndex.inverse().get(revTypeIdx).intValue();
+            int index = mapping.typeIndex(revTypeIdx);
             AttributeDescriptor descriptor = featureType.getDescriptor(index);
             if (descriptor instanceof GeometryDescriptor) {
-                return new GeometryAttributeImpl(revFeatureValues.get(revTypeIdx.intValue())
-                        .orNull(), (GeometryDescriptor) descriptor, null);
+                return new GeometryAttributeImpl(revFeatureValues.get(revTypeIdx).orNull(),
+                        (GeometryDescriptor) descriptor, null);
             } else {
                 return new Attribute(index);
             }
@@ -442,8 +435,8 @@ public class GeogitSimpleFeature implements SimpleFeature {
 
         @Override
         public Attribute set(int index, Property element) {
-            Integer revFeatureIdx = typeToRevTypeIndex.get(Integer.valueOf(index));
-            mutableValues().set(revFeatureIdx, Optional.fromNullable(element.getValue()));
+            mutableValues().set(typeToRevTypeIndex(index),
+                    Optional.fromNullable(element.getValue()));
             return null;
         }
 
@@ -506,7 +499,7 @@ public class GeogitSimpleFeature implements SimpleFeature {
 
         @Override
         public Object getValue() {
-            return revFeatureValues.get(typeToRevTypeIndex.get(index)).orNull();
+            return revFeatureValues.get(typeToRevTypeIndex(index)).orNull();
         }
 
         @Override
@@ -600,8 +593,7 @@ public class GeogitSimpleFeature implements SimpleFeature {
 
         @Override
         public BoundingBox getBounds() {
-            ReferencedEnvelope bounds = new ReferencedEnvelope(
-                    featureType.getCoordinateReferenceSystem());
+            ReferencedEnvelope bounds = new ReferencedEnvelope(mapping.crs);
             Object value = getAttribute(index);
             if (value instanceof Geometry) {
                 bounds.init(((Geometry) value).getEnvelopeInternal());
@@ -21,47 +21,24 @@ import com.vividsolutions.jts.geom.Envelope;
 public abstract class Node implements Bounded, Comparable<Node> {
 
     /**
-     * The name of the element
+     * Package-private constructor, subclasses are either the value nodes created through
+     * {@link #create} or lightweight views over packed node storage (see {@link PackedNodeList})
      */
-    private String name;
-
-    /**
-     * Optional ID corresponding to metadata for the element
-     */
-    @Nullable
-    private ObjectId metadataId;
-
-    /**
-     * Id of the object this ref points to
-     */
-    private ObjectId objectId;
-
-    private Node(final String name, final ObjectId oid, final ObjectId metadataId) {
-        checkNotNull(name);
-        checkNotNull(oid);
-        checkNotNull(metadataId);
-        this.name = name;
-        this.objectId = oid;
-        this.metadataId = metadataId.isNull() ? null : metadataId;
+    Node() {
+        //
     }
 
-    public Optional<ObjectId> getMetadataId() {
-        return Optional.fromNullable(metadataId);
-    }
+    public abstract Optional<ObjectId> getMetadataId();
 
     /**
      * @return the name of the {@link RevObject} this node points to
      */
-    public String getName() {
-        return name;
-    }
+    public abstract String getName();
 
     /**
      * @return the id of the {@link RevObject} this Node points to
      */
-    public ObjectId getObjectId() {
-        return objectId;
-    }
+    public abstract ObjectId getObjectId();
 
     /**
      * @return the type of {@link RevObject} this node points to
@@ -73,7 +50,7 @@ public abstract class Node implements Bounded, Comparable<Node> {
      */
     @Override
     public int compareTo(Node o) {
-        return name.compareTo(o.getName());
+        return getName().compareTo(o.getName());
     }
 
     /**
@@ -81,7 +58,7 @@ public abstract class Node implements Bounded, Comparable<Node> {
      */
     @Override
     public int hashCode() {
-        return 17 ^ getType().hashCode() * name.hashCode() * objectId.hashCode();
+        return 17 ^ getType().hashCode() * getName().hashCode() * getObjectId().hashCode();
     }
 
     /**
@@ -94,7 +71,8 @@ public abstract class Node implements Bounded, Comparable<Node> {
             return false;
         }
         Node r = (Node) o;
-        return getType().equals(r.getType()) && name.equals(r.name) && objectId.equals(r.objectId);
+        return getType().equals(r.getType()) && getName().equals(r.getName())
+                && getObjectId().equals(r.getObjectId());
     }
 
     /**
@@ -142,7 +120,50 @@ public abstract class Node implements Bounded, Comparable<Node> {
         }
     }
 
-    private static class TreeNode extends Node {
+    private static abstract class ValueNode extends Node {
+
+        /**
+         * The name of the element
+         */
+        private final String name;
+
+        /**
+         * Optional ID corresponding to metadata for the element
+         */
+        @Nullable
+        private final ObjectId metadataId;
+
+        /**
+         * Id of the object this ref points to
+         */
+        private final ObjectId objectId;
+
+        private ValueNode(final String name, final ObjectId oid, final ObjectId metadataId) {
+            checkNotNull(name);
+            checkNotNull(oid);
+            checkNotNull(metadataId);
+            this.name = name;
+            this.objectId = oid;
+            this.metadataId = metadataId.isNull() ? null : metadataId;
+        }
+
+        @Override
+        public Optional<ObjectId> getMetadataId() {
+            return Optional.fromNullable(metadataId);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public ObjectId getObjectId() {
+            return objectId;
+        }
+    }
+
+    private static class TreeNode extends ValueNode {
 
         public TreeNode(String name, ObjectId oid, ObjectId mdid) {
             super(name, oid, mdid);
@@ -195,7 +216,7 @@ public abstract class Node implements Bounded, Comparable<Node> {
         }
     }
 
-    private static class FeatureNode extends Node {
+    private static class FeatureNode extends ValueNode {
 
         public FeatureNode(String name, ObjectId oid, ObjectId mdid) {
             super(name, oid, mdid);
@@ -4,8 +4,11 @@
  */
 package org.geogit.api;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.Arrays;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Ordering;
@@ -13,9 +16,16 @@ import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
 import com.google.common.primitives.UnsignedBytes;
+import com.google.common.primitives.UnsignedInts;
+import com.google.common.primitives.UnsignedLongs;
 
 /**
  * A {@link RevObject} identifier backed by a hash function (SHA1 for instance)
+ * <p>
+ * The 20 bytes of the hash are held in three primitive fields (two {@code long}s and an
+ * {@code int}, in big endian order) instead of a {@code byte[]}, which halves the memory footprint
+ * of each instance and allows {@link #equals(Object)}, {@link #hashCode()} and
+ * {@link #compareTo(ObjectId)} to run without any array access or allocation.
  */
 public final class ObjectId implements Comparable<ObjectId> {
 
@@ -44,48 +54,158 @@ public final class ObjectId implements Comparable<ObjectId> {
 
         NUM_CHARS = 2 * NUM_BYTES;
 
-        NULL = new ObjectId(new byte[20]);
+        NULL = new ObjectId(0L, 0L, 0);
     }
 
-    private final byte[] hashCode;
+    /**
+     * bytes 0 to 7
+     */
+    private final long h1;
+
+    /**
+     * bytes 8 to 15
+     */
+    private final long h2;
+
+    /**
+     * bytes 16 to 19
+     */
+    private final int h3;
 
     /**
      * Constructs a new {@code NULL} object id.
      */
     public ObjectId() {
-        this.hashCode = NULL.hashCode;
+        this(0L, 0L, 0);
     }
 
     /**
      * Constructs a new object id with the given byte code.
-     * 
+     *
      * @param raw the byte code to use
      */
     public ObjectId(byte[] raw) {
-        this(raw, true);
+        this(checkRaw(raw), 0);
     }
 
-    private ObjectId(byte[] raw, boolean cloneArg) {
+    private ObjectId(byte[] raw, int offset) {
+        this(toLong(raw, offset), toLong(raw, offset + 8), toInt(raw, offset + 16));
+    }
+
+    private ObjectId(final long h1, final long h2, final int h3) {
+        this.h1 = h1;
+        this.h2 = h2;
+        this.h3 = h3;
+    }
+
+    private static byte[] checkRaw(byte[] raw) {
         Preconditions.checkNotNull(raw);
         Preconditions.checkArgument(raw.length == NUM_BYTES, "expected a byte[%s], got byte[%s]",
                 NUM_BYTES, raw.length);
-        this.hashCode = cloneArg ? raw.clone() : raw;
+        return raw;
     }
 
+    /**
+     * Creates an object id out of the given raw bytes. Kept for backwards compatibility, as object
+     * ids no longer hold on to a byte array this is equivalent to {@link #ObjectId(byte[])}.
+     */
     public static ObjectId createNoClone(byte[] rawHash) {
-        return new ObjectId(rawHash, false);
+        return new ObjectId(rawHash);
+    }
+
+    /**
+     * Creates an object id out of the {@link #NUM_BYTES} bytes found at {@code offset} in the
+     * given buffer.
+     */
+    public static ObjectId create(byte[] buff, int offset) {
+        Preconditions.checkNotNull(buff);
+        Preconditions.checkElementIndex(offset + NUM_BYTES - 1, buff.length);
+        return new ObjectId(buff, offset);
+    }
+
+    /**
+     * Creates an object id out of its primitive representation.
+     *
+     * @see #h1()
+     * @see #h2()
+     * @see #h3()
+     */
+    public static ObjectId create(final long h1, final long h2, final int h3) {
+        return new ObjectId(h1, h2, h3);
+    }
+
+    /**
+     * Reads an object id from the next {@link #NUM_BYTES} bytes of the given input.
+     */
+    public static ObjectId readFrom(DataInput in) throws IOException {
+        final long h1 = in.readLong();
+        final long h2 = in.readLong();
+        final int h3 = in.readInt();
+        return new ObjectId(h1, h2, h3);
+    }
+
+    /**
+     * Reads an object id from the next {@link #NUM_BYTES} bytes of the given buffer, advancing its
+     * position.
+     */
+    public static ObjectId readFrom(ByteBuffer buff) {
+        final long h1 = buff.getLong();
+        final long h2 = buff.getLong();
+        final int h3 = buff.getInt();
+        return new ObjectId(h1, h2, h3);
+    }
+
+    /**
+     * Writes the {@link #NUM_BYTES} bytes of this object id to the given output, without creating
+     * an intermediate byte array.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(h1);
+        out.writeLong(h2);
+        out.writeInt(h3);
+    }
+
+    /**
+     * Writes the {@link #NUM_BYTES} bytes of this object id to the given buffer, advancing its
+     * position.
+     */
+    public void writeTo(ByteBuffer buff) {
+        buff.putLong(h1);
+        buff.putLong(h2);
+        buff.putInt(h3);
+    }
+
+    /**
+     * @return the first eight bytes of this object id as a big endian {@code long}
+     */
+    public long h1() {
+        return h1;
+    }
+
+    /**
+     * @return bytes 8 to 15 of this object id as a big endian {@code long}
+     */
+    public long h2() {
+        return h2;
+    }
+
+    /**
+     * @return the last four bytes of this object id as a big endian {@code int}
+     */
+    public int h3() {
+        return h3;
     }
 
     /**
      * @return whether or not this object id represents the {@link #NULL} object id
      */
     public boolean isNull() {
-        return NULL.equals(this);
+        return h1 == 0L && h2 == 0L && h3 == 0;
     }
 
     /**
      * Determines if this object id is the same as the given object id.
-     * 
+     *
      * @param o the object id to compare against
      */
     @Override
@@ -96,18 +216,25 @@ public final class ObjectId implements Comparable<ObjectId> {
         if (!(o instanceof ObjectId)) {
             return false;
         }
-        return Arrays.equals(hashCode, ((ObjectId) o).hashCode);
+        ObjectId other = (ObjectId) o;
+        return h1 == other.h1 && h2 == other.h2 && h3 == other.h3;
     }
 
     /**
-     * @return a hash code based on the contents of the byte array.
+     * @return a hash code based on the first four bytes of the hash, with the same value the
+     *         {@code byte[]} based implementation used to compute
      */
     @Override
     public int hashCode() {
-        return (hashCode[0] & 0xFF)//
-                | ((hashCode[1] & 0xFF) << 8)//
-                | ((hashCode[2] & 0xFF) << 16)//
-                | ((hashCode[3] & 0xFF) << 24);
+        return hashCode(h1);
+    }
+
+    /**
+     * Computes the {@link #hashCode() hash code} of an object id given its {@link #h1()}, so that
+     * primitive collections can hash ids without instantiating them.
+     */
+    public static int hashCode(final long h1) {
+        return Integer.reverseBytes((int) (h1 >>> 32));
     }
 
     private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
@@ -118,18 +245,26 @@ public final class ObjectId implements Comparable<ObjectId> {
      */
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder(2 * NUM_BYTES);
-        byte b;
-        for (int i = 0; i < NUM_BYTES; i++) {
-            b = hashCode[i];
-            sb.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+        char[] chars = new char[NUM_CHARS];
+        toHex(h1, 8, chars, 0);
+        toHex(h2, 8, chars, 16);
+        toHex(h3, 4, chars, 32);
+        return new String(chars);
+    }
+
+    private static void toHex(final long value, final int numBytes, final char[] target,
+            final int offset) {
+        int b;
+        for (int i = 0; i < numBytes; i++) {
+            b = (int) (value >>> (8 * (numBytes - 1 - i)));
+            target[offset + 2 * i] = HEX_DIGITS[(b >> 4) & 0xf];
+            target[offset + 2 * i + 1] = HEX_DIGITS[b & 0xf];
         }
-        return sb.toString();
     }
 
     /**
      * Converts a {@code String} representation of a hash code into an {@code ObjectId}.
-     * 
+     *
      * @param hash the string to convert
      * @return the object id represented by its string form, this method is the inverse of
      *         {@link #toString()}
@@ -139,19 +274,28 @@ public final class ObjectId implements Comparable<ObjectId> {
         Preconditions.checkArgument(hash.length() == NUM_CHARS, hash,
                 String.format("ObjectId.valueOf: Invalid hash string %s", hash));
 
-        // this is perhaps the worse way of doing this...
+        final long h1 = parseHex(hash, 0, 8);
+        final long h2 = parseHex(hash, 16, 8);
+        final int h3 = (int) parseHex(hash, 32, 4);
+        return new ObjectId(h1, h2, h3);
+    }
 
-        final byte[] raw = new byte[NUM_BYTES];
-        final int radix = 16;
-        for (int i = 0; i < NUM_BYTES; i++) {
-            raw[i] = (byte) Integer.parseInt(hash.substring(2 * i, 2 * i + 2), radix);
+    private static long parseHex(final String hash, final int offset, final int numBytes) {
+        long value = 0L;
+        for (int i = offset; i < offset + 2 * numBytes; i++) {
+            int digit = Character.digit(hash.charAt(i), 16);
+            if (-1 == digit) {
+                throw new IllegalArgumentException("At index " + i
+                        + ": not a valid hash string '" + hash + "'");
+            }
+            value = (value << 4) | digit;
         }
-        return new ObjectId(raw, false);
+        return value;
     }
 
     /**
      * Converts a {@code String} representation of a byte code into a byte array.
-     * 
+     *
      * @param hash the string to convert
      * @return the byte array represented by its string form
      */
@@ -166,9 +310,9 @@ public final class ObjectId implements Comparable<ObjectId> {
         }
 
         final byte[] raw = new byte[hash.length() / 2];
-        final int radix = 16;
         for (int i = 0; i < raw.length; i++) {
-            raw[i] = (byte) Integer.parseInt(hash.substring(2 * i, 2 * i + 2), radix);
+            raw[i] = (byte) ((Character.digit(hash.charAt(2 * i), 16) << 4) | Character.digit(
+                    hash.charAt(2 * i + 1), 16));
         }
         return raw;
     }
@@ -176,13 +320,27 @@ public final class ObjectId implements Comparable<ObjectId> {
     /**
      * Implementation of {@link Comparable#compareTo(Object)} that compares the hash code bytes
      * treating them as unsigned bytes.
-     * 
+     *
      * @see java.lang.Comparable#compareTo(java.lang.Object)
      */
     public int compareTo(final ObjectId o) {
-        byte[] left = this.hashCode;
-        byte[] right = o.hashCode;
-        return compare(left, right);
+        return compare(h1, h2, h3, o.h1, o.h2, o.h3);
+    }
+
+    /**
+     * Compares two object ids given their primitive representations, with the same semantics as
+     * {@link #compareTo(ObjectId)}
+     */
+    public static int compare(final long leftH1, final long leftH2, final int leftH3,
+            final long rightH1, final long rightH2, final int rightH3) {
+        int c = UnsignedLongs.compare(leftH1, rightH1);
+        if (c == 0) {
+            c = UnsignedLongs.compare(leftH2, rightH2);
+            if (c == 0) {
+                c = UnsignedInts.compare(leftH3, rightH3);
+            }
+        }
+        return c;
     }
 
     public static int compare(byte[] left, byte[] right) {
@@ -194,11 +352,23 @@ public final class ObjectId implements Comparable<ObjectId> {
      *         do not affect this object.
      */
     public byte[] getRawValue() {
-        return hashCode.clone();
+        byte[] raw = new byte[NUM_BYTES];
+        getRawValue(raw, 0);
+        return raw;
     }
 
     public void getRawValue(byte[] target) {
-        System.arraycopy(hashCode, 0, target, 0, NUM_BYTES);
+        getRawValue(target, 0);
+    }
+
+    /**
+     * Copies the {@link #NUM_BYTES} bytes of this object id into {@code target}, starting at
+     * {@code offset}
+     */
+    public void getRawValue(byte[] target, int offset) {
+        putLong(h1, target, offset);
+        putLong(h2, target, offset + 8);
+        putInt(h3, target, offset + 16);
     }
 
     /**
@@ -207,25 +377,59 @@ public final class ObjectId implements Comparable<ObjectId> {
      * Note this method is to hash a string, not to convert the string representation of an
      * ObjectId. Use {@link #valueOf(String)} for that purpose.
      * </p>
-     * 
+     *
      * @param strToHash
      * @return the {@code ObjectId} generated from the string
      */
     public static ObjectId forString(final String strToHash) {
         Preconditions.checkNotNull(strToHash);
         HashCode hashCode = HASH_FUNCTION.hashString(strToHash, Charset.forName("UTF-8"));
-        return new ObjectId(hashCode.asBytes(), false);
+        return new ObjectId(hashCode.asBytes(), 0);
     }
 
     /**
      * Returns the value of this ObjectId's internal hash at the given index without having to go
      * through {@link #getRawValue()} and hence create excessive defensive copies of the byte array.
-     * 
+     *
      * @param index the index of the byte inside this objectid's internal hash to return
      * @return the byte at the given index as an integer
      */
     public int byteN(int index) {
-        int b = this.hashCode[index] & 0xFF;
-        return b;
+        Preconditions.checkElementIndex(index, NUM_BYTES);
+        final int b;
+        if (index < 8) {
+            b = (int) (h1 >>> (8 * (7 - index)));
+        } else if (index < 16) {
+            b = (int) (h2 >>> (8 * (15 - index)));
+        } else {
+            b = h3 >>> (8 * (19 - index));
+        }
+        return b & 0xFF;
+    }
+
+    private static long toLong(byte[] b, int offset) {
+        return ((b[offset] & 0xFFL) << 56) | ((b[offset + 1] & 0xFFL) << 48)
+                | ((b[offset + 2] & 0xFFL) << 40) | ((b[offset + 3] & 0xFFL) << 32)
+                | ((b[offset + 4] & 0xFFL) << 24) | ((b[offset + 5] & 0xFFL) << 16)
+                | ((b[offset + 6] & 0xFFL) << 8) | (b[offset + 7] & 0xFFL);
+    }
+
+    private static int toInt(byte[] b, int offset) {
+        return ((b[offset] & 0xFF) << 24) | ((b[offset + 1] & 0xFF) << 16)
+                | ((b[offset + 2] & 0xFF) << 8) | (b[offset + 3] & 0xFF);
+    }
+
+    private static void putLong(long value, byte[] target, int offset) {
+        for (int i = 7; i >= 0; i--) {
+            target[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static void putInt(int value, byte[] target, int offset) {
+        for (int i = 3; i >= 0; i--) {
+            target[offset + i] = (byte) value;
+            value >>>= 8;
+        }
     }
 }
@@ -0,0 +1,305 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.api;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.geogit.api.RevObject.TYPE;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * A compact, immutable representation of the list of {@link Node}s held by a leaf
+ * {@link RevTree}.
+ * <p>
+ * Instead of keeping one {@code Node} object per entry (each with its own name {@code String}, one
+ * or two {@link ObjectId}s and a {@code float[]} for its bounds), all the entries are packed into a
+ * handful of primitive arrays:
+ * <ul>
+ * <li>names are concatenated into a single {@code char[]}, indexed by an {@code int[]} of offsets;
+ * <li>object ids are stored in their primitive form in two {@code long[]} and an {@code int[]};
+ * <li>metadata ids, which are mostly the same for all the nodes in a tree, are kept in a small
+ * lookup table and referenced by a {@code short} index per node;
+ * <li>bounds are stored as four floats per node in a single {@code float[]}, only if at least one
+ * node has bounds.
+ * </ul>
+ * {@link Node} instances are handed out on demand as lightweight views over these arrays, so the
+ * number of objects a cached tree holds is constant regardless of its size.
+ */
+final class PackedNodeList {
+
+    private static final byte TYPE_TREE = 0x01;
+
+    private static final byte HAS_BOUNDS = 0x02;
+
+    private static final short NO_METADATA = -1;
+
+    private static final ObjectId[] NO_METADATA_IDS = new ObjectId[0];
+
+    private final int size;
+
+    private final char[] names;
+
+    /**
+     * Offsets of each node's name in {@link #names}, {@code size + 1} long so that the end of the
+     * name at index {@code i} is {@code nameOffsets[i + 1]}
+     */
+    private final int[] nameOffsets;
+
+    /**
+     * Object ids, as given by {@link ObjectId#h1()}, {@link ObjectId#h2()} and
+     * {@link ObjectId#h3()}
+     */
+    private final long[] idsH1;
+
+    private final long[] idsH2;
+
+    private final int[] idsH3;
+
+    private final ObjectId[] metadataIds;
+
+    private final short[] metadataIndexes;
+
+    /**
+     * {@code minx, miny, maxx, maxy} per node, or {@code null} if no node has bounds
+     */
+    private final float[] bounds;
+
+    /**
+     * Per node bit flags for node type and bounds presence
+     */
+    private final byte[] flags;
+
+    private PackedNodeList(int size, char[] names, int[] nameOffsets, long[] idsH1, long[] idsH2,
+            int[] idsH3, ObjectId[] metadataIds, short[] metadataIndexes, float[] bounds,
+            byte[] flags) {
+        this.size = size;
+        this.names = names;
+        this.nameOffsets = nameOffsets;
+        this.idsH1 = idsH1;
+        this.idsH2 = idsH2;
+        this.idsH3 = idsH3;
+        this.metadataIds = metadataIds;
+        this.metadataIndexes = metadataIndexes;
+        this.bounds = bounds;
+        this.flags = flags;
+    }
+
+    /**
+     * Packs the given nodes, preserving their order.
+     */
+    public static PackedNodeList pack(List<Node> nodes) {
+        final int size = nodes.size();
+
+        int namesLength = 0;
+        for (int i = 0; i < size; i++) {
+            namesLength += nodes.get(i).getName().length();
+        }
+
+        char[] names = new char[namesLength];
+        int[] nameOffsets = new int[size + 1];
+        long[] idsH1 = new long[size];
+        long[] idsH2 = new long[size];
+        int[] idsH3 = new int[size];
+        short[] metadataIndexes = new short[size];
+        byte[] flags = new byte[size];
+        ObjectId[] metadataIds = NO_METADATA_IDS;
+        float[] bounds = null;
+
+        Envelope env = new Envelope();
+        int nameOffset = 0;
+        for (int i = 0; i < size; i++) {
+            final Node node = nodes.get(i);
+
+            final String name = node.getName();
+            name.getChars(0, name.length(), names, nameOffset);
+            nameOffsets[i] = nameOffset;
+            nameOffset += name.length();
+
+            final ObjectId objectId = node.getObjectId();
+            idsH1[i] = objectId.h1();
+            idsH2[i] = objectId.h2();
+            idsH3[i] = objectId.h3();
+
+            Optional<ObjectId> metadataId = node.getMetadataId();
+            if (metadataId.isPresent()) {
+                int mdIndex = indexOf(metadataIds, metadataId.get());
+                if (mdIndex == -1) {
+                    mdIndex = metadataIds.length;
+                    metadataIds = Arrays.copyOf(metadataIds, mdIndex + 1);
+                    metadataIds[mdIndex] = metadataId.get();
+                }
+                metadataIndexes[i] = (short) mdIndex;
+            } else {
+                metadataIndexes[i] = NO_METADATA;
+            }
+
+            byte flag = TYPE.TREE.equals(node.getType()) ? TYPE_TREE : 0;
+            env.setToNull();
+            node.expand(env);
+            if (!env.isNull()) {
+                if (bounds == null) {
+                    bounds = new float[4 * size];
+                }
+                final int boundsIndex = 4 * i;
+                bounds[boundsIndex] = (float) env.getMinX();
+                bounds[boundsIndex + 1] = (float) env.getMinY();
+                bounds[boundsIndex + 2] = (float) env.getMaxX();
+                bounds[boundsIndex + 3] = (float) env.getMaxY();
+                flag |= HAS_BOUNDS;
+            }
+            flags[i] = flag;
+        }
+        nameOffsets[size] = nameOffset;
+
+        return new PackedNodeList(size, names, nameOffsets, idsH1, idsH2, idsH3, metadataIds,
+                metadataIndexes, bounds, flags);
+    }
+
+    private static int indexOf(ObjectId[] metadataIds, ObjectId id) {
+        for (int i = 0; i < metadataIds.length; i++) {
+            if (metadataIds[i].equals(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return a lightweight view of the node at the given index
+     */
+    public Node get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+        return new NodeView(this, index);
+    }
+
+    /**
+     * @return an immutable list of lightweight views over the packed nodes, in the original order
+     */
+    public ImmutableList<Node> asList() {
+        Node[] views = new Node[size];
+        for (int i = 0; i < size; i++) {
+            views[i] = new NodeView(this, i);
+        }
+        return ImmutableList.copyOf(views);
+    }
+
+    String name(int index) {
+        int start = nameOffsets[index];
+        return new String(names, start, nameOffsets[index + 1] - start);
+    }
+
+    ObjectId objectId(int index) {
+        return ObjectId.create(idsH1[index], idsH2[index], idsH3[index]);
+    }
+
+    Optional<ObjectId> metadataId(int index) {
+        short mdIndex = metadataIndexes[index];
+        if (mdIndex == NO_METADATA) {
+            return Optional.absent();
+        }
+        return Optional.of(metadataIds[mdIndex]);
+    }
+
+    TYPE type(int index) {
+        return (flags[index] & TYPE_TREE) == 0 ? TYPE.FEATURE : TYPE.TREE;
+    }
+
+    boolean intersects(int index, Envelope env) {
+        if (env.isNull() || (flags[index] & HAS_BOUNDS) == 0) {
+            return false;
+        }
+        final int boundsIndex = 4 * index;
+        return !(env.getMinX() > bounds[boundsIndex + 2] || env.getMaxX() < bounds[boundsIndex]
+                || env.getMinY() > bounds[boundsIndex + 3] || env.getMaxY() < bounds[boundsIndex + 1]);
+    }
+
+    void expand(int index, Envelope env) {
+        if ((flags[index] & HAS_BOUNDS) == 0) {
+            return;
+        }
+        final int boundsIndex = 4 * index;
+        env.expandToInclude(bounds[boundsIndex], bounds[boundsIndex + 1]);
+        env.expandToInclude(bounds[boundsIndex + 2], bounds[boundsIndex + 3]);
+    }
+
+    /**
+     * A {@link Node} backed by an entry of a {@link PackedNodeList}. The name is materialized
+     * lazily and kept for the lifetime of the view, as it's the most frequently accessed property
+     * during tree traversals and diffs.
+     */
+    private static final class NodeView extends Node {
+
+        private final PackedNodeList nodes;
+
+        private final int index;
+
+        private String name;
+
+        NodeView(PackedNodeList nodes, int index) {
+            this.nodes = nodes;
+            this.index = index;
+        }
+
+        @Override
+        public String getName() {
+            if (name == null) {
+                name = nodes.name(index);
+            }
+            return name;
+        }
+
+        @Override
+        public ObjectId getObjectId() {
+            return nodes.objectId(index);
+        }
+
+        @Override
+        public Optional<ObjectId> getMetadataId() {
+            return nodes.metadataId(index);
+        }
+
+        @Override
+        public TYPE getType() {
+            return nodes.type(index);
+        }
+
+        @Override
+        public boolean intersects(Envelope env) {
+            return nodes.intersects(index, env);
+        }
+
+        @Override
+        public void expand(Envelope env) {
+            nodes.expand(index, env);
+        }
+
+        /**
+         * Mimics the output of the value nodes created through {@link Node#create}
+         */
+        @Override
+        public String toString() {
+            String type = TYPE.TREE.equals(getType()) ? "TreeNode" : "FeatureNode";
+            if ((nodes.flags[index] & HAS_BOUNDS) != 0) {
+                type = "Bounded" + type;
+            }
+            return new StringBuilder(type).append('[').append(getName()).append(" -> ")
+                    .append(getObjectId()).append(']').toString();
+        }
+    }
+}
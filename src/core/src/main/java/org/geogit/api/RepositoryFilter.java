@@ -122,7 +122,7 @@ public class RepositoryFilter {
     public boolean filterObject(RevFeatureType type, String featurePath, RevObject object) {
         if (object.getType() == TYPE.FEATURE) {
             RevFeature revFeature = (RevFeature) object;
-            FeatureBuilder builder = new FeatureBuilder(type);
+            FeatureBuilder builder = FeatureBuilder.forType(type);
             Feature feature = builder.build("TEMP_ID", revFeature);
 
             Filter typeFilter = repositoryFilters.get(featurePath);
@@ -88,9 +88,14 @@ public class RevTreeBuilder {
     }
 
     /**
-     * Copy constructor
+     * Copy constructor for the bucket tree at the given {@code depth} of a larger tree, allowing
+     * the buckets of a tree to be built independently of each other.
+     * <p>
+     * Unlike top level trees, bucket trees at depth greater than zero may not save the bucket trees
+     * they create on {@link #build()} but add them to {@code pendingWritesCache}, so it's up to
+     * the caller to save its contents, as well as the built tree itself.
      */
-    private RevTreeBuilder(final ObjectDatabase db, @Nullable final RevTree copy, final int depth,
+    public RevTreeBuilder(final ObjectDatabase db, @Nullable final RevTree copy, final int depth,
             final Map<ObjectId, RevTree> pendingWritesCache) {
 
         checkNotNull(db);
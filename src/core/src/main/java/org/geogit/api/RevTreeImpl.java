@@ -9,6 +9,8 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 
+import javax.annotation.Nullable;
+
 import org.geogit.storage.NodeStorageOrder;
 import org.geogit.storage.ObjectDatabase;
 
@@ -23,38 +25,43 @@ import com.google.common.collect.Iterators;
  */
 public abstract class RevTreeImpl extends AbstractRevObject implements RevTree {
 
+    /**
+     * A leaf tree whose feature and tree nodes are kept in {@link PackedNodeList packed} form,
+     * handing out lightweight {@link Node} views on demand.
+     */
     private static final class LeafTree extends RevTreeImpl {
 
-        private final Optional<ImmutableList<Node>> features;
+        @Nullable
+        private final PackedNodeList features;
 
-        private final Optional<ImmutableList<Node>> trees;
+        @Nullable
+        private final PackedNodeList trees;
 
         public LeafTree(final ObjectId id, final long size,
                 final Optional<ImmutableList<Node>> features, Optional<ImmutableList<Node>> trees) {
             super(id, size);
-            this.features = features;
-            this.trees = trees;
+            this.features = features.isPresent() ? PackedNodeList.pack(features.get()) : null;
+            this.trees = trees.isPresent() ? PackedNodeList.pack(trees.get()) : null;
         }
 
         @Override
         public Optional<ImmutableList<Node>> features() {
-            return features;
+            return features == null ? NO_NODES : Optional.of(features.asList());
         }
 
         @Override
         public Optional<ImmutableList<Node>> trees() {
-            return trees;
+            return trees == null ? NO_NODES : Optional.of(trees.asList());
         }
 
         @Override
         public int numTrees() {
-            return trees.isPresent() ? trees.get().size() : 0;
+            return trees == null ? 0 : trees.size();
         }
 
         @Override
         public final boolean isEmpty() {
-            return features.isPresent() ? features.get().isEmpty() : (trees.isPresent() ? trees
-                    .get().isEmpty() : true);
+            return features != null ? features.isEmpty() : (trees != null ? trees.isEmpty() : true);
         }
     }
 
@@ -91,6 +98,8 @@ public abstract class RevTreeImpl extends AbstractRevObject implements RevTree {
         }
     }
 
+    private static final Optional<ImmutableList<Node>> NO_NODES = Optional.absent();
+
     private final long size;
 
     private RevTreeImpl(ObjectId id, long size) {
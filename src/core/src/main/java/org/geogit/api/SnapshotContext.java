@@ -0,0 +1,130 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.api;
+
+import org.geogit.di.PluginDefaults;
+import org.geogit.repository.Index;
+import org.geogit.repository.Repository;
+import org.geogit.repository.StagingArea;
+import org.geogit.repository.WorkingTree;
+import org.geogit.storage.ConfigDatabase;
+import org.geogit.storage.DeduplicationService;
+import org.geogit.storage.GraphDatabase;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.RefDatabase;
+import org.geogit.storage.SnapshotRefDatabase;
+import org.geogit.storage.StagingDatabase;
+
+/**
+ * A {@link Context} for running read only commands against a repository that might be being
+ * written to at the same time, like the log, diff or ls-tree of a repository served over HTTP.
+ * <p>
+ * Commands created through it, as well as its {@link Index} and {@link WorkingTree}, are given a
+ * {@link SnapshotRefDatabase}, so they see every ref as it was when they first looked it up and
+ * can't update or lock the refs. The rest of the repository components are shared with the
+ * decorated context. A snapshot is meant to be short lived, e.g. one per request, so that it
+ * doesn't get too far behind the repository.
+ */
+public class SnapshotContext implements Context {
+
+    private final Context injector;
+
+    private final SnapshotRefDatabase refDatabase;
+
+    private final StagingArea index;
+
+    private final WorkingTree workingTree;
+
+    /**
+     * @param injector the context of the repository to take the snapshot of
+     */
+    public SnapshotContext(Context injector) {
+        this.injector = injector;
+        this.refDatabase = new SnapshotRefDatabase(injector.refDatabase());
+        this.index = new Index(this);
+        this.workingTree = new WorkingTree(this);
+    }
+
+    /**
+     * @return the context this is a snapshot of
+     */
+    public Context getRepositoryContext() {
+        return injector;
+    }
+
+    /**
+     * Finds and returns an instance of a command of the specified class.
+     *
+     * @param commandClass the kind of command to locate and instantiate
+     * @return a new instance of the requested command class, with its dependencies resolved
+     */
+    @Override
+    public <T extends AbstractGeoGitOp<?>> T command(Class<T> commandClass) {
+        T instance = injector.command(commandClass);
+        instance.setContext(this);
+        return instance;
+    }
+
+    @Override
+    public WorkingTree workingTree() {
+        return workingTree;
+    }
+
+    @Override
+    public StagingArea index() {
+        return index;
+    }
+
+    @Override
+    public RefDatabase refDatabase() {
+        return refDatabase;
+    }
+
+    @Override
+    public Platform platform() {
+        return injector.platform();
+    }
+
+    @Override
+    public ObjectDatabase objectDatabase() {
+        return injector.objectDatabase();
+    }
+
+    @Override
+    public StagingDatabase stagingDatabase() {
+        return injector.stagingDatabase();
+    }
+
+    @Override
+    public ConfigDatabase configDatabase() {
+        return injector.configDatabase();
+    }
+
+    @Override
+    public GraphDatabase graphDatabase() {
+        return injector.graphDatabase();
+    }
+
+    @Deprecated
+    @Override
+    public Repository repository() {
+        return injector.repository();
+    }
+
+    @Override
+    public DeduplicationService deduplicationService() {
+        return injector.deduplicationService();
+    }
+
+    @Override
+    public PluginDefaults pluginDefaults() {
+        return injector.pluginDefaults();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + injector + "]";
+    }
+}
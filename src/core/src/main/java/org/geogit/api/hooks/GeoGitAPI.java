@@ -73,7 +73,7 @@ public class GeoGitAPI {
                 RevFeatureType revFeatureType = repository.command(RevObjectParse.class)
                         .setObjectId(diff.getNewObject().getMetadataId())
                         .call(RevFeatureType.class).get();
-                FeatureBuilder builder = new FeatureBuilder(revFeatureType);
+                FeatureBuilder builder = FeatureBuilder.forType(revFeatureType);
                 list.add(builder.build(diff.getNewObject().name(), revFeature));
             }
         }
@@ -91,7 +91,7 @@ public class GeoGitAPI {
                 RevFeatureType revFeatureType = repository.command(RevObjectParse.class)
                         .setObjectId(diff.getNewObject().getMetadataId())
                         .call(RevFeatureType.class).get();
-                FeatureBuilder builder = new FeatureBuilder(revFeatureType);
+                FeatureBuilder builder = FeatureBuilder.forType(revFeatureType);
                 list.add(builder.build(diff.getNewObject().name(), revFeature));
             }
         }
@@ -113,7 +113,7 @@ public class GeoGitAPI {
         if (revFeature.isPresent()) {
             RevFeatureType revFeatureType = repository.command(ResolveFeatureType.class)
                     .setRefSpec(refSpec).call().get();
-            FeatureBuilder builder = new FeatureBuilder(revFeatureType);
+            FeatureBuilder builder = FeatureBuilder.forType(revFeatureType);
             return builder.build(name, revFeature.get());
         } else {
             return null;
@@ -135,7 +135,7 @@ public class GeoGitAPI {
         if (revFeature.isPresent()) {
             RevFeatureType revFeatureType = repository.command(ResolveFeatureType.class)
                     .setRefSpec(refSpec).call().get();
-            FeatureBuilder builder = new FeatureBuilder(revFeatureType);
+            FeatureBuilder builder = FeatureBuilder.forType(revFeatureType);
             return builder.build(name, revFeature.get());
         } else {
             return null;
@@ -42,6 +42,8 @@ public class DiffTree extends AbstractGeoGitOp<Iterator<DiffEntry>> implements
 
     private boolean recursive;
 
+    private String resumeAfter;
+
     /**
      * Constructs a new instance of the {@code DiffTree} operation with the given parameters.
      */
@@ -107,6 +109,18 @@ public class DiffTree extends AbstractGeoGitOp<Iterator<DiffEntry>> implements
         return this;
     }
 
+    /**
+     * @param path the path of the last entry returned by a previous call with the same arguments,
+     *        to return only the differences that come after it, or {@code null} to return all of
+     *        them
+     * @return {@code this}
+     * @see DiffTreeWalk#setResumeAfter(String)
+     */
+    public DiffTree setResumeAfter(@Nullable String path) {
+        this.resumeAfter = path;
+        return this;
+    }
+
     /**
      * Implements {@link Supplier#get()} by delegating to {@link #call()}.
      */
@@ -153,6 +167,7 @@ public class DiffTree extends AbstractGeoGitOp<Iterator<DiffEntry>> implements
         treeWalk.setFilter(pathFilters);
         treeWalk.setReportTrees(reportTrees);
         treeWalk.setRecursive(recursive);
+        treeWalk.setResumeAfter(resumeAfter);
         return treeWalk.get();
     }
 
@@ -9,6 +9,8 @@ import static com.google.common.base.Preconditions.checkArgument;
 import java.util.Iterator;
 import java.util.List;
 
+import javax.annotation.Nullable;
+
 import org.geogit.api.AbstractGeoGitOp;
 import org.geogit.api.Bounded;
 import org.geogit.api.NodeRef;
@@ -82,6 +84,8 @@ public class LsTreeOp extends AbstractGeoGitOp<Iterator<NodeRef>> implements
 
     private Predicate<Bounded> refBoundsFilter;
 
+    private String resumeAfter;
+
     public LsTreeOp() {
         this.strategy = Strategy.CHILDREN;
     }
@@ -110,6 +114,17 @@ public class LsTreeOp extends AbstractGeoGitOp<Iterator<NodeRef>> implements
         return this;
     }
 
+    /**
+     * @param path the path of the last node returned by a previous call with the same arguments,
+     *        to list only the nodes that come after it, or {@code null} to list them all
+     * @return {@code this}
+     * @see DepthTreeIterator#setResumeAfter(String)
+     */
+    public LsTreeOp setResumeAfter(@Nullable String path) {
+        this.resumeAfter = path;
+        return this;
+    }
+
     /**
      * @see java.util.concurrent.Callable#call()
      */
@@ -226,6 +241,7 @@ public class LsTreeOp extends AbstractGeoGitOp<Iterator<NodeRef>> implements
             DepthTreeIterator iter = new DepthTreeIterator(path, metadataId, tree, database,
                     iterStrategy);
             iter.setBoundsFilter(refBoundsFilter);
+            iter.setResumeAfter(resumeAfter);
             return iter;
         default:
             throw new IllegalArgumentException(String.format("Invalid reference: %s", ref));
@@ -0,0 +1,158 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.api.plumbing;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.geogit.api.AbstractGeoGitOp;
+import org.geogit.api.ObjectId;
+import org.geogit.api.Ref;
+import org.geogit.api.RevCommit;
+import org.geogit.api.plumbing.diff.DiffEntry;
+import org.geogit.repository.Repository;
+import org.geogit.storage.ObjectIdSet;
+import org.geogit.storage.fs.FileHistoryIndex;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Brings the {@link FileHistoryIndex history index} up to date with the commits reachable from the
+ * given tips, or from all the refs if no tip is given, and returns the number of commits that were
+ * indexed.
+ * <p>
+ * The history index is optional, so unless {@link #setRebuild(boolean) rebuild} is set this
+ * operation does nothing if the repository has not been indexed yet. When rebuilding, any existing
+ * index is discarded and the whole history is indexed again.
+ *
+ * @see FileHistoryIndex
+ */
+public class UpdateHistoryIndex extends AbstractGeoGitOp<Integer> {
+
+    private boolean rebuild;
+
+    private List<ObjectId> tips = Lists.newArrayList();
+
+    /**
+     * @param rebuild whether to create the index from scratch, discarding the existing one if any
+     * @return {@code this}
+     */
+    public UpdateHistoryIndex setRebuild(boolean rebuild) {
+        this.rebuild = rebuild;
+        return this;
+    }
+
+    /**
+     * Adds a commit whose history shall be indexed. If no tip is given, the history of all the
+     * refs is indexed.
+     *
+     * @param commitId the commit to start indexing history from
+     * @return {@code this}
+     */
+    public UpdateHistoryIndex addTip(ObjectId commitId) {
+        this.tips.add(commitId);
+        return this;
+    }
+
+    /**
+     * @return the number of newly indexed commits
+     */
+    @Override
+    protected Integer _call() {
+        final FileHistoryIndex index;
+        if (rebuild) {
+            index = FileHistoryIndex.create(platform());
+        } else {
+            Optional<FileHistoryIndex> existing = FileHistoryIndex.open(platform());
+            if (!existing.isPresent()) {
+                return Integer.valueOf(0);
+            }
+            index = existing.get();
+        }
+
+        final Repository repository = repository();
+        final List<RevCommit> commits = unindexedCommits(index, repository);
+
+        getProgressListener().started();
+        int count = 0;
+        for (RevCommit commit : commits) {
+            if (getProgressListener().isCanceled()) {
+                break;
+            }
+            ObjectId parentTree = ObjectId.NULL;
+            Optional<ObjectId> parentId = commit.parentN(0);
+            if (parentId.isPresent() && repository.commitExists(parentId.get())) {
+                parentTree = repository.getCommit(parentId.get()).getTreeId();
+            }
+            Iterator<DiffEntry> diffs = command(DiffTree.class).setOldTree(parentTree)
+                    .setNewTree(commit.getTreeId()).setReportTrees(true).call();
+            Set<String> changedPaths = Sets.newHashSet();
+            while (diffs.hasNext()) {
+                DiffEntry diff = diffs.next();
+                if (diff.oldPath() != null) {
+                    changedPaths.add(diff.oldPath());
+                }
+                if (diff.newPath() != null) {
+                    changedPaths.add(diff.newPath());
+                }
+            }
+            index.put(commit.getId(), changedPaths);
+            count++;
+            getProgressListener().setProgress((count * 100f) / commits.size());
+        }
+        index.flush();
+        getProgressListener().complete();
+        return Integer.valueOf(count);
+    }
+
+    /**
+     * @return the commits reachable from the tips that are not indexed yet, parents before
+     *         children
+     */
+    private List<RevCommit> unindexedCommits(FileHistoryIndex index, Repository repository) {
+        Deque<ObjectId> pending = new ArrayDeque<ObjectId>();
+        if (tips.isEmpty()) {
+            for (Ref ref : command(ForEachRef.class).call()) {
+                pending.push(ref.getObjectId());
+            }
+        } else {
+            for (ObjectId tip : tips) {
+                pending.push(tip);
+            }
+        }
+
+        List<RevCommit> commits = Lists.newArrayList();
+        ObjectIdSet visited = new ObjectIdSet();
+        ObjectIdSet expanded = new ObjectIdSet();
+        // iterative post order traversal, so that parents are indexed before their children
+        while (!pending.isEmpty()) {
+            ObjectId id = pending.peek();
+            if (expanded.contains(id)) {
+                pending.pop();
+                if (visited.add(id)) {
+                    commits.add(repository.getCommit(id));
+                }
+                continue;
+            }
+            if (id.isNull() || visited.contains(id) || index.isIndexed(id)
+                    || !repository.commitExists(id)) {
+                pending.pop();
+                continue;
+            }
+            expanded.add(id);
+            for (ObjectId parentId : repository.getCommit(id).getParentIds()) {
+                if (!visited.contains(parentId) && !expanded.contains(parentId)) {
+                    pending.push(parentId);
+                }
+            }
+        }
+        return commits;
+    }
+}
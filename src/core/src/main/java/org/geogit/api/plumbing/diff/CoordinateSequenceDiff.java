@@ -0,0 +1,389 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.api.plumbing.diff;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Lists;
+
+/**
+ * The difference between two coordinate sequences, computed with a Longest-Common-Subsequence
+ * algorithm working directly on the sequences' packed {@code x,y} ordinate arrays.
+ * <p>
+ * The difference is stored as the list of {@link Edit edits} turning the old sequence into the new
+ * one. Each edit keeps the coordinates it removes, so the difference can be reversed and checked
+ * against the sequence it is applied to.
+ */
+final class CoordinateSequenceDiff {
+
+    /**
+     * The number of edits beyond which the search for the shortest edit script is abandoned and the
+     * differing middle of the sequences is replaced as a whole. Keeps the memory needed to trace
+     * back the edit script bounded for sequences that share little or nothing.
+     */
+    static final int MAX_EDIT_DISTANCE = 1000;
+
+    static final CoordinateSequenceDiff NO_CHANGE = new CoordinateSequenceDiff(new Edit[0]);
+
+    private static final double[] NO_COORDS = new double[0];
+
+    /**
+     * A contiguous replacement of coordinates
+     */
+    static final class Edit {
+
+        /**
+         * Index in the old sequence of the first coordinate deleted, or of the coordinate the
+         * inserted ones are placed before
+         */
+        final int position;
+
+        final double[] deleted;
+
+        final double[] inserted;
+
+        Edit(int position, double[] deleted, double[] inserted) {
+            this.position = position;
+            this.deleted = deleted;
+            this.inserted = inserted;
+        }
+
+        int deletedCount() {
+            return deleted.length / 2;
+        }
+
+        int insertedCount() {
+            return inserted.length / 2;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Edit)) {
+                return false;
+            }
+            Edit e = (Edit) o;
+            return position == e.position && Arrays.equals(deleted, e.deleted)
+                    && Arrays.equals(inserted, e.inserted);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * position + Arrays.hashCode(deleted)) + Arrays.hashCode(inserted);
+        }
+    }
+
+    private final Edit[] edits;
+
+    private CoordinateSequenceDiff(Edit[] edits) {
+        this.edits = edits;
+    }
+
+    Edit[] edits() {
+        return edits;
+    }
+
+    /**
+     * Computes the difference between two packed coordinate sequences
+     */
+    static CoordinateSequenceDiff diff(double[] oldCoords, double[] newCoords) {
+        final int n = oldCoords.length / 2;
+        final int m = newCoords.length / 2;
+        int prefix = 0;
+        while (prefix < n && prefix < m && same(oldCoords, prefix, newCoords, prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < n - prefix && suffix < m - prefix
+                && same(oldCoords, n - 1 - suffix, newCoords, m - 1 - suffix)) {
+            suffix++;
+        }
+        final int oldLength = n - prefix - suffix;
+        final int newLength = m - prefix - suffix;
+        if (oldLength == 0 && newLength == 0) {
+            return NO_CHANGE;
+        }
+        List<Edit> edits = Lists.newArrayList();
+        if (oldLength == 0 || newLength == 0
+                || !shortestEditScript(oldCoords, newCoords, prefix, oldLength, newLength, edits)) {
+            edits.clear();
+            edits.add(new Edit(prefix, slice(oldCoords, prefix, oldLength), slice(newCoords,
+                    prefix, newLength)));
+        }
+        return new CoordinateSequenceDiff(edits.toArray(new Edit[edits.size()]));
+    }
+
+    /**
+     * Myers' greedy algorithm on the coordinates in {@code [offset, offset + oldLength)} and
+     * {@code [offset, offset + newLength)} of both sequences, adding the resulting edits in order.
+     *
+     * @return {@code false} if the sequences differ in more than {@link #MAX_EDIT_DISTANCE}
+     *         coordinates
+     */
+    private static boolean shortestEditScript(double[] a, double[] b, int offset, int oldLength,
+            int newLength, List<Edit> edits) {
+        final int maxD = Math.min(oldLength + newLength, MAX_EDIT_DISTANCE);
+        // v[k + maxD + 1] is the furthest x reached on diagonal k = x - y
+        final int[] v = new int[2 * maxD + 3];
+        // the diagonals -d..d of v after each round d, to trace the path back
+        final List<int[]> trace = Lists.newArrayList();
+        final int center = maxD + 1;
+        for (int d = 0; d <= maxD; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[center + k - 1] < v[center + k + 1])) {
+                    x = v[center + k + 1];
+                } else {
+                    x = v[center + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < oldLength && y < newLength
+                        && same(a, offset + x, b, offset + y)) {
+                    x++;
+                    y++;
+                }
+                v[center + k] = x;
+                if (x >= oldLength && y >= newLength) {
+                    trace.add(Arrays.copyOfRange(v, center - d, center + d + 1));
+                    backtrack(a, b, offset, oldLength, newLength, trace, edits);
+                    return true;
+                }
+            }
+            trace.add(Arrays.copyOfRange(v, center - d, center + d + 1));
+        }
+        return false;
+    }
+
+    private static void backtrack(double[] a, double[] b, int offset, int x, int y,
+            List<int[]> trace, List<Edit> edits) {
+        // single coordinate moves, collected backwards as (x, y, isInsert) triples
+        List<int[]> moves = Lists.newArrayList();
+        for (int d = trace.size() - 1; d > 0; d--) {
+            final int[] prev = trace.get(d - 1);
+            final int k = x - y;
+            final boolean insert = k == -d
+                    || (k != d && prev[k - 1 + d - 1] < prev[k + 1 + d - 1]);
+            final int prevK = insert ? k + 1 : k - 1;
+            final int prevX = prev[prevK + d - 1];
+            final int prevY = prevX - prevK;
+            moves.add(new int[] { prevX, prevY, insert ? 1 : 0 });
+            x = prevX;
+            y = prevY;
+        }
+
+        int i = moves.size() - 1;
+        while (i >= 0) {
+            final int startX = moves.get(i)[0];
+            final int startY = moves.get(i)[1];
+            int deleted = 0;
+            int inserted = 0;
+            while (i >= 0 && moves.get(i)[0] == startX + deleted
+                    && moves.get(i)[1] == startY + inserted) {
+                if (moves.get(i)[2] == 1) {
+                    inserted++;
+                } else {
+                    deleted++;
+                }
+                i--;
+            }
+            edits.add(new Edit(offset + startX, slice(a, offset + startX, deleted), slice(b,
+                    offset + startY, inserted)));
+        }
+    }
+
+    /**
+     * Returns the difference that undoes this one
+     */
+    CoordinateSequenceDiff reversed() {
+        Edit[] reversed = new Edit[edits.length];
+        int shift = 0;
+        for (int i = 0; i < edits.length; i++) {
+            Edit e = edits[i];
+            reversed[i] = new Edit(e.position + shift, e.inserted, e.deleted);
+            shift += e.insertedCount() - e.deletedCount();
+        }
+        return new CoordinateSequenceDiff(reversed);
+    }
+
+    /**
+     * Applies this difference on a packed coordinate sequence.
+     * <p>
+     * Each edit is expected at its original position, shifted by the length change of the edits
+     * before it. If the coordinates it deletes are not found there, the nearest place after the
+     * previous edit where they are found is used instead, so the difference can still be applied
+     * on a sequence that was modified elsewhere.
+     *
+     * @return the resulting sequence, or {@code null} if the difference can't be applied on
+     *         {@code coords}
+     */
+    @Nullable
+    double[] applyOn(double[] coords) {
+        if (edits.length == 0) {
+            return coords;
+        }
+        final int n = coords.length / 2;
+        int length = n;
+        for (Edit e : edits) {
+            length += e.insertedCount() - e.deletedCount();
+        }
+        if (length < 0) {
+            return null;
+        }
+        double[] result = new double[2 * length];
+        int resultIndex = 0;
+        int src = 0;
+        int shift = 0;
+        for (Edit e : edits) {
+            final int at = locate(coords, e, e.position + shift, src);
+            if (at < 0) {
+                return null;
+            }
+            System.arraycopy(coords, 2 * src, result, resultIndex, 2 * (at - src));
+            resultIndex += 2 * (at - src);
+            System.arraycopy(e.inserted, 0, result, resultIndex, e.inserted.length);
+            resultIndex += e.inserted.length;
+            src = at + e.deletedCount();
+            shift = at - e.position;
+        }
+        System.arraycopy(coords, 2 * src, result, resultIndex, 2 * (n - src));
+        return result;
+    }
+
+    /**
+     * @return the index of the first coordinate the edit applies to, or {@code -1} if it can't be
+     *         applied at or after {@code from}
+     */
+    private static int locate(double[] coords, Edit edit, int expected, int from) {
+        final int n = coords.length / 2;
+        final int count = edit.deletedCount();
+        if (count == 0) {
+            return expected >= from && expected <= n ? expected : -1;
+        }
+        final int last = n - count;
+        for (int distance = 0; expected - distance >= from || expected + distance <= last;
+                distance++) {
+            int before = expected - distance;
+            if (before >= from && before <= last && matches(coords, before, edit.deleted)) {
+                return before;
+            }
+            int after = expected + distance;
+            if (distance > 0 && after >= from && after <= last
+                    && matches(coords, after, edit.deleted)) {
+                return after;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(double[] coords, int index, double[] expected) {
+        for (int i = 0; i < expected.length / 2; i++) {
+            if (!same(coords, index + i, expected, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean same(double[] a, int i, double[] b, int j) {
+        return Double.compare(a[2 * i], b[2 * j]) == 0
+                && Double.compare(a[2 * i + 1], b[2 * j + 1]) == 0;
+    }
+
+    private static double[] slice(double[] coords, int index, int count) {
+        if (count == 0) {
+            return NO_COORDS;
+        }
+        return Arrays.copyOfRange(coords, 2 * index, 2 * (index + count));
+    }
+
+    /**
+     * Writes the edits, each one as the distance from the end of the previous one followed by the
+     * deleted and inserted coordinates
+     */
+    void writeTo(DataOutput out) throws IOException {
+        writeUnsignedVarInt(edits.length, out);
+        int end = 0;
+        for (Edit e : edits) {
+            writeUnsignedVarInt(e.position - end, out);
+            writeCoords(e.deleted, out);
+            writeCoords(e.inserted, out);
+            end = e.position + e.deletedCount();
+        }
+    }
+
+    static CoordinateSequenceDiff readFrom(DataInput in) throws IOException {
+        final int size = readUnsignedVarInt(in);
+        if (size == 0) {
+            return NO_CHANGE;
+        }
+        Edit[] edits = new Edit[size];
+        int end = 0;
+        for (int i = 0; i < size; i++) {
+            int position = end + readUnsignedVarInt(in);
+            double[] deleted = readCoords(in);
+            double[] inserted = readCoords(in);
+            edits[i] = new Edit(position, deleted, inserted);
+            end = position + deleted.length / 2;
+        }
+        return new CoordinateSequenceDiff(edits);
+    }
+
+    private static void writeCoords(double[] coords, DataOutput out) throws IOException {
+        writeUnsignedVarInt(coords.length / 2, out);
+        for (double d : coords) {
+            out.writeDouble(d);
+        }
+    }
+
+    private static double[] readCoords(DataInput in) throws IOException {
+        final int count = readUnsignedVarInt(in);
+        if (count == 0) {
+            return NO_COORDS;
+        }
+        double[] coords = new double[2 * count];
+        for (int i = 0; i < coords.length; i++) {
+            coords[i] = in.readDouble();
+        }
+        return coords;
+    }
+
+    static void writeUnsignedVarInt(int value, DataOutput out) throws IOException {
+        while ((value & 0xFFFFFF80) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value & 0x7F);
+    }
+
+    static int readUnsignedVarInt(DataInput in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        while (((b = in.readByte()) & 0x80) != 0) {
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+            if (shift > 28) {
+                throw new IOException("Malformed variable length integer");
+            }
+        }
+        return value | (b << shift);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CoordinateSequenceDiff
+                && Arrays.equals(edits, ((CoordinateSequenceDiff) o).edits);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(edits);
+    }
+}
@@ -8,6 +8,8 @@ package org.geogit.api.plumbing.diff;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
 
 import javax.annotation.Nullable;
 
@@ -18,6 +20,7 @@ import org.geogit.api.NodeRef;
 import org.geogit.api.ObjectId;
 import org.geogit.api.RevObject.TYPE;
 import org.geogit.api.RevTree;
+import org.geogit.storage.NodePathStorageOrder;
 import org.geogit.storage.ObjectDatabase;
 
 import com.google.common.base.Function;
@@ -25,11 +28,19 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
 
 /**
  * An iterator over a {@link RevTree} that can return different results depending on the
  * {@link #Strategy} given;
+ * <p>
+ * Nodes are returned in {@link NodePathStorageOrder storage order}, with the contents of subtrees
+ * right after the subtree node for the recursive strategies, which allows to
+ * {@link #setResumeAfter(String) resume} a traversal right after a given path, skipping the buckets
+ * and subtrees that come before it instead of traversing them.
  */
 public class DepthTreeIterator extends AbstractIterator<NodeRef> {
     public enum Strategy {
@@ -78,6 +89,11 @@ public class DepthTreeIterator extends AbstractIterator<NodeRef> {
 
     private ObjectId metadataId;
 
+    @Nullable
+    private String resumeAfter;
+
+    private static final NodePathStorageOrder ORDER = new NodePathStorageOrder();
+
     private static class NodeToRef implements Function<Node, NodeRef> {
 
         private final String treePath;
@@ -117,27 +133,51 @@ public class DepthTreeIterator extends AbstractIterator<NodeRef> {
         this.boundsFilter = boundsFilter == null ? alwaysTrue : boundsFilter;
     }
 
+    /**
+     * Makes the iteration start right after the node at the given path, as if all the nodes up to
+     * and including it had already been consumed.
+     * <p>
+     * The path is usually the one of the last {@link NodeRef} returned by a previous iteration over
+     * the same tree and with the same strategy, and must be a child path of the iterator's tree
+     * path. The node does not need to exist in the tree, in which case the iteration resumes at the
+     * first node that would come after it.
+     * 
+     * @param path the full path of the node to resume the iteration after, or {@code null} to
+     *        iterate from the beginning
+     */
+    public void setResumeAfter(@Nullable String path) {
+        Preconditions.checkState(iterator == null, "iteration already started");
+        Preconditions.checkArgument(path == null || NodeRef.isChild(treePath, path),
+                "%s is not a child path of %s", path, treePath);
+        this.resumeAfter = path;
+    }
+
     @Override
     protected NodeRef computeNext() {
         if (iterator == null) {
+            final List<String> steps = resumeSteps(treePath, resumeAfter);
+            final String seekStep = steps == null ? null : steps.get(0);
             switch (strategy) {
             case CHILDREN:
-                iterator = Iterators.transform(new Children(tree), functor);
+                iterator = Iterators.transform(skipSelf(new Children(tree, seekStep, 0), seekStep),
+                        functor);
                 break;
             case FEATURES_ONLY:
-                iterator = Iterators.transform(new Features(tree), functor);
+                iterator = Iterators.transform(skipSelf(new Features(tree, seekStep, 0), seekStep),
+                        functor);
                 break;
             case TREES_ONLY:
-                iterator = Iterators.transform(new Trees(tree), functor);
+                iterator = Iterators.transform(skipSelf(new Trees(tree, seekStep, 0), seekStep),
+                        functor);
                 break;
             case RECURSIVE:
-                iterator = new Recursive(treePath, metadataId, tree, true, true);
+                iterator = new Recursive(treePath, metadataId, tree, true, true, steps);
                 break;
             case RECURSIVE_FEATURES_ONLY:
-                iterator = new Recursive(treePath, metadataId, tree, true, false);
+                iterator = new Recursive(treePath, metadataId, tree, true, false, steps);
                 break;
             case RECURSIVE_TREES_ONLY:
-                iterator = new Recursive(treePath, metadataId, tree, false, true);
+                iterator = new Recursive(treePath, metadataId, tree, false, true, steps);
                 break;
             default:
                 throw new IllegalArgumentException("Unrecognized strategy: " + strategy);
@@ -150,6 +190,58 @@ public class DepthTreeIterator extends AbstractIterator<NodeRef> {
         return endOfData();
     }
 
+    /**
+     * @return the steps of {@code path} relative to {@code treePath}, or {@code null} if
+     *         {@code path} is {@code null}
+     */
+    @Nullable
+    static List<String> resumeSteps(String treePath, @Nullable String path) {
+        if (path == null) {
+            return null;
+        }
+        ImmutableList<String> steps = NodeRef.split(path);
+        return steps.subList(NodeRef.depth(treePath), steps.size());
+    }
+
+    /**
+     * @return {@code true} if {@code node} sorts before {@code seekStep} and hence shall be
+     *         skipped when resuming after {@code seekStep}
+     */
+    static boolean isBefore(Node node, @Nullable String seekStep) {
+        return seekStep != null && ORDER.compare(node.getName(), seekStep) < 0;
+    }
+
+    /**
+     * Skips the node named {@code seekStep}, which has already been returned before resuming,
+     * from an iterator that has already been positioned at it.
+     */
+    private static Iterator<Node> skipSelf(Iterator<Node> nodes, @Nullable final String seekStep) {
+        if (seekStep == null) {
+            return nodes;
+        }
+        PeekingIterator<Node> peeking = Iterators.peekingIterator(nodes);
+        if (peeking.hasNext() && peeking.peek().getName().equals(seekStep)) {
+            peeking.next();
+        }
+        return peeking;
+    }
+
+    /**
+     * Filters out the nodes that sort before {@code seekStep}
+     */
+    private Iterator<Node> seek(Iterator<Node> nodes, @Nullable final String seekStep) {
+        nodes = Iterators.filter(nodes, boundsFilter);
+        if (seekStep == null) {
+            return nodes;
+        }
+        return Iterators.filter(nodes, new Predicate<Node>() {
+            @Override
+            public boolean apply(Node input) {
+                return !isBefore(input, seekStep);
+            }
+        });
+    }
+
     private class Recursive extends AbstractIterator<NodeRef> {
 
         private boolean features;
@@ -162,16 +254,25 @@ public class DepthTreeIterator extends AbstractIterator<NodeRef> {
 
         private NodeToRef functor;
 
+        /**
+         * Path steps to resume the traversal after, relative to this tree, {@code null} once the
+         * resume point has been passed
+         */
+        @Nullable
+        private List<String> seekSteps;
+
         public Recursive(String treePath, ObjectId metadataId, RevTree tree, boolean features,
-                boolean trees) {
+                boolean trees, @Nullable List<String> seekSteps) {
             Preconditions.checkArgument(features || trees);
             this.functor = new NodeToRef(treePath, metadataId);
             this.features = features;
             this.trees = trees;
+            this.seekSteps = seekSteps == null || seekSteps.isEmpty() ? null : seekSteps;
+            final String seekStep = this.seekSteps == null ? null : this.seekSteps.get(0);
             if (!features) {
-                this.myEntries = new Trees(tree);
+                this.myEntries = new Trees(tree, seekStep, 0);
             } else {
-                this.myEntries = new Children(tree);
+                this.myEntries = new Children(tree, seekStep, 0);
             }
             currEntryIterator = Iterators.emptyIterator();
         }
@@ -180,7 +281,17 @@ public class DepthTreeIterator extends AbstractIterator<NodeRef> {
         protected NodeRef computeNext() {
             while (!currEntryIterator.hasNext()) {
                 if (myEntries.hasNext()) {
-                    currEntryIterator = resolveEntryIterator(myEntries.next());
+                    Node next = myEntries.next();
+                    if (seekSteps != null) {
+                        List<String> steps = seekSteps;
+                        seekSteps = null;
+                        if (next.getName().equals(steps.get(0))) {
+                            currEntryIterator = resumeEntryIterator(next,
+                                    steps.subList(1, steps.size()));
+                            continue;
+                        }
+                    }
+                    currEntryIterator = resolveEntryIterator(next);
                 } else {
                     return endOfData();
                 }
@@ -188,6 +299,26 @@ public class DepthTreeIterator extends AbstractIterator<NodeRef> {
             return currEntryIterator.next();
         }
 
+        /**
+         * Resolves the iterator for the node at the resume path or one of its parents, which has
+         * already been returned
+         */
+        private Iterator<NodeRef> resumeEntryIterator(Node next, List<String> childSteps) {
+            if (!TYPE.TREE.equals(next.getType())) {
+                return Iterators.emptyIterator();
+            }
+            return subtreeIterator(next, childSteps);
+        }
+
+        private Iterator<NodeRef> subtreeIterator(Node next, @Nullable List<String> childSteps) {
+            ObjectId treeId = next.getObjectId();
+            RevTree childTree = source.getTree(treeId);
+
+            String childTreePath = NodeRef.appendChild(this.functor.treePath, next.getName());
+            return new Recursive(childTreePath, next.getMetadataId().or(functor.metadataId),
+                    childTree, features, trees, childSteps);
+        }
+
         private Iterator<NodeRef> resolveEntryIterator(Node next) {
             if (TYPE.FEATURE.equals(next.getType())) {
                 if (features) {
@@ -197,12 +328,7 @@ public class DepthTreeIterator extends AbstractIterator<NodeRef> {
             }
             Preconditions.checkArgument(TYPE.TREE.equals(next.getType()));
 
-            ObjectId treeId = next.getObjectId();
-            RevTree childTree = source.getTree(treeId);
-
-            String childTreePath = NodeRef.appendChild(this.functor.treePath, next.getName());
-            Iterator<NodeRef> children = new Recursive(childTreePath, next.getMetadataId().or(
-                    functor.metadataId), childTree, features, trees);
+            Iterator<NodeRef> children = subtreeIterator(next, null);
             if (trees) {
                 children = Iterators.concat(Iterators.singletonIterator(functor.apply(next)),
                         children);
@@ -215,11 +341,11 @@ public class DepthTreeIterator extends AbstractIterator<NodeRef> {
 
         private Iterator<Node> children;
 
-        public Children(RevTree tree) {
+        public Children(RevTree tree, @Nullable String seekStep, int depth) {
             if (tree.buckets().isPresent()) {
-                this.children = new Buckets(tree);
+                this.children = new Buckets(tree, seekStep, depth);
             } else {
-                this.children = Iterators.filter(tree.children(), boundsFilter);
+                this.children = seek(tree.children(), seekStep);
             }
         }
 
@@ -236,11 +362,11 @@ public class DepthTreeIterator extends AbstractIterator<NodeRef> {
 
         private Iterator<Node> features;
 
-        public Features(RevTree tree) {
+        public Features(RevTree tree, @Nullable String seekStep, int depth) {
             if (tree.features().isPresent()) {
-                this.features = Iterators.filter(tree.features().get().iterator(), boundsFilter);
+                this.features = seek(tree.features().get().iterator(), seekStep);
             } else if (tree.buckets().isPresent()) {
-                this.features = new FeatureBuckets(tree);
+                this.features = new FeatureBuckets(tree, seekStep, depth);
             } else {
                 this.features = Iterators.emptyIterator();
             }
@@ -259,13 +385,13 @@ public class DepthTreeIterator extends AbstractIterator<NodeRef> {
 
         private Iterator<Node> trees;
 
-        public Trees(RevTree tree) {
+        public Trees(RevTree tree, @Nullable String seekStep, int depth) {
             if (tree.numTrees() == 0) {
                 this.trees = Iterators.emptyIterator();
             } else if (tree.trees().isPresent()) {
-                this.trees = Iterators.filter(tree.trees().get().iterator(), boundsFilter);
+                this.trees = seek(tree.trees().get().iterator(), seekStep);
             } else if (tree.buckets().isPresent()) {
-                this.trees = new TreeBuckets(tree);
+                this.trees = new TreeBuckets(tree, seekStep, depth);
             } else {
                 this.trees = Iterators.emptyIterator();
             }
@@ -285,13 +411,45 @@ public class DepthTreeIterator extends AbstractIterator<NodeRef> {
      */
     private class Buckets extends AbstractIterator<Node> {
 
-        private Iterator<Bucket> buckets;
+        private Iterator<Entry<Integer, Bucket>> buckets;
 
         private Iterator<Node> bucketEntries;
 
-        public Buckets(RevTree tree) {
+        /**
+         * The bucket the resume point falls into, if any, which is the only one that needs seeking
+         */
+        @Nullable
+        private final Integer seekBucket;
+
+        @Nullable
+        private final String seekStep;
+
+        private final int depth;
+
+        /**
+         * @param tree the buckets tree
+         * @param seekStep the name of the node to resume the traversal at, buckets before the one
+         *        it falls into are skipped without being loaded
+         * @param depth the depth of {@code tree} buckets, zero for a top level tree
+         */
+        public Buckets(RevTree tree, @Nullable String seekStep, int depth) {
             Preconditions.checkArgument(tree.buckets().isPresent());
-            buckets = Iterators.filter(tree.buckets().get().values().iterator(), boundsFilter);
+            ImmutableSortedMap<Integer, Bucket> treeBuckets = tree.buckets().get();
+            this.seekStep = seekStep;
+            this.depth = depth;
+            if (seekStep == null) {
+                this.seekBucket = null;
+            } else {
+                this.seekBucket = ORDER.bucket(seekStep, depth);
+                treeBuckets = treeBuckets.tailMap(seekBucket, true);
+            }
+            buckets = Iterators.filter(treeBuckets.entrySet().iterator(),
+                    new Predicate<Entry<Integer, Bucket>>() {
+                        @Override
+                        public boolean apply(Entry<Integer, Bucket> input) {
+                            return boundsFilter.apply(input.getValue());
+                        }
+                    });
             bucketEntries = Iterators.emptyIterator();
         }
 
@@ -299,8 +457,11 @@ public class DepthTreeIterator extends AbstractIterator<NodeRef> {
         protected Node computeNext() {
             while (!bucketEntries.hasNext()) {
                 if (buckets.hasNext()) {
-                    Bucket nextBucket = buckets.next();
-                    bucketEntries = resolveBucketEntries(nextBucket.id());
+                    Entry<Integer, Bucket> nextBucket = buckets.next();
+                    String bucketSeekStep = nextBucket.getKey().equals(seekBucket) ? seekStep
+                            : null;
+                    bucketEntries = resolveBucketEntries(nextBucket.getValue().id(),
+                            bucketSeekStep, depth + 1);
                 } else {
                     return endOfData();
                 }
@@ -309,15 +470,18 @@ public class DepthTreeIterator extends AbstractIterator<NodeRef> {
         }
 
         /**
-         * @param bucketId
-         * @return
+         * @param bucketId the id of the bucket tree
+         * @param seekStep the node name to resume the traversal at, if it falls into this bucket
+         * @param bucketDepth the depth of the bucket tree
+         * @return the nodes in the bucket tree
          */
-        protected Iterator<Node> resolveBucketEntries(ObjectId bucketId) {
+        protected Iterator<Node> resolveBucketEntries(ObjectId bucketId,
+                @Nullable String seekStep, int bucketDepth) {
             RevTree bucketTree = source.getTree(bucketId);
             if (bucketTree.buckets().isPresent()) {
-                return new Buckets(bucketTree);
+                return new Buckets(bucketTree, seekStep, bucketDepth);
             }
-            return new Children(bucketTree);
+            return new Children(bucketTree, seekStep, bucketDepth);
         }
     }
 
@@ -326,21 +490,22 @@ public class DepthTreeIterator extends AbstractIterator<NodeRef> {
      */
     private class TreeBuckets extends Buckets {
 
-        public TreeBuckets(RevTree tree) {
-            super(tree);
+        public TreeBuckets(RevTree tree, @Nullable String seekStep, int depth) {
+            super(tree, seekStep, depth);
         }
 
         @Override
-        protected Iterator<Node> resolveBucketEntries(ObjectId bucketId) {
+        protected Iterator<Node> resolveBucketEntries(ObjectId bucketId,
+                @Nullable String seekStep, int bucketDepth) {
             RevTree bucketTree = source.getTree(bucketId);
             if (bucketTree.numTrees() == 0) {
                 return Iterators.emptyIterator();
             }
             if (bucketTree.trees().isPresent()) {
-                return new Trees(bucketTree);
+                return new Trees(bucketTree, seekStep, bucketDepth);
             }
             if (bucketTree.buckets().isPresent()) {
-                return new TreeBuckets(bucketTree);
+                return new TreeBuckets(bucketTree, seekStep, bucketDepth);
             }
             return Iterators.emptyIterator();
         }
@@ -351,18 +516,19 @@ public class DepthTreeIterator extends AbstractIterator<NodeRef> {
      */
     private class FeatureBuckets extends Buckets {
 
-        public FeatureBuckets(RevTree tree) {
-            super(tree);
+        public FeatureBuckets(RevTree tree, @Nullable String seekStep, int depth) {
+            super(tree, seekStep, depth);
         }
 
         @Override
-        protected Iterator<Node> resolveBucketEntries(ObjectId bucketId) {
+        protected Iterator<Node> resolveBucketEntries(ObjectId bucketId,
+                @Nullable String seekStep, int bucketDepth) {
             RevTree bucketTree = source.getTree(bucketId);
             if (bucketTree.buckets().isPresent()) {
-                return new FeatureBuckets(bucketTree);
+                return new FeatureBuckets(bucketTree, seekStep, bucketDepth);
             }
             if (bucketTree.features().isPresent()) {
-                return new Features(bucketTree);
+                return new Features(bucketTree, seekStep, bucketDepth);
             }
             return Iterators.emptyIterator();
         }
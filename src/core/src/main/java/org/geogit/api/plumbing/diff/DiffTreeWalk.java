@@ -49,6 +49,9 @@ public class DiffTreeWalk {
 
     private boolean recursive;
 
+    @Nullable
+    private String resumeAfter;
+
     public DiffTreeWalk(final ObjectDatabase db, final RevTree fromRootTree,
             final RevTree toRootTree) {
         Preconditions.checkNotNull(db);
@@ -89,6 +92,19 @@ public class DiffTreeWalk {
         this.recursive = recursive;
     }
 
+    /**
+     * Makes the walk return only the differences that come after the one at the given path, as
+     * returned by a previous walk over the same two trees with the same settings. Used to page
+     * through large diffs without computing the differences in the pages already returned.
+     * 
+     * @param path the {@link DiffEntry#newPath() new path}, or the {@link DiffEntry#oldPath() old
+     *        path} for removals, of the last entry returned by the previous walk, or {@code null}
+     *        to start from the beginning
+     */
+    public void setResumeAfter(@Nullable String path) {
+        this.resumeAfter = path;
+    }
+
     public Iterator<DiffEntry> get() {
 
         RevTree oldTree = this.fromRootTree;
@@ -128,6 +144,10 @@ public class DiffTreeWalk {
                     }
                     filteredIterator = Iterators.concat(parentDiffs.iterator(), filteredIterator);
                 }
+                if (resumeAfter != null) {
+                    filteredIterator = TreeDiffEntryIterator.skipThrough(filteredIterator,
+                            resumeAfter);
+                }
                 return filteredIterator;
             }
             case TREE:
@@ -156,8 +176,15 @@ public class DiffTreeWalk {
 
         // TODO: pass pathFilter to TreeDiffEntryIterator so it ignores inner trees where the path
         // is guaranteed not to be present
+        List<String> seekSteps = null;
+        if (resumeAfter != null) {
+            final String rootPath = (oldRef == null ? newRef : oldRef).path();
+            Preconditions.checkArgument(NodeRef.isChild(rootPath, resumeAfter),
+                    "Can't resume at %s, it's not a child of %s", resumeAfter, rootPath);
+            seekSteps = DepthTreeIterator.resumeSteps(rootPath, resumeAfter);
+        }
         Iterator<DiffEntry> iterator = new TreeDiffEntryIterator(oldRef, newRef, oldTree, newTree,
-                reportTrees, recursive, objectDb);
+                reportTrees, recursive, objectDb, seekSteps, 0);
 
         // boolean comparingTree = (oldRef == null ? newRef : oldRef).getType().equals(TYPE.TREE);
         // if (reportTrees && comparingTree && !Objects.equal(oldRef, newRef)) {
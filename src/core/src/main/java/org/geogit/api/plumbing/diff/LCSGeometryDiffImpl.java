@@ -4,36 +4,57 @@
  */
 package org.geogit.api.plumbing.diff;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 import javax.annotation.Nullable;
 
+import org.geogit.api.plumbing.diff.CoordinateSequenceDiff.Edit;
 import org.geogit.api.plumbing.diff.diff_match_patch.Diff;
-import org.geogit.api.plumbing.diff.diff_match_patch.LinesToCharsResult;
 import org.geogit.api.plumbing.diff.diff_match_patch.Operation;
 import org.geogit.api.plumbing.diff.diff_match_patch.Patch;
 import org.geogit.storage.FieldType;
 import org.geogit.storage.text.TextValueSerializer;
 
-import com.google.common.base.Function;
-import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Splitter;
-import com.google.common.collect.Iterators;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
 
 /**
  * An class that computes differences between geometries using a Longest-Common-Subsequence
- * algorithm on string representations of them
- * 
+ * algorithm on their coordinate sequences.
+ * <p>
+ * Geometries are split into parts (the members of a multi-geometry or collection) and each part
+ * into coordinate sequences (the rings of a polygon), and every old sequence is diffed against the
+ * new one at the same place with a {@link CoordinateSequenceDiff}. Missing parts and rings are
+ * diffed as empty sequences. The coordinates are read straight from the geometries' coordinate
+ * sequences, so no text representation of them is ever built.
+ * <p>
+ * The difference is encoded in a compact binary form by {@link #writeTo(DataOutput)}, which
+ * {@link #asText()} wraps in Base64 for the text patch format. Differences in the text format
+ * written by earlier versions, based on text diffs of the WKT representation, can still be read
+ * and applied.
  */
 public class LCSGeometryDiffImpl {
 
@@ -41,9 +62,69 @@ public class LCSGeometryDiffImpl {
 
     public static final String INNER_RING_SEPARATOR = "@";
 
-    private LinkedList<Patch> patches;
+    private static final byte FORMAT_VERSION = 1;
 
-    private diff_match_patch diffMatchPatch;
+    private static final int ABSENT = 0, POINT = 1, LINESTRING = 2, LINEARRING = 3, POLYGON = 4,
+            MULTIPOINT = 5, MULTILINESTRING = 6, MULTIPOLYGON = 7, GEOMETRYCOLLECTION = 8;
+
+    private static final GeometryFactory DEFAULT_FACTORY = new GeometryFactory();
+
+    /**
+     * The differences in a single part of the geometry
+     */
+    private static final class PartDiff {
+
+        final int oldType;
+
+        final int newType;
+
+        final CoordinateSequenceDiff[] rings;
+
+        PartDiff(int oldType, int newType, CoordinateSequenceDiff[] rings) {
+            this.oldType = oldType;
+            this.newType = newType;
+            this.rings = rings;
+        }
+
+        PartDiff reversed() {
+            CoordinateSequenceDiff[] reversed = new CoordinateSequenceDiff[rings.length];
+            for (int i = 0; i < rings.length; i++) {
+                reversed[i] = rings[i].reversed();
+            }
+            return new PartDiff(newType, oldType, reversed);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PartDiff)) {
+                return false;
+            }
+            PartDiff p = (PartDiff) o;
+            return oldType == p.oldType && newType == p.newType && Arrays.equals(rings, p.rings);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * oldType + newType) + Arrays.hashCode(rings);
+        }
+    }
+
+    private int oldType;
+
+    private int newType;
+
+    private PartDiff[] parts;
+
+    /**
+     * The old geometry, kept to build the {@link #getDiffCoordsString() coordinates string}
+     */
+    private Optional<Geometry> oldGeometry;
+
+    /**
+     * The text patches of a difference read from the legacy text format, {@code null} otherwise
+     */
+    @Nullable
+    private LinkedList<Patch> legacyPatches;
 
     private int totalInsertions;
 
@@ -51,190 +132,397 @@ public class LCSGeometryDiffImpl {
 
     private int replacings;
 
-    private String diffText;
-
     public LCSGeometryDiffImpl(Optional<Geometry> oldGeom, Optional<Geometry> newGeom) {
-        String oldText = oldGeom.isPresent() ? oldGeom.get().toText() : "";
-        String newText = newGeom.isPresent() ? newGeom.get().toText() : "";
-        diffMatchPatch = new diff_match_patch();
-        LinkedList<Diff> diffs = diffMatchPatch.diff_main(oldText, newText);
-        patches = diffMatchPatch.patch_make(diffs);
+        List<double[][]> oldParts = parts(oldGeom);
+        List<double[][]> newParts = parts(newGeom);
+        oldType = typeOf(oldGeom);
+        newType = typeOf(newGeom);
+        oldGeometry = oldGeom;
+        parts = new PartDiff[Math.max(oldParts.size(), newParts.size())];
+        for (int i = 0; i < parts.length; i++) {
+            double[][] oldRings = i < oldParts.size() ? oldParts.get(i) : new double[0][];
+            double[][] newRings = i < newParts.size() ? newParts.get(i) : new double[0][];
+            CoordinateSequenceDiff[] rings;
+            rings = new CoordinateSequenceDiff[Math.max(oldRings.length, newRings.length)];
+            for (int j = 0; j < rings.length; j++) {
+                double[] oldRing = j < oldRings.length ? oldRings[j] : new double[0];
+                double[] newRing = j < newRings.length ? newRings[j] : new double[0];
+                rings[j] = CoordinateSequenceDiff.diff(oldRing, newRing);
+            }
+            parts[i] = new PartDiff(partType(oldGeom, i), partType(newGeom, i), rings);
+        }
+        count();
+    }
 
-        // to calculate number of edits in the geometry, we do a diffing based on a string
-        // representation of the coordinates of the geometry, instead of the WKT.
-        // This is more more practical for counting added/removed/edited points and generating a
-        // human-readable and easy-to-parse string representation of the diff.
-        // NOTE! This is limited to geometries with less than 65535 different points, and might
-        // yield wrong results for geometries over that limit.
-        // This is a temporary hack, until a better solution is developed.
+    private LCSGeometryDiffImpl(int oldType, int newType, PartDiff[] parts) {
+        this.oldType = oldType;
+        this.newType = newType;
+        this.parts = parts;
+        count();
+    }
 
-        oldText = geomToStringOfCoordinates(oldGeom);
-        newText = geomToStringOfCoordinates(newGeom);
-        LinesToCharsResult chars = coordsToChars(oldText, newText);
-        diffs = diffMatchPatch.diff_main(chars.chars1, chars.chars2);
-        charsToCoords(diffs, chars.lineArray);
+    private LCSGeometryDiffImpl(LinkedList<Patch> legacyPatches) {
+        this.legacyPatches = legacyPatches;
+    }
 
-        processDiffs(diffs);
+    /**
+     * Creates a difference from its {@link #asText() text representation}
+     */
+    public LCSGeometryDiffImpl(String s) {
+        String[] tokens = s.split("\t", -1);
+        Preconditions.checkArgument(tokens.length == 2, "Wrong difference definition: %s", s);
+        String[] countings = tokens[0].split("/");
+        Preconditions.checkArgument(countings.length == 3, "Wrong difference definition: %s", s);
+        if (tokens[1].isEmpty() || tokens[1].startsWith("@@")) {
+            totalDeletions = Integer.parseInt(countings[0]);
+            totalInsertions = Integer.parseInt(countings[1]);
+            replacings = Integer.parseInt(countings[2]);
+            String unescaped = tokens[1].replace("\\n", "\n");
+            legacyPatches = (LinkedList<Patch>) new diff_match_patch().patch_fromText(unescaped);
+        } else {
+            byte[] bytes = BaseEncoding.base64().decode(tokens[1]);
+            try {
+                readFrom(ByteStreams.newDataInput(bytes));
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Wrong difference definition: " + s, e);
+            }
+        }
+    }
 
+    /**
+     * Reads a difference written by {@link #writeTo(DataOutput)}
+     */
+    public static LCSGeometryDiffImpl read(DataInput in) throws IOException {
+        LCSGeometryDiffImpl diff = new LCSGeometryDiffImpl(0, 0, new PartDiff[0]);
+        diff.readFrom(in);
+        return diff;
     }
 
-    private LCSGeometryDiffImpl(LinkedList<Patch> patches) {
-        diffMatchPatch = new diff_match_patch();
-        this.patches = patches;
+    private void readFrom(DataInput in) throws IOException {
+        byte version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unknown geometry difference format: " + version);
+        }
+        oldType = in.readUnsignedByte();
+        newType = in.readUnsignedByte();
+        parts = new PartDiff[CoordinateSequenceDiff.readUnsignedVarInt(in)];
+        for (int i = 0; i < parts.length; i++) {
+            int partOldType = in.readUnsignedByte();
+            int partNewType = in.readUnsignedByte();
+            CoordinateSequenceDiff[] rings;
+            rings = new CoordinateSequenceDiff[CoordinateSequenceDiff.readUnsignedVarInt(in)];
+            for (int j = 0; j < rings.length; j++) {
+                rings[j] = CoordinateSequenceDiff.readFrom(in);
+            }
+            parts[i] = new PartDiff(partOldType, partNewType, rings);
+        }
+        count();
     }
 
-    public LCSGeometryDiffImpl(String s) {
-        String[] tokens = s.split("\t");
-        Preconditions.checkArgument(tokens.length == 2);
-        String[] countings = tokens[0].split("/");
-        Preconditions.checkArgument(countings.length == 3);
-        totalDeletions = Integer.parseInt(countings[0]);
-        totalInsertions = Integer.parseInt(countings[1]);
-        replacings = Integer.parseInt(countings[2]);
-        diffMatchPatch = new diff_match_patch();
-        String unescaped = tokens[1].replace("\\n", "\n");
-        patches = (LinkedList<Patch>) diffMatchPatch.patch_fromText(unescaped);
+    /**
+     * Writes the binary representation of this difference
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        Preconditions.checkState(legacyPatches == null,
+                "Differences in the legacy text format have no binary representation");
+        out.writeByte(FORMAT_VERSION);
+        out.writeByte(oldType);
+        out.writeByte(newType);
+        CoordinateSequenceDiff.writeUnsignedVarInt(parts.length, out);
+        for (PartDiff part : parts) {
+            out.writeByte(part.oldType);
+            out.writeByte(part.newType);
+            CoordinateSequenceDiff.writeUnsignedVarInt(part.rings.length, out);
+            for (CoordinateSequenceDiff ring : part.rings) {
+                ring.writeTo(out);
+            }
+        }
     }
 
-    private void processDiffs(List<Diff> diffs) {
+    /**
+     * Counts the affected points. Within each edit, as many points as both deleted and inserted
+     * are counted as moved.
+     */
+    private void count() {
         totalInsertions = 0;
         totalDeletions = 0;
         replacings = 0;
-        int insertions = 0;
-        int deletions = 0;
-        StringBuilder sb = new StringBuilder();
-        for (Diff diff : diffs) {
-            String text = diff.text;
-            int nCoords = 0;
-            String[] tokens = diff.text.split(" ");
-            for (String token : tokens) {
-                if (token.contains(",")) {
-                    nCoords++;
+        for (PartDiff part : parts) {
+            for (CoordinateSequenceDiff ring : part.rings) {
+                for (Edit edit : ring.edits()) {
+                    int deletions = edit.deletedCount();
+                    int insertions = edit.insertedCount();
+                    replacings += Math.min(deletions, insertions);
+                    totalDeletions += Math.max(deletions - insertions, 0);
+                    totalInsertions += Math.max(insertions - deletions, 0);
                 }
             }
-            switch (diff.operation) {
-            case INSERT:
-                text = text.replace(" " + SUBGEOM_SEPARATOR, ")" + SUBGEOM_SEPARATOR + "(");
-                sb.append('(');
-                sb.append(text);
-                sb.append(") ");
-                insertions += nCoords;
-                break;
-            case DELETE:
-                sb.append('[');
-                sb.append(text);
-                sb.append("] ");
-                deletions += nCoords;
-                break;
-            case EQUAL:
-                sb.append(text.trim());
-                sb.append(' ');
-                replacings += Math.min(deletions, insertions);
-                totalDeletions += Math.max(deletions - insertions, 0);
-                totalInsertions += Math.max(insertions - deletions, 0);
-                insertions = 0;
-                deletions = 0;
-                break;
-            }
         }
-        replacings += Math.min(deletions, insertions);
-        totalDeletions += Math.max(deletions - insertions, 0);
-        totalInsertions += Math.max(insertions - deletions, 0);
+    }
 
-        diffText = sb.toString();
-        // some final dirty minor corrections
-        diffText = diffText.replace("(" + SUBGEOM_SEPARATOR, SUBGEOM_SEPARATOR + "(");
-        diffText = diffText.replace("(" + INNER_RING_SEPARATOR, INNER_RING_SEPARATOR + "(");
-        diffText = diffText.replace("[" + SUBGEOM_SEPARATOR, SUBGEOM_SEPARATOR + "[");
-        diffText = diffText.replace("[" + INNER_RING_SEPARATOR, INNER_RING_SEPARATOR + "[");
-        diffText = diffText.replace(" )", ")");
-        diffText = diffText.replace(" ]", "]");
+    public LCSGeometryDiffImpl reversed() {
+        if (legacyPatches != null) {
+            LinkedList<Patch> reversedPatches = new diff_match_patch()
+                    .patch_deepCopy(legacyPatches);
+            for (Patch patch : reversedPatches) {
+                for (Diff diff : patch.diffs) {
+                    if (diff.operation == Operation.DELETE) {
+                        diff.operation = Operation.INSERT;
+                    } else if (diff.operation == Operation.INSERT) {
+                        diff.operation = Operation.DELETE;
+                    }
+                }
+            }
+            LCSGeometryDiffImpl reversed = new LCSGeometryDiffImpl(reversedPatches);
+            reversed.totalDeletions = totalInsertions;
+            reversed.totalInsertions = totalDeletions;
+            reversed.replacings = replacings;
+            return reversed;
+        }
+        PartDiff[] reversed = new PartDiff[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            reversed[i] = parts[i].reversed();
+        }
+        return new LCSGeometryDiffImpl(newType, oldType, reversed);
     }
 
-    private String geomToStringOfCoordinates(Optional<Geometry> opt) {
-        if (!opt.isPresent()) {
-            return "";
+    public boolean canBeAppliedOn(Optional<Geometry> obj) {
+        if (legacyPatches != null) {
+            boolean[] applied = (boolean[]) new diff_match_patch().patch_apply(legacyPatches,
+                    wkt(obj))[1];
+            for (int i = 0; i < applied.length; i++) {
+                if (!applied[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        try {
+            return patch(obj) != null;
+        } catch (IllegalArgumentException e) {
+            // the edits left a sequence JTS won't take, such as an unclosed ring
+            return false;
         }
-        Function<Coordinate, String> printCoords = new Function<Coordinate, String>() {
-            @Override
-            @Nullable
-            public String apply(@Nullable Coordinate coord) {
-                return Double.toString(coord.x) + "," + Double.toString(coord.y);
+    }
+
+    public Optional<Geometry> applyOn(Optional<Geometry> obj) {
+        Preconditions.checkState(canBeAppliedOn(obj));
+        if (legacyPatches != null) {
+            String res = (String) new diff_match_patch().patch_apply(legacyPatches, wkt(obj))[0];
+            if (!res.isEmpty()) {
+                return Optional.fromNullable((Geometry) TextValueSerializer.fromString(
+                        FieldType.forBinding(Geometry.class), res));
+            } else {
+                return Optional.absent();
             }
+        }
+        return patch(obj);
+    }
 
-        };
+    private static String wkt(Optional<Geometry> obj) {
+        return obj.isPresent() ? obj.get().toText() : "";
+    }
 
-        StringBuilder sb = new StringBuilder();
-        Geometry geom = opt.get();
-        sb.append(geom.getGeometryType() + " ");
-        int n = geom.getNumGeometries();
-        for (int i = 0; i < n; i++) {
-            Geometry subgeom = geom.getGeometryN(i);
-            if (subgeom instanceof Polygon) {
-                Polygon polyg = (Polygon) subgeom;
-                Coordinate[] coords = polyg.getExteriorRing().getCoordinates();
-                Iterator<String> iter = Iterators
-                        .transform(Iterators.forArray(coords), printCoords);
-                sb.append(Joiner.on(' ').join(iter));
-                for (int j = 0; j < polyg.getNumInteriorRing(); j++) {
-                    coords = polyg.getInteriorRingN(j).getCoordinates();
-                    iter = Iterators.transform(Iterators.forArray(coords), printCoords);
-                    sb.append(" " + INNER_RING_SEPARATOR + " ");
-                    sb.append(Joiner.on(' ').join(iter));
-                }
-                if (i < n - 1) {
-                    sb.append(" " + SUBGEOM_SEPARATOR + " ");
+    /**
+     * @return the patched geometry, or {@code null} if this difference can't be applied on
+     *         {@code obj}
+     */
+    @Nullable
+    private Optional<Geometry> patch(Optional<Geometry> obj) {
+        if (typeOf(obj) != oldType) {
+            return null;
+        }
+        List<double[][]> targetParts = parts(obj);
+        List<Integer> resultTypes = Lists.newArrayList();
+        List<double[][]> resultParts = Lists.newArrayList();
+        for (int i = 0; i < Math.max(parts.length, targetParts.size()); i++) {
+            double[][] target = i < targetParts.size() ? targetParts.get(i) : new double[0][];
+            if (i >= parts.length) {
+                resultTypes.add(Integer.valueOf(partType(obj, i)));
+                resultParts.add(target);
+                continue;
+            }
+            PartDiff part = parts[i];
+            if (partType(obj, i) != part.oldType) {
+                return null;
+            }
+            double[][] rings = new double[Math.max(part.rings.length, target.length)][];
+            for (int j = 0; j < rings.length; j++) {
+                double[] ring = j < target.length ? target[j] : new double[0];
+                rings[j] = j < part.rings.length ? part.rings[j].applyOn(ring) : ring;
+                if (rings[j] == null) {
+                    return null;
                 }
-            } else {
-                Coordinate[] coords = subgeom.getCoordinates();
-                Iterator<String> iter = Iterators
-                        .transform(Iterators.forArray(coords), printCoords);
-                sb.append(Joiner.on(' ').join(iter));
-                sb.append(" " + SUBGEOM_SEPARATOR + " ");
+            }
+            if (part.newType != ABSENT) {
+                resultTypes.add(Integer.valueOf(part.newType));
+                resultParts.add(rings);
             }
         }
+        if (newType == ABSENT) {
+            return Optional.absent();
+        }
+        GeometryFactory factory = obj.isPresent() ? obj.get().getFactory() : DEFAULT_FACTORY;
+        return Optional.of(build(factory, newType, resultTypes, resultParts));
+    }
 
-        String s = sb.toString().trim();
-        return s;
+    // ========================================================================================
+    // Conversion of geometries to and from their coordinate sequences, packed as x,y arrays,
+    // grouped by part
 
+    private static int typeOf(Optional<Geometry> geom) {
+        return geom.isPresent() ? typeOf(geom.get()) : ABSENT;
     }
 
-    public LCSGeometryDiffImpl reversed() {
-        LinkedList<Patch> reversedPatches = diffMatchPatch.patch_deepCopy(patches);
-        for (Patch patch : reversedPatches) {
-            LinkedList<Diff> diffs = patch.diffs;
-            for (Diff diff : diffs) {
-                if (diff.operation == Operation.DELETE) {
-                    diff.operation = Operation.INSERT;
-                } else if (diff.operation == Operation.INSERT) {
-                    diff.operation = Operation.DELETE;
-                }
+    private static int typeOf(Geometry geom) {
+        if (geom instanceof Point) {
+            return POINT;
+        } else if (geom instanceof LinearRing) {
+            return LINEARRING;
+        } else if (geom instanceof LineString) {
+            return LINESTRING;
+        } else if (geom instanceof Polygon) {
+            return POLYGON;
+        } else if (geom instanceof MultiPoint) {
+            return MULTIPOINT;
+        } else if (geom instanceof MultiLineString) {
+            return MULTILINESTRING;
+        } else if (geom instanceof MultiPolygon) {
+            return MULTIPOLYGON;
+        } else if (geom instanceof GeometryCollection) {
+            return GEOMETRYCOLLECTION;
+        }
+        throw new IllegalArgumentException("Unsupported geometry type: "
+                + geom.getGeometryType());
+    }
+
+    /**
+     * Multi points are handled as a single part, so the LCS runs over all their points
+     */
+    private static boolean isMultiPart(int type) {
+        return type == MULTILINESTRING || type == MULTIPOLYGON || type == GEOMETRYCOLLECTION;
+    }
+
+    private static int partType(Optional<Geometry> geom, int index) {
+        if (!geom.isPresent()) {
+            return ABSENT;
+        }
+        int type = typeOf(geom.get());
+        if (!isMultiPart(type)) {
+            return index == 0 ? type : ABSENT;
+        }
+        return index < geom.get().getNumGeometries() ? typeOf(geom.get().getGeometryN(index))
+                : ABSENT;
+    }
+
+    private static List<double[][]> parts(Optional<Geometry> geom) {
+        List<double[][]> parts = Lists.newArrayList();
+        if (!geom.isPresent()) {
+            return parts;
+        }
+        if (isMultiPart(typeOf(geom.get()))) {
+            for (int i = 0; i < geom.get().getNumGeometries(); i++) {
+                Geometry part = geom.get().getGeometryN(i);
+                Preconditions.checkArgument(!(part instanceof GeometryCollection),
+                        "Nested geometry collections are not supported");
+                parts.add(rings(part));
             }
+        } else {
+            parts.add(rings(geom.get()));
         }
-        return new LCSGeometryDiffImpl(reversedPatches);
+        return parts;
     }
 
-    public boolean canBeAppliedOn(Optional<Geometry> obj) {
-        String wkt = obj.isPresent() ? obj.get().toText() : "";
-        Object[] res = diffMatchPatch.patch_apply(patches, wkt);
-        boolean[] bool = (boolean[]) res[1];
-        for (int i = 0; i < bool.length; i++) {
-            if (!bool[i]) {
-                return false;
+    private static double[][] rings(Geometry part) {
+        if (part instanceof Polygon) {
+            Polygon polygon = (Polygon) part;
+            double[][] rings = new double[1 + polygon.getNumInteriorRing()][];
+            rings[0] = packed(polygon.getExteriorRing().getCoordinateSequence());
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                rings[i + 1] = packed(polygon.getInteriorRingN(i).getCoordinateSequence());
             }
+            return rings;
+        } else if (part instanceof Point) {
+            return new double[][] { packed(((Point) part).getCoordinateSequence()) };
+        } else if (part instanceof LineString) {
+            return new double[][] { packed(((LineString) part).getCoordinateSequence()) };
         }
-        return true;
+        // multi point
+        return new double[][] { packed(part.getCoordinates()) };
     }
 
-    public Optional<Geometry> applyOn(Optional<Geometry> obj) {
-        Preconditions.checkState(canBeAppliedOn(obj));
-        String wkt = obj.isPresent() ? obj.get().toText() : "";
-        String res = (String) diffMatchPatch.patch_apply(patches, wkt)[0];
-        if (!res.isEmpty()) {
-            return Optional.fromNullable((Geometry) TextValueSerializer.fromString(
-                    FieldType.forBinding(Geometry.class), res));
-        } else {
-            return Optional.absent();
+    private static double[] packed(CoordinateSequence seq) {
+        double[] coords = new double[2 * seq.size()];
+        for (int i = 0; i < seq.size(); i++) {
+            coords[2 * i] = seq.getX(i);
+            coords[2 * i + 1] = seq.getY(i);
+        }
+        return coords;
+    }
+
+    private static double[] packed(Coordinate[] seq) {
+        double[] coords = new double[2 * seq.length];
+        for (int i = 0; i < seq.length; i++) {
+            coords[2 * i] = seq[i].x;
+            coords[2 * i + 1] = seq[i].y;
+        }
+        return coords;
+    }
+
+    private static Coordinate[] coordinates(double[] packed) {
+        Coordinate[] coords = new Coordinate[packed.length / 2];
+        for (int i = 0; i < coords.length; i++) {
+            coords[i] = new Coordinate(packed[2 * i], packed[2 * i + 1]);
+        }
+        return coords;
+    }
+
+    private static Geometry build(GeometryFactory factory, int type, List<Integer> partTypes,
+            List<double[][]> parts) {
+        if (!isMultiPart(type)) {
+            double[][] rings = parts.isEmpty() ? new double[0][] : parts.get(0);
+            return buildPart(factory, type, rings);
+        }
+        Geometry[] geoms = new Geometry[parts.size()];
+        for (int i = 0; i < geoms.length; i++) {
+            geoms[i] = buildPart(factory, partTypes.get(i).intValue(), parts.get(i));
+        }
+        switch (type) {
+        case MULTILINESTRING:
+            return factory.createMultiLineString(Arrays.copyOf(geoms, geoms.length,
+                    LineString[].class));
+        case MULTIPOLYGON:
+            return factory.createMultiPolygon(Arrays.copyOf(geoms, geoms.length,
+                    Polygon[].class));
+        default:
+            return factory.createGeometryCollection(geoms);
+        }
+    }
+
+    private static Geometry buildPart(GeometryFactory factory, int type, double[][] rings) {
+        double[] first = rings.length == 0 ? new double[0] : rings[0];
+        switch (type) {
+        case POINT:
+            return factory.createPoint(factory.getCoordinateSequenceFactory().create(
+                    coordinates(first)));
+        case LINESTRING:
+            return factory.createLineString(coordinates(first));
+        case LINEARRING:
+            return factory.createLinearRing(coordinates(first));
+        case MULTIPOINT:
+            return factory.createMultiPoint(coordinates(first));
+        case POLYGON:
+            List<LinearRing> holes = Lists.newArrayList();
+            for (int i = 1; i < rings.length; i++) {
+                // rings removed by the difference are left empty
+                if (rings[i].length > 0) {
+                    holes.add(factory.createLinearRing(coordinates(rings[i])));
+                }
+            }
+            return factory.createPolygon(factory.createLinearRing(coordinates(first)),
+                    holes.toArray(new LinearRing[holes.size()]));
+        default:
+            throw new IllegalArgumentException("Unsupported geometry part type: " + type);
         }
     }
 
@@ -251,7 +539,8 @@ public class LCSGeometryDiffImpl {
     }
 
     /**
-     * Returns a serialized text version of the difference
+     * Returns a serialized text version of the difference: the number of deleted, added and moved
+     * points, followed by the binary representation encoded in Base64
      */
     public String asText() {
         StringBuilder sb = new StringBuilder();
@@ -261,7 +550,17 @@ public class LCSGeometryDiffImpl {
         sb.append('/');
         sb.append(Integer.toString(replacings));
         sb.append('\t');
-        sb.append(diffMatchPatch.patch_toText(patches).replace("\n", "\\n"));
+        if (legacyPatches != null) {
+            sb.append(new diff_match_patch().patch_toText(legacyPatches).replace("\n", "\\n"));
+        } else {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                writeTo(new DataOutputStream(bytes));
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+            sb.append(BaseEncoding.base64().encode(bytes.toByteArray()));
+        }
         return sb.toString();
     }
 
@@ -271,88 +570,112 @@ public class LCSGeometryDiffImpl {
             return false;
         }
         LCSGeometryDiffImpl d = (LCSGeometryDiffImpl) o;
-        for (int i = 0; i < d.patches.size(); i++) {
-            Patch patchA = patches.get(i);
-            Patch patchB = d.patches.get(i);
-            if (!patchA.equals(patchB)) {
-                return false;
-            }
+        if (legacyPatches != null || d.legacyPatches != null) {
+            return legacyPatches != null && legacyPatches.equals(d.legacyPatches);
         }
-        return true;
+        return oldType == d.oldType && newType == d.newType && Arrays.equals(parts, d.parts);
     }
 
-    // ========================================================================================
-    // These 2 methods are meant to be used to split a text containing a representation of
-    // coordinate in a geometry into chunks representing points that can be then hashed
-    // as characters.
-    // They are just an adapted version of the diff_lineToChars method in diff_match_patch, using a
-    // different split character and some extra behaviour
-
-    protected LinesToCharsResult coordsToChars(String text1, String text2) {
-        List<String> lineArray = new ArrayList<String>();
-        Map<String, Integer> lineHash = new HashMap<String, Integer>();
-        lineArray.add("");
-
-        String chars1 = splitAndHash(text1, lineArray, lineHash, ' ');
-        String chars2 = splitAndHash(text2, lineArray, lineHash, ' ');
-        return new LinesToCharsResult(chars1, chars2, lineArray);
-    }
-
-    private String splitAndHash(String text, List<String> lineArray, Map<String, Integer> lineHash,
-            char splitChar) {
-        StringBuilder chars = new StringBuilder();
-        Iterable<String> tokens = Splitter.on(" ").split(text);
-        for (String token : tokens) {
-            if (lineHash.containsKey(token)) {
-                chars.append(String.valueOf((char) (int) lineHash.get(token)));
-            } else {
-                lineArray.add(token);
-                lineHash.put(token, lineArray.size() - 1);
-                chars.append(String.valueOf((char) (lineArray.size() - 1)));
-            }
-        }
-        return chars.toString();
-    }
-
-    protected void charsToCoords(LinkedList<Diff> diffs, List<String> lineArray) {
-        StringBuilder text;
-        for (Diff diff : diffs) {
-            text = new StringBuilder();
-            for (int y = 0; y < diff.text.length(); y++) {
-                String coordText = lineArray.get(diff.text.charAt(y));
-                text.append(coordText);
-                if (coordText.length() > 2) {
-                    text.append(' ');
-                }
-            }
-            diff.text = text.toString();
-        }
+    @Override
+    public int hashCode() {
+        return legacyPatches != null ? legacyPatches.hashCode() : Arrays.hashCode(parts);
     }
 
     /**
      * Returns a string with a human-readable version of this geometry diff. It is basically a
      * collection of coordinates, using the following syntax:
-     * 
+     *
      * - Coordinates added are shown between brackets, while removed coordinates are shown between
      * square brackets.
-     * 
+     *
      * - The structure of the text representing the geometry is as follows:
-     * 
+     *
      * - It starts with the type name of the geometry, followed by the list of coordinates -
      * Coordinates are x,y pairs, separated by a whitespace - In the case of multi-geometries,
      * sub-geometries are separated by the slash (`/`) sign. For instance, `MultiLineString 0,10
      * 0,20 0,30 / 10,10 50,65`` represents a multi-line with two lines
-     * 
+     *
      * - In the case of polygons, the first string of coordinates represents the outer ring, and
      * inner rings are added next, delimited by the ``@`` sign. For instance, ``MultiPolygon
      * 40.0,40.0 20.0,45.0 45.0,30.0 40.0,40.0 / 20.0,35.0 45.0,20.0 30.0,5.0 10.0,10.0 10.0,30.0
      * 20.0,35.0 @ 30.0,20.0 20.0,25.0 20.0,15.0 30.0,20.0`` represents a geometry with two
      * polygons, the last one of them with an inner ring.
-     * 
-     * @return
+     *
+     * @return the string, or {@code null} if this difference was not computed from the geometries
+     *         but read from its serialized form
      */
+    @Nullable
     public String getDiffCoordsString() {
-        return diffText;
+        if (oldGeometry == null) {
+            return null;
+        }
+        List<double[][]> oldParts = parts(oldGeometry);
+        StringBuilder sb = new StringBuilder();
+        sb.append(typeName(newType == ABSENT ? oldType : newType));
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                sb.append(' ').append(SUBGEOM_SEPARATOR);
+            }
+            double[][] oldRings = i < oldParts.size() ? oldParts.get(i) : new double[0][];
+            for (int j = 0; j < parts[i].rings.length; j++) {
+                if (j > 0) {
+                    sb.append(' ').append(INNER_RING_SEPARATOR);
+                }
+                double[] oldRing = j < oldRings.length ? oldRings[j] : new double[0];
+                appendRing(sb, oldRing, parts[i].rings[j].edits());
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendRing(StringBuilder sb, double[] coords, Edit[] edits) {
+        int index = 0;
+        for (Edit edit : edits) {
+            appendCoords(sb, coords, index, edit.position, true);
+            if (edit.deleted.length > 0) {
+                sb.append(" [");
+                appendCoords(sb, edit.deleted, 0, edit.deletedCount(), false).append(']');
+            }
+            if (edit.inserted.length > 0) {
+                sb.append(" (");
+                appendCoords(sb, edit.inserted, 0, edit.insertedCount(), false).append(')');
+            }
+            index = edit.position + edit.deletedCount();
+        }
+        appendCoords(sb, coords, index, coords.length / 2, true);
+    }
+
+    private static StringBuilder appendCoords(StringBuilder sb, double[] coords, int from,
+            int to, boolean leadingSpace) {
+        for (int i = from; i < to; i++) {
+            if (leadingSpace || i > from) {
+                sb.append(' ');
+            }
+            sb.append(coords[2 * i]).append(',').append(coords[2 * i + 1]);
+        }
+        return sb;
     }
 
+    private static String typeName(int type) {
+        switch (type) {
+        case POINT:
+            return "Point";
+        case LINESTRING:
+            return "LineString";
+        case LINEARRING:
+            return "LinearRing";
+        case POLYGON:
+            return "Polygon";
+        case MULTIPOINT:
+            return "MultiPoint";
+        case MULTILINESTRING:
+            return "MultiLineString";
+        case MULTIPOLYGON:
+            return "MultiPolygon";
+        case GEOMETRYCOLLECTION:
+            return "GeometryCollection";
+        default:
+            return "";
+        }
+    }
 }
@@ -118,7 +118,7 @@ public class PatchSerializer {
                     String featureTypeId = headerTokens[2].trim();
                     RevFeatureType revFeatureType;
                     revFeatureType = featureTypes.get(featureTypeId);
-                    FeatureBuilder featureBuilder = new FeatureBuilder(revFeatureType);
+                    FeatureBuilder featureBuilder = FeatureBuilder.forType(revFeatureType);
                     ObjectReader<RevFeature> reader = factory.createFeatureReader();
                     RevFeature revFeature = reader.read(null, stream);
                     Feature feature = featureBuilder.build(NodeRef.nodeFromPath(fullPath),
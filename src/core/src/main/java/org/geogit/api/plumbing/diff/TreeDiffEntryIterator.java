@@ -11,7 +11,8 @@ import static org.geogit.api.plumbing.diff.DiffEntry.ChangeType.ADDED;
 import static org.geogit.api.plumbing.diff.DiffEntry.ChangeType.REMOVED;
 
 import java.util.Iterator;
-import java.util.Set;
+import java.util.List;
+import java.util.SortedSet;
 
 import javax.annotation.Nullable;
 
@@ -23,6 +24,7 @@ import org.geogit.api.RevObject.TYPE;
 import org.geogit.api.RevTree;
 import org.geogit.api.plumbing.diff.DepthTreeIterator.Strategy;
 import org.geogit.api.plumbing.diff.DiffEntry.ChangeType;
+import org.geogit.storage.NodePathStorageOrder;
 import org.geogit.storage.NodeStorageOrder;
 import org.geogit.storage.ObjectDatabase;
 
@@ -30,6 +32,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableSortedMap;
@@ -46,6 +49,12 @@ import com.google.common.collect.UnmodifiableIterator;
  * changed. If the two elements of the current iteration are not the same, find out whether it's an
  * addition or a deletion; when the change is on a subtree, returns the subtree differences before
  * continuing with the own ones.
+ * <p>
+ * The traversal can be resumed right after the path of a previously returned entry, in which case
+ * buckets and children that come before it in {@link NodePathStorageOrder storage order} are
+ * skipped without being compared. Where the order of the entries is not given by the storage order
+ * (a buckets tree compared against a leaf tree), the entries up to the resume path are computed
+ * and discarded instead.
  */
 class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
 
@@ -63,9 +72,25 @@ class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
      */
     private final Strategy strategy;
 
+    private static final NodePathStorageOrder ORDER = new NodePathStorageOrder();
+
     public TreeDiffEntryIterator(@Nullable NodeRef oldTreeRef, @Nullable NodeRef newTreeRef,
             @Nullable RevTree oldTree, @Nullable RevTree newTree, final boolean reportTrees,
             final boolean recursive, final ObjectDatabase db) {
+        this(oldTreeRef, newTreeRef, oldTree, newTree, reportTrees, recursive, db, null, 0);
+    }
+
+    /**
+     * @param seekSteps the path steps, relative to the trees path, of the entry to resume the
+     *        traversal after, or {@code null} to traverse the whole trees. An empty list means the
+     *        entry for the trees themselves has already been returned.
+     * @param depth the bucket depth of {@code oldTree} and {@code newTree}, zero unless they are
+     *        bucket trees of a larger tree
+     */
+    TreeDiffEntryIterator(@Nullable NodeRef oldTreeRef, @Nullable NodeRef newTreeRef,
+            @Nullable RevTree oldTree, @Nullable RevTree newTree, final boolean reportTrees,
+            final boolean recursive, final ObjectDatabase db, @Nullable List<String> seekSteps,
+            final int depth) {
 
         checkArgument(oldTree != null || newTree != null);
         this.reportTrees = reportTrees;
@@ -77,9 +102,12 @@ class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
         if (oldTree != null && newTree != null && oldTree.getId().equals(newTree.getId())) {
             delegate = Iterators.emptyIterator();
         } else if (oldTree == null) {
-            delegate = addRemoveAll(newTreeRef, newTree, ADDED);
+            delegate = addRemoveAll(newTreeRef, newTree, ADDED, seekSteps);
         } else if (newTree == null) {
-            delegate = addRemoveAll(oldTreeRef, oldTree, REMOVED);
+            delegate = addRemoveAll(oldTreeRef, oldTree, REMOVED, seekSteps);
+        } else if (seekSteps != null && seekSteps.isEmpty()) {
+            // the entry for these trees was returned after their contents
+            delegate = Iterators.emptyIterator();
         } else if (!oldTree.buckets().isPresent() && !newTree.buckets().isPresent()) {
 
             Strategy itStategy = recursive ? DepthTreeIterator.Strategy.CHILDREN
@@ -91,10 +119,10 @@ class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
             Iterator<NodeRef> right = new DepthTreeIterator(newTreeRef.path(),
                     newTreeRef.getMetadataId(), newTree, db, itStategy);
 
-            delegate = new ChildrenChildrenDiff(left, right);
+            delegate = new ChildrenChildrenDiff(left, right, seekSteps);
         } else if (oldTree.buckets().isPresent() && newTree.buckets().isPresent()) {
             delegate = new BucketBucketDiff(oldTreeRef, newTreeRef, oldTree.buckets().get(),
-                    newTree.buckets().get());
+                    newTree.buckets().get(), seekSteps, depth);
         } else if (newTree.buckets().isPresent()) {
             checkState(!oldTree.buckets().isPresent());
             DepthTreeIterator left = new DepthTreeIterator(oldTreeRef.path(),
@@ -116,12 +144,23 @@ class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
             delegate = new ChildrenChildrenDiff(leftIterator, right);
             // delegate = new BucketsChildrenDiff(left, right);
         }
+        if (seekSteps != null && !seekSteps.isEmpty() && oldTree != null && newTree != null
+                && (oldTree.buckets().isPresent() ^ newTree.buckets().isPresent())) {
+            // entries are not in storage order, skip them up to the resume path
+            String treePath = (oldTreeRef == null ? newTreeRef : oldTreeRef).path();
+            String resumePath = treePath;
+            for (String step : seekSteps) {
+                resumePath = NodeRef.appendChild(resumePath, step);
+            }
+            delegate = skipThrough(delegate, resumePath);
+        }
 
         // If the tree has changed its metadata Id, it will not be reported as a diff
         // up to this point.
         // We check here that both metadata Id's are identical, and if not, we add the DiffEntry
         // corresponding to the tree.
         if (reportTrees && oldTreeRef != null && newTreeRef != null
+                && !(seekSteps != null && seekSteps.isEmpty())
                 && !oldTreeRef.getMetadataId().equals(newTreeRef.getMetadataId())) {
             DiffEntry diffEntry = new DiffEntry(oldTreeRef, newTreeRef);
             UnmodifiableIterator<DiffEntry> iter = Iterators.singletonIterator(diffEntry);
@@ -155,20 +194,50 @@ class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
         return endOfData();
     }
 
+    /**
+     * @return the entries in {@code entries} that come after the one at {@code resumePath}
+     */
+    static Iterator<DiffEntry> skipThrough(final Iterator<DiffEntry> entries,
+            final String resumePath) {
+        return new AbstractIterator<DiffEntry>() {
+            private boolean found;
+
+            @Override
+            protected DiffEntry computeNext() {
+                while (entries.hasNext()) {
+                    DiffEntry next = entries.next();
+                    if (found) {
+                        return next;
+                    }
+                    found = resumePath.equals(next.newPath())
+                            || resumePath.equals(next.oldPath());
+                }
+                return endOfData();
+            }
+        };
+    }
+
     private Iterator<DiffEntry> addRemoveAll(@Nullable final NodeRef treeRef, final RevTree tree,
-            final ChangeType changeType) {
+            final ChangeType changeType, @Nullable List<String> seekSteps) {
         DepthTreeIterator treeIterator;
 
         final String path = treeRef == null ? "" : treeRef.path();
         final ObjectId metadataId = treeRef == null ? ObjectId.NULL : treeRef.getMetadataId();
 
         treeIterator = new DepthTreeIterator(path, metadataId, tree, objectDb, strategy);
+        if (seekSteps != null && !seekSteps.isEmpty()) {
+            String resumePath = path;
+            for (String step : seekSteps) {
+                resumePath = NodeRef.appendChild(resumePath, step);
+            }
+            treeIterator.setResumeAfter(resumePath);
+        }
 
         Iterator<DiffEntry> iterator;
 
         iterator = Iterators.transform(treeIterator, new RefToDiffEntry(changeType));
 
-        if (reportTrees && !NodeRef.ROOT.equals(path)) {
+        if (reportTrees && seekSteps == null && !NodeRef.ROOT.equals(path)) {
             NodeRef oldTreeRef = ChangeType.ADDED.equals(changeType) ? null : treeRef;
             NodeRef newTreeRef = ChangeType.ADDED.equals(changeType) ? treeRef : null;
             DiffEntry treeEntry = new DiffEntry(oldTreeRef, newTreeRef);
@@ -193,8 +262,32 @@ class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
         private @Nullable
         Iterator<DiffEntry> subtreeIterator;
 
+        /**
+         * Path steps to resume the traversal after, {@code null} once the resume point has been
+         * passed
+         */
+        private @Nullable
+        List<String> seekSteps;
+
         public ChildrenChildrenDiff(Iterator<NodeRef> left, Iterator<NodeRef> right) {
+            this(left, right, null);
+        }
 
+        public ChildrenChildrenDiff(Iterator<NodeRef> left, Iterator<NodeRef> right,
+                @Nullable List<String> seekSteps) {
+
+            if (seekSteps != null && !seekSteps.isEmpty()) {
+                this.seekSteps = seekSteps;
+                final String seekStep = seekSteps.get(0);
+                Predicate<NodeRef> notBefore = new Predicate<NodeRef>() {
+                    @Override
+                    public boolean apply(NodeRef input) {
+                        return !DepthTreeIterator.isBefore(input.getNode(), seekStep);
+                    }
+                };
+                left = Iterators.filter(left, notBefore);
+                right = Iterators.filter(right, notBefore);
+            }
             this.left = Iterators.peekingIterator(left);
             this.right = Iterators.peekingIterator(right);
             this.comparator = new NodeStorageOrder();
@@ -240,8 +333,22 @@ class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
             final boolean isSubtree = (nextLeft != null && nextLeft.getType() == TYPE.TREE)
                     || (nextRight != null && nextRight.getType() == TYPE.TREE);
 
+            if (seekSteps != null) {
+                final List<String> steps = seekSteps;
+                seekSteps = null;
+                final String name = (nextLeft == null ? nextRight : nextLeft).name();
+                if (name.equals(steps.get(0))) {
+                    // the resume path or one of its parents, already returned
+                    if (isSubtree && recursive) {
+                        this.subtreeIterator = resolveSubtreeIterator(nextLeft, nextRight,
+                                steps.subList(1, steps.size()));
+                    }
+                    return computeNext();
+                }
+            }
+
             if (isSubtree) {
-                this.subtreeIterator = resolveSubtreeIterator(nextLeft, nextRight);
+                this.subtreeIterator = resolveSubtreeIterator(nextLeft, nextRight, null);
                 return computeNext();
             }
 
@@ -250,7 +357,7 @@ class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
         }
 
         private Iterator<DiffEntry> resolveSubtreeIterator(@Nullable NodeRef nextLeft,
-                @Nullable NodeRef nextRight) {
+                @Nullable NodeRef nextRight, @Nullable List<String> seekSteps) {
 
             checkArgument(nextLeft != null || nextRight != null);
 
@@ -267,7 +374,7 @@ class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
             Iterator<DiffEntry> it;
 
             it = new TreeDiffEntryIterator(nextLeft, nextRight, fromTree, toTree, reportTrees,
-                    recursive, objectDb);
+                    recursive, objectDb, seekSteps, 0);
 
             return it;
         }
@@ -321,17 +428,35 @@ class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
 
         private NodeRef rightRef;
 
+        private final int depth;
+
+        /**
+         * The bucket the resume path falls into, if any, buckets before it are skipped
+         */
+        private final @Nullable
+        Integer seekBucket;
+
+        private final @Nullable
+        List<String> seekSteps;
+
         public BucketBucketDiff(final NodeRef leftRef, final NodeRef rightRef,
                 final ImmutableSortedMap<Integer, Bucket> left,
-                final ImmutableSortedMap<Integer, Bucket> right) {
+                final ImmutableSortedMap<Integer, Bucket> right,
+                final @Nullable List<String> seekSteps, final int depth) {
 
             this.leftRef = leftRef;
             this.rightRef = rightRef;
+            this.depth = depth;
+            this.seekSteps = seekSteps;
+            this.seekBucket = seekSteps == null ? null : ORDER.bucket(seekSteps.get(0), depth);
             int expectedKeys = left.size() + right.size();
             int expectedValuesPerKey = 2;
             leftRightBuckets = ArrayListMultimap.create(expectedKeys, expectedValuesPerKey);
 
-            Set<Integer> buckets = Sets.newTreeSet(Sets.union(left.keySet(), right.keySet()));
+            SortedSet<Integer> buckets = Sets.newTreeSet(Sets.union(left.keySet(), right.keySet()));
+            if (seekBucket != null) {
+                buckets = buckets.tailSet(seekBucket);
+            }
             for (Integer bucket : buckets) {
                 leftRightBuckets.put(bucket, Optional.fromNullable(left.get(bucket)));
                 leftRightBuckets.put(bucket, Optional.fromNullable(right.get(bucket)));
@@ -360,8 +485,9 @@ class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
                 final RevTree left = resolveTree(leftBucket);
                 final RevTree right = resolveTree(rightBucket);
 
+                List<String> bucketSeekSteps = bucket.equals(seekBucket) ? seekSteps : null;
                 this.currentBucketIterator = new TreeDiffEntryIterator(leftRef, rightRef, left,
-                        right, reportTrees, recursive, objectDb);
+                        right, reportTrees, recursive, objectDb, bucketSeekSteps, depth + 1);
                 break;
             }
             return computeNext();
@@ -0,0 +1,412 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.api.porcelain;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
+
+import org.geogit.api.AbstractGeoGitOp;
+import org.geogit.api.CommitBuilder;
+import org.geogit.api.NodeRef;
+import org.geogit.api.ObjectId;
+import org.geogit.api.ProgressListener;
+import org.geogit.api.Ref;
+import org.geogit.api.RevCommit;
+import org.geogit.api.RevFeature;
+import org.geogit.api.RevFeatureBuilder;
+import org.geogit.api.RevFeatureType;
+import org.geogit.api.RevTree;
+import org.geogit.api.SymRef;
+import org.geogit.api.plumbing.FindTreeChild;
+import org.geogit.api.plumbing.RefParse;
+import org.geogit.api.plumbing.ResolveTreeish;
+import org.geogit.api.plumbing.UpdateHistoryIndex;
+import org.geogit.api.plumbing.UpdateRef;
+import org.geogit.api.plumbing.WriteBack;
+import org.geogit.repository.FeatureToDelete;
+import org.geogit.repository.RevTreeBuilder2;
+import org.geogit.storage.BulkOpListener;
+import org.geogit.storage.BulkOpListener.CountingListener;
+import org.geogit.storage.NodePathStorageOrder;
+import org.geogit.storage.ObjectDatabase;
+import org.opengis.feature.Feature;
+import org.opengis.feature.type.FeatureType;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Imports a stream of features and commits them in a single step, writing the features and the
+ * resulting trees straight to the {@link ObjectDatabase} instead of going through the working
+ * tree and the index.
+ * <p>
+ * The regular {@code import}, {@code add}, {@code commit} sequence stores each feature three
+ * times: in the working tree, then in the index, then in the repository. This operation converts
+ * and stores the features in parallel batches directly in the repository database, while their
+ * nodes are collected per tree in a {@link RevTreeBuilder2}, which sorts them in
+ * {@link NodePathStorageOrder storage order} so that each feature tree is built bottom up in a
+ * single pass once all the features are stored.
+ * <p>
+ * The resulting commit is created on top of the current branch, and {@link Ref#WORK_HEAD
+ * WORK_HEAD} and {@link Ref#STAGE_HEAD STAGE_HEAD} are updated to point to its root tree.
+ * Hence the working tree and the index must be clean before calling this operation.
+ */
+public class BulkImportOp extends AbstractGeoGitOp<RevCommit> {
+
+    /**
+     * Number of features converted and stored per task
+     */
+    private static final int BATCH_SIZE = 10 * 1000;
+
+    private Iterator<? extends Feature> features;
+
+    private Function<Feature, String> treePathResolver;
+
+    private Integer collectionSize;
+
+    private String message;
+
+    private String authorName;
+
+    private String authorEmail;
+
+    /**
+     * @param features the features to import
+     * @return {@code this}
+     */
+    public BulkImportOp setFeatures(Iterator<? extends Feature> features) {
+        this.features = features;
+        return this;
+    }
+
+    /**
+     * Sets the path of the tree all the features are imported to.
+     *
+     * @param treePath the path of the destination tree
+     * @return {@code this}
+     */
+    public BulkImportOp setPath(final String treePath) {
+        checkNotNull(treePath);
+        checkArgument(!treePath.isEmpty(), "empty tree path");
+        this.treePathResolver = new Function<Feature, String>() {
+            @Override
+            public String apply(Feature input) {
+                return treePath;
+            }
+        };
+        return this;
+    }
+
+    /**
+     * Sets a function to determine the destination tree of each feature, for imports that span
+     * several trees.
+     *
+     * @param treePathResolver a function that returns the path of the tree a feature is imported
+     *        to
+     * @return {@code this}
+     */
+    public BulkImportOp setTreePathResolver(Function<Feature, String> treePathResolver) {
+        this.treePathResolver = treePathResolver;
+        return this;
+    }
+
+    /**
+     * @param collectionSize if given, the expected number of features, used to report progress
+     * @return {@code this}
+     */
+    public BulkImportOp setCollectionSize(@Nullable Integer collectionSize) {
+        this.collectionSize = collectionSize;
+        return this;
+    }
+
+    /**
+     * @param message the message of the resulting commit
+     * @return {@code this}
+     */
+    public BulkImportOp setMessage(@Nullable String message) {
+        this.message = message;
+        return this;
+    }
+
+    /**
+     * If set, overrides the author and committer name and email from the configuration
+     *
+     * @param authorName the author's name
+     * @param authorEmail the author's email
+     * @return {@code this}
+     */
+    public BulkImportOp setAuthor(@Nullable String authorName, @Nullable String authorEmail) {
+        this.authorName = authorName;
+        this.authorEmail = authorEmail;
+        return this;
+    }
+
+    /**
+     * Executes the import, storing all the features and trees and committing the result.
+     *
+     * @return the new commit
+     */
+    @Override
+    protected RevCommit _call() {
+        checkState(features != null, "features not provided");
+        checkState(treePathResolver != null, "tree path not provided");
+        checkState(workingTree().isClean() && index().isClean(),
+                "The working tree and index must be clean to perform a bulk import");
+
+        final Optional<Ref> currHead = command(RefParse.class).setName(Ref.HEAD).call();
+        checkState(currHead.isPresent(), "Repository has no HEAD, can't commit");
+        final Ref headRef = currHead.get();
+        checkState(headRef instanceof SymRef,//
+                "HEAD is in a dettached state, cannot commit. Create a branch from it before committing");
+
+        final String currentBranch = ((SymRef) headRef).getTarget();
+        final ObjectId currHeadCommitId = headRef.getObjectId();
+        final ObjectDatabase objectDb = objectDatabase();
+
+        RevTree headTree = RevTree.EMPTY;
+        if (!currHeadCommitId.isNull()) {
+            Optional<ObjectId> headTreeId = command(ResolveTreeish.class)
+                    .setTreeish(currHeadCommitId).call();
+            if (headTreeId.isPresent() && !headTreeId.get().isNull()) {
+                headTree = objectDb.getTree(headTreeId.get());
+            }
+        }
+
+        final ProgressListener listener = getProgressListener();
+        final int nThreads = Math.max(2, platform().availableProcessors());
+        final ExecutorService executorService = Executors.newFixedThreadPool(nThreads,
+                new ThreadFactoryBuilder().setNameFormat("BulkImport-%d").build());
+        // node index partitions are sorted and flushed on their own pool, as tree building tasks
+        // wait for them to finish
+        final ExecutorService indexService = Executors.newFixedThreadPool(
+                Math.max(2, nThreads / 2),
+                new ThreadFactoryBuilder().setNameFormat("BulkImport-index-%d").build());
+
+        final ObjectId newTreeId;
+        try {
+            listener.started();
+            Stopwatch sw = new Stopwatch().start();
+
+            Map<String, RevTreeBuilder2> builders = new TreeMap<String, RevTreeBuilder2>();
+            int inserted = insert(builders, headTree, executorService, indexService, nThreads);
+            listener.setDescription(String.format("%,d features inserted in %s", inserted,
+                    sw.stop()));
+
+            sw.reset().start();
+            newTreeId = buildTrees(builders, headTree, executorService);
+            listener.setDescription(String.format("Trees built in %s", sw.stop()));
+        } finally {
+            executorService.shutdownNow();
+            indexService.shutdownNow();
+        }
+
+        final RevCommit commit;
+        {
+            CommitBuilder cb = new CommitBuilder();
+            String committer = authorName == null ? resolveConfig("user.name") : authorName;
+            String committerEmail = authorName == null ? resolveConfig("user.email")
+                    : authorEmail;
+            cb.setAuthor(committer);
+            cb.setAuthorEmail(committerEmail);
+            cb.setCommitter(committer);
+            cb.setCommitterEmail(committerEmail);
+            cb.setMessage(message);
+            if (!currHeadCommitId.isNull()) {
+                cb.setParentIds(Lists.newArrayList(currHeadCommitId));
+            }
+            cb.setTreeId(newTreeId);
+            long timestamp = platform().currentTimeMillis();
+            cb.setCommitterTimestamp(timestamp);
+            cb.setAuthorTimestamp(timestamp);
+            cb.setCommitterTimeZoneOffset(platform().timeZoneOffset(timestamp));
+            cb.setAuthorTimeZoneOffset(platform().timeZoneOffset(timestamp));
+            commit = cb.build();
+        }
+        objectDb.put(commit);
+
+        command(UpdateRef.class).setName(currentBranch).setNewValue(commit.getId()).call();
+        index().updateStageHead(newTreeId);
+        workingTree().updateWorkHead(newTreeId);
+        command(UpdateHistoryIndex.class).addTip(commit.getId()).call();
+
+        listener.complete();
+        return commit;
+    }
+
+    /**
+     * Converts and stores the features in batches of {@link #BATCH_SIZE}, keeping at most twice
+     * as many batches in flight as threads so that a slow database doesn't make the pending
+     * features pile up in memory.
+     *
+     * @return the number of features stored
+     */
+    private int insert(final Map<String, RevTreeBuilder2> builders, final RevTree headTree,
+            final ExecutorService executorService, final ExecutorService indexService,
+            final int nThreads) {
+
+        final ObjectDatabase objectDb = objectDatabase();
+        final ProgressListener listener = getProgressListener();
+        final CountingListener countingListener = BulkOpListener.newCountingListener();
+        final LinkedList<Future<Integer>> pending = new LinkedList<Future<Integer>>();
+
+        int count = 0;
+        try {
+            while (features.hasNext()) {
+                List<Feature> batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+                List<RevTreeBuilder2> batchBuilders = Lists.newArrayListWithCapacity(BATCH_SIZE);
+                while (batch.size() < BATCH_SIZE && features.hasNext()) {
+                    Feature feature = features.next();
+                    checkArgument(!(feature instanceof FeatureToDelete),
+                            "Bulk import does not support feature deletes");
+                    batch.add(feature);
+                    batchBuilders
+                            .add(getTreeBuilder(builders, headTree, feature, indexService));
+                }
+                while (pending.size() >= 2 * nThreads) {
+                    pending.removeFirst().get();
+                }
+                pending.add(executorService.submit(new InsertTask(batch, batchBuilders,
+                        objectDb, countingListener)));
+
+                count += batch.size();
+                if (collectionSize == null) {
+                    listener.setProgress(count);
+                } else {
+                    listener.setProgress((float) (count * 100) / collectionSize.intValue());
+                }
+            }
+            for (Future<Integer> f : pending) {
+                f.get();
+            }
+        } catch (Exception e) {
+            throw Throwables.propagate(Throwables.getRootCause(e));
+        }
+        return countingListener.inserted() + countingListener.found();
+    }
+
+    private RevTreeBuilder2 getTreeBuilder(final Map<String, RevTreeBuilder2> builders,
+            final RevTree headTree, final Feature feature, final ExecutorService indexService) {
+
+        final String treePath = treePathResolver.apply(feature);
+        RevTreeBuilder2 builder = builders.get(treePath);
+        if (builder == null) {
+            final ObjectDatabase objectDb = objectDatabase();
+            Optional<NodeRef> treeRef = command(FindTreeChild.class).setIndex(false)
+                    .setParent(headTree).setChildPath(treePath).call();
+
+            RevTree origTree = RevTree.EMPTY;
+            if (treeRef.isPresent()) {
+                origTree = objectDb.getTree(treeRef.get().objectId());
+            }
+            FeatureType type = feature.getType();
+            RevFeatureType revFeatureType = RevFeatureType.build(type);
+            objectDb.put(revFeatureType);
+
+            builder = new RevTreeBuilder2(objectDb, origTree, revFeatureType.getId(),
+                    indexService);
+            builders.put(treePath, builder);
+        }
+        return builder;
+    }
+
+    /**
+     * Builds the feature trees in parallel and writes them back to the root tree, parents
+     * first as the builders are sorted by path.
+     *
+     * @return the id of the new root tree
+     */
+    private ObjectId buildTrees(final Map<String, RevTreeBuilder2> builders,
+            final RevTree headTree, final ExecutorService executorService) {
+
+        List<Callable<RevTree>> tasks = Lists.newArrayList();
+        for (final RevTreeBuilder2 builder : builders.values()) {
+            tasks.add(new Callable<RevTree>() {
+                @Override
+                public RevTree call() {
+                    return builder.build();
+                }
+            });
+        }
+
+        final ObjectDatabase objectDb = objectDatabase();
+        RevTree root = headTree;
+        try {
+            List<Future<RevTree>> trees = executorService.invokeAll(tasks);
+            int i = 0;
+            for (Entry<String, RevTreeBuilder2> entry : builders.entrySet()) {
+                String treePath = entry.getKey();
+                ObjectId metadataId = entry.getValue().getDefaultMetadataId();
+                RevTree tree = trees.get(i++).get();
+
+                ObjectId newRootId = command(WriteBack.class).setAncestor(root.builder(objectDb))
+                        .setChildPath(treePath).setMetadataId(metadataId).setToIndex(false)
+                        .setTree(tree).call();
+                root = objectDb.getTree(newRootId);
+            }
+        } catch (Exception e) {
+            throw Throwables.propagate(Throwables.getRootCause(e));
+        }
+        return root.getId();
+    }
+
+    private String resolveConfig(final String key) {
+        Optional<String> value = command(ConfigGet.class).setName(key).call();
+        checkState(value.isPresent(),
+                "%s not found in config. Use geogit config [--global] %s <value> to configure it.",
+                key, key);
+        return value.get();
+    }
+
+    private static class InsertTask implements Callable<Integer> {
+
+        private final List<Feature> features;
+
+        private final List<RevTreeBuilder2> builders;
+
+        private final ObjectDatabase objectDb;
+
+        private final BulkOpListener listener;
+
+        InsertTask(List<Feature> features, List<RevTreeBuilder2> builders,
+                ObjectDatabase objectDb, BulkOpListener listener) {
+            this.features = features;
+            this.builders = builders;
+            this.objectDb = objectDb;
+            this.listener = listener;
+        }
+
+        @Override
+        public Integer call() {
+            List<RevFeature> revFeatures = Lists.newArrayListWithCapacity(features.size());
+            for (int i = 0; i < features.size(); i++) {
+                Feature feature = features.get(i);
+                RevFeature revFeature = RevFeatureBuilder.build(feature);
+                builders.get(i).putFeature(revFeature.getId(), feature.getIdentifier().getID(),
+                        feature.getBounds(), feature.getType());
+                revFeatures.add(revFeature);
+            }
+            objectDb.putAll(revFeatures.iterator(), listener);
+            return Integer.valueOf(revFeatures.size());
+        }
+    }
+}
@@ -26,6 +26,7 @@ import org.geogit.api.hooks.Hookable;
 import org.geogit.api.plumbing.RefParse;
 import org.geogit.api.plumbing.ResolveTreeish;
 import org.geogit.api.plumbing.RevObjectParse;
+import org.geogit.api.plumbing.UpdateHistoryIndex;
 import org.geogit.api.plumbing.UpdateRef;
 import org.geogit.api.plumbing.UpdateSymRef;
 import org.geogit.api.plumbing.WriteTree2;
@@ -363,6 +364,8 @@ public class CommitOp extends AbstractGeoGitOp<RevCommit> {
         checkState(treeId.isPresent());
         checkState(newTreeId.equals(treeId.get()));
 
+        command(UpdateHistoryIndex.class).addTip(commit.getId()).call();
+
         getProgressListener().setProgress(100f);
         getProgressListener().complete();
 
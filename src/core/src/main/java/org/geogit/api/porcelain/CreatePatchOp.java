@@ -85,7 +85,7 @@ public class CreatePatchOp extends AbstractGeoGitOp<Patch> {
                         featureTypes.put(newObject.getMetadataId(), featureType);
                     }
 
-                    FeatureBuilder featureBuilder = new FeatureBuilder(featureType);
+                    FeatureBuilder featureBuilder = FeatureBuilder.forType(featureType);
                     Feature feature = featureBuilder.build(diffEntry.newObjectId().toString(),
                             (RevFeature) revObject);
                     String name = diffEntry.newPath();
@@ -113,7 +113,7 @@ public class CreatePatchOp extends AbstractGeoGitOp<Patch> {
                         featureTypes.put(oldObject.getMetadataId(), featureType);
                     }
 
-                    FeatureBuilder featureBuilder = new FeatureBuilder(featureType);
+                    FeatureBuilder featureBuilder = FeatureBuilder.forType(featureType);
                     Feature feature = featureBuilder.build(diffEntry.oldObjectId().toString(),
                             (RevFeature) revObject);
                     String name = diffEntry.oldPath();
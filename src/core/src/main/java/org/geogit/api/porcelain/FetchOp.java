@@ -17,6 +17,7 @@ import org.geogit.api.Remote;
 import org.geogit.api.SymRef;
 import org.geogit.api.plumbing.LsRemote;
 import org.geogit.api.plumbing.RefParse;
+import org.geogit.api.plumbing.UpdateHistoryIndex;
 import org.geogit.api.plumbing.UpdateRef;
 import org.geogit.api.plumbing.UpdateSymRef;
 import org.geogit.api.porcelain.ConfigOp.ConfigAction;
@@ -283,6 +284,8 @@ public class FetchOp extends AbstractGeoGitOp<FetchResult> {
                     .setScope(ConfigScope.LOCAL).setName(Repository.DEPTH_CONFIG_KEY).call();
         }
 
+        command(UpdateHistoryIndex.class).call();
+
         getProgressListener().complete();
 
         return result;
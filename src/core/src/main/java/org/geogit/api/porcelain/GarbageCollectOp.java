@@ -0,0 +1,276 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.api.porcelain;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.geogit.api.AbstractGeoGitOp;
+import org.geogit.api.Bucket;
+import org.geogit.api.GeogitTransaction;
+import org.geogit.api.Node;
+import org.geogit.api.ObjectId;
+import org.geogit.api.Ref;
+import org.geogit.api.RevCommit;
+import org.geogit.api.RevObject;
+import org.geogit.api.RevTag;
+import org.geogit.api.RevTree;
+import org.geogit.api.plumbing.RefParse;
+import org.geogit.api.plumbing.merge.Conflict;
+import org.geogit.di.CanRunDuringConflict;
+import org.geogit.storage.BulkOpListener;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.ObjectIdSet;
+import org.geogit.storage.RefDatabase;
+import org.geogit.storage.StagingDatabase;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Sets;
+
+/**
+ * Deletes the objects that can't be reached from any ref of the repository.
+ * <p>
+ * The reachable objects are marked walking down from every ref, including the top level ones
+ * like {@code WORK_HEAD} and {@code STAGE_HEAD} and the ones of the open transactions, and from
+ * the unresolved merge conflicts. Then the objects and staging databases are swept, deleting the
+ * objects that weren't marked in batches.
+ * <p>
+ * The repository shall not be used while this command runs, or objects that are being written
+ * but are not yet referenced could be deleted.
+ */
+@CanRunDuringConflict
+public class GarbageCollectOp extends AbstractGeoGitOp<GarbageCollectOp.GarbageCollectReport> {
+
+    private static final int DELETE_BATCH_SIZE = 10 * 1000;
+
+    private static final List<String> TOP_LEVEL_REFS = ImmutableList.of(Ref.HEAD, Ref.WORK_HEAD,
+            Ref.STAGE_HEAD, Ref.ORIG_HEAD, Ref.MERGE_HEAD, Ref.CHERRY_PICK_HEAD);
+
+    private static final String SYMREF_PREFIX = "ref: ";
+
+    private boolean dryRun;
+
+    /**
+     * @param dryRun if {@code true}, only report what would be deleted
+     * @return {@code this}
+     */
+    public GarbageCollectOp setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+        return this;
+    }
+
+    @Override
+    protected GarbageCollectReport _call() {
+        getProgressListener().started();
+        getProgressListener().setDescription("Marking reachable objects...");
+        final ObjectIdSet reachable = mark();
+
+        GarbageCollectReport report = new GarbageCollectReport(reachable.size());
+        getProgressListener().setDescription("Sweeping unreachable objects...");
+        getProgressListener().setProgress(50f);
+        sweep(objectDatabase(), reachable, report);
+        getProgressListener().setProgress(75f);
+        sweep(stagingDatabase(), reachable, report);
+
+        getProgressListener().complete();
+        return report;
+    }
+
+    private ObjectIdSet mark() {
+        final StagingDatabase index = stagingDatabase();
+        final RefDatabase refs = refDatabase();
+
+        Set<ObjectId> roots = Sets.newHashSet();
+        for (String topLevelRef : TOP_LEVEL_REFS) {
+            Optional<Ref> ref = command(RefParse.class).setName(topLevelRef).call();
+            if (ref.isPresent()) {
+                roots.add(ref.get().getObjectId());
+            }
+        }
+        addRefTargets(refs.getAll(), roots);
+
+        Map<String, String> txRefs = refs.getAll(GeogitTransaction.TRANSACTIONS_NAMESPACE);
+        addRefTargets(txRefs, roots);
+
+        Set<String> conflictNamespaces = Sets.newHashSet();
+        conflictNamespaces.add(null);
+        for (String txRef : txRefs.keySet()) {
+            String relative = Ref.child(GeogitTransaction.TRANSACTIONS_NAMESPACE, txRef);
+            int idEnd = relative.indexOf('/');
+            if (idEnd > 0) {
+                String transactionId = relative.substring(0, idEnd);
+                conflictNamespaces.add(Ref.append(
+                        Ref.append(GeogitTransaction.TRANSACTIONS_NAMESPACE, transactionId),
+                        "conflicts"));
+            }
+        }
+        for (String namespace : conflictNamespaces) {
+            for (Conflict conflict : index.getConflicts(namespace, null)) {
+                roots.add(conflict.getAncestor());
+                roots.add(conflict.getOurs());
+                roots.add(conflict.getTheirs());
+            }
+        }
+        roots.add(RevTree.EMPTY.getId());
+        roots.remove(ObjectId.NULL);
+
+        ObjectIdSet reachable = new ObjectIdSet();
+        Deque<ObjectId> pending = new ArrayDeque<ObjectId>(roots);
+        while (!pending.isEmpty()) {
+            ObjectId id = pending.pop();
+            if (!reachable.add(id)) {
+                continue;
+            }
+            // the staging database looks up the repository database too. Objects might be
+            // missing in shallow or sparse clones
+            RevObject object = index.getIfPresent(id);
+            if (object == null) {
+                continue;
+            }
+            switch (object.getType()) {
+            case COMMIT:
+                RevCommit commit = (RevCommit) object;
+                pending.push(commit.getTreeId());
+                pending.addAll(commit.getParentIds());
+                break;
+            case TAG:
+                pending.push(((RevTag) object).getCommitId());
+                break;
+            case TREE:
+                markTree((RevTree) object, reachable, pending);
+                break;
+            default:
+                break;
+            }
+        }
+        return reachable;
+    }
+
+    private void addRefTargets(Map<String, String> refs, Set<ObjectId> target) {
+        for (String value : refs.values()) {
+            if (!value.startsWith(SYMREF_PREFIX)) {
+                target.add(ObjectId.valueOf(value));
+            }
+        }
+    }
+
+    /**
+     * Marks the features and feature types of the tree right away, since they reference no other
+     * objects, and queues its subtrees and buckets.
+     */
+    private void markTree(RevTree tree, ObjectIdSet reachable, Deque<ObjectId> pending) {
+        if (tree.features().isPresent()) {
+            for (Node node : tree.features().get()) {
+                reachable.add(node.getObjectId());
+                markMetadata(node, reachable);
+            }
+        }
+        if (tree.trees().isPresent()) {
+            for (Node node : tree.trees().get()) {
+                if (!reachable.contains(node.getObjectId())) {
+                    pending.push(node.getObjectId());
+                }
+                markMetadata(node, reachable);
+            }
+        }
+        if (tree.buckets().isPresent()) {
+            for (Bucket bucket : tree.buckets().get().values()) {
+                if (!reachable.contains(bucket.id())) {
+                    pending.push(bucket.id());
+                }
+            }
+        }
+    }
+
+    private void markMetadata(Node node, ObjectIdSet reachable) {
+        Optional<ObjectId> metadataId = node.getMetadataId();
+        if (metadataId.isPresent() && !metadataId.get().isNull()) {
+            reachable.add(metadataId.get());
+        }
+    }
+
+    private void sweep(final ObjectDatabase database, final ObjectIdSet reachable,
+            final GarbageCollectReport report) {
+
+        final ObjectIdSet garbage = new ObjectIdSet();
+        // sizes are reported as ids are listed, which may happen ahead of the iteration
+        final long[] garbageBytes = new long[1];
+        BulkOpListener collector = new BulkOpListener() {
+            @Override
+            public void found(ObjectId object, @Nullable Integer storageSizeBytes) {
+                if (!reachable.contains(object) && garbage.add(object)
+                        && storageSizeBytes != null) {
+                    garbageBytes[0] += storageSizeBytes.intValue();
+                }
+            }
+        };
+        Iterators.size(database.getAllIds(collector));
+
+        long deleted;
+        if (dryRun) {
+            deleted = garbage.size();
+        } else {
+            deleted = 0;
+            Iterator<List<ObjectId>> batches = Iterators.partition(garbage.iterator(),
+                    DELETE_BATCH_SIZE);
+            while (batches.hasNext()) {
+                deleted += database.deleteAll(batches.next().iterator());
+            }
+        }
+        report.add(deleted, garbageBytes[0]);
+    }
+
+    /**
+     * The outcome of a {@link GarbageCollectOp}
+     */
+    public static class GarbageCollectReport {
+
+        private final long reachable;
+
+        private long deleted;
+
+        private long bytesReclaimed;
+
+        GarbageCollectReport(long reachable) {
+            this.reachable = reachable;
+        }
+
+        void add(long deleted, long bytesReclaimed) {
+            this.deleted += deleted;
+            this.bytesReclaimed += bytesReclaimed;
+        }
+
+        /**
+         * @return the number of reachable objects, including the ones that are referenced but
+         *         missing
+         */
+        public long getReachable() {
+            return reachable;
+        }
+
+        /**
+         * @return the number of unreachable objects deleted, or that would be deleted on a dry run
+         */
+        public long getDeleted() {
+            return deleted;
+        }
+
+        /**
+         * @return the storage size of the deleted objects, as reported by the databases. Backends
+         *         that can't tell the storage size of objects don't account for it
+         */
+        public long getBytesReclaimed() {
+            return bytesReclaimed;
+        }
+    }
+}
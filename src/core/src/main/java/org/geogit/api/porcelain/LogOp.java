@@ -26,6 +26,8 @@ import org.geogit.api.plumbing.RevParse;
 import org.geogit.di.CanRunDuringConflict;
 import org.geogit.repository.Repository;
 import org.geogit.storage.GraphDatabase;
+import org.geogit.storage.ObjectIdSet;
+import org.geogit.storage.fs.FileHistoryIndex;
 import org.geotools.util.Range;
 
 import com.google.common.base.Optional;
@@ -49,6 +51,11 @@ import com.google.common.collect.Sets;
  * <li> {@link #addPath(String) addPath}: Show only commits that affect the specified path.
  * </ul>
  * </p>
+ * <p>
+ * If the repository has a {@link FileHistoryIndex history index}, the commits that affect the
+ * requested paths are looked up in it instead of comparing the path's node against the parent
+ * commit's tree, except for the commits that are not indexed.
+ * </p>
  * 
  * 
  */
@@ -487,6 +494,14 @@ public class LogOp extends AbstractGeoGitOp<Iterator<RevCommit>> {
 
         private FindTreeChild findTreeChild;
 
+        /**
+         * Commits known to the history index to affect any of the {@code paths}, {@code null} if
+         * the repository has no history index
+         */
+        private ObjectIdSet indexedMatches;
+
+        private FileHistoryIndex historyIndex;
+
         /**
          * Constructs a new {@code LogFilter} with the given parameters.
          * 
@@ -514,6 +529,16 @@ public class LogOp extends AbstractGeoGitOp<Iterator<RevCommit>> {
                 for (String path : paths) {
                     this.paths.put(path, null);
                 }
+                Optional<FileHistoryIndex> index = FileHistoryIndex.open(platform());
+                if (index.isPresent()) {
+                    historyIndex = index.get();
+                    indexedMatches = new ObjectIdSet();
+                    for (String path : paths) {
+                        for (ObjectId commitId : historyIndex.commits(path)) {
+                            indexedMatches.add(commitId);
+                        }
+                    }
+                }
             } else {
                 this.paths = null;
             }
@@ -551,6 +576,12 @@ public class LogOp extends AbstractGeoGitOp<Iterator<RevCommit>> {
             if (!applies) {
                 return false;
             }
+            if (historyIndex != null && historyIndex.isIndexed(commit.getId())) {
+                return indexedMatches.contains(commit.getId());
+            }
+            if (historyIndex != null) {
+                return touchesPaths(commit);
+            }
             if (paths != null) {
                 applies = false;
                 // did this commit touch any of the paths?
@@ -595,6 +626,28 @@ public class LogOp extends AbstractGeoGitOp<Iterator<RevCommit>> {
             return applies;
         }
 
+        /**
+         * Checks whether the commit changed any of the paths with respect to its first parent, for
+         * commits missing in the history index. Unlike the incremental check done when there's no
+         * index at all, this one does not rely on the previously evaluated commit being this
+         * commit's child, since indexed commits are not resolved.
+         */
+        private boolean touchesPaths(final RevCommit commit) {
+            final Repository repository = repository();
+            RevTree commitTree = repository.getTree(commit.getTreeId());
+            RevTree parentTree = RevTree.EMPTY;
+            ObjectId parentId = commit.parentN(0).or(ObjectId.NULL);
+            if (!parentId.isNull() && repository.commitExists(parentId)) {
+                parentTree = repository.getTree(repository.getCommit(parentId).getTreeId());
+            }
+            for (String path : paths.keySet()) {
+                if (!getPathHash(commitTree, path).equals(getPathHash(parentTree, path))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
         private ObjectId getPathHash(RevTree tree, String path) {
             ObjectId hash = ObjectId.NULL;
             Optional<NodeRef> ref = findTreeChild.setChildPath(path).setParent(tree).call();
@@ -26,6 +26,7 @@ import org.geogit.api.plumbing.DiffTree;
 import org.geogit.api.plumbing.FindCommonAncestor;
 import org.geogit.api.plumbing.RefParse;
 import org.geogit.api.plumbing.ResolveGeogitDir;
+import org.geogit.api.plumbing.UpdateHistoryIndex;
 import org.geogit.api.plumbing.UpdateRef;
 import org.geogit.api.plumbing.UpdateSymRef;
 import org.geogit.api.plumbing.WriteTree;
@@ -312,6 +313,7 @@ public class RebaseOp extends AbstractGeoGitOp<Boolean> {
                     throw new IllegalStateException("Cannot create squash commit info file");
                 }
                 applyCommit(squashCommit, true);
+                command(UpdateHistoryIndex.class).addTip(rebaseHead).call();
                 return true;
             } else {
                 createRebaseCommitsInfoFiles(commitsToRebase);
@@ -334,6 +336,7 @@ public class RebaseOp extends AbstractGeoGitOp<Boolean> {
         }
         command(UpdateRef.class).setDelete(true).setName(Ref.ORIG_HEAD).call();
         branchFile.delete();
+        command(UpdateHistoryIndex.class).addTip(rebaseHead).call();
 
         // subProgress.complete();
 
@@ -26,6 +26,7 @@ import org.geogit.api.plumbing.DiffTree;
 import org.geogit.api.plumbing.FindTreeChild;
 import org.geogit.api.plumbing.RefParse;
 import org.geogit.api.plumbing.ResolveGeogitDir;
+import org.geogit.api.plumbing.UpdateHistoryIndex;
 import org.geogit.api.plumbing.UpdateRef;
 import org.geogit.api.plumbing.UpdateSymRef;
 import org.geogit.api.plumbing.WriteTree;
@@ -197,6 +198,7 @@ public class RevertOp extends AbstractGeoGitOp<Boolean> {
         } while (ret);
 
         command(UpdateRef.class).setDelete(true).setName(Ref.ORIG_HEAD).call();
+        command(UpdateHistoryIndex.class).addTip(revertHead).call();
 
         getProgressListener().complete();
 
@@ -24,6 +24,7 @@ import org.geogit.api.SymRef;
 import org.geogit.api.plumbing.FindCommonAncestor;
 import org.geogit.api.plumbing.ForEachRef;
 import org.geogit.api.plumbing.RefParse;
+import org.geogit.api.plumbing.UpdateHistoryIndex;
 import org.geogit.api.plumbing.UpdateRef;
 import org.geogit.api.plumbing.UpdateSymRef;
 import org.geogit.api.porcelain.ResetOp.ResetMode;
@@ -235,6 +236,7 @@ public class SquashOp extends AbstractGeoGitOp<ObjectId> {
 
         // now put the other commits after the squashed one
         newHead = addCommits(commits, currentBranch, newHead);
+        command(UpdateHistoryIndex.class).addTip(newHead).call();
 
         return newHead;
 
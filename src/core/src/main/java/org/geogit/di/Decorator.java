@@ -2,6 +2,12 @@ package org.geogit.di;
 
 public interface Decorator {
 
+    /**
+     * Whether this decorator applies to the given instance.
+     * <p>
+     * The answer shall only depend on the class of the instance, as {@link DecoratorProvider}
+     * asks once per class and reuses it for every later instance of the same class.
+     */
     public boolean canDecorate(Object instance);
 
     public <I> I decorate(I subject);
@@ -1,8 +1,10 @@
 package org.geogit.di;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 
@@ -12,6 +14,12 @@ public class DecoratorProvider {
 
     private Map<Class<?>, Object> singletonDecorators = Maps.newConcurrentMap();
 
+    /**
+     * The decorators that apply to each undecorated class, so they're only asked whether they can
+     * decorate an instance the first time a class is seen
+     */
+    private Map<Class<?>, DecoratorChain> decoratorChains = Maps.newConcurrentMap();
+
     @Inject
     public DecoratorProvider(Set<Decorator> decorators) {
         this.decorators = decorators;
@@ -28,12 +36,23 @@ public class DecoratorProvider {
             }
         }
 
-        for (Decorator decorator : decorators) {
-            if (decorator.canDecorate(decorated)) {
+        DecoratorChain chain = decoratorChains.get(undecoratedClass);
+        if (chain == null) {
+            ImmutableList.Builder<Decorator> applicable = ImmutableList.builder();
+            for (Decorator decorator : decorators) {
+                if (decorator.canDecorate(decorated)) {
+                    applicable.add(decorator);
+                    decorated = (T) decorator.decorate(decorated);
+                }
+            }
+            chain = new DecoratorChain(applicable.build(), isSingleton(undecoratedClass));
+            decoratorChains.put(undecoratedClass, chain);
+        } else {
+            for (Decorator decorator : chain.decorators) {
                 decorated = (T) decorator.decorate(decorated);
             }
         }
-        if (isSingleton(undecoratedClass)) {
+        if (chain.singleton) {
             singletonDecorators.put(undecoratedClass, decorated);
         }
 
@@ -55,4 +74,15 @@ public class DecoratorProvider {
         return false;
     }
 
+    private static class DecoratorChain {
+
+        private final List<Decorator> decorators;
+
+        private final boolean singleton;
+
+        DecoratorChain(List<Decorator> decorators, boolean singleton) {
+            this.decorators = decorators;
+            this.singleton = singleton;
+        }
+    }
 }
@@ -5,6 +5,8 @@
 
 package org.geogit.di;
 
+import java.util.Map;
+
 import org.geogit.api.AbstractGeoGitOp;
 import org.geogit.api.Context;
 import org.geogit.api.Platform;
@@ -18,6 +20,7 @@ import org.geogit.storage.ObjectDatabase;
 import org.geogit.storage.RefDatabase;
 import org.geogit.storage.StagingDatabase;
 
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 
@@ -31,6 +34,14 @@ public class GuiceInjector implements Context {
 
     private com.google.inject.Injector guiceInjector;
 
+    /**
+     * Providers already resolved by type. Looking them up in the injector on every call contends
+     * on its lock for just in time bindings, and commands are created often and in tight loops
+     */
+    private Map<Class<?>, Provider<?>> providers = Maps.newConcurrentMap();
+
+    private volatile DecoratorProvider decoratorProvider;
+
     /**
      * Constructs a new {@code GuiceCommandLocator} with the given {@link Context}.
      * 
@@ -56,7 +67,12 @@ public class GuiceInjector implements Context {
     }
 
     private <T> T getInstance(final Class<T> type) {
-        Provider<T> provider = guiceInjector.getProvider(type);
+        @SuppressWarnings("unchecked")
+        Provider<T> provider = (Provider<T>) providers.get(type);
+        if (provider == null) {
+            provider = guiceInjector.getProvider(type);
+            providers.put(type, provider);
+        }
         T instance = provider.get();
         return instance;
     }
@@ -67,7 +83,12 @@ public class GuiceInjector implements Context {
     }
 
     private <T> T getDecoratedInstance(T undecorated) {
-        DecoratorProvider decoratorProvider = guiceInjector.getInstance(DecoratorProvider.class);
+        DecoratorProvider decoratorProvider = this.decoratorProvider;
+        if (decoratorProvider == null) {
+            // bound as a singleton, no harm if two threads get here at once
+            decoratorProvider = getInstance(DecoratorProvider.class);
+            this.decoratorProvider = decoratorProvider;
+        }
         T decoratedInstance = decoratorProvider.get(undecorated);
         return decoratedInstance;
     }
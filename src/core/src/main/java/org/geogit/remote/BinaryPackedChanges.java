@@ -12,8 +12,19 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import javax.annotation.Nullable;
+
+import org.geogit.api.NodeRef;
 import org.geogit.api.ObjectId;
 import org.geogit.api.RevFeature;
 import org.geogit.api.RevFeatureType;
@@ -29,6 +40,11 @@ import org.geogit.storage.datastream.DataStreamSerializationFactory;
 import org.geogit.storage.datastream.FormatCommon;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Provides a method of packing a set of changes and the affected objects to and from a binary
@@ -44,7 +60,10 @@ public final class BinaryPackedChanges {
 
     private final ObjectReader<RevObject> objectReader;
 
-    private final int CAP = 100;
+    /**
+     * The number of changes whose objects are read from, or saved to, the object database at once
+     */
+    private static final int BATCH_SIZE = 25;
 
     private final Repository repository;
 
@@ -115,6 +134,9 @@ public final class BinaryPackedChanges {
     /**
      * Writes the set of changes to the provided output stream, calling the provided callback for
      * each item.
+     * <p>
+     * The objects referenced by the changes are read in batches, each batch being fetched from the
+     * object database in the background while the previous one is written.
      * 
      * @param out the stream to write to
      * @param changes the changes to write
@@ -125,48 +147,41 @@ public final class BinaryPackedChanges {
     public <T> T write(OutputStream out, Iterator<DiffEntry> changes, Callback<T> callback)
             throws IOException {
         T state = null;
-        int changesSent = 0;
 
-        while (changes.hasNext() && changesSent < CAP) {
-            DiffEntry diff = changes.next();
-
-            RevObject object = null;
-            RevObject metadata = null;
-            if (diff.getNewObject() != null) {
-                if (diff.getNewObject().getType() != TYPE.FEATURE) {
-                    out.write(CHUNK_TYPE.METADATA_OBJECT_AND_DIFF_ENTRY.value());
-                    metadata = repository.objectDatabase().get(diff.getNewObject().getMetadataId());
-                    out.write(metadata.getId().getRawValue());
-                    if (metadata instanceof RevTree) {
-                        treeWriter.write((RevTree) metadata, out);
-                    } else if (metadata instanceof RevFeature) {
-                        featureWriter.write((RevFeature) metadata, out);
-                    } else if (metadata instanceof RevFeatureType) {
-                        featureTypeWriter.write((RevFeatureType) metadata, out);
+        final ExecutorService prefetcher = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat("packed-changes-prefetch-thread-%d").build());
+        try {
+            List<DiffEntry> batch = nextBatch(changes);
+            Future<Map<ObjectId, RevObject>> objects = prefetch(prefetcher, batch);
+            final DataOutput dataOut = new DataOutputStream(out);
+            while (!batch.isEmpty()) {
+                // fetch the objects of the next batch while this one is written
+                List<DiffEntry> next = nextBatch(changes);
+                Future<Map<ObjectId, RevObject>> nextObjects = prefetch(prefetcher, next);
+
+                Map<ObjectId, RevObject> fetched = Futures.getUnchecked(objects);
+                for (DiffEntry diff : batch) {
+                    if (diff.getNewObject() != null) {
+                        if (diff.getNewObject().getType() != TYPE.FEATURE) {
+                            out.write(CHUNK_TYPE.METADATA_OBJECT_AND_DIFF_ENTRY.value());
+                            writeObject(out, object(diff.getNewObject().getMetadataId(), fetched));
+                        } else {
+                            out.write(CHUNK_TYPE.OBJECT_AND_DIFF_ENTRY.value());
+                        }
+                        writeObject(out,
+                                object(diff.getNewObject().getNode().getObjectId(), fetched));
+                    } else {
+                        out.write(CHUNK_TYPE.DIFF_ENTRY.value());
                     }
-
-                } else {
-                    out.write(CHUNK_TYPE.OBJECT_AND_DIFF_ENTRY.value());
-                }
-                object = repository.objectDatabase().get(
-                        diff.getNewObject().getNode().getObjectId());
-
-                out.write(object.getId().getRawValue());
-                if (object instanceof RevTree) {
-                    treeWriter.write((RevTree) object, out);
-                } else if (object instanceof RevFeature) {
-                    featureWriter.write((RevFeature) object, out);
-                } else if (object instanceof RevFeatureType) {
-                    featureTypeWriter.write((RevFeatureType) object, out);
+                    FormatCommon.writeDiff(diff, dataOut);
+                    state = callback.callback(diff, state);
                 }
-
-            } else {
-                out.write(CHUNK_TYPE.DIFF_ENTRY.value());
+                batch = next;
+                objects = nextObjects;
             }
-            DataOutput dataOut = new DataOutputStream(out);
-            FormatCommon.writeDiff(diff, dataOut);
-            state = callback.callback(diff, state);
-
+        } finally {
+            prefetcher.shutdownNow();
         }
         // signal the end of changes
         out.write(CHUNK_TYPE.FILTER_FLAG.value());
@@ -180,6 +195,63 @@ public final class BinaryPackedChanges {
         return state;
     }
 
+    private static List<DiffEntry> nextBatch(Iterator<DiffEntry> changes) {
+        List<DiffEntry> batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+        while (batch.size() < BATCH_SIZE && changes.hasNext()) {
+            batch.add(changes.next());
+        }
+        return batch;
+    }
+
+    /**
+     * Reads the objects and metadata objects of a batch of changes in a single bulk query.
+     */
+    private Future<Map<ObjectId, RevObject>> prefetch(ExecutorService prefetcher,
+            final List<DiffEntry> batch) {
+        if (batch.isEmpty()) {
+            return Futures.immediateFuture(Collections.<ObjectId, RevObject> emptyMap());
+        }
+        return prefetcher.submit(new Callable<Map<ObjectId, RevObject>>() {
+            @Override
+            public Map<ObjectId, RevObject> call() {
+                Set<ObjectId> ids = Sets.newHashSet();
+                for (DiffEntry diff : batch) {
+                    NodeRef newObject = diff.getNewObject();
+                    if (newObject != null) {
+                        ids.add(newObject.getNode().getObjectId());
+                        if (newObject.getType() != TYPE.FEATURE
+                                && !newObject.getMetadataId().isNull()) {
+                            ids.add(newObject.getMetadataId());
+                        }
+                    }
+                }
+                Map<ObjectId, RevObject> objects = Maps.newHashMap();
+                Iterator<RevObject> all = repository.objectDatabase().getAll(ids);
+                while (all.hasNext()) {
+                    RevObject object = all.next();
+                    objects.put(object.getId(), object);
+                }
+                return objects;
+            }
+        });
+    }
+
+    private RevObject object(ObjectId id, Map<ObjectId, RevObject> fetched) {
+        RevObject object = fetched.get(id);
+        return object == null ? repository.objectDatabase().get(id) : object;
+    }
+
+    private void writeObject(OutputStream out, RevObject object) throws IOException {
+        out.write(object.getId().getRawValue());
+        if (object instanceof RevTree) {
+            treeWriter.write((RevTree) object, out);
+        } else if (object instanceof RevFeature) {
+            featureWriter.write((RevFeature) object, out);
+        } else if (object instanceof RevFeatureType) {
+            featureTypeWriter.write((RevFeatureType) object, out);
+        }
+    }
+
     /**
      * Read in the changes from the provided input stream. The input stream represents the output of
      * another {@code BinaryPackedChanges} instance.
@@ -194,19 +266,38 @@ public final class BinaryPackedChanges {
      * Read in the changes from the provided input stream and call the provided callback for each
      * change. The input stream represents the output of another {@code BinaryPackedChanges}
      * instance.
+     * <p>
+     * The objects are saved in batches, and the callback is called for the changes of a batch once
+     * all its objects are in the object database.
      * 
      * @param in the stream to read from
      * @param callback the callback to call for each item
      */
     public <T> T ingest(final InputStream in, Callback<T> callback) {
         T state = null;
-        while (true) {
+        List<RevObject> objects = Lists.newArrayListWithCapacity(2 * BATCH_SIZE);
+        List<DiffEntry> changes = Lists.newArrayListWithCapacity(BATCH_SIZE);
+        boolean done = false;
+        while (!done) {
             try {
-                state = ingestOne(in, callback, state);
+                DiffEntry diff = ingestOne(in, objects);
+                if (diff == null) {
+                    done = true;
+                } else {
+                    changes.add(diff);
+                }
             } catch (EOFException e) {
-                break;
+                done = true;
             } catch (IOException e) {
-                Throwables.propagate(e);
+                throw Throwables.propagate(e);
+            }
+            if (done || changes.size() == BATCH_SIZE) {
+                repository.objectDatabase().putAll(objects.iterator());
+                objects.clear();
+                for (DiffEntry diff : changes) {
+                    state = callback.callback(diff, state);
+                }
+                changes.clear();
             }
         }
         return state;
@@ -216,41 +307,31 @@ public final class BinaryPackedChanges {
      * Reads in a single change from the provided input stream.
      * 
      * @param in the stream to read from
-     * @param callback the callback to call on the resulting item
-     * @param state the current state of the operation
-     * @return the new state of the operation
+     * @param objects the list to add the objects that come with the change to
+     * @return the change, or {@code null} if the end of the changes was reached
      * @throws IOException
      */
-    private <T> T ingestOne(final InputStream in, Callback<T> callback, T state) throws IOException {
+    @Nullable
+    private DiffEntry ingestOne(final InputStream in, List<RevObject> objects)
+            throws IOException {
         int chunkType = in.read();
-        final T result;
         if (chunkType == CHUNK_TYPE.FILTER_FLAG.value()) {
             int changesFiltered = in.read();
             if (changesFiltered != 0) {
                 filtered = true;
             }
-            throw new EOFException();
+            return null;
         }
         if (chunkType == CHUNK_TYPE.METADATA_OBJECT_AND_DIFF_ENTRY.value()) {
             ObjectId id = readObjectId(in);
-            RevObject revObj = objectReader.read(id, in);
-
-            if (!repository.objectDatabase().exists(id)) {
-                repository.objectDatabase().put(revObj);
-            }
+            objects.add(objectReader.read(id, in));
         }
         if (chunkType != CHUNK_TYPE.DIFF_ENTRY.value()) {
             ObjectId id = readObjectId(in);
-            RevObject revObj = objectReader.read(id, in);
-
-            if (!repository.objectDatabase().exists(id)) {
-                repository.objectDatabase().put(revObj);
-            }
+            objects.add(objectReader.read(id, in));
         }
         DataInput dataIn = new DataInputStream(in);
-        DiffEntry diff = FormatCommon.readDiff(dataIn);
-        result = callback.callback(diff, state);
-        return result;
+        return FormatCommon.readDiff(dataIn);
     }
 
     /**
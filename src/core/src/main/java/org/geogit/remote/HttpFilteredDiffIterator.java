@@ -5,19 +5,35 @@
 package org.geogit.remote;
 
 import java.io.InputStream;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import org.geogit.api.ObjectId;
 import org.geogit.api.RevObject;
 import org.geogit.api.plumbing.diff.DiffEntry;
 
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+
 /**
  * Iterates over all changes from a {@link BinaryPackedChanges} object.
+ * <p>
+ * The stream is ingested on a separate thread, so the objects of the next changes are decoded and
+ * saved while the current ones are consumed. The number of decoded changes waiting to be consumed
+ * is bounded, so a slow consumer throttles the reading. Changes are only handed out once their
+ * objects are in the object database.
  */
 public class HttpFilteredDiffIterator extends FilteredDiffIterator {
 
-    private Queue<DiffEntry> objects;
+    private static final int QUEUE_CAPACITY = 1000;
+
+    private static final Optional<DiffEntry> END_OF_CHANGES = Optional.absent();
+
+    private final BlockingQueue<Optional<DiffEntry>> objects;
+
+    private final BinaryPackedChanges changes;
+
+    private volatile Throwable failure;
 
     /**
      * Constructs a new {@code HttpFilteredDiffIterator}.
@@ -25,18 +41,39 @@ public class HttpFilteredDiffIterator extends FilteredDiffIterator {
      * @param in the input stream
      * @param changes the object that will be used to ingest the stream
      */
-    public HttpFilteredDiffIterator(InputStream in, BinaryPackedChanges changes) {
+    public HttpFilteredDiffIterator(final InputStream in, final BinaryPackedChanges changes) {
         super(null, null, null);
-        objects = new LinkedList<DiffEntry>();
-        BinaryPackedChanges.Callback<Void> callback = new BinaryPackedChanges.Callback<Void>() {
+        this.changes = changes;
+        objects = new ArrayBlockingQueue<Optional<DiffEntry>>(QUEUE_CAPACITY);
+        final BinaryPackedChanges.Callback<Void> callback = new BinaryPackedChanges.Callback<Void>() {
             @Override
             public Void callback(DiffEntry object, Void state) {
-                objects.add(object);
+                enqueue(Optional.of(object));
                 return null;
             }
         };
-        changes.ingest(in, callback);
-        filtered = changes.wasFiltered();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    changes.ingest(in, callback);
+                } catch (Throwable e) {
+                    failure = e;
+                } finally {
+                    enqueue(END_OF_CHANGES);
+                }
+            }
+        }, "packed-changes-reader-thread");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void enqueue(Optional<DiffEntry> change) {
+        try {
+            objects.put(change);
+        } catch (InterruptedException e) {
+            throw Throwables.propagate(e);
+        }
     }
 
     /**
@@ -45,9 +82,19 @@ public class HttpFilteredDiffIterator extends FilteredDiffIterator {
      * @return the next {@code DiffEntry}
      */
     protected DiffEntry computeNext() {
-        if (objects.peek() != null) {
-            return objects.poll();
+        Optional<DiffEntry> next;
+        try {
+            next = objects.take();
+        } catch (InterruptedException e) {
+            throw Throwables.propagate(e);
         }
+        if (next.isPresent()) {
+            return next.get();
+        }
+        if (failure != null) {
+            throw Throwables.propagate(failure);
+        }
+        filtered = changes.wasFiltered();
         return endOfData();
     }
 
@@ -8,21 +8,30 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.geogit.api.NodeRef.PATH_SEPARATOR;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.geogit.api.Bucket;
 import org.geogit.api.Node;
 import org.geogit.api.NodeRef;
 import org.geogit.api.ObjectId;
+import org.geogit.api.RevObject;
 import org.geogit.api.RevTree;
 import org.geogit.storage.NodePathStorageOrder;
 import org.geogit.storage.ObjectDatabase;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Splitter;
+import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
 
 /**
  * Searches for a {@link Node} within a particular tree.
@@ -163,4 +172,73 @@ public class DepthSearch {
         RevTree subtree = objectDb.get(subtreeBucket.id(), RevTree.class);
         return getDirectChild(subtree, directChildName, subtreesDepth + 1);
     }
+
+    /**
+     * Looks up several direct children of {@code parent} at once.
+     * <p>
+     * Unlike calling {@link #getDirectChild} once per name, the names are grouped by bucket so that
+     * each bucket tree is loaded at most once, and the bucket trees at each depth are fetched from
+     * the database in a single {@link ObjectDatabase#getAll(Iterable) bulk} call.
+     * 
+     * @param parent the tree to search
+     * @param directChildNames the names of the children to look for
+     * @param subtreesDepth the depth of {@code parent}'s buckets, {@code 0} for a top level tree
+     * @return the children found, keyed by name. Names not found are not present in the map.
+     */
+    public Map<String, Node> getDirectChildren(RevTree parent,
+            Iterable<String> directChildNames, final int subtreesDepth) {
+        Map<String, Node> found = Maps.newHashMap();
+        SetMultimap<ObjectId, String> pending = HashMultimap.create();
+        collectDirectChildren(parent, ImmutableSet.copyOf(directChildNames), subtreesDepth, found,
+                pending);
+
+        int depth = subtreesDepth;
+        while (!pending.isEmpty()) {
+            depth++;
+            SetMultimap<ObjectId, String> next = HashMultimap.create();
+            Iterator<RevObject> subtrees = objectDb.getAll(ImmutableList.copyOf(pending.keySet()));
+            while (subtrees.hasNext()) {
+                RevTree subtree = (RevTree) subtrees.next();
+                collectDirectChildren(subtree, pending.get(subtree.getId()), depth, found, next);
+            }
+            pending = next;
+        }
+        return found;
+    }
+
+    /**
+     * Adds the nodes named after {@code names} to {@code found} if {@code tree} is a leaf tree, or
+     * queues the names by bucket tree id in {@code pending} otherwise.
+     */
+    private void collectDirectChildren(RevTree tree, Set<String> names, int depth,
+            Map<String, Node> found, SetMultimap<ObjectId, String> pending) {
+        if (tree.isEmpty()) {
+            return;
+        }
+        if (tree.buckets().isPresent()) {
+            ImmutableSortedMap<Integer, Bucket> buckets = tree.buckets().get();
+            for (String name : names) {
+                Bucket bucket = buckets.get(refOrder.bucket(name, depth));
+                if (bucket != null) {
+                    pending.put(bucket.id(), name);
+                }
+            }
+            return;
+        }
+        if (tree.trees().isPresent()) {
+            collectDirectChildren(tree.trees().get(), names, found);
+        }
+        if (tree.features().isPresent()) {
+            collectDirectChildren(tree.features().get(), names, found);
+        }
+    }
+
+    private static void collectDirectChildren(Collection<Node> nodes, Set<String> names,
+            Map<String, Node> found) {
+        for (Node node : nodes) {
+            if (names.contains(node.getName())) {
+                found.put(node.getName(), node);
+            }
+        }
+    }
 }
@@ -4,19 +4,18 @@
  */
 package org.geogit.repository;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
-import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
-import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
@@ -27,72 +26,150 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
 import org.geogit.api.Node;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevObject.TYPE;
+import org.geogit.api.RevTree;
+import org.geogit.storage.NodePathStorageOrder;
 import org.geogit.storage.NodeStorageOrder;
-import org.geogit.storage.datastream.FormatCommon;
 
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterators;
-import com.google.common.collect.Lists;
 import com.google.common.collect.PeekingIterator;
-import com.google.common.io.Closeables;
-
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * An external sort index of {@link Node}s, that keeps partitions of up to {@code PARTITION_SIZE}
+ * nodes in memory and spills them to disk sorted in {@link NodeStorageOrder storage order}.
+ * <p>
+ * Spill files use a compact record format rather than the full object serialization format, and
+ * are read back through memory mapped buffers. While writing each partition the offset at which
+ * each top level bucket (as given by {@link NodePathStorageOrder#bucket(String, int) bucket(name,
+ * 0)}) starts is recorded, so that the nodes of a single bucket can be traversed independently of
+ * the others through {@link #nodes(int)}, allowing the buckets of a large tree to be built
+ * concurrently.
+ */
 class NodeIndex implements Closeable {
 
     private static final int PARTITION_SIZE = 500 * 1000;
 
+    private static final NodePathStorageOrder BUCKET_ORDER = new NodePathStorageOrder();
+
+    /**
+     * Spill file record flags
+     */
+    private static final int F_TREE = 0x01, F_METADATA = 0x02, F_BOUNDS = 0x04, F_POINT = 0x08,
+            F_ASCII = 0x10;
+
     private static final class IndexPartition {
 
         List<Node> cache = new ArrayList<Node>(PARTITION_SIZE);
 
+        private boolean sorted;
+
         public void add(Node node) {
             cache.add(node);
         }
 
         public List<Node> getSortedNodes() {
-            Collections.sort(cache, new NodeStorageOrder());
+            if (!sorted) {
+                Collections.sort(cache, new NodeStorageOrder());
+                sorted = true;
+            }
             return cache;
         }
 
-        public File flush() {
+        public SpillFile flush() {
             List<Node> cache = getSortedNodes();
             final File file;
+            final int[] bucketOffsets = new int[RevTree.MAX_BUCKETS + 1];
             try {
                 file = File.createTempFile("geogitNodes", ".idx");
                 file.deleteOnExit();
-                // System.err.println("Created index file " + file.getAbsolutePath());
-                FastByteArrayOutputStream buf = new FastByteArrayOutputStream();
-                OutputStream fileOut = new BufferedOutputStream(new FileOutputStream(file),
-                        1024 * 1024);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(file), 1024 * 1024));
                 try {
+                    int nextBucket = 0;
                     for (Node node : cache) {
-                        buf.reset();
-                        DataOutput out = new DataOutputStream(buf);
-                        try {
-                            FormatCommon.writeNode(node, out);
-                        } catch (IOException e) {
-                            throw Throwables.propagate(e);
+                        int bucket = BUCKET_ORDER.bucket(node.getName(), 0).intValue();
+                        while (nextBucket <= bucket) {
+                            bucketOffsets[nextBucket++] = out.size();
                         }
-                        int size = buf.size();
-                        fileOut.write(buf.bytes(), 0, size);
+                        writeNode(node, out);
+                    }
+                    while (nextBucket <= RevTree.MAX_BUCKETS) {
+                        bucketOffsets[nextBucket++] = out.size();
                     }
                 } finally {
                     cache.clear();
-                    fileOut.close();
+                    out.close();
                 }
             } catch (Exception e) {
                 throw Throwables.propagate(e);
             }
-            return file;
+            return new SpillFile(file, bucketOffsets);
+        }
+    }
+
+    /**
+     * A sorted partition flushed to disk, with the offsets at which each top level bucket starts
+     */
+    private static final class SpillFile {
+
+        final File file;
+
+        final int[] bucketOffsets;
+
+        private MappedByteBuffer buffer;
+
+        SpillFile(File file, int[] bucketOffsets) {
+            this.file = file;
+            this.bucketOffsets = bucketOffsets;
+        }
+
+        /**
+         * @return an independent view of the memory mapped contents of the file
+         */
+        synchronized ByteBuffer map() {
+            if (buffer == null) {
+                try {
+                    RandomAccessFile raf = new RandomAccessFile(file, "r");
+                    try {
+                        FileChannel channel = raf.getChannel();
+                        buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+                    } finally {
+                        raf.close();
+                    }
+                } catch (IOException e) {
+                    throw Throwables.propagate(e);
+                }
+            }
+            return buffer.duplicate();
+        }
+
+        synchronized void delete() {
+            buffer = null;
+            file.delete();
         }
     }
 
     private IndexPartition currPartition;
 
-    private List<Future<File>> indexFiles = new LinkedList<Future<File>>();
+    private List<Future<SpillFile>> indexFiles = new LinkedList<Future<SpillFile>>();
+
+    /**
+     * The flushed partitions, resolved the first time the nodes are requested
+     */
+    private List<SpillFile> spillFiles;
+
+    /**
+     * Offsets of each top level bucket in the sorted unflushed partition
+     */
+    private int[] unflushedOffsets;
 
-    private List<CompositeNodeIterator> openIterators = new LinkedList<CompositeNodeIterator>();
+    private long size;
 
     private ExecutorService executorService;
 
@@ -101,87 +178,218 @@ class NodeIndex implements Closeable {
         this.currPartition = new IndexPartition();
     }
 
-    public void close() {
+    public synchronized void close() {
         try {
-            for (CompositeNodeIterator it : openIterators) {
-                it.close();
-            }
-            for (Future<File> ff : indexFiles) {
-                try {
-                    File file = ff.get();
-                    file.delete();
-                } catch (Exception e) {
-                    e.printStackTrace();
+            if (spillFiles == null) {
+                for (Future<SpillFile> ff : indexFiles) {
+                    try {
+                        ff.get().delete();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            } else {
+                for (SpillFile f : spillFiles) {
+                    f.delete();
                 }
             }
         } finally {
-            openIterators.clear();
             indexFiles.clear();
+            spillFiles = null;
+            currPartition.cache.clear();
         }
     }
 
     public synchronized void add(Node node) {
+        Preconditions.checkState(spillFiles == null, "index is already being traversed");
         currPartition.add(node);
+        size++;
         if (currPartition.cache.size() == PARTITION_SIZE) {
             flush(currPartition);
             currPartition = new IndexPartition();
         }
     }
 
+    /**
+     * @return the number of nodes added to the index
+     */
+    public synchronized long size() {
+        return size;
+    }
+
     private void flush(final IndexPartition ip) {
-        indexFiles.add(executorService.submit(new Callable<File>() {
+        indexFiles.add(executorService.submit(new Callable<SpillFile>() {
 
             @Override
-            public File call() throws Exception {
+            public SpillFile call() throws Exception {
                 return ip.flush();
             }
         }));
 
     }
 
+    /**
+     * @return all the nodes in the index, in {@link NodeStorageOrder storage order}
+     */
     public Iterator<Node> nodes() {
-        List<File> files = new ArrayList<File>(indexFiles.size());
+        prepare();
+        List<Iterator<Node>> buckets = new ArrayList<Iterator<Node>>(RevTree.MAX_BUCKETS);
+        for (int i = 0; i < RevTree.MAX_BUCKETS; i++) {
+            buckets.add(nodes(i));
+        }
+        return Iterators.concat(buckets.iterator());
+    }
+
+    /**
+     * @return the nodes that fall on the given top level bucket, in {@link NodeStorageOrder
+     *         storage order}. Nodes with the same name are returned in the order they were added.
+     */
+    public Iterator<Node> nodes(final int bucket) {
+        Preconditions.checkElementIndex(bucket, RevTree.MAX_BUCKETS);
+        prepare();
+
+        List<PeekingIterator<Node>> iterators = new ArrayList<PeekingIterator<Node>>();
+        for (SpillFile f : spillFiles) {
+            int from = f.bucketOffsets[bucket];
+            int to = f.bucketOffsets[bucket + 1];
+            if (from < to) {
+                iterators.add(Iterators.peekingIterator(new MappedNodeIterator(f.map(), from, to)));
+            }
+        }
+        int from = unflushedOffsets[bucket];
+        int to = unflushedOffsets[bucket + 1];
+        if (from < to) {
+            List<Node> unflushed = currPartition.getSortedNodes().subList(from, to);
+            iterators.add(Iterators.peekingIterator(unflushed.iterator()));
+        }
+        return new CompositeNodeIterator(iterators);
+    }
+
+    /**
+     * Waits for all partitions to be flushed and sorts the one that's still in memory
+     */
+    private synchronized void prepare() {
+        if (spillFiles != null) {
+            return;
+        }
+        List<SpillFile> files = new ArrayList<SpillFile>(indexFiles.size());
         try {
-            for (Future<File> ff : indexFiles) {
+            for (Future<SpillFile> ff : indexFiles) {
                 files.add(ff.get());
             }
         } catch (Exception e) {
             e.printStackTrace();
             throw Throwables.propagate(Throwables.getRootCause(e));
         }
-
-        List<Node> unflushed = Lists.newArrayList(currPartition.getSortedNodes());
-        currPartition.cache.clear();
-        return new CompositeNodeIterator(files, unflushed);
+        List<Node> unflushed = currPartition.getSortedNodes();
+        int[] offsets = new int[RevTree.MAX_BUCKETS + 1];
+        int nextBucket = 0;
+        for (int i = 0; i < unflushed.size(); i++) {
+            int bucket = BUCKET_ORDER.bucket(unflushed.get(i).getName(), 0).intValue();
+            while (nextBucket <= bucket) {
+                offsets[nextBucket++] = i;
+            }
+        }
+        while (nextBucket <= RevTree.MAX_BUCKETS) {
+            offsets[nextBucket++] = unflushed.size();
+        }
+        this.unflushedOffsets = offsets;
+        this.spillFiles = files;
     }
 
-    private static class CompositeNodeIterator extends AbstractIterator<Node> {
-
-        private NodeStorageOrder order = new NodeStorageOrder();
-
-        private ArrayList<PeekingIterator<Node>> iterators;
-
-        private List<IndexIterator> openIterators;
+    static void writeNode(Node node, DataOutput out) throws IOException {
+        final String name = node.getName();
+        final int length = name.length();
+        Preconditions.checkArgument(length <= 0xFFFF, "node name too long: %s", name);
+        final Optional<ObjectId> metadataId = node.getMetadataId();
+        final Envelope bounds = new Envelope();
+        node.expand(bounds);
+
+        boolean ascii = true;
+        for (int i = 0; ascii && i < length; i++) {
+            ascii = name.charAt(i) < 0x80;
+        }
+        int flags = 0;
+        if (TYPE.TREE.equals(node.getType())) {
+            flags |= F_TREE;
+        }
+        if (metadataId.isPresent()) {
+            flags |= F_METADATA;
+        }
+        if (!bounds.isNull()) {
+            boolean point = bounds.getWidth() == 0D && bounds.getHeight() == 0D;
+            flags |= point ? F_POINT : F_BOUNDS;
+        }
+        if (ascii) {
+            flags |= F_ASCII;
+        }
 
-        public CompositeNodeIterator(List<File> files, List<Node> unflushedAndSorted) {
+        out.writeByte(flags);
+        out.writeShort(length);
+        if (ascii) {
+            out.writeBytes(name);
+        } else {
+            out.writeChars(name);
+        }
+        node.getObjectId().writeTo(out);
+        if (metadataId.isPresent()) {
+            metadataId.get().writeTo(out);
+        }
+        if ((flags & F_POINT) != 0) {
+            out.writeDouble(bounds.getMinX());
+            out.writeDouble(bounds.getMinY());
+        } else if ((flags & F_BOUNDS) != 0) {
+            out.writeDouble(bounds.getMinX());
+            out.writeDouble(bounds.getMaxX());
+            out.writeDouble(bounds.getMinY());
+            out.writeDouble(bounds.getMaxY());
+        }
+    }
 
-            openIterators = new ArrayList<IndexIterator>();
-            iterators = new ArrayList<PeekingIterator<Node>>();
-            for (File f : files) {
-                IndexIterator iterator = new IndexIterator(f);
-                openIterators.add(iterator);
-                iterators.add(Iterators.peekingIterator(iterator));
+    static Node readNode(ByteBuffer buffer) {
+        final int flags = buffer.get();
+        final int length = buffer.getShort() & 0xFFFF;
+        final char[] name = new char[length];
+        if ((flags & F_ASCII) != 0) {
+            for (int i = 0; i < length; i++) {
+                name[i] = (char) (buffer.get() & 0xFF);
             }
-            if (!unflushedAndSorted.isEmpty()) {
-                iterators.add(Iterators.peekingIterator(unflushedAndSorted.iterator()));
+        } else {
+            for (int i = 0; i < length; i++) {
+                name[i] = buffer.getChar();
             }
         }
+        final ObjectId objectId = ObjectId.readFrom(buffer);
+        final ObjectId metadataId = (flags & F_METADATA) != 0 ? ObjectId.readFrom(buffer)
+                : ObjectId.NULL;
+        Envelope bounds = null;
+        if ((flags & F_POINT) != 0) {
+            double x = buffer.getDouble();
+            double y = buffer.getDouble();
+            bounds = new Envelope(x, x, y, y);
+        } else if ((flags & F_BOUNDS) != 0) {
+            double minx = buffer.getDouble();
+            double maxx = buffer.getDouble();
+            double miny = buffer.getDouble();
+            double maxy = buffer.getDouble();
+            bounds = new Envelope(minx, maxx, miny, maxy);
+        }
+        TYPE type = (flags & F_TREE) != 0 ? TYPE.TREE : TYPE.FEATURE;
+        return Node.create(new String(name), objectId, metadataId, type, bounds);
+    }
 
-        public void close() {
-            for (IndexIterator it : openIterators) {
-                it.close();
-            }
-            openIterators.clear();
+    /**
+     * Merges several iterators of sorted nodes, favoring the earliest iterator on ties so that
+     * nodes with the same name come out in the order they were added to the index
+     */
+    private static class CompositeNodeIterator extends AbstractIterator<Node> {
+
+        private NodeStorageOrder order = new NodeStorageOrder();
+
+        private List<PeekingIterator<Node>> iterators;
+
+        public CompositeNodeIterator(List<PeekingIterator<Node>> iterators) {
+            this.iterators = iterators;
         }
 
         @Override
@@ -194,7 +402,7 @@ class NodeIndex implements Closeable {
                     continue;
                 }
                 Node peek = it.peek();
-                if (lowest == null || peek == order.min(lowest, peek)) {
+                if (lowest == null || order.compare(peek, lowest) < 0) {
                     lowest = peek;
                     idx = i;
                 }
@@ -204,55 +412,27 @@ class NodeIndex implements Closeable {
 
     }
 
-    private static class IndexIterator extends AbstractIterator<Node> {
-
-        private DataInputStream in;
+    /**
+     * Iterates over the node records of a memory mapped spill file between two offsets
+     */
+    private static class MappedNodeIterator extends AbstractIterator<Node> {
 
-        public IndexIterator(File file) {
-            Preconditions.checkArgument(file.exists(), "file %s does not exist", file);
-            try {
-                if (this.in == null) {
-                    this.in = new DataInputStream(new BufferedInputStream(
-                            new FileInputStream(file), 16 * 1024));
-                }
+        private final ByteBuffer buffer;
 
-            } catch (IOException e) {
-                throw Throwables.propagate(e);
-            }
-        }
+        private final int end;
 
-        public void close() {
-            Closeables.closeQuietly(in);
+        MappedNodeIterator(ByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.end = end;
+            buffer.position(start);
         }
 
         @Override
         protected Node computeNext() {
-            try {
-                Node node = FormatCommon.readNode(in);
-                return node;
-            } catch (EOFException eof) {
-                Closeables.closeQuietly(in);
+            if (buffer.position() >= end) {
                 return endOfData();
-            } catch (Exception e) {
-                Closeables.closeQuietly(in);
-                throw Throwables.propagate(e);
             }
-        }
-
-    }
-
-    private static class FastByteArrayOutputStream extends ByteArrayOutputStream {
-
-        public FastByteArrayOutputStream() {
-            super(16 * 1024);
-        }
-
-        public int size() {
-            return super.count;
-        }
-
-        public byte[] bytes() {
-            return super.buf;
+            return readNode(buffer);
         }
     }
 
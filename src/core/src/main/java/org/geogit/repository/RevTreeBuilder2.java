@@ -8,16 +8,22 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
 
+import org.geogit.api.Bucket;
 import org.geogit.api.Node;
 import org.geogit.api.ObjectId;
 import org.geogit.api.RevFeatureType;
 import org.geogit.api.RevObject.TYPE;
 import org.geogit.api.RevTree;
 import org.geogit.api.RevTreeBuilder;
+import org.geogit.api.RevTreeImpl;
+import org.geogit.api.plumbing.HashObject;
+import org.geogit.storage.NodePathStorageOrder;
 import org.geogit.storage.ObjectDatabase;
 import org.opengis.feature.type.FeatureType;
 import org.opengis.feature.type.Name;
@@ -27,11 +33,21 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.vividsolutions.jts.geom.Envelope;
 
-class RevTreeBuilder2 {
+/**
+ * A tree builder for large amounts of nodes, that collects them in a disk backed
+ * {@link NodeIndex} and feeds them to {@link RevTreeBuilder}s in storage order at
+ * {@link #build()} time, building each top level bucket concurrently. {@link #put(Node)} is
+ * thread safe.
+ */
+public class RevTreeBuilder2 {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RevTreeBuilder2.class);
 
@@ -47,6 +63,8 @@ class RevTreeBuilder2 {
 
     private final ObjectId defaultMetadataId;
 
+    private final NodePathStorageOrder storageOrder = new NodePathStorageOrder();
+
     /**
      * Copy constructor
      */
@@ -54,7 +72,7 @@ class RevTreeBuilder2 {
             final ObjectId defaultMetadataId, final ExecutorService executorService) {
 
         this.db = db;
-        this.original = origTree;
+        this.original = origTree == null ? RevTree.EMPTY : origTree;
         this.executorService = executorService;
         this.defaultMetadataId = defaultMetadataId;
     }
@@ -87,6 +105,9 @@ class RevTreeBuilder2 {
     /**
      * Traverses the nodes in the {@link NodeIndex}, deletes the ones with {@link ObjectId#NULL
      * NULL} ObjectIds, and adds the ones with non "NULL" ids.
+     * <p>
+     * If the resulting tree is large enough to be split into buckets, the index is range
+     * partitioned by top level bucket and each bucket tree is built concurrently with the others.
      * 
      * @return the new tree, not saved to the object database. Any bucket tree though is saved when
      *         this method returns.
@@ -97,30 +118,199 @@ class RevTreeBuilder2 {
         }
 
         Stopwatch sw = new Stopwatch().start();
-        RevTreeBuilder builder;
+        RevTree namedTree;
         try {
-            builder = new RevTreeBuilder(db, original);
-            Iterator<Node> nodes = nodeIndex.nodes();
-            while (nodes.hasNext()) {
-                Node node = nodes.next();
-                if (node.getObjectId().isNull()) {
-                    builder.remove(node.getName());
-                } else {
-                    builder.put(node);
-                }
+            final boolean split = original.buckets().isPresent()
+                    || numChildren(original) + nodeIndex.size() > RevTree.NORMALIZED_SIZE_LIMIT;
+            if (split) {
+                namedTree = buildBuckets();
+            } else {
+                RevTreeBuilder builder = new RevTreeBuilder(db, original);
+                apply(nodeIndex.nodes(), builder);
+                namedTree = builder.build();
             }
         } finally {
             nodeIndex.close();
         }
-        LOGGER.debug("Index traversed in {}", sw.stop());
-        sw.reset().start();
-
-        RevTree namedTree = builder.build();
         saveExtraFeatureTypes();
-        LOGGER.debug("RevTreeBuilder.build() in {}", sw.stop());
+        LOGGER.debug("RevTreeBuilder2.build() in {}", sw.stop());
         return namedTree;
     }
 
+    private static int numChildren(RevTree leafTree) {
+        int trees = leafTree.trees().isPresent() ? leafTree.trees().get().size() : 0;
+        int features = leafTree.features().isPresent() ? leafTree.features().get().size() : 0;
+        return trees + features;
+    }
+
+    private static void apply(Iterator<Node> nodes, RevTreeBuilder builder) {
+        while (nodes.hasNext()) {
+            Node node = nodes.next();
+            if (node.getObjectId().isNull()) {
+                builder.remove(node.getName());
+            } else {
+                builder.put(node);
+            }
+        }
+    }
+
+    /**
+     * Builds the top level buckets concurrently. The calling thread takes part in building them
+     * too, so that progress is guaranteed even if all the executor threads are busy, as when the
+     * builders of several trees share the same executor.
+     */
+    private RevTree buildBuckets() {
+        final Map<Integer, Bucket> originalBuckets = original.buckets().or(
+                ImmutableSortedMap.<Integer, Bucket> of());
+        final ListMultimap<Integer, Node> originalNodes = ArrayListMultimap.create();
+        if (!original.buckets().isPresent()) {
+            Iterator<Node> children = original.children();
+            while (children.hasNext()) {
+                Node node = children.next();
+                originalNodes.put(storageOrder.bucket(node.getName(), 0), node);
+            }
+        }
+
+        final Map<Integer, Bucket> buckets = Maps.newTreeMap();
+        final List<BucketBuildTask> tasks = Lists.newArrayList();
+        for (int i = 0; i < RevTree.MAX_BUCKETS; i++) {
+            final Integer bucketIndex = Integer.valueOf(i);
+            final Iterator<Node> changes = nodeIndex.nodes(i);
+            final Bucket originalBucket = originalBuckets.get(bucketIndex);
+            if (changes.hasNext() || originalNodes.containsKey(bucketIndex)) {
+                tasks.add(new BucketBuildTask(bucketIndex, originalBucket, originalNodes
+                        .get(bucketIndex), changes));
+            } else if (originalBucket != null) {
+                buckets.put(bucketIndex, originalBucket);
+            }
+        }
+
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(tasks.size());
+        final Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                int i;
+                while ((i = next.getAndIncrement()) < tasks.size()) {
+                    tasks.get(i).run();
+                    done.countDown();
+                }
+            }
+        };
+        final int nWorkers = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors())
+                - 1;
+        for (int i = 0; i < nWorkers; i++) {
+            executorService.execute(worker);
+        }
+        worker.run();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            throw Throwables.propagate(e);
+        }
+
+        long size = 0;
+        int numTrees = 0;
+        for (Map.Entry<Integer, Bucket> unchanged : buckets.entrySet()) {
+            RevTree bucketTree = db.getTree(unchanged.getValue().id());
+            size += bucketTree.size();
+            numTrees += bucketTree.numTrees();
+        }
+        for (BucketBuildTask task : tasks) {
+            RevTree bucketTree = task.result();
+            size += bucketTree.size();
+            numTrees += bucketTree.numTrees();
+            if (!bucketTree.isEmpty()) {
+                Envelope bounds = SpatialOps.boundsOf(bucketTree);
+                buckets.put(task.bucketIndex, Bucket.create(bucketTree.getId(), bounds));
+            }
+        }
+
+        if (size <= RevTree.NORMALIZED_SIZE_LIMIT) {
+            // too many deletes, the result fits in a single leaf tree
+            RevTreeBuilder builder = new RevTreeBuilder(db);
+            for (Bucket bucket : buckets.values()) {
+                putAll(db.getTree(bucket.id()), builder);
+            }
+            return builder.build();
+        }
+        RevTree unnamedTree = RevTreeImpl.createNodeTree(ObjectId.NULL, size, numTrees, buckets);
+        ObjectId treeId = new HashObject().setObject(unnamedTree).call();
+        return RevTreeImpl.create(treeId, size, unnamedTree);
+    }
+
+    private void putAll(RevTree tree, RevTreeBuilder builder) {
+        if (tree.buckets().isPresent()) {
+            for (Bucket bucket : tree.buckets().get().values()) {
+                putAll(db.getTree(bucket.id()), builder);
+            }
+        } else {
+            Iterator<Node> children = tree.children();
+            while (children.hasNext()) {
+                builder.put(children.next());
+            }
+        }
+    }
+
+    /**
+     * Builds and saves the tree of a single top level bucket out of its original contents and
+     * the sorted changes that fall on it
+     */
+    private class BucketBuildTask implements Runnable {
+
+        private final Integer bucketIndex;
+
+        @Nullable
+        private final Bucket originalBucket;
+
+        private final List<Node> originalNodes;
+
+        private final Iterator<Node> changes;
+
+        private RevTree result;
+
+        private RuntimeException error;
+
+        BucketBuildTask(Integer bucketIndex, @Nullable Bucket originalBucket,
+                List<Node> originalNodes, Iterator<Node> changes) {
+            this.bucketIndex = bucketIndex;
+            this.originalBucket = originalBucket;
+            this.originalNodes = originalNodes;
+            this.changes = changes;
+        }
+
+        @Override
+        public void run() {
+            try {
+                RevTree bucketTree = originalBucket == null ? null : db.getTree(originalBucket
+                        .id());
+                Map<ObjectId, RevTree> pendingWrites = Maps.newHashMap();
+                RevTreeBuilder builder = new RevTreeBuilder(db, bucketTree, 1, pendingWrites);
+                for (Node node : originalNodes) {
+                    builder.put(node);
+                }
+                apply(changes, builder);
+                RevTree tree = builder.build();
+                if (!pendingWrites.isEmpty()) {
+                    db.putAll(pendingWrites.values().iterator());
+                }
+                if (!tree.isEmpty()) {
+                    db.put(tree);
+                }
+                result = tree;
+            } catch (RuntimeException e) {
+                error = e;
+            }
+        }
+
+        RevTree result() {
+            if (error != null) {
+                throw error;
+            }
+            return result;
+        }
+    }
+
     private void saveExtraFeatureTypes() {
         Collection<RevFeatureType> types = revFeatureTypes.values();
         List<RevFeatureType> nonDefaults = Lists.newLinkedList();
@@ -661,6 +661,11 @@ public class WorkingTree {
     /**
      * Inserts the given {@code features} into the working tree, using the {@code treePathResolver}
      * function to determine to which tree each feature is added.
+     * <p>
+     * Producers that already built the {@link RevFeature} for a feature, for example to hash
+     * features on several threads ahead of the insert, can store it in the feature's
+     * {@link Feature#getUserData() user data} under the {@code RevFeature.class} key so that it is
+     * used as is instead of being built again.
      * 
      * @param treePathResolver a function that determines the path of the tree where each feature
      *        node is stored
@@ -707,7 +712,7 @@ public class WorkingTree {
 
                     @Override
                     public RevFeature apply(Feature feature) {
-                        final RevFeature revFeature = RevFeatureBuilder.build(feature);
+                        final RevFeature revFeature = toRevFeature(feature);
                         ObjectId id = revFeature.getId();
                         final Node node = insertHelper.put(id, feature);
 
@@ -840,6 +845,18 @@ public class WorkingTree {
         }
     }
 
+    /**
+     * @return the {@link RevFeature} precomputed for the given feature, if any, or a newly built
+     *         one otherwise
+     */
+    private static RevFeature toRevFeature(final Feature feature) {
+        Object precomputed = feature.getUserData().get(RevFeature.class);
+        if (precomputed instanceof RevFeature) {
+            return (RevFeature) precomputed;
+        }
+        return RevFeatureBuilder.build(feature);
+    }
+
     /**
      * Adds a single feature to the staging database.
      * 
@@ -906,17 +923,11 @@ public class WorkingTree {
                 .setTree(newTree).setMetadataId(metadataId).call();
         updateWorkHead(newWorkHeadId);
 
-        Map<ObjectId, FeatureBuilder> featureBuilders = Maps.newHashMap();
         while (iter.hasNext()) {
             NodeRef noderef = iter.next();
             RevFeature feature = context.command(RevObjectParse.class)
                     .setObjectId(noderef.objectId()).call(RevFeature.class).get();
-            if (!featureBuilders.containsKey(noderef.getMetadataId())) {
-                RevFeatureType ft = context.command(RevObjectParse.class)
-                        .setObjectId(noderef.getMetadataId()).call(RevFeatureType.class).get();
-                featureBuilders.put(noderef.getMetadataId(), new FeatureBuilder(ft));
-            }
-            FeatureBuilder fb = featureBuilders.get(noderef.getMetadataId());
+            FeatureBuilder fb = FeatureBuilder.forType(noderef.getMetadataId(), indexDatabase);
             String parentPath = NodeRef.parentPath(NodeRef.appendChild(treePath, noderef.path()));
             insert(parentPath, fb.build(noderef.getNode().getName(), feature));
         }
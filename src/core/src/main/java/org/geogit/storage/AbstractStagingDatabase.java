@@ -138,6 +138,14 @@ public abstract class AbstractStagingDatabase implements StagingDatabase {
         return stagingDb.deleteAll(ids, listener);
     }
 
+    /**
+     * Lists the objects in the staging area only
+     */
+    @Override
+    public Iterator<ObjectId> getAllIds(BulkOpListener listener) {
+        return stagingDb.getAllIds(listener);
+    }
+
     @Override
     public boolean exists(ObjectId id) {
         boolean exists = stagingDb.exists(id) || repositoryDb.exists(id);
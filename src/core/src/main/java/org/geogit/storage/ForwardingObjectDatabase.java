@@ -149,6 +149,11 @@ public class ForwardingObjectDatabase implements ObjectDatabase {
         return subject.get().deleteAll(ids, listener);
     }
 
+    @Override
+    public Iterator<ObjectId> getAllIds(BulkOpListener listener) {
+        return subject.get().getAllIds(listener);
+    }
+
     @Override
     public String toString() {
         return String.format("%s[%s]", getClass().getSimpleName(), subject);
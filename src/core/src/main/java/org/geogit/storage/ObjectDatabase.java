@@ -215,4 +215,20 @@ public interface ObjectDatabase extends Closeable {
      * @return the number of objects actually deleted
      */
     public long deleteAll(Iterator<ObjectId> ids, BulkOpListener listener);
+
+    /**
+     * Lists the ids of all the objects stored in this database, in no particular order.
+     * <p>
+     * The {@link BulkOpListener#found(ObjectId, Integer) listener.found} method is going to be
+     * called for each id as the returned iterator is traversed, along with the size the object
+     * takes in storage if the database can tell it, or {@code null} otherwise.
+     * <p>
+     * The database is not meant to be modified until the returned iterator is exhausted. A
+     * {@link StagingDatabase} only lists the objects stored in the staging area, not the ones it
+     * reads through from the repository database.
+     * 
+     * @param listener a listener that gets notified of {@link BulkOpListener#found found} items
+     * @return an iterator over the ids of the objects in the database
+     */
+    public Iterator<ObjectId> getAllIds(BulkOpListener listener);
 }
@@ -0,0 +1,140 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.storage;
+
+import javax.annotation.Nullable;
+
+import org.geogit.api.ObjectId;
+
+/**
+ * An open addressing hash map keyed by {@link ObjectId}s stored in their primitive form, the
+ * {@link ObjectIdSet} counterpart for when a value needs to be associated to each id.
+ * <p>
+ * Meant for internal use by caches and the like. Does not support {@code null} values. Not thread
+ * safe.
+ */
+public class ObjectIdMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private long[] h1s;
+
+    private long[] h2s;
+
+    private int[] h3s;
+
+    private boolean[] used;
+
+    private Object[] values;
+
+    private int size;
+
+    private int threshold;
+
+    public ObjectIdMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize the number of entries the map is expected to hold before needing to grow
+     */
+    public ObjectIdMap(int expectedSize) {
+        allocate(ObjectIdSet.tableSizeFor(expectedSize));
+    }
+
+    private void allocate(int capacity) {
+        h1s = new long[capacity];
+        h2s = new long[capacity];
+        h3s = new int[capacity];
+        used = new boolean[capacity];
+        values = new Object[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * @return the previous value associated to {@code id}, or {@code null}
+     */
+    @Nullable
+    public V put(ObjectId id, V value) {
+        if (value == null) {
+            throw new NullPointerException("null values are not supported");
+        }
+        final long h1 = id.h1();
+        final long h2 = id.h2();
+        final int h3 = id.h3();
+        int slot = ObjectIdSet.find(h1s, h2s, h3s, used, h1, h2, h3);
+        if (slot >= 0) {
+            @SuppressWarnings("unchecked")
+            V previous = (V) values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        if (size >= threshold) {
+            rehash(2 * used.length);
+            slot = ObjectIdSet.find(h1s, h2s, h3s, used, h1, h2, h3);
+        }
+        slot = -(slot + 1);
+        h1s[slot] = h1;
+        h2s[slot] = h2;
+        h3s[slot] = h3;
+        used[slot] = true;
+        values[slot] = value;
+        size++;
+        return null;
+    }
+
+    /**
+     * @return the value associated to {@code id}, or {@code null}
+     */
+    @Nullable
+    public V get(ObjectId id) {
+        int slot = ObjectIdSet.find(h1s, h2s, h3s, used, id.h1(), id.h2(), id.h3());
+        if (slot < 0) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        V value = (V) values[slot];
+        return value;
+    }
+
+    public boolean containsKey(ObjectId id) {
+        return ObjectIdSet.find(h1s, h2s, h3s, used, id.h1(), id.h2(), id.h3()) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        allocate(ObjectIdSet.tableSizeFor(DEFAULT_CAPACITY));
+        size = 0;
+    }
+
+    private void rehash(int newCapacity) {
+        final long[] oldH1s = h1s;
+        final long[] oldH2s = h2s;
+        final int[] oldH3s = h3s;
+        final boolean[] oldUsed = used;
+        final Object[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                int slot = -(ObjectIdSet.find(h1s, h2s, h3s, used, oldH1s[i], oldH2s[i],
+                        oldH3s[i]) + 1);
+                h1s[slot] = oldH1s[i];
+                h2s[slot] = oldH2s[i];
+                h3s[slot] = oldH3s[i];
+                used[slot] = true;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
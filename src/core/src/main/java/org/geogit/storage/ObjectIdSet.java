@@ -0,0 +1,172 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.storage;
+
+import java.util.Iterator;
+
+import org.geogit.api.ObjectId;
+
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * An open addressing hash set of {@link ObjectId}s that stores the ids in their primitive form
+ * (see {@link ObjectId#h1()}, {@link ObjectId#h2()}, {@link ObjectId#h3()}) in parallel arrays,
+ * instead of keeping references to {@code ObjectId} instances wrapped in hash map entries as a
+ * {@code java.util.HashSet} would.
+ * <p>
+ * Meant for internal use by components that need to keep track of large amounts of object ids,
+ * like {@link Deduplicator}s and caches. Not thread safe.
+ */
+public class ObjectIdSet implements Iterable<ObjectId> {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private long[] h1s;
+
+    private long[] h2s;
+
+    private int[] h3s;
+
+    private boolean[] used;
+
+    private int size;
+
+    private int threshold;
+
+    public ObjectIdSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize the number of ids the set is expected to hold before needing to grow
+     */
+    public ObjectIdSet(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    private void allocate(int capacity) {
+        h1s = new long[capacity];
+        h2s = new long[capacity];
+        h3s = new int[capacity];
+        used = new boolean[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    static int tableSizeFor(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        return Math.max(16, capacity);
+    }
+
+    /**
+     * @return the slot holding the given id, or {@code -(insertionPoint + 1)} if it's not present
+     */
+    static int find(long[] h1s, long[] h2s, int[] h3s, boolean[] used, long h1, long h2, int h3) {
+        final int mask = used.length - 1;
+        int slot = mix(h1, h2) & mask;
+        while (used[slot]) {
+            if (h1s[slot] == h1 && h2s[slot] == h2 && h3s[slot] == h3) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -(slot + 1);
+    }
+
+    /**
+     * Object ids are SHA-1 hashes so their bits are already evenly distributed, no need for a
+     * costly mixing function
+     */
+    private static int mix(long h1, long h2) {
+        return (int) (h1 ^ (h1 >>> 32) ^ h2);
+    }
+
+    /**
+     * Adds the given id to this set.
+     *
+     * @return {@code true} if the set didn't already contain the id
+     */
+    public boolean add(ObjectId id) {
+        final long h1 = id.h1();
+        final long h2 = id.h2();
+        final int h3 = id.h3();
+        int slot = find(h1s, h2s, h3s, used, h1, h2, h3);
+        if (slot >= 0) {
+            return false;
+        }
+        if (size >= threshold) {
+            rehash(2 * used.length);
+            slot = find(h1s, h2s, h3s, used, h1, h2, h3);
+        }
+        slot = -(slot + 1);
+        h1s[slot] = h1;
+        h2s[slot] = h2;
+        h3s[slot] = h3;
+        used[slot] = true;
+        size++;
+        return true;
+    }
+
+    public boolean contains(ObjectId id) {
+        return find(h1s, h2s, h3s, used, id.h1(), id.h2(), id.h3()) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        allocate(tableSizeFor(DEFAULT_CAPACITY));
+        size = 0;
+    }
+
+    private void rehash(int newCapacity) {
+        final long[] oldH1s = h1s;
+        final long[] oldH2s = h2s;
+        final int[] oldH3s = h3s;
+        final boolean[] oldUsed = used;
+        allocate(newCapacity);
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                int slot = -(find(h1s, h2s, h3s, used, oldH1s[i], oldH2s[i], oldH3s[i]) + 1);
+                h1s[slot] = oldH1s[i];
+                h2s[slot] = oldH2s[i];
+                h3s[slot] = oldH3s[i];
+                used[slot] = true;
+            }
+        }
+    }
+
+    /**
+     * @return an iterator over the ids in this set, in no particular order. {@code ObjectId}
+     *         instances are created as the iterator advances.
+     */
+    @Override
+    public Iterator<ObjectId> iterator() {
+        final long[] h1s = this.h1s;
+        final long[] h2s = this.h2s;
+        final int[] h3s = this.h3s;
+        final boolean[] used = this.used;
+        return new AbstractIterator<ObjectId>() {
+
+            private int slot = -1;
+
+            @Override
+            protected ObjectId computeNext() {
+                while (++slot < used.length) {
+                    if (used[slot]) {
+                        return ObjectId.create(h1s[slot], h2s[slot], h3s[slot]);
+                    }
+                }
+                return endOfData();
+            }
+        };
+    }
+}
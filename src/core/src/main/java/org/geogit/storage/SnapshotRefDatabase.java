@@ -0,0 +1,156 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+
+package org.geogit.storage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+
+import org.geogit.api.SnapshotContext;
+import org.geogit.repository.RepositoryConnectionException;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * A read only {@link RefDatabase} decorator that reads each ref at most once and keeps returning
+ * the value it first read.
+ * <p>
+ * This is so that the read only commands run through a {@link SnapshotContext} keep seeing the
+ * commits they started with even if a push or commit updates the refs meanwhile, without reading
+ * the same refs from the underlying database over and over.
+ * <p>
+ * Changing the refs or {@link #lock() locking} the database is not supported.
+ */
+public class SnapshotRefDatabase implements RefDatabase {
+
+    private final RefDatabase refDb;
+
+    private final ConcurrentMap<String, Optional<String>> refs = Maps.newConcurrentMap();
+
+    private final ConcurrentMap<String, Optional<String>> symRefs = Maps.newConcurrentMap();
+
+    private final ConcurrentMap<String, Map<String, String>> namespaces = Maps
+            .newConcurrentMap();
+
+    private volatile Map<String, String> allRefs;
+
+    public SnapshotRefDatabase(final RefDatabase refDb) {
+        this.refDb = refDb;
+    }
+
+    @Override
+    public void lock() throws TimeoutException {
+        throw readOnly();
+    }
+
+    @Override
+    public void unlock() {
+        throw readOnly();
+    }
+
+    @Override
+    public void configure() throws RepositoryConnectionException {
+        refDb.configure();
+    }
+
+    @Override
+    public void checkConfig() throws RepositoryConnectionException {
+        refDb.checkConfig();
+    }
+
+    @Override
+    public void create() {
+        throw readOnly();
+    }
+
+    /**
+     * Does nothing, the decorated database is owned by the repository
+     */
+    @Override
+    public void close() {
+        // nothing to close
+    }
+
+    @Override
+    public String getRef(String name) {
+        Optional<String> value = refs.get(name);
+        if (value == null) {
+            value = Optional.fromNullable(refDb.getRef(name));
+            Optional<String> first = refs.putIfAbsent(name, value);
+            if (first != null) {
+                value = first;
+            }
+        }
+        return value.orNull();
+    }
+
+    @Override
+    public String getSymRef(String name) {
+        Optional<String> value = symRefs.get(name);
+        if (value == null) {
+            value = Optional.fromNullable(refDb.getSymRef(name));
+            Optional<String> first = symRefs.putIfAbsent(name, value);
+            if (first != null) {
+                value = first;
+            }
+        }
+        return value.orNull();
+    }
+
+    @Override
+    public void putRef(String refName, String refValue) {
+        throw readOnly();
+    }
+
+    @Override
+    public void putSymRef(String name, String val) {
+        throw readOnly();
+    }
+
+    @Override
+    public String remove(String refName) {
+        throw readOnly();
+    }
+
+    @Override
+    public Map<String, String> getAll() {
+        Map<String, String> all = allRefs;
+        if (all == null) {
+            all = ImmutableMap.copyOf(refDb.getAll());
+            allRefs = all;
+        }
+        return all;
+    }
+
+    @Override
+    public Map<String, String> getAll(String prefix) {
+        Map<String, String> all = namespaces.get(prefix);
+        if (all == null) {
+            all = ImmutableMap.copyOf(refDb.getAll(prefix));
+            Map<String, String> first = namespaces.putIfAbsent(prefix, all);
+            if (first != null) {
+                all = first;
+            }
+        }
+        return all;
+    }
+
+    @Override
+    public Map<String, String> removeAll(String namespace) {
+        throw readOnly();
+    }
+
+    private UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Refs can't be changed on a read only snapshot");
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + refDb + "]";
+    }
+}
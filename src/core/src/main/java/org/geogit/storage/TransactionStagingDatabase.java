@@ -268,6 +268,11 @@ public class TransactionStagingDatabase implements StagingDatabase {
         return database.deleteAll(ids, listener);
     }
 
+    @Override
+    public Iterator<ObjectId> getAllIds(BulkOpListener listener) {
+        return database.getAllIds(listener);
+    }
+
     @Override
     public void configure() {
         // No-op
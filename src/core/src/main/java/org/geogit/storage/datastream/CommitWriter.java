@@ -24,10 +24,10 @@ public class CommitWriter implements ObjectWriter<RevCommit> {
         DataOutput data = new DataOutputStream(out);
         FormatCommon.writeHeader(data, "commit");
         data.writeByte(COMMIT_TREE_REF);
-        data.write(commit.getTreeId().getRawValue());
+        commit.getTreeId().writeTo(data);
         for (ObjectId pId : commit.getParentIds()) {
             data.writeByte(COMMIT_PARENT_REF);
-            data.write(pId.getRawValue());
+            pId.writeTo(data);
         }
         data.writeByte(COMMIT_AUTHOR_PREFIX);
         FormatCommon.writePerson(commit.getAuthor(), data);
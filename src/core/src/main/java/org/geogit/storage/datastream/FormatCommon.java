@@ -72,9 +72,7 @@ public class FormatCommon {
     }
 
     public final static ObjectId readObjectId(DataInput in) throws IOException {
-        byte[] bytes = new byte[20];
-        in.readFully(bytes);
-        return ObjectId.createNoClone(bytes);
+        return ObjectId.readFrom(in);
     }
 
     public static final byte COMMIT_TREE_REF = 0x01;
@@ -118,7 +116,7 @@ public class FormatCommon {
     }
 
     public static void writeTag(RevTag tag, DataOutput out) throws IOException {
-        out.write(tag.getCommitId().getRawValue());
+        tag.getCommitId().writeTo(out);
         out.writeUTF(tag.getName());
         out.writeUTF(tag.getMessage());
         writePerson(tag.getTagger(), out);
@@ -130,9 +128,7 @@ public class FormatCommon {
             throw new IllegalArgumentException("Commit should include a tree ref");
         }
 
-        final byte[] treeIdBytes = new byte[20];
-        in.readFully(treeIdBytes);
-        final ObjectId treeId = ObjectId.createNoClone(treeIdBytes);
+        final ObjectId treeId = readObjectId(in);
         final Builder<ObjectId> parentListBuilder = ImmutableList.builder();
 
         while (true) {
@@ -140,9 +136,7 @@ public class FormatCommon {
             if (tag != COMMIT_PARENT_REF) {
                 break;
             } else {
-                final byte[] parentIdBytes = new byte[20];
-                in.readFully(parentIdBytes);
-                parentListBuilder.add(ObjectId.createNoClone(parentIdBytes));
+                parentListBuilder.add(readObjectId(in));
             }
         }
 
@@ -228,15 +222,12 @@ public class FormatCommon {
 
     public static Node readNode(DataInput in) throws IOException {
         final String name = in.readUTF();
-        final byte[] objectId = new byte[20];
-        in.readFully(objectId);
-        final byte[] metadataId = new byte[20];
-        in.readFully(metadataId);
+        final ObjectId objectId = readObjectId(in);
+        final ObjectId metadataId = readObjectId(in);
         final RevObject.TYPE contentType = RevObject.TYPE.valueOf(in.readByte());
         final Envelope bbox = readBBox(in);
         final Node node;
-        node = Node.create(name, ObjectId.createNoClone(objectId),
-                ObjectId.createNoClone(metadataId), contentType, bbox);
+        node = Node.create(name, objectId, metadataId, contentType, bbox);
         return node;
     }
 
@@ -257,16 +248,13 @@ public class FormatCommon {
 
     public static NodeRef readNodeRef(DataInput in) throws IOException {
         Node node = readNode(in);
-        final byte[] metadataId = new byte[20];
-        in.readFully(metadataId);
+        final ObjectId metadataId = readObjectId(in);
         String parentPath = in.readUTF();
-        return new NodeRef(node, parentPath, ObjectId.createNoClone(metadataId));
+        return new NodeRef(node, parentPath, metadataId);
     }
 
     public static final Bucket readBucket(DataInput in) throws IOException {
-        final byte[] hash = new byte[20];
-        in.readFully(hash);
-        ObjectId objectId = ObjectId.createNoClone(hash);
+        ObjectId objectId = readObjectId(in);
         Envelope bounds = readBBox(in);
         return Bucket.create(objectId, bounds);
     }
@@ -391,7 +379,7 @@ public class FormatCommon {
     public static void writeBucket(int index, Bucket bucket, DataOutput data, Envelope envBuff)
             throws IOException {
         data.writeInt(index);
-        data.write(bucket.id().getRawValue());
+        bucket.id().writeTo(data);
         envBuff.setToNull();
         bucket.expand(envBuff);
         writeBoundingBox(envBuff, data);
@@ -403,8 +391,8 @@ public class FormatCommon {
 
     public static void writeNode(Node node, DataOutput data, Envelope envBuff) throws IOException {
         data.writeUTF(node.getName());
-        data.write(node.getObjectId().getRawValue());
-        data.write(node.getMetadataId().or(ObjectId.NULL).getRawValue());
+        node.getObjectId().writeTo(data);
+        node.getMetadataId().or(ObjectId.NULL).writeTo(data);
         int typeN = node.getType().value();
         data.writeByte(typeN);
         envBuff.setToNull();
@@ -429,7 +417,7 @@ public class FormatCommon {
 
     public static void writeNodeRef(NodeRef nodeRef, DataOutput data) throws IOException {
         writeNode(nodeRef.getNode(), data);
-        data.write(nodeRef.getMetadataId().getRawValue());
+        nodeRef.getMetadataId().writeTo(data);
         data.writeUTF(nodeRef.getParentPath());
     }
 }
@@ -0,0 +1,412 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.storage.fs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.List;
+
+import org.geogit.api.ObjectId;
+import org.geogit.api.Platform;
+import org.geogit.api.plumbing.ResolveGeogitDir;
+import org.geogit.storage.ObjectIdSet;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Closeables;
+import com.google.common.io.CountingInputStream;
+import com.google.common.primitives.Longs;
+
+/**
+ * An optional, file based index that maps every path in the repository (both feature and tree
+ * paths) to the list of commits where the {@link ObjectId} of the node at that path changed with
+ * respect to the commit's first parent.
+ * <p>
+ * The index lives in the {@code history} directory inside the {@code .geogit} directory and is
+ * made of:
+ * <ul>
+ * <li>a {@code commits} file holding the ids of all the commits that have been indexed, in the order
+ * they were indexed
+ * <li>{@value #NUM_BUCKETS} {@code paths/<nn>} files where {@code path -> commit id} records are
+ * appended, the bucket being given by the path's hash code
+ * <li>a {@code paths/<nn>.idx} file next to each bucket file, holding the full hash code of the path
+ * and the offset of every record in the bucket as fixed size entries. Looking up the history of a
+ * path hence only scans the small offsets file of one bucket, and only reads and decodes the
+ * records whose path has the same hash code.
+ * </ul>
+ * A commit is added to the {@code commits} file only after its path records have been written, so
+ * an interrupted update leaves at most some duplicate path records behind, which are ignored when
+ * read.
+ * <p>
+ * Commits not yet indexed (for example those created while the index did not exist) are reported
+ * as such by {@link #isIndexed(ObjectId)} so that callers can fall back to resolving their trees.
+ *
+ * @see org.geogit.api.plumbing.UpdateHistoryIndex
+ */
+public class FileHistoryIndex {
+
+    private static final String INDEX_DIR = "history";
+
+    private static final int NUM_BUCKETS = 256;
+
+    /**
+     * Max number of bytes of path records buffered before {@link #flush() flushing} them to disk
+     */
+    private static final int FLUSH_THRESHOLD = 4 * 1024 * 1024;
+
+    /**
+     * Size of an entry in a bucket's offsets file: the path's hash code and the record's offset
+     */
+    private static final int OFFSET_ENTRY_SIZE = 4 + 8;
+
+    private final File commitsFile;
+
+    private final File pathsDir;
+
+    private ObjectIdSet indexedCommits;
+
+    private final List<ObjectId> pendingCommits;
+
+    private final ByteArrayOutputStream[] pendingPaths;
+
+    /**
+     * The hash code and offset within {@link #pendingPaths} of each pending path record, per bucket
+     */
+    private final ByteArrayOutputStream[] pendingOffsets;
+
+    private int pendingBytes;
+
+    private FileHistoryIndex(File indexDir) {
+        this.commitsFile = new File(indexDir, "commits");
+        this.pathsDir = new File(indexDir, "paths");
+        this.pendingCommits = Lists.newArrayList();
+        this.pendingPaths = new ByteArrayOutputStream[NUM_BUCKETS];
+        this.pendingOffsets = new ByteArrayOutputStream[NUM_BUCKETS];
+    }
+
+    /**
+     * @return the history index of the repository at the platform's working directory, or
+     *         {@link Optional#absent() absent} if the repository has not been indexed
+     */
+    public static Optional<FileHistoryIndex> open(Platform platform) {
+        Optional<File> indexDir = indexDir(platform);
+        if (indexDir.isPresent() && indexDir.get().isDirectory()) {
+            return Optional.of(new FileHistoryIndex(indexDir.get()));
+        }
+        return Optional.absent();
+    }
+
+    /**
+     * Creates an empty history index for the repository at the platform's working directory,
+     * discarding any previously existing one.
+     */
+    public static FileHistoryIndex create(Platform platform) {
+        Optional<File> indexDir = indexDir(platform);
+        Preconditions.checkState(indexDir.isPresent(), "Not inside a geogit directory");
+        File dir = indexDir.get();
+        FileHistoryIndex index = new FileHistoryIndex(dir);
+        index.commitsFile.delete();
+        File[] buckets = index.pathsDir.listFiles();
+        if (buckets != null) {
+            for (File bucket : buckets) {
+                bucket.delete();
+            }
+        }
+        if (!index.pathsDir.isDirectory() && !index.pathsDir.mkdirs()) {
+            throw new IllegalStateException("Unable to create history index directory " + dir);
+        }
+        return index;
+    }
+
+    private static Optional<File> indexDir(Platform platform) {
+        Optional<URL> repoUrl = new ResolveGeogitDir(platform).call();
+        if (!repoUrl.isPresent()) {
+            return Optional.absent();
+        }
+        try {
+            return Optional.of(new File(new File(repoUrl.get().toURI()), INDEX_DIR));
+        } catch (URISyntaxException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * @return whether the given commit has already been indexed
+     */
+    public synchronized boolean isIndexed(ObjectId commitId) {
+        return indexedCommits().contains(commitId);
+    }
+
+    /**
+     * @return the number of indexed commits
+     */
+    public synchronized int size() {
+        return indexedCommits().size();
+    }
+
+    /**
+     * Records the paths whose node changed in the given commit with respect to its first parent.
+     * <p>
+     * Changes are buffered and written to disk on {@link #flush()} or once the buffer grows large
+     * enough.
+     *
+     * @param commitId the commit to index
+     * @param changedPaths the paths of the feature and tree nodes that changed in {@code commitId}
+     */
+    public synchronized void put(ObjectId commitId, Collection<String> changedPaths) {
+        if (!indexedCommits().add(commitId)) {
+            return;
+        }
+        try {
+            for (String path : changedPaths) {
+                int bucket = bucket(path);
+                ByteArrayOutputStream buff = pendingPaths[bucket];
+                if (buff == null) {
+                    pendingPaths[bucket] = buff = new ByteArrayOutputStream();
+                    pendingOffsets[bucket] = new ByteArrayOutputStream();
+                }
+                int size = buff.size();
+                DataOutputStream offsets = new DataOutputStream(pendingOffsets[bucket]);
+                offsets.writeInt(path.hashCode());
+                offsets.writeInt(size);
+                DataOutputStream out = new DataOutputStream(buff);
+                out.writeUTF(path);
+                commitId.writeTo(out);
+                pendingBytes += buff.size() - size;
+            }
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        pendingCommits.add(commitId);
+        if (pendingBytes > FLUSH_THRESHOLD) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes down any buffered change.
+     */
+    public synchronized void flush() {
+        if (pendingCommits.isEmpty()) {
+            return;
+        }
+        try {
+            for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+                ByteArrayOutputStream buff = pendingPaths[bucket];
+                if (buff != null) {
+                    flush(bucket, buff, pendingOffsets[bucket]);
+                    pendingPaths[bucket] = null;
+                    pendingOffsets[bucket] = null;
+                }
+            }
+            ByteArrayOutputStream commits = new ByteArrayOutputStream(
+                    ObjectId.NUM_BYTES * pendingCommits.size());
+            DataOutputStream out = new DataOutputStream(commits);
+            for (ObjectId id : pendingCommits) {
+                id.writeTo(out);
+            }
+            append(commitsFile, commits);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        pendingCommits.clear();
+        pendingBytes = 0;
+    }
+
+    /**
+     * @return the commits where the node at {@code path} changed, in the order they were indexed,
+     *         which for commits indexed by {@link org.geogit.api.plumbing.UpdateHistoryIndex} is
+     *         parents before children
+     */
+    public synchronized ImmutableList<ObjectId> commits(String path) {
+        flush();
+        final int bucket = bucket(path);
+        File file = bucketFile(bucket);
+        if (!file.exists()) {
+            return ImmutableList.of();
+        }
+        ImmutableList.Builder<ObjectId> commits = ImmutableList.builder();
+        ObjectIdSet seen = new ObjectIdSet();
+        RandomAccessFile in = null;
+        try {
+            long[] offsets = offsets(bucket, path.hashCode());
+            if (offsets.length == 0) {
+                return ImmutableList.of();
+            }
+            in = new RandomAccessFile(file, "r");
+            for (long offset : offsets) {
+                in.seek(offset);
+                String recordPath = in.readUTF();
+                if (path.equals(recordPath)) {
+                    ObjectId commitId = ObjectId.readFrom(in);
+                    if (seen.add(commitId)) {
+                        commits.add(commitId);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            Closeables.closeQuietly(in);
+        }
+        return commits.build();
+    }
+
+    /**
+     * @return the offsets of the records in the given bucket whose path has the given hash code,
+     *         in the order they were written
+     */
+    private long[] offsets(int bucket, int hashCode) throws IOException {
+        File offsetsFile = offsetsFile(bucket);
+        if (!offsetsFile.exists()) {
+            // index created before the offset files existed
+            indexBucket(bucket);
+        }
+        List<Long> offsets = Lists.newArrayList();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+                offsetsFile)));
+        try {
+            final long count = offsetsFile.length() / OFFSET_ENTRY_SIZE;
+            for (long i = 0; i < count; i++) {
+                int recordHash = in.readInt();
+                long offset = in.readLong();
+                if (recordHash == hashCode) {
+                    offsets.add(Long.valueOf(offset));
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return Longs.toArray(offsets);
+    }
+
+    /**
+     * Appends the pending records of a bucket to its file, and their offsets to its offsets file.
+     * The records are written first, so an interrupted flush can at most leave records with no
+     * offset behind, whose commits are not recorded as indexed either.
+     */
+    private void flush(int bucket, ByteArrayOutputStream records,
+            ByteArrayOutputStream relativeOffsets) throws IOException {
+        File file = bucketFile(bucket);
+        if (file.exists() && !offsetsFile(bucket).exists()) {
+            indexBucket(bucket);
+        }
+        final long base = file.length();
+        append(file, records);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                relativeOffsets.toByteArray()));
+        // the pending entries are a hash code and an offset relative to base, both ints
+        final int entries = relativeOffsets.size() / 8;
+        ByteArrayOutputStream offsets = new ByteArrayOutputStream(OFFSET_ENTRY_SIZE * entries);
+        DataOutputStream out = new DataOutputStream(offsets);
+        for (int i = 0; i < entries; i++) {
+            out.writeInt(in.readInt());
+            out.writeLong(base + in.readInt());
+        }
+        append(offsetsFile(bucket), offsets);
+    }
+
+    /**
+     * Creates the offsets file of a bucket from the records already in it.
+     */
+    private void indexBucket(int bucket) throws IOException {
+        File file = bucketFile(bucket);
+        ByteArrayOutputStream offsets = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(offsets);
+        if (file.exists()) {
+            CountingInputStream counting = new CountingInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+            DataInputStream in = new DataInputStream(counting);
+            try {
+                while (true) {
+                    long offset = counting.getCount();
+                    String recordPath;
+                    try {
+                        recordPath = in.readUTF();
+                    } catch (EOFException eof) {
+                        break;
+                    }
+                    ObjectId.readFrom(in);
+                    out.writeInt(recordPath.hashCode());
+                    out.writeLong(offset);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        File offsetsFile = offsetsFile(bucket);
+        offsetsFile.delete();
+        append(offsetsFile, offsets);
+    }
+
+    private ObjectIdSet indexedCommits() {
+        if (indexedCommits == null) {
+            ObjectIdSet commits = new ObjectIdSet((int) (commitsFile.length() / ObjectId.NUM_BYTES));
+            if (commitsFile.exists()) {
+                DataInputStream in = null;
+                try {
+                    in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+                            commitsFile)));
+                    final long count = commitsFile.length() / ObjectId.NUM_BYTES;
+                    for (long i = 0; i < count; i++) {
+                        commits.add(ObjectId.readFrom(in));
+                    }
+                } catch (IOException e) {
+                    throw Throwables.propagate(e);
+                } finally {
+                    Closeables.closeQuietly(in);
+                }
+            }
+            indexedCommits = commits;
+        }
+        return indexedCommits;
+    }
+
+    private File bucketFile(int bucket) {
+        return new File(pathsDir, String.format("%02x", bucket));
+    }
+
+    private File offsetsFile(int bucket) {
+        return new File(pathsDir, String.format("%02x.idx", bucket));
+    }
+
+    private static int bucket(String path) {
+        return path.hashCode() & (NUM_BUCKETS - 1);
+    }
+
+    private static void append(File file, ByteArrayOutputStream contents) throws IOException {
+        OutputStream out;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(file, true));
+        } catch (FileNotFoundException e) {
+            file.getParentFile().mkdirs();
+            out = new BufferedOutputStream(new FileOutputStream(file, true));
+        }
+        try {
+            contents.writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+}
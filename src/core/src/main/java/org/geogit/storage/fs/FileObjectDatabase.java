@@ -17,6 +17,7 @@ import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 
 import org.geogit.api.ObjectId;
@@ -32,8 +33,11 @@ import org.geogit.storage.datastream.DataStreamSerializationFactory;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 
 /**
@@ -253,13 +257,75 @@ public class FileObjectDatabase extends AbstractObjectDatabase implements Object
     }
 
     @Override
-    public Iterator<RevObject> getAll(Iterable<ObjectId> ids, BulkOpListener listener) {
-        throw new UnsupportedOperationException("This method is not yet implemented");
+    public Iterator<RevObject> getAll(final Iterable<ObjectId> ids, final BulkOpListener listener) {
+        return new AbstractIterator<RevObject>() {
+            final Iterator<ObjectId> iterator = ids.iterator();
+
+            @Override
+            protected RevObject computeNext() {
+                while (iterator.hasNext()) {
+                    ObjectId id = iterator.next();
+                    RevObject object = getIfPresent(id);
+                    if (object == null) {
+                        listener.notFound(id);
+                    } else {
+                        listener.found(id, Integer.valueOf((int) filePath(id).length()));
+                        return object;
+                    }
+                }
+                return endOfData();
+            }
+        };
     }
 
     @Override
     public long deleteAll(Iterator<ObjectId> ids, final BulkOpListener listener) {
-        throw new UnsupportedOperationException("This method is not yet implemented");
+        long count = 0;
+        while (ids.hasNext()) {
+            ObjectId id = ids.next();
+            if (delete(id)) {
+                count++;
+                listener.deleted(id);
+            } else {
+                listener.notFound(id);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Walks the two levels of directories objects are spread over, listing one directory at a
+     * time.
+     */
+    @Override
+    public Iterator<ObjectId> getAllIds(final BulkOpListener listener) {
+        return new AbstractIterator<ObjectId>() {
+            final LinkedList<File> directories = Lists.newLinkedList(ImmutableList.of(dataRoot));
+
+            Iterator<File> files = Iterators.emptyIterator();
+
+            @Override
+            protected ObjectId computeNext() {
+                while (true) {
+                    if (files.hasNext()) {
+                        File f = files.next();
+                        if (f.isDirectory()) {
+                            directories.add(f);
+                        } else if (f.getName().length() == 2 * ObjectId.NUM_BYTES) {
+                            ObjectId id = ObjectId.valueOf(f.getName());
+                            listener.found(id, Integer.valueOf((int) f.length()));
+                            return id;
+                        }
+                    } else if (directories.isEmpty()) {
+                        return endOfData();
+                    } else {
+                        File[] children = directories.removeFirst().listFiles();
+                        files = children == null ? Iterators.<File> emptyIterator() : Iterators
+                                .forArray(children);
+                    }
+                }
+            }
+        };
     }
 
     @Override
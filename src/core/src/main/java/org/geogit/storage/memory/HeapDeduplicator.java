@@ -4,15 +4,15 @@
  */
 package org.geogit.storage.memory;
 
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 
 import org.geogit.api.ObjectId;
 import org.geogit.storage.Deduplicator;
+import org.geogit.storage.ObjectIdSet;
 
 public class HeapDeduplicator implements Deduplicator {
-    private Set<ObjectId> seen = new HashSet<ObjectId>();
+    private ObjectIdSet seen = new ObjectIdSet();
     
     @Override
     public boolean visit(ObjectId id) {
@@ -26,7 +26,11 @@ public class HeapDeduplicator implements Deduplicator {
 
     @Override
     public void removeDuplicates(List<ObjectId> ids) {
-        ids.removeAll(seen);
+        for (Iterator<ObjectId> it = ids.iterator(); it.hasNext();) {
+            if (seen.contains(it.next())) {
+                it.remove();
+            }
+        }
     }
     
     @Override
@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentMap;
 
 import org.geogit.api.ObjectId;
@@ -186,6 +187,23 @@ public class HeapObjectDatabse extends AbstractObjectDatabase implements ObjectD
         };
     }
 
+    @Override
+    public Iterator<ObjectId> getAllIds(final BulkOpListener listener) {
+        return new AbstractIterator<ObjectId>() {
+            final Iterator<Entry<ObjectId, byte[]>> entries = objects.entrySet().iterator();
+
+            @Override
+            protected ObjectId computeNext() {
+                if (!entries.hasNext()) {
+                    return endOfData();
+                }
+                Entry<ObjectId, byte[]> entry = entries.next();
+                listener.found(entry.getKey(), entry.getValue().length);
+                return entry.getKey();
+            }
+        };
+    }
+
     @Override
     public void configure() {
         // No-op
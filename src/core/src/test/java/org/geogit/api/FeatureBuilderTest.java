@@ -37,4 +37,31 @@ public class FeatureBuilderTest extends RepositoryTestCase {
         assertEquals(((SimpleFeature) test).getAttributes(),
                 ((SimpleFeature) test2).getAttributes());
     }
+
+    @Test
+    public void testSharedBuilders() {
+        RevFeatureType type = RevFeatureType.build(pointsType);
+        FeatureBuilder builder = FeatureBuilder.forType(type);
+        assertSame(builder, FeatureBuilder.forType(RevFeatureType.build(pointsType)));
+        assertSame(builder, FeatureBuilder.forType(type.getId(), repo.objectDatabase()));
+        assertEquals("EPSG:4326", builder.getCrsCode());
+
+        RevFeature point1 = RevFeatureBuilder.build(points1);
+        SimpleFeature p1 = (SimpleFeature) builder.build(idP1, point1);
+        SimpleFeature p2 = (SimpleFeature) builder.build(idP1, point1);
+        for (int i = 0; i < pointsType.getAttributeCount(); i++) {
+            String name = pointsType.getDescriptor(i).getLocalName();
+            assertEquals(((SimpleFeature) points1).getAttribute(name), p1.getAttribute(i));
+            assertEquals(p1.getAttribute(i), p1.getAttribute(name));
+        }
+        assertEquals(((SimpleFeature) points1).getDefaultGeometry(), p1.getDefaultGeometry());
+
+        // features of the same type don't share their values
+        p1.setAttribute("sp", "changed");
+        assertEquals("changed", p1.getAttribute(0));
+        assertEquals("StringProp1_1", p2.getAttribute("sp"));
+        p1.setDefaultGeometry(null);
+        assertNull(p1.getDefaultGeometry());
+        assertNotNull(p2.getDefaultGeometry());
+    }
 }
@@ -4,7 +4,13 @@
  */
 package org.geogit.api;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
@@ -113,4 +119,66 @@ public class ObjectIdTest extends TestCase {
         assertTrue(Arrays.equals(bytes, bytes2));
     }
 
+    @Test
+    public void testByteNAllPositions() {
+        byte[] raw = new byte[ObjectId.NUM_BYTES];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = (byte) (0xf0 - i);
+        }
+        ObjectId oid = new ObjectId(raw);
+        for (int i = 0; i < raw.length; i++) {
+            assertEquals(raw[i] & 0xFF, oid.byteN(i));
+        }
+    }
+
+    @Test
+    public void testHashCodeIsBasedOnFirstFourBytes() {
+        ObjectId oid = ObjectId.valueOf("0102030405060708090a0b0c0d0e0f1011121314");
+        assertEquals(0x04030201, oid.hashCode());
+    }
+
+    @Test
+    public void testCompareToIsUnsignedLexicographical() {
+        Random random = new Random(1);
+        byte[] left = new byte[ObjectId.NUM_BYTES];
+        byte[] right = new byte[ObjectId.NUM_BYTES];
+        for (int i = 0; i < 1000; i++) {
+            random.nextBytes(left);
+            System.arraycopy(left, 0, right, 0, right.length);
+            right[random.nextInt(right.length)] = (byte) random.nextInt();
+            int expected = Integer.signum(ObjectId.compare(left, right));
+            int actual = Integer.signum(new ObjectId(left).compareTo(new ObjectId(right)));
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testDataOutputRoundTrip() throws Exception {
+        ObjectId oid = ObjectId.forString("some content");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        oid.writeTo(new DataOutputStream(out));
+        byte[] written = out.toByteArray();
+        assertTrue(Arrays.equals(oid.getRawValue(), written));
+        assertEquals(oid, ObjectId.readFrom(new DataInputStream(new ByteArrayInputStream(written))));
+    }
+
+    @Test
+    public void testByteBufferRoundTrip() {
+        ObjectId oid = ObjectId.forString("some content");
+        ByteBuffer buff = ByteBuffer.allocate(2 * ObjectId.NUM_BYTES);
+        oid.writeTo(buff);
+        ObjectId.NULL.writeTo(buff);
+        buff.flip();
+        assertEquals(oid, ObjectId.readFrom(buff));
+        assertEquals(ObjectId.NULL, ObjectId.readFrom(buff));
+    }
+
+    @Test
+    public void testCreateWithOffset() {
+        ObjectId oid = ObjectId.forString("some content");
+        byte[] buff = new byte[3 + ObjectId.NUM_BYTES];
+        oid.getRawValue(buff, 3);
+        assertEquals(oid, ObjectId.create(buff, 3));
+        assertEquals(oid, ObjectId.create(oid.h1(), oid.h2(), oid.h3()));
+    }
 }
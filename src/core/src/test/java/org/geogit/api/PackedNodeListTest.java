@@ -0,0 +1,84 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.geogit.api.RevObject.TYPE;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.vividsolutions.jts.geom.Envelope;
+
+public class PackedNodeListTest {
+
+    private static final ObjectId METADATA_ID = ObjectId.forString("metadata");
+
+    private final List<Node> nodes = ImmutableList.of(//
+            Node.create("Points.1", ObjectId.forString("p1"), ObjectId.NULL, TYPE.FEATURE, null),//
+            Node.create("Points.2", ObjectId.forString("p2"), METADATA_ID, TYPE.FEATURE,
+                    new Envelope(1, 1, 2, 2)),//
+            Node.create("Lines", ObjectId.forString("lines"), METADATA_ID, TYPE.TREE,
+                    new Envelope(-10, 10, -20, 20)));
+
+    @Test
+    public void testViewsMatchOriginalNodes() {
+        PackedNodeList packed = PackedNodeList.pack(nodes);
+        assertEquals(nodes.size(), packed.size());
+        assertFalse(packed.isEmpty());
+
+        for (int i = 0; i < nodes.size(); i++) {
+            Node expected = nodes.get(i);
+            Node actual = packed.get(i);
+            assertEquals(expected, actual);
+            assertEquals(actual, expected);
+            assertEquals(expected.hashCode(), actual.hashCode());
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getObjectId(), actual.getObjectId());
+            assertEquals(expected.getMetadataId(), actual.getMetadataId());
+            assertEquals(expected.getType(), actual.getType());
+            assertEquals(expected.toString(), actual.toString());
+
+            Envelope expectedBounds = new Envelope();
+            Envelope actualBounds = new Envelope();
+            expected.expand(expectedBounds);
+            actual.expand(actualBounds);
+            assertEquals(expectedBounds, actualBounds);
+        }
+        assertEquals(nodes, packed.asList());
+    }
+
+    @Test
+    public void testMetadataIds() {
+        PackedNodeList packed = PackedNodeList.pack(nodes);
+        assertEquals(Optional.absent(), packed.get(0).getMetadataId());
+        assertEquals(Optional.of(METADATA_ID), packed.get(1).getMetadataId());
+        assertEquals(Optional.of(METADATA_ID), packed.get(2).getMetadataId());
+    }
+
+    @Test
+    public void testIntersects() {
+        PackedNodeList packed = PackedNodeList.pack(nodes);
+        Envelope query = new Envelope(0, 5, 0, 5);
+        for (int i = 0; i < nodes.size(); i++) {
+            assertEquals(nodes.get(i).intersects(query), packed.get(i).intersects(query));
+        }
+        assertFalse(packed.get(0).intersects(query));
+        assertTrue(packed.get(1).intersects(query));
+        assertFalse(packed.get(1).intersects(new Envelope()));
+    }
+
+    @Test
+    public void testEmpty() {
+        PackedNodeList packed = PackedNodeList.pack(ImmutableList.<Node> of());
+        assertTrue(packed.isEmpty());
+        assertTrue(packed.asList().isEmpty());
+    }
+}
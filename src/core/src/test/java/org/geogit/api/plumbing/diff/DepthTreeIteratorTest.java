@@ -175,6 +175,34 @@ public class DepthTreeIteratorTest extends Assert {
         System.err.println(sw);
     }
 
+    @Test
+    public void testResumeAfter() {
+        RevTreeBuilder builder = createTreesTree(source, 10, RevTree.NORMALIZED_SIZE_LIMIT + 1,
+                metadataId);
+        for (int i = 0; i < 100; i++) {
+            builder.put(featureNode("feature.", i));
+        }
+        RevTree mixedTree = builder.build();
+
+        for (Strategy strategy : Strategy.values()) {
+            assertResumes(featuresLeafTree, strategy);
+            assertResumes(mixedLeafTree, strategy);
+            assertResumes(mixedTree, strategy);
+        }
+    }
+
+    private void assertResumes(RevTree tree, Strategy strategy) {
+        List<NodeRef> all = list(tree, strategy);
+        // try every position on small trees, a sample of them on larger ones
+        final int step = 1 + all.size() / 100;
+        for (int i = 0; i < all.size(); i += step) {
+            DepthTreeIterator iterator = iterator(tree, strategy);
+            iterator.setResumeAfter(all.get(i).path());
+            assertEquals(strategy + " resuming after " + all.get(i).path(),
+                    all.subList(i + 1, all.size()), Lists.newArrayList(iterator));
+        }
+    }
+
     private List<NodeRef> list(RevTree tree, Strategy strategy) {
         List<NodeRef> refs = Lists.newArrayList(iterator(tree, strategy));
         return refs;
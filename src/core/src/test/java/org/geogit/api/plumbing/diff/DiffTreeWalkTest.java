@@ -0,0 +1,141 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+
+package org.geogit.api.plumbing.diff;
+
+import static org.geogit.api.plumbing.diff.TreeTestSupport.createFeaturesTree;
+import static org.geogit.api.plumbing.diff.TreeTestSupport.featureNode;
+
+import java.util.List;
+
+import org.geogit.api.Node;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevObject.TYPE;
+import org.geogit.api.RevTree;
+import org.geogit.api.RevTreeBuilder;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.memory.HeapObjectDatabse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests for {@link DiffTreeWalk#setResumeAfter(String)}
+ */
+public class DiffTreeWalkTest extends Assert {
+
+    private ObjectDatabase source;
+
+    private ObjectId metadataId;
+
+    @Before
+    public void setUp() {
+        source = new HeapObjectDatabse();
+        source.open();
+        metadataId = ObjectId.forString("fake id");
+    }
+
+    @Test
+    public void testResumeLeafTrees() {
+        RevTree left = createFeaturesTree(source, "f", 100).build();
+        RevTree right = modify(createFeaturesTree(source, "f", 100), "f", 100, 20).build();
+        assertResumes(left, right);
+        assertResumes(right, left);
+        assertResumes(RevTree.EMPTY, right);
+        assertResumes(left, RevTree.EMPTY);
+    }
+
+    @Test
+    public void testResumeBucketTrees() {
+        final int size = 3 * RevTree.NORMALIZED_SIZE_LIMIT;
+        RevTree left = createFeaturesTree(source, "f", size).build();
+        RevTree right = modify(createFeaturesTree(source, "f", size), "f", size, 300).build();
+        assertTrue(left.buckets().isPresent());
+        assertResumes(left, right);
+        assertResumes(right, left);
+        assertResumes(RevTree.EMPTY, right);
+    }
+
+    @Test
+    public void testResumeBucketAndLeafTrees() {
+        RevTree left = createFeaturesTree(source, "f", 50).build();
+        final int size = 2 * RevTree.NORMALIZED_SIZE_LIMIT;
+        RevTree right = modify(createFeaturesTree(source, "f", size), "f", size, 100).build();
+        assertResumes(left, right);
+        assertResumes(right, left);
+    }
+
+    @Test
+    public void testResumeNestedTrees() {
+        final int size = 2 * RevTree.NORMALIZED_SIZE_LIMIT;
+        RevTree roads = createFeaturesTree(source, "roads.", size).build();
+        RevTree roads2 = modify(createFeaturesTree(source, "roads.", size), "roads.", size,
+                50).build();
+        RevTree rivers = createFeaturesTree(source, "rivers.", 30).build();
+        source.put(roads);
+        source.put(roads2);
+        source.put(rivers);
+
+        RevTreeBuilder leftBuilder = createFeaturesTree(source, "f", 10);
+        leftBuilder.put(Node.create("roads", roads.getId(), metadataId, TYPE.TREE, null));
+        leftBuilder.put(Node.create("rivers", rivers.getId(), metadataId, TYPE.TREE, null));
+        RevTree left = leftBuilder.build();
+
+        RevTreeBuilder rightBuilder = modify(createFeaturesTree(source, "f", 10), "f", 10, 5);
+        rightBuilder.put(Node.create("roads", roads2.getId(), metadataId, TYPE.TREE, null));
+        rightBuilder.put(Node.create("lakes", rivers.getId(), metadataId, TYPE.TREE, null));
+        RevTree right = rightBuilder.build();
+
+        assertResumes(left, right);
+        assertResumes(right, left);
+    }
+
+    /**
+     * Removes every 7th feature and changes every 5th one, adding {@code added} new ones.
+     */
+    private RevTreeBuilder modify(RevTreeBuilder builder, String namePrefix, int size, int added) {
+        for (int i = 0; i < size; i++) {
+            if (i % 7 == 0) {
+                builder.remove(namePrefix + i);
+            } else if (i % 5 == 0) {
+                Node node = featureNode(namePrefix, i);
+                builder.put(Node.create(node.getName(), ObjectId.forString("changed" + i),
+                        ObjectId.NULL, TYPE.FEATURE, null));
+            }
+        }
+        for (int i = 0; i < added; i++) {
+            builder.put(featureNode("new.", i));
+        }
+        return builder;
+    }
+
+    private void assertResumes(RevTree left, RevTree right) {
+        for (boolean reportTrees : new boolean[] { false, true }) {
+            List<DiffEntry> all = diff(left, right, reportTrees, null);
+            assertFalse(all.isEmpty());
+            // try every position on small diffs, a sample of them on larger ones
+            final int step = 1 + all.size() / 100;
+            for (int i = 0; i < all.size(); i += step) {
+                String resumeAfter = path(all.get(i));
+                assertEquals("resuming after " + resumeAfter, all.subList(i + 1, all.size()),
+                        diff(left, right, reportTrees, resumeAfter));
+            }
+        }
+    }
+
+    private List<DiffEntry> diff(RevTree left, RevTree right, boolean reportTrees,
+            String resumeAfter) {
+        DiffTreeWalk walk = new DiffTreeWalk(source, left, right);
+        walk.setReportTrees(reportTrees);
+        walk.setResumeAfter(resumeAfter);
+        return ImmutableList.copyOf(walk.get());
+    }
+
+    private static String path(DiffEntry entry) {
+        return entry.newPath() == null ? entry.oldPath() : entry.newPath();
+    }
+}
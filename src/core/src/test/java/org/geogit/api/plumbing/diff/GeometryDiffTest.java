@@ -6,8 +6,12 @@ package org.geogit.api.plumbing.diff;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+
 import java.util.List;
 import java.util.Random;
 
@@ -15,8 +19,10 @@ import org.junit.Test;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.io.WKTReader;
 
 public class GeometryDiffTest {
@@ -213,4 +219,96 @@ public class GeometryDiffTest {
         assertFalse(diff.conflicts(diff2));
     }
 
+    @Test
+    public void testLargePolygon() throws Exception {
+        final int numCoords = 100000;
+        Coordinate[] oldCoords = new Coordinate[numCoords + 1];
+        for (int i = 0; i < numCoords; i++) {
+            double angle = 2 * Math.PI * i / numCoords;
+            oldCoords[i] = new Coordinate(Math.cos(angle), Math.sin(angle));
+        }
+        oldCoords[numCoords] = oldCoords[0];
+        Coordinate[] newCoords = new Coordinate[numCoords + 2];
+        System.arraycopy(oldCoords, 0, newCoords, 0, 1000);
+        newCoords[1000] = new Coordinate(5, 5);
+        newCoords[1001] = new Coordinate(6, 6);
+        System.arraycopy(oldCoords, 1001, newCoords, 1002, numCoords - 1000);
+        newCoords[50000] = new Coordinate(7, 7);
+
+        GeometryFactory factory = new GeometryFactory();
+        Geometry oldGeom = factory.createPolygon(factory.createLinearRing(oldCoords), null);
+        Geometry newGeom = factory.createPolygon(factory.createLinearRing(newCoords), null);
+        LCSGeometryDiffImpl diff = new LCSGeometryDiffImpl(Optional.of(oldGeom),
+                Optional.of(newGeom));
+        assertEquals("0 point(s) deleted, 1 new point(s) added, 2 point(s) moved", diff.toString());
+        assertTrue(diff.asText().length() < 200);
+        assertEquals(newGeom, diff.applyOn(Optional.of(oldGeom)).get());
+        assertEquals(oldGeom, diff.reversed().applyOn(Optional.of(newGeom)).get());
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+        Geometry oldGeom = new WKTReader()
+                .read("GEOMETRYCOLLECTION (POINT (1 1), LINESTRING (0 0, 1 1, 2 2))");
+        Geometry newGeom = new WKTReader()
+                .read("GEOMETRYCOLLECTION (POINT (1 2), LINESTRING (0 0, 2 2), POLYGON ((0 0, 1 0, 1 1, 0 0)))");
+        LCSGeometryDiffImpl diff = new LCSGeometryDiffImpl(Optional.of(oldGeom),
+                Optional.of(newGeom));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        diff.writeTo(new DataOutputStream(bytes));
+        LCSGeometryDiffImpl read = LCSGeometryDiffImpl.read(ByteStreams.newDataInput(bytes
+                .toByteArray()));
+        assertEquals(diff, read);
+        assertEquals(diff.toString(), read.toString());
+        assertEquals(newGeom, read.applyOn(Optional.of(oldGeom)).get());
+        assertNull(read.getDiffCoordsString());
+    }
+
+    @Test
+    public void testTypeChange() throws Exception {
+        Geometry oldGeom = new WKTReader().read("LINESTRING (0 0, 1 1, 2 2)");
+        Geometry newGeom = new WKTReader().read("MULTILINESTRING ((0 0, 1 1, 2 2),(5 5, 6 6))");
+        LCSGeometryDiffImpl diff = new LCSGeometryDiffImpl(Optional.of(oldGeom),
+                Optional.of(newGeom));
+        assertEquals("0 point(s) deleted, 2 new point(s) added, 0 point(s) moved", diff.toString());
+        assertEquals(newGeom, diff.applyOn(Optional.of(oldGeom)).get());
+        assertEquals(oldGeom, diff.reversed().applyOn(Optional.of(newGeom)).get());
+        assertFalse(diff.canBeAppliedOn(Optional.of(newGeom)));
+    }
+
+    @Test
+    public void testDiffCoordsString() throws Exception {
+        Geometry oldGeom = new WKTReader().read("LINESTRING (0 0, 1 1, 2 2)");
+        Geometry newGeom = new WKTReader().read("LINESTRING (0 0, 1 5, 2 2, 3 3)");
+        LCSGeometryDiffImpl diff = new LCSGeometryDiffImpl(Optional.of(oldGeom),
+                Optional.of(newGeom));
+        assertEquals("LineString 0.0,0.0 [1.0,1.0] (1.0,5.0) 2.0,2.0 (3.0,3.0)",
+                diff.getDiffCoordsString());
+    }
+
+    @Test
+    public void testLegacyTextFormat() throws Exception {
+        // as written by the text based implementation
+        String text = "0/1/1\t@@ -16,11 +16,16 @@\\n , 1 \\n-1\\n+5\\n , 2 2\\n+, 3 3\\n )\\n";
+        LCSGeometryDiffImpl diff = new LCSGeometryDiffImpl(text);
+        assertEquals(text, diff.asText());
+        assertEquals("0 point(s) deleted, 1 new point(s) added, 1 point(s) moved", diff.toString());
+        Geometry oldGeom = new WKTReader().read("LINESTRING (0 0, 1 1, 2 2)");
+        Geometry newGeom = new WKTReader().read("LINESTRING (0 0, 1 5, 2 2, 3 3)");
+        assertEquals(newGeom, diff.applyOn(Optional.of(oldGeom)).get());
+        assertEquals(oldGeom, diff.reversed().applyOn(Optional.of(newGeom)).get());
+    }
+
+    @Test
+    public void testCanApplyShiftedEdit() throws Exception {
+        Geometry oldGeom = new WKTReader().read("LINESTRING (0 0, 1 1, 2 2, 3 3, 4 4)");
+        Geometry newGeom = new WKTReader().read("LINESTRING (0 0, 1 1, 2 2, 3 5, 4 4)");
+        LCSGeometryDiffImpl diff = new LCSGeometryDiffImpl(Optional.of(oldGeom),
+                Optional.of(newGeom));
+        Geometry shifted = new WKTReader().read("LINESTRING (-1 -1, 0 0, 1 1, 2 2, 3 3, 4 4)");
+        assertTrue(diff.canBeAppliedOn(Optional.of(shifted)));
+        assertEquals(new WKTReader().read("LINESTRING (-1 -1, 0 0, 1 1, 2 2, 3 5, 4 4)"), diff
+                .applyOn(Optional.of(shifted)).get());
+    }
+
 }
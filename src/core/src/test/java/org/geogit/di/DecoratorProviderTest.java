@@ -0,0 +1,80 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.di;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+public class DecoratorProviderTest {
+
+    private static class Subject {
+    }
+
+    @Singleton
+    private static class SingletonSubject {
+    }
+
+    private static class Wrapper {
+        final Object wrapped;
+
+        Wrapper(Object wrapped) {
+            this.wrapped = wrapped;
+        }
+    }
+
+    private static class CountingDecorator implements Decorator {
+
+        int canDecorateCalls;
+
+        int decorateCalls;
+
+        @Override
+        public boolean canDecorate(Object instance) {
+            canDecorateCalls++;
+            return instance instanceof Subject || instance instanceof SingletonSubject;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <I> I decorate(I subject) {
+            decorateCalls++;
+            return (I) new Wrapper(subject);
+        }
+    }
+
+    @Test
+    public void testDecoratorChainResolvedOncePerClass() {
+        CountingDecorator decorator = new CountingDecorator();
+        DecoratorProvider provider = new DecoratorProvider(ImmutableSet.<Decorator> of(decorator));
+
+        for (int i = 0; i < 10; i++) {
+            Subject subject = new Subject();
+            Object decorated = provider.get(subject);
+            assertSame(subject, ((Wrapper) decorated).wrapped);
+        }
+        assertEquals(1, decorator.canDecorateCalls);
+        assertEquals(10, decorator.decorateCalls);
+
+        String notDecorated = "not decorated";
+        assertSame(notDecorated, provider.get(notDecorated));
+        assertSame(notDecorated, provider.get(notDecorated));
+        assertEquals(2, decorator.canDecorateCalls);
+        assertEquals(10, decorator.decorateCalls);
+    }
+
+    @Test
+    public void testSingletonDecoratedOnce() {
+        CountingDecorator decorator = new CountingDecorator();
+        DecoratorProvider provider = new DecoratorProvider(ImmutableSet.<Decorator> of(decorator));
+
+        Object decorated = provider.get(new SingletonSubject());
+        assertSame(decorated, provider.get(new SingletonSubject()));
+        assertEquals(1, decorator.decorateCalls);
+    }
+}
@@ -0,0 +1,76 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.remote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import org.geogit.api.NodeRef;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevCommit;
+import org.geogit.api.RevObject.TYPE;
+import org.geogit.api.plumbing.diff.DiffEntry;
+import org.geogit.api.porcelain.DiffOp;
+import org.geogit.storage.ObjectDatabase;
+import org.junit.Test;
+import org.opengis.feature.Feature;
+
+import com.google.common.collect.Lists;
+
+public class BinaryPackedChangesTest extends RemoteRepositoryTestCase {
+
+    @Override
+    protected void setUpInternal() throws Exception {
+    }
+
+    private void writeAndIngest(int featureCount) throws Exception {
+        List<Feature> features = Lists.newArrayList();
+        for (int i = 0; i < featureCount; i++) {
+            features.add(feature(pointsType, "Points." + i, "StringProp1_" + i,
+                    Integer.valueOf(i), "POINT(" + i + " " + i + ")"));
+        }
+        RevCommit commit = populate(remoteGeogit.geogit, false, features).get(0);
+        List<DiffEntry> changes = toList(remoteGeogit.geogit.command(DiffOp.class)
+                .setOldVersion(ObjectId.NULL).setNewVersion(commit.getId()).setReportTrees(true)
+                .call());
+        // the features plus the tree that holds them
+        assertEquals(featureCount + 1, changes.size());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryPackedChanges(remoteGeogit.repo).write(out, changes.iterator());
+
+        HttpFilteredDiffIterator ingested = new HttpFilteredDiffIterator(
+                new ByteArrayInputStream(out.toByteArray()), new BinaryPackedChanges(
+                        localGeogit.repo));
+        assertEquals(changes, toList(ingested));
+        assertFalse(ingested.wasFiltered());
+
+        ObjectDatabase localDb = localGeogit.repo.objectDatabase();
+        for (DiffEntry diff : changes) {
+            NodeRef ref = diff.getNewObject();
+            assertTrue(localDb.exists(ref.objectId()));
+            if (ref.getType() != TYPE.FEATURE) {
+                assertTrue(localDb.exists(ref.getMetadataId()));
+            }
+        }
+    }
+
+    @Test
+    public void testWriteAndIngest() throws Exception {
+        // more changes than fit in a single prefetch batch
+        writeAndIngest(60);
+    }
+
+    @Test
+    public void testWriteAndIngestAllChanges() throws Exception {
+        // the whole diff is sent in one response, however many changes it has
+        writeAndIngest(250);
+    }
+}
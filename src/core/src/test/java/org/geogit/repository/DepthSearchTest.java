@@ -17,6 +17,8 @@ import static org.mockito.Mockito.when;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 
 import org.geogit.api.GeoGIT;
 import org.geogit.api.Context;
@@ -40,6 +42,7 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
 import com.google.inject.Guice;
 import com.google.inject.util.Modules;
 
@@ -154,6 +157,35 @@ public class DepthSearchTest {
         }
     }
 
+    @Test
+    public void testGetDirectChildren() {
+        final int size = 3 * RevTree.NORMALIZED_SIZE_LIMIT;
+        RevTreeBuilder builder = new RevTreeBuilder(odb);
+        for (int i = 0; i < size; i++) {
+            builder.put(Node.create("f" + i, ObjectId.forString("f" + i), NULL, FEATURE, null));
+        }
+        RevTree tree = builder.build();
+        assertTrue(tree.buckets().isPresent());
+
+        List<String> names = Lists.newArrayList();
+        for (int i = 0; i < size + 100; i += 7) {
+            names.add("f" + i);
+        }
+        names.add("f0");
+        Map<String, Node> found = search.getDirectChildren(tree, names, 0);
+        for (String name : names) {
+            Optional<Node> expected = search.getDirectChild(tree, name, 0);
+            assertEquals(name, expected.orNull(), found.get(name));
+        }
+        assertEquals(1 + (size - 1) / 7, found.size());
+
+        RevTree rootTree = odb.getTree(rootTreeId);
+        found = search.getDirectChildren(rootTree, Lists.newArrayList("tree3", "tree4"), 0);
+        assertEquals(1, found.size());
+        assertEquals(TREE, found.get("tree3").getType());
+        assertTrue(search.getDirectChildren(RevTree.EMPTY, names, 0).isEmpty());
+    }
+
     private Optional<NodeRef> find(ObjectId rootTreeId, String rootChildPath) {
         return search.find(rootTreeId, rootChildPath);
     }
@@ -0,0 +1,150 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.geogit.api.Node;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevObject.TYPE;
+import org.geogit.api.RevTree;
+import org.geogit.api.RevTreeBuilder;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.memory.HeapObjectDatabse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Checks {@link RevTreeBuilder2} builds the same trees as {@link RevTreeBuilder} does when its
+ * buckets are built concurrently out of the {@link NodeIndex}
+ */
+public class RevTreeBuilder2Test {
+
+    private ObjectDatabase db;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        db = new HeapObjectDatabse();
+        db.open();
+        db.put(RevTree.EMPTY);
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        db.close();
+    }
+
+    @Test
+    public void testLeafTree() {
+        assertSameTree(RevTree.EMPTY, changes(100, 0));
+    }
+
+    @Test
+    public void testBucketTree() {
+        assertSameTree(RevTree.EMPTY, changes(10 * 1000, 1000));
+    }
+
+    @Test
+    public void testSpilledBucketTree() {
+        assertSameTree(RevTree.EMPTY, changes(600 * 1000, 10 * 1000));
+    }
+
+    @Test
+    public void testUpdateLeafTree() {
+        RevTree original = build(RevTree.EMPTY, changes(300, 0));
+        assertSameTree(original, changes(400, 50));
+    }
+
+    @Test
+    public void testUpdateBucketTree() {
+        RevTree original = build(RevTree.EMPTY, changes(5000, 0));
+        assertSameTree(original, changes(7000, 2000));
+    }
+
+    @Test
+    public void testDeleteDownToLeafTree() {
+        RevTree original = build(RevTree.EMPTY, changes(1000, 0));
+        List<Node> deletes = Lists.newArrayList();
+        for (int i = 0; i < 900; i++) {
+            deletes.add(Node.create("f" + i, ObjectId.NULL, ObjectId.NULL, TYPE.FEATURE, null));
+        }
+        RevTree tree = assertSameTree(original, deletes);
+        assertFalse(tree.buckets().isPresent());
+    }
+
+    private RevTree assertSameTree(RevTree original, List<Node> changes) {
+        RevTree expected = build(original, changes);
+
+        RevTreeBuilder2 builder = new RevTreeBuilder2(db, original, ObjectId.NULL, executor);
+        for (Node node : changes) {
+            builder.put(node);
+        }
+        RevTree actual = builder.build();
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.numTrees(), actual.numTrees());
+        assertEquals(expected.getId(), actual.getId());
+        return actual;
+    }
+
+    private RevTree build(RevTree original, List<Node> changes) {
+        RevTreeBuilder builder = new RevTreeBuilder(db, original);
+        for (Node node : changes) {
+            if (node.getObjectId().isNull()) {
+                builder.remove(node.getName());
+            } else {
+                builder.put(node);
+            }
+        }
+        RevTree tree = builder.build();
+        db.put(tree);
+        return tree;
+    }
+
+    /**
+     * @return {@code numNodes} nodes with a mix of subtrees, features with and without bounds and
+     *         metadata ids and non ascii names, followed by {@code numDeletes} deletes, in random
+     *         order
+     */
+    private List<Node> changes(int numNodes, int numDeletes) {
+        List<Node> nodes = Lists.newArrayListWithCapacity(numNodes + numDeletes);
+        for (int i = 0; i < numNodes; i++) {
+            String name = (i % 7 == 0 ? "ñ" : "") + "f" + i;
+            ObjectId metadataId = i % 5 == 0 ? ObjectId.forString("md" + i) : ObjectId.NULL;
+            Envelope bounds = null;
+            if (i % 3 == 1) {
+                bounds = new Envelope(i, i, -i, -i);
+            } else if (i % 3 == 2) {
+                bounds = new Envelope(i, i + 1.5, -i, 2 * i);
+            }
+            if (i % 11 == 0) {
+                nodes.add(Node.create(name, RevTree.EMPTY.getId(), metadataId, TYPE.TREE, bounds));
+            } else {
+                ObjectId id = ObjectId.forString("feature" + i);
+                nodes.add(Node.create(name, id, metadataId, TYPE.FEATURE, bounds));
+            }
+        }
+        for (int i = 0; i < numDeletes; i++) {
+            nodes.add(Node.create("f" + (3 * i + 1), ObjectId.NULL, ObjectId.NULL, TYPE.FEATURE,
+                    null));
+        }
+        Collections.shuffle(nodes, new Random(numNodes));
+        return nodes;
+    }
+}
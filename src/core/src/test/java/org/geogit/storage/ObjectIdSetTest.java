@@ -0,0 +1,70 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.geogit.api.ObjectId;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+public class ObjectIdSetTest {
+
+    @Test
+    public void testAddContains() {
+        ObjectIdSet set = new ObjectIdSet(4);
+        assertTrue(set.isEmpty());
+        Set<ObjectId> expected = new HashSet<ObjectId>();
+        for (int i = 0; i < 10000; i++) {
+            ObjectId id = ObjectId.forString("id" + i);
+            assertTrue(set.add(id));
+            assertFalse(set.add(id));
+            expected.add(id);
+        }
+        assertEquals(expected.size(), set.size());
+        for (ObjectId id : expected) {
+            assertTrue(set.contains(id));
+        }
+        assertFalse(set.contains(ObjectId.forString("not there")));
+        assertEquals(expected, Sets.newHashSet(set));
+
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(expected.iterator().next()));
+    }
+
+    @Test
+    public void testNullId() {
+        ObjectIdSet set = new ObjectIdSet();
+        assertFalse(set.contains(ObjectId.NULL));
+        assertTrue(set.add(ObjectId.NULL));
+        assertTrue(set.contains(ObjectId.NULL));
+    }
+
+    @Test
+    public void testMap() {
+        ObjectIdMap<String> map = new ObjectIdMap<String>(4);
+        for (int i = 0; i < 10000; i++) {
+            assertNull(map.put(ObjectId.forString("id" + i), "value" + i));
+        }
+        assertEquals(10000, map.size());
+        for (int i = 0; i < 10000; i++) {
+            ObjectId id = ObjectId.forString("id" + i);
+            assertTrue(map.containsKey(id));
+            assertEquals("value" + i, map.get(id));
+        }
+        assertEquals("value0", map.put(ObjectId.forString("id0"), "new value"));
+        assertEquals("new value", map.get(ObjectId.forString("id0")));
+        assertEquals(10000, map.size());
+        assertNull(map.get(ObjectId.forString("not there")));
+    }
+}
@@ -0,0 +1,128 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.test.integration;
+
+import java.util.Iterator;
+
+import org.geogit.api.NodeRef;
+import org.geogit.api.ObjectId;
+import org.geogit.api.Ref;
+import org.geogit.api.RevCommit;
+import org.geogit.api.RevFeature;
+import org.geogit.api.RevFeatureBuilder;
+import org.geogit.api.plumbing.RevParse;
+import org.geogit.api.porcelain.BulkImportOp;
+import org.geogit.api.porcelain.CommitOp;
+import org.geogit.api.porcelain.LogOp;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.opengis.feature.Feature;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+
+public class BulkImportOpTest extends RepositoryTestCase {
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    @Override
+    protected void setUpInternal() throws Exception {
+    }
+
+    @Test
+    public void testImportIntoEmptyRepository() throws Exception {
+        Iterator<Feature> features = ImmutableList.of(points1, points2, points3).iterator();
+        RevCommit commit = geogit.command(BulkImportOp.class).setFeatures(features)
+                .setPath(pointsName).setMessage("bulk import").call();
+
+        assertEquals("bulk import", commit.getMessage());
+        assertTrue(commit.getParentIds().isEmpty());
+        assertEquals("Gabriel Roldan", commit.getAuthor().getName().get());
+
+        assertFeature(Ref.HEAD, pointsName, points1);
+        assertFeature(Ref.HEAD, pointsName, points2);
+        assertFeature(Ref.HEAD, pointsName, points3);
+
+        ObjectId treeId = commit.getTreeId();
+        assertEquals(treeId, geogit.command(RevParse.class).setRefSpec(Ref.WORK_HEAD).call()
+                .get());
+        assertEquals(treeId, geogit.command(RevParse.class).setRefSpec(Ref.STAGE_HEAD).call()
+                .get());
+        assertTrue(repo.workingTree().isClean());
+        assertTrue(repo.index().isClean());
+    }
+
+    @Test
+    public void testImportOnTopOfExistingCommit() throws Exception {
+        RevCommit first = populate(false, points1, lines1).get(0);
+
+        Iterator<Feature> features = ImmutableList.of(points1_modified, points2).iterator();
+        RevCommit commit = geogit.command(BulkImportOp.class).setFeatures(features)
+                .setPath(pointsName).call();
+
+        assertEquals(ImmutableList.of(first.getId()), commit.getParentIds());
+        assertFeature(Ref.HEAD, pointsName, points1_modified);
+        assertFeature(Ref.HEAD, pointsName, points2);
+        assertFeature(Ref.HEAD, linesName, lines1);
+
+        Iterator<RevCommit> log = geogit.command(LogOp.class).call();
+        assertEquals(2, Iterators.size(log));
+    }
+
+    @Test
+    public void testImportMultipleTrees() throws Exception {
+        Iterator<Feature> features = ImmutableList.of(points1, lines1, poly1, points2, lines2)
+                .iterator();
+        geogit.command(BulkImportOp.class).setFeatures(features)
+                .setTreePathResolver(new Function<Feature, String>() {
+                    @Override
+                    public String apply(Feature input) {
+                        return input.getType().getName().getLocalPart();
+                    }
+                }).call();
+
+        assertFeature(Ref.HEAD, pointsName, points1);
+        assertFeature(Ref.HEAD, pointsName, points2);
+        assertFeature(Ref.HEAD, linesName, lines1);
+        assertFeature(Ref.HEAD, linesName, lines2);
+        assertFeature(Ref.HEAD, polyName, poly1);
+    }
+
+    @Test
+    public void testDirtyWorkingTree() throws Exception {
+        populate(false, points1);
+        insert(points2);
+
+        exception.expect(IllegalStateException.class);
+        geogit.command(BulkImportOp.class).setFeatures(ImmutableList.of(points3).iterator())
+                .setPath(pointsName).call();
+    }
+
+    @Test
+    public void testCommitAfterImport() throws Exception {
+        geogit.command(BulkImportOp.class).setFeatures(ImmutableList.of(points1).iterator())
+                .setPath(pointsName).call();
+
+        insertAndAdd(points2);
+        geogit.command(CommitOp.class).call();
+
+        assertFeature(Ref.HEAD, pointsName, points1);
+        assertFeature(Ref.HEAD, pointsName, points2);
+    }
+
+    private void assertFeature(String treeish, String treePath, Feature feature) {
+        String path = NodeRef.appendChild(treePath, feature.getIdentifier().getID());
+        Optional<ObjectId> id = geogit.command(RevParse.class).setRefSpec(treeish + ":" + path)
+                .call();
+        assertTrue(path + " not found", id.isPresent());
+        RevFeature expected = RevFeatureBuilder.build(feature);
+        assertEquals(expected.getId(), id.get());
+        assertTrue(repo.objectDatabase().exists(id.get()));
+    }
+}
@@ -0,0 +1,91 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.test.integration;
+
+import org.geogit.api.GeogitTransaction;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevCommit;
+import org.geogit.api.RevFeatureBuilder;
+import org.geogit.api.plumbing.TransactionBegin;
+import org.geogit.api.porcelain.BranchCreateOp;
+import org.geogit.api.porcelain.BranchDeleteOp;
+import org.geogit.api.porcelain.CheckoutOp;
+import org.geogit.api.porcelain.CleanOp;
+import org.geogit.api.porcelain.GarbageCollectOp;
+import org.geogit.api.porcelain.GarbageCollectOp.GarbageCollectReport;
+import org.junit.Test;
+
+public class GarbageCollectOpTest extends RepositoryTestCase {
+
+    @Override
+    protected void setUpInternal() throws Exception {
+    }
+
+    private boolean exists(ObjectId id) {
+        return repo.objectDatabase().exists(id) || repo.stagingDatabase().exists(id);
+    }
+
+    @Test
+    public void testReachableObjectsKept() throws Exception {
+        RevCommit commit = populate(false, points1, lines1).get(0);
+
+        geogit.command(GarbageCollectOp.class).call();
+        assertTrue(exists(commit.getId()));
+        assertTrue(exists(commit.getTreeId()));
+        assertTrue(exists(RevFeatureBuilder.build(points1).getId()));
+        assertTrue(exists(RevFeatureBuilder.build(lines1).getId()));
+
+        GarbageCollectReport report = geogit.command(GarbageCollectOp.class).call();
+        assertEquals(0, report.getDeleted());
+        assertTrue(report.getReachable() > 0);
+    }
+
+    @Test
+    public void testUnreachableFeature() throws Exception {
+        ObjectId committed = populate(false, points1).get(0).getId();
+        ObjectId committedFeature = RevFeatureBuilder.build(points1).getId();
+        ObjectId cleaned = insert(points2);
+        geogit.command(CleanOp.class).call();
+        assertTrue(exists(cleaned));
+
+        GarbageCollectReport report = geogit.command(GarbageCollectOp.class).call();
+        assertTrue(report.getDeleted() > 0);
+        assertTrue(report.getBytesReclaimed() > 0);
+        assertFalse(exists(cleaned));
+        assertTrue(exists(committed));
+        assertTrue(exists(committedFeature));
+
+        assertEquals(0, geogit.command(GarbageCollectOp.class).call().getDeleted());
+    }
+
+    @Test
+    public void testDeletedBranch() throws Exception {
+        populate(false, points1);
+        geogit.command(BranchCreateOp.class).setName("branch1").setAutoCheckout(true).call();
+        RevCommit branchCommit = populate(false, lines1).get(0);
+        geogit.command(CheckoutOp.class).setSource("master").call();
+        geogit.command(BranchDeleteOp.class).setName("branch1").call();
+
+        GarbageCollectReport report = geogit.command(GarbageCollectOp.class).setDryRun(true)
+                .call();
+        assertTrue(report.getDeleted() > 0);
+        assertTrue(exists(branchCommit.getId()));
+
+        geogit.command(GarbageCollectOp.class).call();
+        assertFalse(exists(branchCommit.getId()));
+        assertFalse(exists(branchCommit.getTreeId()));
+    }
+
+    @Test
+    public void testOpenTransaction() throws Exception {
+        populate(false, points1);
+        GeogitTransaction transaction = geogit.command(TransactionBegin.class).call();
+        ObjectId inserted = insertAndAdd(transaction, points2);
+
+        geogit.command(GarbageCollectOp.class).call();
+        assertTrue(exists(inserted));
+        transaction.abort();
+    }
+}
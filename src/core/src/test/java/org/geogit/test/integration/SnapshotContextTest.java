@@ -0,0 +1,69 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.test.integration;
+
+import java.util.Iterator;
+
+import org.geogit.api.Ref;
+import org.geogit.api.RevCommit;
+import org.geogit.api.SnapshotContext;
+import org.geogit.api.plumbing.RefParse;
+import org.geogit.api.plumbing.UpdateRef;
+import org.geogit.api.porcelain.CommitOp;
+import org.geogit.api.porcelain.LogOp;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+public class SnapshotContextTest extends RepositoryTestCase {
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        injector.configDatabase().put("user.name", "groldan");
+        injector.configDatabase().put("user.email", "groldan@opengeo.org");
+    }
+
+    @Test
+    public void testSnapshotKeepsRefsItRead() throws Exception {
+        insertAndAdd(points1);
+        RevCommit first = geogit.command(CommitOp.class).call();
+
+        SnapshotContext snapshot = new SnapshotContext(injector);
+        Iterator<RevCommit> log = snapshot.command(LogOp.class).call();
+        assertEquals(ImmutableList.of(first), ImmutableList.copyOf(log));
+
+        // commit on the repository after the snapshot read HEAD
+        insertAndAdd(points2);
+        RevCommit second = geogit.command(CommitOp.class).call();
+
+        log = snapshot.command(LogOp.class).call();
+        assertEquals(ImmutableList.of(first), ImmutableList.copyOf(log));
+
+        log = geogit.command(LogOp.class).call();
+        assertEquals(ImmutableList.of(second, first), ImmutableList.copyOf(log));
+
+        // a new snapshot sees the new commit
+        snapshot = new SnapshotContext(injector);
+        Optional<Ref> head = snapshot.command(RefParse.class).setName(Ref.HEAD).call();
+        assertTrue(head.isPresent());
+        assertEquals(second.getId(), head.get().getObjectId());
+    }
+
+    @Test
+    public void testSnapshotIsReadOnly() throws Exception {
+        insertAndAdd(points1);
+        RevCommit commit = geogit.command(CommitOp.class).call();
+
+        SnapshotContext snapshot = new SnapshotContext(injector);
+        exception.expect(UnsupportedOperationException.class);
+        snapshot.command(UpdateRef.class).setName("refs/heads/branch1")
+                .setNewValue(commit.getId()).call();
+    }
+}
@@ -0,0 +1,228 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.test.integration;
+
+import java.io.File;
+import java.util.List;
+
+import org.geogit.api.NodeRef;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevCommit;
+import org.geogit.api.plumbing.ResolveGeogitDir;
+import org.geogit.api.plumbing.UpdateHistoryIndex;
+import org.geogit.api.porcelain.BranchCreateOp;
+import org.geogit.api.porcelain.CheckoutOp;
+import org.geogit.api.porcelain.CommitOp;
+import org.geogit.api.porcelain.LogOp;
+import org.geogit.api.porcelain.MergeOp;
+import org.geogit.api.porcelain.RebaseOp;
+import org.geogit.storage.fs.FileHistoryIndex;
+import org.junit.Test;
+import org.opengis.feature.Feature;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+
+public class UpdateHistoryIndexTest extends RepositoryTestCase {
+
+    @Override
+    protected void setUpInternal() throws Exception {
+    }
+
+    @Test
+    public void testNoIndexByDefault() throws Exception {
+        populate(true, points1, lines1);
+        assertFalse(FileHistoryIndex.open(geogit.getPlatform()).isPresent());
+        assertEquals(0, geogit.command(UpdateHistoryIndex.class).call().intValue());
+        assertFalse(FileHistoryIndex.open(geogit.getPlatform()).isPresent());
+    }
+
+    @Test
+    public void testRebuild() throws Exception {
+        List<RevCommit> commits = populate(true, points1, lines1, points2);
+        insertAndAdd(points1_modified);
+        RevCommit modified = geogit.command(CommitOp.class).call();
+
+        assertEquals(4, geogit.command(UpdateHistoryIndex.class).setRebuild(true).call()
+                .intValue());
+
+        FileHistoryIndex index = FileHistoryIndex.open(geogit.getPlatform()).get();
+        assertEquals(4, index.size());
+        assertEquals(ImmutableList.of(commits.get(0).getId(), modified.getId()),
+                index.commits(path(points1)));
+        assertEquals(ImmutableList.of(commits.get(1).getId()), index.commits(path(lines1)));
+        assertEquals(ImmutableList.of(commits.get(0).getId(), commits.get(2).getId(),
+                modified.getId()), index.commits(pointsName));
+        assertEquals(ImmutableList.of(), index.commits(path(points3)));
+
+        // rebuilding again starts over
+        assertEquals(4, geogit.command(UpdateHistoryIndex.class).setRebuild(true).call()
+                .intValue());
+        index = FileHistoryIndex.open(geogit.getPlatform()).get();
+        assertEquals(4, index.size());
+        assertEquals(ImmutableList.of(commits.get(1).getId()), index.commits(path(lines1)));
+    }
+
+    @Test
+    public void testUpdatedOnCommit() throws Exception {
+        RevCommit first = populate(true, points1).get(0);
+        geogit.command(UpdateHistoryIndex.class).setRebuild(true).call();
+
+        insertAndAdd(points1_modified);
+        RevCommit second = geogit.command(CommitOp.class).call();
+
+        FileHistoryIndex index = FileHistoryIndex.open(geogit.getPlatform()).get();
+        assertTrue(index.isIndexed(second.getId()));
+        assertEquals(ImmutableList.of(first.getId(), second.getId()),
+                index.commits(path(points1)));
+        assertEquals(0, geogit.command(UpdateHistoryIndex.class).call().intValue());
+    }
+
+    @Test
+    public void testMergeCommitIndexedAgainstFirstParent() throws Exception {
+        populate(true, points1);
+        geogit.command(UpdateHistoryIndex.class).setRebuild(true).call();
+
+        geogit.command(BranchCreateOp.class).setAutoCheckout(true).setName("branch1").call();
+        RevCommit branchCommit = populate(true, points2).get(0);
+        geogit.command(CheckoutOp.class).setSource("master").call();
+        RevCommit linesCommit = populate(true, lines1).get(0);
+        RevCommit merge = geogit.command(MergeOp.class)
+                .addCommit(Suppliers.ofInstance(branchCommit.getId())).call().getMergeCommit();
+
+        FileHistoryIndex index = FileHistoryIndex.open(geogit.getPlatform()).get();
+        assertTrue(index.isIndexed(branchCommit.getId()));
+        assertTrue(index.isIndexed(merge.getId()));
+        // the merge adds points2 to master but leaves its lines untouched
+        assertEquals(ImmutableList.of(branchCommit.getId(), merge.getId()),
+                index.commits(path(points2)));
+        assertEquals(ImmutableList.of(linesCommit.getId()), index.commits(linesName));
+    }
+
+    @Test
+    public void testRebasedCommitsIndexed() throws Exception {
+        populate(true, points1);
+        geogit.command(UpdateHistoryIndex.class).setRebuild(true).call();
+
+        geogit.command(BranchCreateOp.class).setAutoCheckout(true).setName("branch1").call();
+        populate(true, points2);
+        geogit.command(CheckoutOp.class).setSource("master").call();
+        RevCommit linesCommit = populate(true, lines1).get(0);
+        geogit.command(CheckoutOp.class).setSource("branch1").call();
+        geogit.command(RebaseOp.class).setUpstream(Suppliers.ofInstance(linesCommit.getId()))
+                .call();
+
+        RevCommit rebased = geogit.command(LogOp.class).setLimit(1).call().next();
+        FileHistoryIndex index = FileHistoryIndex.open(geogit.getPlatform()).get();
+        assertTrue(index.isIndexed(rebased.getId()));
+        assertEquals(rebased.getId(), index.commits(path(points2)).reverse().get(0));
+        assertEquals(0, geogit.command(UpdateHistoryIndex.class).call().intValue());
+    }
+
+    @Test
+    public void testLogFallsBackOnUnindexedMerge() throws Exception {
+        populate(true, points1);
+        geogit.command(BranchCreateOp.class).setAutoCheckout(true).setName("branch1").call();
+        RevCommit branchCommit = populate(true, points2).get(0);
+        geogit.command(CheckoutOp.class).setSource("master").call();
+        RevCommit linesCommit = populate(true, lines1).get(0);
+        RevCommit merge = geogit.command(MergeOp.class)
+                .addCommit(Suppliers.ofInstance(branchCommit.getId())).call().getMergeCommit();
+        insertAndAdd(points1_modified);
+        geogit.command(CommitOp.class).call();
+
+        final List<String> paths = ImmutableList.of(path(points2), pointsName, linesName,
+                path(points1));
+        List<List<RevCommit>> expected = ImmutableList.of(log(paths.get(0)), log(paths.get(1)),
+                log(paths.get(2)), log(paths.get(3)), log(paths.get(0), paths.get(2)));
+
+        // index both sides of the merge, but not the merge commit nor its child
+        FileHistoryIndex.create(geogit.getPlatform());
+        geogit.command(UpdateHistoryIndex.class).addTip(branchCommit.getId())
+                .addTip(linesCommit.getId()).call();
+        FileHistoryIndex index = FileHistoryIndex.open(geogit.getPlatform()).get();
+        assertFalse(index.isIndexed(merge.getId()));
+        assertLogs(expected, paths);
+    }
+
+    @Test
+    public void testIndexWithoutOffsetFiles() throws Exception {
+        List<RevCommit> commits = populate(true, points1, lines1, points2);
+        geogit.command(UpdateHistoryIndex.class).setRebuild(true).call();
+
+        // an index written before the offset files existed
+        File historyDir = new File(new File(geogit.command(ResolveGeogitDir.class).call().get()
+                .toURI()), "history");
+        File[] files = new File(historyDir, "paths").listFiles();
+        int deleted = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(".idx") && file.delete()) {
+                deleted++;
+            }
+        }
+        assertTrue(deleted > 0);
+
+        FileHistoryIndex index = FileHistoryIndex.open(geogit.getPlatform()).get();
+        assertEquals(ImmutableList.of(commits.get(1).getId()), index.commits(path(lines1)));
+
+        insertAndAdd(points1_modified);
+        RevCommit modified = geogit.command(CommitOp.class).call();
+        index = FileHistoryIndex.open(geogit.getPlatform()).get();
+        assertEquals(ImmutableList.of(commits.get(0).getId(), modified.getId()),
+                index.commits(path(points1)));
+        assertEquals(ImmutableList.of(commits.get(0).getId(), commits.get(2).getId(),
+                modified.getId()), index.commits(pointsName));
+    }
+
+    @Test
+    public void testLogUsesIndex() throws Exception {
+        populate(true, points1, lines1, points2, lines2, points3);
+        insertAndAdd(points1_modified);
+        geogit.command(CommitOp.class).call();
+        deleteAndAdd(lines1);
+        geogit.command(CommitOp.class).call();
+
+        final List<String> paths = ImmutableList.of(path(points1), path(lines1), pointsName,
+                linesName);
+        List<List<RevCommit>> expected = ImmutableList.of(log(paths.get(0)), log(paths.get(1)),
+                log(paths.get(2)), log(paths.get(3)), log(paths.get(0), paths.get(1)));
+
+        // an empty index, nothing indexed yet
+        FileHistoryIndex.create(geogit.getPlatform());
+        assertLogs(expected, paths);
+
+        // partially indexed
+        Optional<ObjectId> tip = geogit.command(LogOp.class).setSkip(3).setLimit(1).call().next()
+                .parentN(0);
+        geogit.command(UpdateHistoryIndex.class).addTip(tip.get()).call();
+        assertLogs(expected, paths);
+
+        // fully indexed
+        geogit.command(UpdateHistoryIndex.class).call();
+        assertLogs(expected, paths);
+    }
+
+    private void assertLogs(List<List<RevCommit>> expected, List<String> paths) {
+        assertEquals(expected.get(0), log(paths.get(0)));
+        assertEquals(expected.get(1), log(paths.get(1)));
+        assertEquals(expected.get(2), log(paths.get(2)));
+        assertEquals(expected.get(3), log(paths.get(3)));
+        assertEquals(expected.get(4), log(paths.get(0), paths.get(1)));
+    }
+
+    private List<RevCommit> log(String... paths) {
+        LogOp op = geogit.command(LogOp.class);
+        for (String path : paths) {
+            op.addPath(path);
+        }
+        return ImmutableList.copyOf(op.call());
+    }
+
+    private String path(Feature feature) {
+        return NodeRef.appendChild(feature.getType().getName().getLocalPart(), feature
+                .getIdentifier().getID());
+    }
+}
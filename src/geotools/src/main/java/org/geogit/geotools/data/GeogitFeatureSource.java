@@ -28,21 +28,37 @@ import org.geotools.data.sort.SortedFeatureReader;
 import org.geotools.data.store.ContentEntry;
 import org.geotools.data.store.ContentFeatureSource;
 import org.geotools.data.store.ContentState;
+import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.factory.Hints;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.feature.visitor.CountVisitor;
+import org.geotools.feature.visitor.MaxVisitor;
+import org.geotools.feature.visitor.MinVisitor;
+import org.geotools.feature.visitor.UniqueVisitor;
+import org.geotools.filter.spatial.ReprojectingFilterVisitor;
 import org.geotools.filter.visitor.SimplifyingFilterVisitor;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.opengis.feature.Feature;
 import org.opengis.feature.FeatureVisitor;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.feature.type.Name;
 import org.opengis.filter.Filter;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
 import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.spatial.BBOX;
+import org.opengis.filter.spatial.BinarySpatialOperator;
+import org.opengis.filter.spatial.Intersects;
+import org.opengis.geometry.BoundingBox;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
 
 /**
  *
@@ -112,9 +128,166 @@ class GeogitFeatureSource extends ContentFeatureSource {
         return true;
     }
 
+    /**
+     * Computes counts, and the min, max and unique values of non geometry attributes, straight
+     * from the feature type tree when the query has no paging and its filter is
+     * {@link Filter#INCLUDE} or a bounding box on the default geometry.
+     * 
+     * @see TreeAggregates
+     */
     @Override
     protected boolean handleVisitor(Query query, FeatureVisitor visitor) throws IOException {
-        return false;
+        final Integer offset = query.getStartIndex();
+        if ((offset != null && offset.intValue() > 0)
+                || query.getMaxFeatures() != Integer.MAX_VALUE) {
+            return false;
+        }
+        final Filter filter = (Filter) query.getFilter().accept(new SimplifyingFilterVisitor(),
+                null);
+
+        if (visitor instanceof CountVisitor) {
+            TreeAggregates aggregates = getAggregates(filter);
+            if (aggregates == null) {
+                return false;
+            }
+            ((CountVisitor) visitor).setValue((int) aggregates.count());
+            return true;
+        }
+
+        final Expression expression;
+        if (visitor instanceof MinVisitor) {
+            expression = ((MinVisitor) visitor).getExpression();
+        } else if (visitor instanceof MaxVisitor) {
+            expression = ((MaxVisitor) visitor).getExpression();
+        } else if (visitor instanceof UniqueVisitor) {
+            expression = ((UniqueVisitor) visitor).getExpression();
+        } else {
+            return false;
+        }
+        final int attributeIndex = getValueAttributeIndex(expression);
+        if (attributeIndex < 0) {
+            return false;
+        }
+        TreeAggregates aggregates = getAggregates(filter);
+        if (aggregates == null) {
+            return false;
+        }
+        if (visitor instanceof UniqueVisitor) {
+            ((UniqueVisitor) visitor).setValue(aggregates.unique(attributeIndex));
+            return true;
+        }
+        Object value;
+        if (visitor instanceof MinVisitor) {
+            value = aggregates.min(attributeIndex);
+        } else {
+            value = aggregates.max(attributeIndex);
+        }
+        if (value == null) {
+            // let the visitor tell there's no value the way it's used to
+            return false;
+        }
+        if (visitor instanceof MinVisitor) {
+            ((MinVisitor) visitor).setValue(value);
+        } else {
+            ((MaxVisitor) visitor).setValue(value);
+        }
+        return true;
+    }
+
+    /**
+     * @return the index of the non geometry attribute {@code expression} refers to, or {@code -1}
+     */
+    private int getValueAttributeIndex(@Nullable Expression expression) {
+        if (!(expression instanceof PropertyName)) {
+            return -1;
+        }
+        SimpleFeatureType schema = getSchema();
+        int index = schema.indexOf(((PropertyName) expression).getPropertyName());
+        if (index < 0 || schema.getDescriptor(index) instanceof GeometryDescriptor) {
+            return -1;
+        }
+        return index;
+    }
+
+    /**
+     * @param filter a simplified filter
+     * @return the aggregates over the features matching {@code filter}, if it's
+     *         {@link Filter#INCLUDE} or a bounding box on the default geometry, {@code null}
+     *         otherwise
+     */
+    @Nullable
+    TreeAggregates getAggregates(Filter filter) {
+        Envelope bbox = null;
+        if (!Filter.INCLUDE.equals(filter)) {
+            if (!(filter instanceof BBOX || filter instanceof Intersects)) {
+                return null;
+            }
+            final SimpleFeatureType schema = getSchema();
+            if (schema.getCoordinateReferenceSystem() != null) {
+                filter = (Filter) filter.accept(new ReprojectingFilterVisitor(
+                        CommonFactoryFinder.getFilterFactory2(), schema), null);
+            }
+            bbox = getBoundingBox(filter);
+            if (bbox == null) {
+                return null;
+            }
+        }
+        Context commandLocator = getCommandLocator();
+        return new TreeAggregates(commandLocator.stagingDatabase(), getTypeTree(), filter, bbox,
+                getSchema());
+    }
+
+    /**
+     * @return the bounding box of a {@link BBOX} filter, or of an {@link Intersects} filter with a
+     *         rectangle, on the default geometry; {@code null} for any other filter
+     */
+    @Nullable
+    private Envelope getBoundingBox(Filter filter) {
+        if (!(filter instanceof BBOX || filter instanceof Intersects)) {
+            return null;
+        }
+        BinarySpatialOperator operator = (BinarySpatialOperator) filter;
+        if (!(operator.getExpression1() instanceof PropertyName)
+                || !(operator.getExpression2() instanceof Literal)) {
+            return null;
+        }
+        GeometryDescriptor geometryDescriptor = getSchema().getGeometryDescriptor();
+        String property = ((PropertyName) operator.getExpression1()).getPropertyName();
+        if (geometryDescriptor == null
+                || !(property == null || property.isEmpty() || property.equals(geometryDescriptor
+                        .getLocalName()))) {
+            return null;
+        }
+        Object value = ((Literal) operator.getExpression2()).getValue();
+        if (value instanceof Geometry) {
+            Geometry geometry = (Geometry) value;
+            if (filter instanceof Intersects && !geometry.isRectangle()) {
+                return null;
+            }
+            return geometry.getEnvelopeInternal();
+        }
+        if (value instanceof Envelope) {
+            return (Envelope) value;
+        }
+        if (value instanceof BoundingBox) {
+            BoundingBox box = (BoundingBox) value;
+            return new Envelope(box.getMinX(), box.getMaxX(), box.getMinY(), box.getMaxY());
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of features out of {@code size} in the page given by {@code offset} and
+     *         {@code maxFeatures}
+     */
+    private static int page(long size, @Nullable Integer offset, @Nullable Integer maxFeatures) {
+        if (offset != null) {
+            size = Math.max(0, size - offset.intValue());
+        }
+        if (maxFeatures != null) {
+            size = Math.min(size, maxFeatures.intValue());
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
     }
 
     @Override
@@ -183,6 +356,14 @@ class GeogitFeatureSource extends ContentFeatureSource {
         if (Filter.EXCLUDE.equals(filter)) {
             return ReferencedEnvelope.create(crs);
         }
+        final Integer startIndex = query.getStartIndex();
+        if ((startIndex == null || startIndex.intValue() == 0)
+                && query.getMaxFeatures() == Integer.MAX_VALUE) {
+            TreeAggregates aggregates = getAggregates(filter);
+            if (aggregates != null) {
+                return new ReferencedEnvelope(aggregates.bounds(), crs);
+            }
+        }
 
         FeatureReader<SimpleFeatureType, SimpleFeature> features;
         if (isNaturalOrder(query.getSortBy())) {
@@ -216,17 +397,9 @@ class GeogitFeatureSource extends ContentFeatureSource {
         final Integer maxFeatures = query.getMaxFeatures() == Integer.MAX_VALUE ? null : query
                 .getMaxFeatures();
 
-        int size;
-        if (Filter.INCLUDE.equals(filter)) {
-            RevTree tree = getTypeTree();
-            size = (int) tree.size();
-            if (offset != null) {
-                size = size - offset.intValue();
-            }
-            if (maxFeatures != null) {
-                size = Math.min(size, maxFeatures.intValue());
-            }
-            return size;
+        TreeAggregates aggregates = getAggregates(filter);
+        if (aggregates != null) {
+            return page(aggregates.count(), offset, maxFeatures);
         }
 
         FeatureReader<SimpleFeatureType, SimpleFeature> features;
@@ -0,0 +1,255 @@
+/* Copyright (c) 2014 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+
+package org.geogit.geotools.data;
+
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.geogit.api.Bounded;
+import org.geogit.api.Bucket;
+import org.geogit.api.FeatureBuilder;
+import org.geogit.api.Node;
+import org.geogit.api.RevFeature;
+import org.geogit.api.RevTree;
+import org.geogit.storage.ObjectDatabase;
+import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+
+import com.google.common.collect.Sets;
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Computes aggregates over the features of a feature type tree that match either no filter or a
+ * bounding box filter, straight from the tree.
+ * <p>
+ * Buckets and features whose bounds don't intersect the bounding box are skipped, and those whose
+ * bounds are fully contained in it match without evaluating the filter. So counts and bounds are
+ * taken from the size and bounds of the contained buckets without reading their features at all,
+ * and only the features on the edges of the bounding box are built to evaluate the filter on.
+ * Attribute values are read from the {@link RevFeature}s directly.
+ * <p>
+ * Node bounds are stored as floats, so containment is checked against the bounding box shrunk by
+ * the float precision at its coordinates, making sure a contained node's actual geometry is
+ * within the bounding box.
+ */
+class TreeAggregates {
+
+    private final ObjectDatabase database;
+
+    private final RevTree typeTree;
+
+    @Nullable
+    private final Envelope bbox;
+
+    @Nullable
+    private final Envelope inner;
+
+    private final Filter filter;
+
+    private final SimpleFeatureType schema;
+
+    /**
+     * Created on demand, as only the features on the edges of the bounding box are built
+     */
+    @Nullable
+    private FeatureBuilder featureBuilder;
+
+    private final Envelope scratch = new Envelope();
+
+    /**
+     * @param database the database to read trees and features from
+     * @param typeTree the feature type tree
+     * @param filter the filter to evaluate on the features that are partially in {@code bbox}
+     * @param bbox the bounding box the features must be in, in the native CRS, or {@code null} to
+     *        aggregate all the features
+     * @param schema the type of the features {@code filter} is evaluated on
+     */
+    TreeAggregates(ObjectDatabase database, RevTree typeTree, Filter filter,
+            @Nullable Envelope bbox, SimpleFeatureType schema) {
+        this.database = database;
+        this.typeTree = typeTree;
+        this.filter = filter;
+        this.bbox = bbox;
+        this.schema = schema;
+        if (bbox == null) {
+            this.inner = null;
+        } else {
+            double maxAbs = Math.max(Math.max(Math.abs(bbox.getMinX()), Math.abs(bbox.getMaxX())),
+                    Math.max(Math.abs(bbox.getMinY()), Math.abs(bbox.getMaxY())));
+            this.inner = new Envelope(bbox);
+            this.inner.expandBy(-Math.ulp((float) maxAbs));
+        }
+    }
+
+    /**
+     * @return the number of matching features
+     */
+    public long count() {
+        if (bbox == null) {
+            return typeTree.size();
+        }
+        final long[] count = new long[1];
+        walk(typeTree, new Callback() {
+            @Override
+            boolean bucket(Bucket bucket, RevTree bucketTree) {
+                count[0] += bucketTree.size();
+                return true;
+            }
+
+            @Override
+            void feature(Node node, @Nullable RevFeature feature) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * @return the bounds of the matching features, as given by their nodes
+     */
+    public Envelope bounds() {
+        final Envelope bounds = new Envelope();
+        walk(typeTree, new Callback() {
+            @Override
+            boolean bucket(Bucket bucket, RevTree bucketTree) {
+                bucket.expand(bounds);
+                return true;
+            }
+
+            @Override
+            void feature(Node node, @Nullable RevFeature feature) {
+                node.expand(bounds);
+            }
+        });
+        return bounds;
+    }
+
+    /**
+     * @param attributeIndex the index of the attribute in the feature type
+     * @return the smallest non null value of the attribute among the matching features, or
+     *         {@code null} if there's none
+     */
+    @Nullable
+    public Comparable<?> min(int attributeIndex) {
+        return extreme(attributeIndex, -1);
+    }
+
+    /**
+     * @param attributeIndex the index of the attribute in the feature type
+     * @return the largest non null value of the attribute among the matching features, or
+     *         {@code null} if there's none
+     */
+    @Nullable
+    public Comparable<?> max(int attributeIndex) {
+        return extreme(attributeIndex, 1);
+    }
+
+    /**
+     * @param attributeIndex the index of the attribute in the feature type
+     * @return the distinct non null values of the attribute among the matching features
+     */
+    public Set<Object> unique(final int attributeIndex) {
+        final Set<Object> values = Sets.newHashSet();
+        walk(typeTree, new Callback() {
+            @Override
+            void feature(Node node, @Nullable RevFeature feature) {
+                Object value = value(node, feature, attributeIndex);
+                if (value != null) {
+                    values.add(value);
+                }
+            }
+        });
+        return values;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Nullable
+    private Comparable<?> extreme(final int attributeIndex, final int sign) {
+        final Comparable[] extreme = new Comparable[1];
+        walk(typeTree, new Callback() {
+            @Override
+            void feature(Node node, @Nullable RevFeature feature) {
+                Object value = value(node, feature, attributeIndex);
+                if (!(value instanceof Comparable)) {
+                    return;
+                }
+                Comparable comparable = (Comparable) value;
+                if (extreme[0] == null || sign * comparable.compareTo(extreme[0]) > 0) {
+                    extreme[0] = comparable;
+                }
+            }
+        });
+        return extreme[0];
+    }
+
+    @Nullable
+    private Object value(Node node, @Nullable RevFeature feature, int attributeIndex) {
+        if (feature == null) {
+            feature = database.getFeature(node.getObjectId());
+        }
+        return feature.getValues().get(attributeIndex).orNull();
+    }
+
+    private static abstract class Callback {
+
+        /**
+         * Called for each bucket whose features all match.
+         *
+         * @return {@code true} if the bucket was fully accounted for, {@code false} to have its
+         *         features visited one by one
+         */
+        boolean bucket(Bucket bucket, RevTree bucketTree) {
+            return false;
+        }
+
+        /**
+         * Called for each matching feature.
+         *
+         * @param feature the feature, if it was read to evaluate the filter
+         */
+        abstract void feature(Node node, @Nullable RevFeature feature);
+    }
+
+    private void walk(RevTree tree, Callback callback) {
+        if (tree.features().isPresent()) {
+            for (Node node : tree.features().get()) {
+                if (bbox == null || isContained(node)) {
+                    callback.feature(node, null);
+                } else if (node.intersects(bbox)) {
+                    RevFeature feature = database.getFeature(node.getObjectId());
+                    if (featureBuilder == null) {
+                        featureBuilder = new FeatureBuilder(schema);
+                    }
+                    Feature built = featureBuilder.build(node.getName(), feature);
+                    if (filter.evaluate(built)) {
+                        callback.feature(node, feature);
+                    }
+                }
+            }
+        } else if (tree.buckets().isPresent()) {
+            for (Entry<Integer, Bucket> entry : tree.buckets().get().entrySet()) {
+                Bucket bucket = entry.getValue();
+                if (bbox != null && !bucket.intersects(bbox)) {
+                    continue;
+                }
+                RevTree bucketTree = database.getTree(bucket.id());
+                if ((bbox == null || isContained(bucket)) && callback.bucket(bucket, bucketTree)) {
+                    continue;
+                }
+                walk(bucketTree, callback);
+            }
+        }
+    }
+
+    private boolean isContained(Bounded bounded) {
+        scratch.setToNull();
+        bounded.expand(scratch);
+        return !scratch.isNull() && inner.contains(scratch);
+    }
+}
@@ -10,7 +10,6 @@ import static com.google.common.base.Preconditions.checkArgument;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
@@ -56,7 +55,6 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.collect.UnmodifiableIterator;
 
 /**
@@ -205,15 +203,13 @@ public class ExportOp extends AbstractGeoGitOp<SimpleFeatureStore> {
 
         Function<NodeRef, SimpleFeature> asFeature = new Function<NodeRef, SimpleFeature>() {
 
-            private Map<ObjectId, FeatureBuilder> ftCache = Maps.newHashMap();
-
             @Override
             @Nullable
             public SimpleFeature apply(final NodeRef input) {
                 final ObjectId metadataId = input.getMetadataId();
                 final RevFeature revFeature = database.getFeature(input.objectId());
 
-                FeatureBuilder featureBuilder = getBuilderFor(metadataId);
+                FeatureBuilder featureBuilder = FeatureBuilder.forType(metadataId, database);
                 Feature feature = featureBuilder.build(input.name(), revFeature);
                 feature.getUserData().put(Hints.USE_PROVIDED_FID, true);
                 feature.getUserData().put(RevFeature.class, revFeature);
@@ -224,16 +220,6 @@ public class ExportOp extends AbstractGeoGitOp<SimpleFeatureStore> {
                 }
                 return null;
             }
-
-            private FeatureBuilder getBuilderFor(final ObjectId metadataId) {
-                FeatureBuilder featureBuilder = ftCache.get(metadataId);
-                if (featureBuilder == null) {
-                    RevFeatureType revFtype = database.getFeatureType(metadataId);
-                    featureBuilder = new FeatureBuilder(revFtype);
-                    ftCache.put(metadataId, featureBuilder);
-                }
-                return featureBuilder;
-            }
         };
 
         Iterator<SimpleFeature> asFeatures = Iterators.transform(nodes, asFeature);
@@ -307,6 +293,7 @@ public class ExportOp extends AbstractGeoGitOp<SimpleFeatureStore> {
             final ObjectId targetFeatureTypeId) {
 
         final RevFeatureType targetType = stagingDatabase().getFeatureType(targetFeatureTypeId);
+        final FeatureBuilder featureBuilder = FeatureBuilder.forType(targetType);
 
         Function<SimpleFeature, SimpleFeature> alterFunction = new Function<SimpleFeature, SimpleFeature>() {
             @Override
@@ -338,7 +325,6 @@ public class ExportOp extends AbstractGeoGitOp<SimpleFeatureStore> {
                     }
                 }
                 RevFeature newFeature = RevFeature.build(ImmutableList.copyOf(newValues));
-                FeatureBuilder featureBuilder = new FeatureBuilder(targetType);
                 SimpleFeature feature = (SimpleFeature) featureBuilder.build(input.getID(),
                         newFeature);
                 return feature;
@@ -33,6 +33,10 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.visitor.CountVisitor;
+import org.geotools.feature.visitor.MaxVisitor;
+import org.geotools.feature.visitor.MinVisitor;
+import org.geotools.feature.visitor.UniqueVisitor;
 import org.geotools.filter.text.ecql.ECQL;
 import org.geotools.geometry.jts.JTS;
 import org.geotools.geometry.jts.ReferencedEnvelope;
@@ -220,6 +224,64 @@ public class GeoGitFeatureSourceTest extends RepositoryTestCase {
         assertEquals(2, linesSource.getCount(new Query(linesName, filter)));
     }
 
+    @Test
+    public void testAggregatesFromTree() throws Exception {
+        final String geom = pointsType.getGeometryDescriptor().getLocalName();
+        Filter filter = ff.bbox(geom, 0.5, 0.5, 2.5, 2.5, null);
+        Query query = new Query(pointsName, filter);
+
+        assertEquals(2, pointsSource.getCount(query));
+        assertEquals(boundsOf(points1, points2), pointsSource.getBounds(query));
+
+        // the data store hands out feature stores, which shall push the visitors down to the
+        // tree too rather than having them visit every feature
+        final GeogitFeatureStore points = (GeogitFeatureStore) pointsSource;
+
+        CountVisitor count = new CountVisitor();
+        assertTrue(points.handleVisitor(query, count));
+        assertEquals(2, count.getCount());
+        count = new CountVisitor();
+        pointsSource.getFeatures(query).accepts(count, null);
+        assertEquals(2, count.getCount());
+
+        MaxVisitor max = new MaxVisitor("ip");
+        assertTrue(points.handleVisitor(query, max));
+        assertEquals(2000, max.getResult().toInt());
+        max = new MaxVisitor("ip");
+        pointsSource.getFeatures(query).accepts(max, null);
+        assertEquals(2000, max.getResult().toInt());
+
+        MinVisitor min = new MinVisitor("ip");
+        assertTrue(points.handleVisitor(Query.ALL, min));
+        assertEquals(1000, min.getResult().toInt());
+        min = new MinVisitor("ip");
+        pointsSource.getFeatures().accepts(min, null);
+        assertEquals(1000, min.getResult().toInt());
+
+        UniqueVisitor unique = new UniqueVisitor("sp");
+        assertTrue(points.handleVisitor(query, unique));
+        assertEquals(ImmutableSet.of("StringProp1_1", "StringProp1_2"), unique.getUnique());
+        unique = new UniqueVisitor("sp");
+        pointsSource.getFeatures(query).accepts(unique, null);
+        assertEquals(ImmutableSet.of("StringProp1_1", "StringProp1_2"), unique.getUnique());
+
+        // paged queries and geometry attributes are left to the features
+        Query paged = new Query(query);
+        paged.setMaxFeatures(1);
+        assertFalse(points.handleVisitor(paged, new CountVisitor()));
+        assertFalse(points.handleVisitor(query, new MaxVisitor(geom)));
+
+        // lines partially covered by the bbox are evaluated against the filter
+        filter = ff.bbox(linesType.getGeometryDescriptor().getLocalName(), 1.5, 1.5, 3.5, 3.5,
+                null);
+        query = new Query(linesName, filter);
+        assertEquals(2, linesSource.getCount(query));
+        assertEquals(boundsOf(lines1, lines2), linesSource.getBounds(query));
+        count = new CountVisitor();
+        assertTrue(((GeogitFeatureStore) linesSource).handleVisitor(query, count));
+        assertEquals(2, count.getCount());
+    }
+
     @Test
     public void testGetFeatures() throws Exception {
         SimpleFeatureCollection collection;
@@ -34,7 +34,7 @@ public class HistoryImportArgs {
     @Parameter(names = { "--keep-files", "-k" }, description = "If specified, downloaded changeset files are kept in the --saveto folder")
     public boolean keepFiles = false;
 
-    @Parameter(names = { "--numthreads", "-t" }, description = "Number of threads to use to fetch changesets. Must be between 1 and 6")
+    @Parameter(names = { "--numthreads", "-t" }, description = "Number of threads to use to fetch and convert changesets. Must be between 1 and 6")
     public int numThreads = 4;
 
     @Parameter(names = "--dev", description = "Use the development test api endpoint <http://api06.dev.openstreetmap.org/api/0.6>. NOTE: this is not the real osm history, but just for testing purposes. ")
@@ -14,6 +14,7 @@ import org.geogit.cli.CLICommand;
 import org.geogit.cli.CommandFailedException;
 import org.geogit.cli.GeogitCLI;
 import org.geogit.osm.internal.OSMApplyDiffOp;
+import org.geogit.osm.internal.OSMCommitDiffOp;
 import org.geogit.osm.internal.OSMReport;
 
 import com.beust.jcommander.Parameter;
@@ -30,6 +31,12 @@ public class OSMApplyDiff extends AbstractCommand implements CLICommand {
     @Parameter(arity = 1, description = "OSM diff file path", required = true)
     public List<String> diffFilepath = Lists.newArrayList();
 
+    @Parameter(names = "--commit", description = "Apply the diff on top of the current branch and commit it straight away. Requires a clean working tree and index")
+    public boolean commit = false;
+
+    @Parameter(names = "--message", description = "Message for the commit to create when using --commit.")
+    public String message;
+
     @Override
     protected void runInternal(GeogitCLI cli) throws IOException {
         checkParameter(diffFilepath != null && diffFilepath.size() == 1,
@@ -38,8 +45,15 @@ public class OSMApplyDiff extends AbstractCommand implements CLICommand {
         checkParameter(diffFile.exists(), "The specified OSM diff file does not exist");
 
         try {
-            Optional<OSMReport> report = cli.getGeogit().command(OSMApplyDiffOp.class)
-                    .setDiffFile(diffFile).setProgressListener(cli.getProgressListener()).call();
+            Optional<OSMReport> report;
+            if (commit) {
+                report = cli.getGeogit().command(OSMCommitDiffOp.class).setDiffFile(diffFile)
+                        .setMessage(message).setProgressListener(cli.getProgressListener())
+                        .call();
+            } else {
+                report = cli.getGeogit().command(OSMApplyDiffOp.class).setDiffFile(diffFile)
+                        .setProgressListener(cli.getProgressListener()).call();
+            }
             if (report.isPresent()) {
                 OSMReport rep = report.get();
                 String msg;
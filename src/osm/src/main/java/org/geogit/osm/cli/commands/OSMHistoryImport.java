@@ -10,41 +10,49 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.Charset;
-import java.util.Collection;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
-import javax.management.relation.Relation;
 
 import jline.console.ConsoleReader;
 
-import org.geogit.api.DefaultProgressListener;
+import org.geogit.api.CommitBuilder;
 import org.geogit.api.FeatureBuilder;
 import org.geogit.api.GeoGIT;
 import org.geogit.api.NodeRef;
 import org.geogit.api.ObjectId;
-import org.geogit.api.ProgressListener;
+import org.geogit.api.Platform;
 import org.geogit.api.Ref;
+import org.geogit.api.RevCommit;
 import org.geogit.api.RevFeature;
+import org.geogit.api.RevFeatureBuilder;
 import org.geogit.api.RevFeatureType;
+import org.geogit.api.RevObject;
+import org.geogit.api.RevObject.TYPE;
 import org.geogit.api.RevTree;
+import org.geogit.api.RevTreeBuilder;
 import org.geogit.api.SymRef;
 import org.geogit.api.plumbing.FindTreeChild;
 import org.geogit.api.plumbing.RefParse;
 import org.geogit.api.plumbing.ResolveGeogitDir;
 import org.geogit.api.plumbing.ResolveTreeish;
-import org.geogit.api.plumbing.RevObjectParse;
-import org.geogit.api.porcelain.AddOp;
-import org.geogit.api.porcelain.CommitOp;
+import org.geogit.api.plumbing.UpdateHistoryIndex;
+import org.geogit.api.plumbing.UpdateRef;
+import org.geogit.api.plumbing.WriteBack;
+import org.geogit.api.porcelain.ConfigGet;
 import org.geogit.cli.AbstractCommand;
 import org.geogit.cli.CLICommand;
 import org.geogit.cli.CommandFailedException;
@@ -55,9 +63,9 @@ import org.geogit.osm.internal.history.HistoryDownloader;
 import org.geogit.osm.internal.history.Node;
 import org.geogit.osm.internal.history.Primitive;
 import org.geogit.osm.internal.history.Way;
+import org.geogit.repository.DepthSearch;
 import org.geogit.repository.Repository;
-import org.geogit.repository.StagingArea;
-import org.geogit.repository.WorkingTree;
+import org.geogit.storage.ObjectDatabase;
 import org.geotools.data.DataUtilities;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.referencing.CRS;
@@ -74,11 +82,13 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import com.google.common.io.Files;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Point;
@@ -183,71 +193,91 @@ public class OSMHistoryImport extends AbstractCommand implements CLICommand {
         return osmAPIUrl;
     }
 
+    /**
+     * Imports the changesets as they're fetched by the downloader, one commit per changeset.
+     * <p>
+     * Parsing and converting the changes of a changeset into features does not depend on the
+     * repository state, so it's done on a pool of {@code numthreads} threads for several
+     * changesets ahead of the one being committed. The pending conversions are kept in a bounded
+     * buffer in changeset order, so that commits are still created strictly in that order no
+     * matter which conversion finishes first.
+     */
     private void importOsmHistory(GeogitCLI cli, ConsoleReader console, HistoryDownloader downloader)
             throws IOException {
-        Optional<Changeset> set;
-
-        while ((set = downloader.fetchNextChangeset()).isPresent()) {
-            Changeset changeset = set.get();
-
-            String desc = "obtaining osm changeset " + changeset.getId() + "...";
-            console.print(desc);
-            console.flush();
 
-            // ProgressListener listener = cli.getProgressListener();
-            // listener.dispose();
-            // listener.setCanceled(false);
-            // listener.progress(0f);
-            // listener.setDescription(desc);
-            // listener.started();
+        final GeoGIT geogit = cli.getGeogit();
+        final Repository repository = geogit.getRepository();
+        if (!repository.workingTree().isClean() || !repository.index().isClean()) {
+            throw new CommandFailedException(
+                    "The working tree and index must be clean to import OSM history");
+        }
 
-            Iterator<Change> changes = changeset.getChanges().get();
-            console.print("applying...");
-            console.flush();
-            insertAndAddChanges(cli, changes);
-            // listener.progress(100f);
-            // listener.complete();
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("osm-history-convert-thread-%d").build();
+        final ExecutorService converters = Executors.newFixedThreadPool(args.numThreads,
+                threadFactory);
+        final int bufferSize = 2 * args.numThreads;
+        final Deque<Future<ConvertedChangeset>> pending;
+        pending = new ArrayDeque<Future<ConvertedChangeset>>(bufferSize);
 
-            commit(cli, changeset);
+        final ChangesetCommitter committer = new ChangesetCommitter(geogit);
+        try {
+            boolean fetching = fetchChangesets(downloader, converters, pending, bufferSize);
+            Future<ConvertedChangeset> next;
+            while ((next = pending.poll()) != null) {
+                // keep the converters busy while this one is being committed
+                fetching = fetching && fetchChangesets(downloader, converters, pending, bufferSize);
+
+                final ConvertedChangeset changes = next.get();
+                final long changesetId = changes.changeset.getId();
+                console.print("Committing changeset " + changesetId + "...");
+                console.flush();
+
+                committer.commit(changes);
+                updateBranchChangeset(geogit, changesetId);
+
+                console.println("applied " + changes.count + " changes.");
+                console.flush();
+            }
+            committer.updateHistoryIndex();
+        } catch (InterruptedException e) {
+            throw new CommandFailedException(e);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause());
+            throw new CommandFailedException(e.getCause());
+        } finally {
+            converters.shutdownNow();
         }
     }
 
     /**
-     * @param cli
-     * @param changeset
-     * @throws IOException
+     * Fetches changesets and submits their conversion until the buffer is full
+     * 
+     * @return {@code false} if there are no more changesets to fetch
      */
-    private void commit(GeogitCLI cli, Changeset changeset) throws IOException {
-        ConsoleReader console = cli.getConsole();
-        console.print("Committing changeset " + changeset.getId() + "...");
-        console.flush();
+    private boolean fetchChangesets(HistoryDownloader downloader, ExecutorService converters,
+            Deque<Future<ConvertedChangeset>> pending, int bufferSize) {
+        while (pending.size() < bufferSize) {
+            Optional<Changeset> set = downloader.fetchNextChangeset();
+            if (!set.isPresent()) {
+                return false;
+            }
+            final Changeset changeset = set.get();
+            pending.add(converters.submit(new Callable<ConvertedChangeset>() {
+                @Override
+                public ConvertedChangeset call() {
+                    return ConvertedChangeset.convert(changeset);
+                }
+            }));
+        }
+        return true;
+    }
 
-        GeoGIT geogit = cli.getGeogit();
-        CommitOp command = geogit.command(CommitOp.class);
-        command.setAllowEmpty(true);
-        String message = "";
+    private static String commitMessage(Changeset changeset) {
         if (changeset.getComment().isPresent()) {
-            message = changeset.getComment().get() + "\nchangeset " + changeset.getId();
-        } else {
-            message = "changeset " + changeset.getId();
-        }
-        command.setMessage(message);
-        command.setAuthor(changeset.getUserName(), null);
-        command.setAuthorTimestamp(changeset.getClosed());
-        command.setAuthorTimeZoneOffset(0);// osm timestamps are in GMT
-        ProgressListener listener = cli.getProgressListener();
-        listener.setProgress(0f);
-        listener.started();
-        command.setProgressListener(listener);
-        try {
-            command.call();
-            updateBranchChangeset(geogit, changeset.getId());
-            listener.complete();
-            console.println("done.");
-            console.flush();
-        } catch (Exception e) {
-            throw Throwables.propagate(e);
+            return changeset.getComment().get() + "\nchangeset " + changeset.getId();
         }
+        return "changeset " + changeset.getId();
     }
 
     /**
@@ -299,144 +329,261 @@ public class OSMHistoryImport extends AbstractCommand implements CLICommand {
     }
 
     /**
-     * @param cli
-     * @param changes
-     * @throws IOException
+     * The changes of a changeset converted to features, as far as that's possible without looking
+     * at the repository contents.
+     * <p>
+     * Ways whose nodes are all part of the changeset are converted right away, the geometry of the
+     * others depends on the node locations left by the previous changesets, so they're converted
+     * at commit time.
      */
-    private void insertAndAddChanges(GeogitCLI cli, final Iterator<Change> changes)
-            throws IOException {
-        if (!changes.hasNext()) {
-            return;
-        }
-        final GeoGIT geogit = cli.getGeogit();
-        final Repository repository = geogit.getRepository();
-        final WorkingTree workTree = repository.workingTree();
+    private static class ConvertedChangeset {
 
-        Map<Long, Coordinate> thisChangePointCache = new LinkedHashMap<Long, Coordinate>() {
-            /** serialVersionUID */
-            private static final long serialVersionUID = 1277795218777240552L;
+        final Changeset changeset;
 
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<Long, Coordinate> eldest) {
-                return size() == 10000;
-            }
-        };
+        /** number of node and way changes */
+        int count;
 
-        int cnt = 0;
+        final List<RevFeature> features = Lists.newArrayList();
 
-        Set<String> deletes = Sets.newHashSet();
-        Multimap<String, SimpleFeature> insertsByParent = HashMultimap.create();
+        final Map<String, org.geogit.api.Node> nodes = Maps.newLinkedHashMap();
 
-        while (changes.hasNext()) {
-            Change change = changes.next();
-            final String featurePath = featurePath(change);
-            if (featurePath == null) {
-                continue;// ignores relations
-            }
-            cnt++;
-            final String parentPath = NodeRef.parentPath(featurePath);
-            if (Change.Type.delete.equals(change.getType())) {
-                deletes.add(featurePath);
-            } else {
-                final Primitive primitive = change.getNode().isPresent() ? change.getNode().get()
-                        : change.getWay().get();
-                final Geometry geom = parseGeometry(geogit, primitive, thisChangePointCache);
-                if (geom instanceof Point) {
-                    thisChangePointCache.put(Long.valueOf(primitive.getId()),
-                            ((Point) geom).getCoordinate());
-                }
+        final Map<String, org.geogit.api.Node> ways = Maps.newLinkedHashMap();
 
-                SimpleFeature feature = toFeature(primitive, geom);
-                insertsByParent.put(parentPath, feature);
-            }
+        final Map<String, Way> unresolvedWays = Maps.newLinkedHashMap();
+
+        final Set<String> nodeDeletes = Sets.newHashSet();
+
+        final Set<String> wayDeletes = Sets.newHashSet();
+
+        /** locations of the nodes created or modified by this changeset */
+        final Map<Long, Coordinate> locations = Maps.newHashMap();
+
+        private ConvertedChangeset(Changeset changeset) {
+            this.changeset = changeset;
         }
 
-        for (String parentPath : insertsByParent.keySet()) {
-            Collection<SimpleFeature> features = insertsByParent.get(parentPath);
-            if (features.isEmpty()) {
-                continue;
+        static ConvertedChangeset convert(Changeset changeset) {
+            final ConvertedChangeset converted = new ConvertedChangeset(changeset);
+            final Map<String, Way> ways = Maps.newLinkedHashMap();
+
+            Iterator<Change> changes = changeset.getChanges().get();
+            while (changes.hasNext()) {
+                Change change = changes.next();
+                if (change.getRelation().isPresent()) {
+                    continue;// ignore relations for the time being
+                }
+                converted.count++;
+                final boolean delete = Change.Type.delete.equals(change.getType());
+                if (change.getNode().isPresent()) {
+                    Node node = change.getNode().get();
+                    String fid = String.valueOf(node.getId());
+                    if (delete) {
+                        converted.nodeDeletes.add(fid);
+                        continue;
+                    }
+                    Point location = node.getLocation().orNull();
+                    if (location != null) {
+                        converted.locations.put(Long.valueOf(node.getId()),
+                                location.getCoordinate());
+                    }
+                    converted.put(converted.nodes, node, location);
+                } else {
+                    Way way = change.getWay().get();
+                    String fid = String.valueOf(way.getId());
+                    if (delete) {
+                        converted.wayDeletes.add(fid);
+                    } else {
+                        ways.put(fid, way);
+                    }
+                }
             }
 
-            Iterator<? extends Feature> iterator = features.iterator();
-            ProgressListener listener = new DefaultProgressListener();
-            List<org.geogit.api.Node> insertedTarget = null;
-            Integer collectionSize = Integer.valueOf(features.size());
-            workTree.insert(parentPath, iterator, listener, insertedTarget, collectionSize);
-        }
-        if (!deletes.isEmpty()) {
-            workTree.delete(deletes.iterator());
+            for (Map.Entry<String, Way> e : ways.entrySet()) {
+                Way way = e.getValue();
+                if (converted.locations.keySet().containsAll(way.getNodes())) {
+                    converted.put(converted.ways, way, lineString(way, converted.locations));
+                } else {
+                    converted.unresolvedWays.put(e.getKey(), way);
+                }
+            }
+            return converted;
         }
-        ConsoleReader console = cli.getConsole();
-        console.print("Applied " + cnt + " changes, staging...");
-        console.flush();
-
-        geogit.command(AddOp.class).call();
 
-        console.println("done.");
-        console.flush();
+        void put(Map<String, org.geogit.api.Node> target, Primitive primitive,
+                @Nullable Geometry geom) {
+            RevFeature revFeature = RevFeatureBuilder.build(toFeature(primitive, geom));
+            features.add(revFeature);
+            String fid = String.valueOf(primitive.getId());
+            target.put(fid, org.geogit.api.Node.create(fid, revFeature.getId(), ObjectId.NULL,
+                    TYPE.FEATURE, geom == null ? null : geom.getEnvelopeInternal()));
+        }
     }
 
     /**
-     * @param primitive
-     * @param thisChangePointCache
-     * @return
+     * Creates one commit per changeset on the current branch, building the tree of each commit
+     * straight from the tree of the previous one, so that only the buckets touched by the
+     * changeset are rewritten and the working tree and index are not involved.
      */
-    private Geometry parseGeometry(GeoGIT geogit, Primitive primitive,
-            Map<Long, Coordinate> thisChangePointCache) {
+    private class ChangesetCommitter {
 
-        if (primitive instanceof Relation) {
-            return null;
-        }
+        private final GeoGIT geogit;
 
-        if (primitive instanceof Node) {
-            Optional<Point> location = ((Node) primitive).getLocation();
-            return location.orNull();
-        }
+        private final ObjectDatabase db;
 
-        final Way way = (Way) primitive;
-        final ImmutableList<Long> nodes = way.getNodes();
+        private final String branch;
 
-        StagingArea index = geogit.getRepository().index();
+        private final String committer;
 
-        FeatureBuilder featureBuilder = new FeatureBuilder(NODE_REV_TYPE);
-        List<Coordinate> coordinates = Lists.newArrayList(nodes.size());
-        FindTreeChild findTreeChild = geogit.command(FindTreeChild.class);
-        findTreeChild.setIndex(true);
-        ObjectId rootTreeId = geogit.command(ResolveTreeish.class).setTreeish(Ref.HEAD).call()
-                .get();
-        if (!rootTreeId.isNull()) {
-            RevTree headTree = geogit.command(RevObjectParse.class).setObjectId(rootTreeId)
-                    .call(RevTree.class).get();
-            findTreeChild.setParent(headTree);
+        private final String committerEmail;
+
+        private ObjectId commitId;
+
+        private RevTree root;
+
+        ChangesetCommitter(GeoGIT geogit) {
+            this.geogit = geogit;
+            this.db = geogit.getRepository().objectDatabase();
+            final SymRef head = getHead(geogit);
+            this.branch = head.getTarget();
+            this.commitId = head.getObjectId();
+            if (commitId.isNull()) {
+                root = RevTree.EMPTY;
+                db.put(root);
+            } else {
+                root = db.getTree(geogit.command(ResolveTreeish.class).setTreeish(commitId).call()
+                        .get());
+            }
+            Optional<String> name = geogit.command(ConfigGet.class).setName("user.name").call();
+            if (!name.isPresent()) {
+                throw new CommandFailedException(
+                        "user.name not found in config. Use geogit config [--global] user.name <your name> to configure it.");
+            }
+            this.committer = name.get();
+            this.committerEmail = geogit.command(ConfigGet.class).setName("user.email").call()
+                    .orNull();
+            db.put(NODE_REV_TYPE);
+            db.put(WAY_REV_TYPE);
         }
-        for (Long nodeId : nodes) {
-            Coordinate coord = thisChangePointCache.get(nodeId);
-            if (coord == null) {
-                String fid = String.valueOf(nodeId);
-                String path = NodeRef.appendChild(NODE_TYPE_NAME, fid);
-                Optional<org.geogit.api.Node> ref = index.findStaged(path);
-                if (!ref.isPresent()) {
-                    Optional<NodeRef> nodeRef = findTreeChild.setChildPath(path).call();
-                    if (nodeRef.isPresent()) {
-                        ref = Optional.of(nodeRef.get().getNode());
-                    } else {
-                        ref = Optional.absent();
+
+        void commit(ConvertedChangeset changes) {
+            final Optional<NodeRef> nodeTreeRef = findTree(NODE_TYPE_NAME);
+            final Optional<NodeRef> wayTreeRef = findTree(WAY_TYPE_NAME);
+
+            if (!changes.unresolvedWays.isEmpty()) {
+                Map<Long, Coordinate> locations = Maps.newHashMap(changes.locations);
+                Set<String> missing = Sets.newHashSet();
+                for (Way way : changes.unresolvedWays.values()) {
+                    for (Long nodeId : way.getNodes()) {
+                        if (!locations.containsKey(nodeId)) {
+                            missing.add(String.valueOf(nodeId));
+                        }
                     }
                 }
-                if (ref.isPresent()) {
-                    org.geogit.api.Node nodeRef = ref.get();
+                if (nodeTreeRef.isPresent()) {
+                    RevTree nodeTree = db.getTree(nodeTreeRef.get().objectId());
+                    resolveLocations(db, nodeTree, missing, locations);
+                }
+                for (Way way : changes.unresolvedWays.values()) {
+                    changes.put(changes.ways, way, lineString(way, locations));
+                }
+            }
+            db.putAll(changes.features.iterator());
+
+            RevTree newRoot = root;
+            newRoot = apply(newRoot, nodeTreeRef, NODE_TYPE_NAME, NODE_REV_TYPE, changes.nodes,
+                    changes.nodeDeletes);
+            newRoot = apply(newRoot, wayTreeRef, WAY_TYPE_NAME, WAY_REV_TYPE, changes.ways,
+                    changes.wayDeletes);
+
+            final Changeset changeset = changes.changeset;
+            final Platform platform = geogit.getPlatform();
+            final long now = platform.currentTimeMillis();
+            CommitBuilder cb = new CommitBuilder();
+            cb.setAuthor(changeset.getUserName());
+            cb.setAuthorEmail(null);
+            cb.setAuthorTimestamp(changeset.getClosed());
+            cb.setAuthorTimeZoneOffset(0);// osm timestamps are in GMT
+            cb.setCommitter(committer);
+            cb.setCommitterEmail(committerEmail);
+            cb.setCommitterTimestamp(now);
+            cb.setCommitterTimeZoneOffset(platform.timeZoneOffset(now));
+            cb.setMessage(commitMessage(changeset));
+            cb.setParentIds(commitId.isNull() ? ImmutableList.<ObjectId> of() : ImmutableList
+                    .of(commitId));
+            cb.setTreeId(newRoot.getId());
+            RevCommit commit = cb.build();
+            db.put(commit);
+
+            final Repository repository = geogit.getRepository();
+            geogit.command(UpdateRef.class).setName(branch).setNewValue(commit.getId()).call();
+            repository.index().updateStageHead(newRoot.getId());
+            repository.workingTree().updateWorkHead(newRoot.getId());
+            commitId = commit.getId();
+            root = newRoot;
+        }
 
-                    RevFeature revFeature = index.getDatabase().getFeature(nodeRef.getObjectId());
-                    String id = NodeRef.nodeFromPath(nodeRef.getName());
-                    Feature feature = featureBuilder.build(id, revFeature);
+        void updateHistoryIndex() {
+            if (!commitId.isNull()) {
+                geogit.command(UpdateHistoryIndex.class).addTip(commitId).call();
+            }
+        }
 
-                    Point p = (Point) ((SimpleFeature) feature).getAttribute("location");
-                    if (p != null) {
-                        coord = p.getCoordinate();
-                        thisChangePointCache.put(Long.valueOf(nodeId), coord);
-                    }
+        private Optional<NodeRef> findTree(String path) {
+            return geogit.command(FindTreeChild.class).setIndex(false).setParent(root)
+                    .setChildPath(path).call();
+        }
+
+        /**
+         * Applies the changes to the feature tree at {@code path}
+         * 
+         * @return the new root tree
+         */
+        private RevTree apply(RevTree root, Optional<NodeRef> treeRef, String path,
+                RevFeatureType type, Map<String, org.geogit.api.Node> puts, Set<String> deletes) {
+            if (puts.isEmpty() && deletes.isEmpty()) {
+                return root;
+            }
+            final ObjectId typeId = type.getId();
+            final ObjectId treeMetadataId;
+            if (treeRef.isPresent() && !treeRef.get().getMetadataId().isNull()) {
+                treeMetadataId = treeRef.get().getMetadataId();
+            } else {
+                treeMetadataId = typeId;
+            }
+            final boolean inheritMetadataId = typeId.equals(treeMetadataId);
+
+            RevTree original = treeRef.isPresent() ? db.getTree(treeRef.get().objectId())
+                    : RevTree.EMPTY;
+            RevTreeBuilder builder = original.builder(db);
+            for (org.geogit.api.Node node : puts.values()) {
+                if (!inheritMetadataId) {
+                    Envelope bounds = new Envelope();
+                    node.expand(bounds);
+                    node = org.geogit.api.Node.create(node.getName(), node.getObjectId(), typeId,
+                            TYPE.FEATURE, bounds.isNull() ? null : bounds);
                 }
+                builder.put(node);
+            }
+            for (String fid : deletes) {
+                builder.remove(fid);
             }
+            ObjectId newRootId = geogit.command(WriteBack.class).setAncestor(root.builder(db))
+                    .setChildPath(path).setMetadataId(treeMetadataId).setToIndex(false)
+                    .setTree(builder.build()).call();
+            return db.getTree(newRootId);
+        }
+    }
+
+    /**
+     * @return the way geometry made of the nodes whose location is known, or {@code null} if
+     *         there are less than two of them
+     */
+    @Nullable
+    private static Geometry lineString(Way way, Map<Long, Coordinate> locations) {
+        final ImmutableList<Long> nodes = way.getNodes();
+        List<Coordinate> coordinates = Lists.newArrayList(nodes.size());
+        for (Long nodeId : nodes) {
+            Coordinate coord = locations.get(nodeId);
             if (coord != null) {
                 coordinates.add(coord);
             }
@@ -448,19 +595,37 @@ public class OSMHistoryImport extends AbstractCommand implements CLICommand {
     }
 
     /**
-     * @param change
-     * @return
+     * Looks up the locations of the given nodes in the node tree, resolving all of them in a
+     * single pass over its buckets.
+     * 
+     * @param nodeIds the ids of the nodes to look up
+     * @param target where to add the locations found
      */
-    private String featurePath(Change change) {
-        if (change.getRelation().isPresent()) {
-            return null;// ignore relations for the time being
+    private static void resolveLocations(ObjectDatabase db, RevTree nodeTree, Set<String> nodeIds,
+            Map<Long, Coordinate> target) {
+        Map<String, org.geogit.api.Node> found = new DepthSearch(db).getDirectChildren(nodeTree,
+                nodeIds, 0);
+        if (found.isEmpty()) {
+            return;
+        }
+
+        // nodes with the same contents share their feature
+        Multimap<ObjectId, String> ids = HashMultimap.create();
+        for (org.geogit.api.Node node : found.values()) {
+            ids.put(node.getObjectId(), node.getName());
         }
-        if (change.getNode().isPresent()) {
-            String fid = String.valueOf(change.getNode().get().getId());
-            return NodeRef.appendChild(NODE_TYPE_NAME, fid);
+        FeatureBuilder featureBuilder = FeatureBuilder.forType(NODE_REV_TYPE);
+        Iterator<RevObject> features = db.getAll(ids.keySet());
+        while (features.hasNext()) {
+            RevFeature revFeature = (RevFeature) features.next();
+            for (String id : ids.get(revFeature.getId())) {
+                Feature feature = featureBuilder.build(id, revFeature);
+                Point p = (Point) ((SimpleFeature) feature).getAttribute("location");
+                if (p != null) {
+                    target.put(Long.valueOf(id), p.getCoordinate());
+                }
+            }
         }
-        String fid = String.valueOf(change.getWay().get().getId());
-        return NodeRef.appendChild(WAY_TYPE_NAME, fid);
     }
 
     private static SimpleFeatureType NodeType;
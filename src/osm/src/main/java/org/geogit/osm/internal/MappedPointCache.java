@@ -0,0 +1,270 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.osm.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.annotation.Nullable;
+
+import org.geogit.api.Platform;
+import org.geogit.api.plumbing.ResolveGeogitDir;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * A {@link PointCache} that stores node locations as fixed width, fixed point coordinates addressed
+ * directly by node id.
+ * <p>
+ * Each location takes 8 bytes: longitude and latitude as {@code int}s in units of 10<sup>-7</sup>
+ * degrees, which is the precision OSM stores them with. While node ids come in ascending order, as
+ * they do in regular OSM extracts, and there are not too many of them, locations are kept in
+ * sorted in-memory arrays, which is what small and sparse extracts need. Past that, or as soon as
+ * an id comes out of order, they are moved to a sparse memory mapped file where the location of
+ * node {@code n} lives at offset {@code 8 * n}, so that a lookup is just array arithmetic and the
+ * file only takes disk space for the id ranges actually used. The file is mapped in fixed size
+ * segments as they're first touched.
+ * <p>
+ * Coordinates are stored with their sign bit flipped so that an all zeros location, which is what
+ * unwritten regions of the file read as, can never be a valid one and denotes a missing node.
+ * Negative node ids, as used by editors for new nodes, are kept aside in memory.
+ */
+class MappedPointCache implements PointCache {
+
+    private static final double SCALE = 1E7;
+
+    private static final int LOCATION_BYTES = 8;
+
+    /**
+     * log2 of the number of node locations per mapped segment (16M locations, 128MB)
+     */
+    private static final int SEGMENT_SHIFT = 24;
+
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private static final long SEGMENT_BYTES = LOCATION_BYTES << SEGMENT_SHIFT;
+
+    /**
+     * Max number of locations kept in the sorted arrays before moving to the mapped file
+     */
+    private static final int SORTED_LIMIT = 1 << 22;
+
+    private static final Random random = new Random();
+
+    private final File directory;
+
+    // sorted arrays mode
+    private long[] sortedIds;
+
+    private long[] sortedLocations;
+
+    private int sortedSize;
+
+    // mapped file mode
+    private File file;
+
+    private RandomAccessFile raf;
+
+    private MappedByteBuffer[] segments;
+
+    private Map<Long, Long> negativeIds;
+
+    public MappedPointCache(Platform platform) {
+        this(defaultDirectory(platform));
+    }
+
+    /**
+     * @param directory the directory where to create the mapped file, if needed
+     */
+    MappedPointCache(File directory) {
+        this.directory = directory;
+        this.sortedIds = new long[1024];
+        this.sortedLocations = new long[1024];
+    }
+
+    private static File defaultDirectory(Platform platform) {
+        Optional<URL> repoUrl = new ResolveGeogitDir(platform).call();
+        if (!repoUrl.isPresent()) {
+            return new File(System.getProperty("java.io.tmpdir"));
+        }
+        try {
+            return new File(new File(repoUrl.get().toURI()), "osm");
+        } catch (URISyntaxException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    @Override
+    public void put(Long nodeId, Coordinate coord) {
+        final long id = nodeId.longValue();
+        final long location = encode(coord);
+        if (segments == null) {
+            if (sortedSize == 0 || id > sortedIds[sortedSize - 1]) {
+                if (sortedSize < SORTED_LIMIT) {
+                    append(id, location);
+                    return;
+                }
+            } else if (id == sortedIds[sortedSize - 1]) {
+                sortedLocations[sortedSize - 1] = location;
+                return;
+            }
+            switchToMappedFile();
+        }
+        write(id, location);
+    }
+
+    @Override
+    @Nullable
+    public Coordinate get(long nodeId) {
+        long location = location(nodeId);
+        if (location == 0L) {
+            throw new IllegalArgumentException(String.format("Node id %d not found", nodeId));
+        }
+        return decode(location);
+    }
+
+    @Override
+    public Coordinate[] get(List<Long> ids) {
+        Coordinate[] coords = new Coordinate[ids.size()];
+        for (int index = 0; index < coords.length; index++) {
+            Long nodeID = ids.get(index);
+            long location = location(nodeID.longValue());
+            if (location == 0L) {
+                String msg = String.format("node id %s not found", nodeID);
+                throw new IllegalArgumentException(msg);
+            }
+            coords[index] = decode(location);
+        }
+        return coords;
+    }
+
+    @Override
+    public synchronized void dispose() {
+        sortedIds = null;
+        sortedLocations = null;
+        negativeIds = null;
+        segments = null;
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                throw new RuntimeException("Error closing point cache", e);
+            } finally {
+                raf = null;
+                // mapped segments are only released once garbage collected, which may prevent
+                // deleting the file right away on some platforms
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        }
+    }
+
+    private void append(long id, long location) {
+        if (sortedSize == sortedIds.length) {
+            int capacity = Math.min(SORTED_LIMIT, 2 * sortedSize);
+            sortedIds = Arrays.copyOf(sortedIds, capacity);
+            sortedLocations = Arrays.copyOf(sortedLocations, capacity);
+        }
+        sortedIds[sortedSize] = id;
+        sortedLocations[sortedSize] = location;
+        sortedSize++;
+    }
+
+    /**
+     * @return the encoded location of the given node, or {@code 0} if not found
+     */
+    private long location(long id) {
+        if (segments == null) {
+            int index = Arrays.binarySearch(sortedIds, 0, sortedSize, id);
+            return index < 0 ? 0L : sortedLocations[index];
+        }
+        if (id < 0) {
+            Long location = negativeIds.get(Long.valueOf(id));
+            return location == null ? 0L : location.longValue();
+        }
+        final int segmentIndex = (int) (id >>> SEGMENT_SHIFT);
+        if (segmentIndex >= segments.length || segments[segmentIndex] == null) {
+            return 0L;
+        }
+        return segments[segmentIndex].getLong((int) ((id & SEGMENT_MASK) * LOCATION_BYTES));
+    }
+
+    private void write(long id, long location) {
+        if (id < 0) {
+            negativeIds.put(Long.valueOf(id), Long.valueOf(location));
+            return;
+        }
+        segment((int) (id >>> SEGMENT_SHIFT)).putLong(
+                (int) ((id & SEGMENT_MASK) * LOCATION_BYTES), location);
+    }
+
+    private MappedByteBuffer segment(int segmentIndex) {
+        if (segmentIndex >= segments.length) {
+            segments = Arrays.copyOf(segments, Math.max(segmentIndex + 1, 2 * segments.length));
+        }
+        MappedByteBuffer segment = segments[segmentIndex];
+        if (segment == null) {
+            try {
+                // mapping past the end of the file grows it without allocating the gap
+                segment = raf.getChannel().map(MapMode.READ_WRITE,
+                        segmentIndex * SEGMENT_BYTES, SEGMENT_BYTES);
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+            segments[segmentIndex] = segment;
+        }
+        return segment;
+    }
+
+    private void switchToMappedFile() {
+        try {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IllegalStateException("Unable to create directory " + directory);
+            }
+            file = new File(directory, "tmpPointCache_" + Math.abs(random.nextInt()));
+            raf = new RandomAccessFile(file, "rw");
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        segments = new MappedByteBuffer[16];
+        negativeIds = Maps.newHashMap();
+        for (int i = 0; i < sortedSize; i++) {
+            write(sortedIds[i], sortedLocations[i]);
+        }
+        sortedIds = null;
+        sortedLocations = null;
+        sortedSize = 0;
+    }
+
+    private static long encode(Coordinate coord) {
+        long x = fixed(coord.x);
+        long y = fixed(coord.y);
+        return (x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private static int fixed(double ordinate) {
+        return ((int) Math.round(ordinate * SCALE)) ^ Integer.MIN_VALUE;
+    }
+
+    private static Coordinate decode(long location) {
+        double x = (((int) (location >>> 32)) ^ Integer.MIN_VALUE) / SCALE;
+        double y = (((int) location) ^ Integer.MIN_VALUE) / SCALE;
+        return new Coordinate(x, y);
+    }
+}
@@ -15,10 +15,12 @@ import javax.annotation.Nullable;
 
 import org.geogit.storage.FieldType;
 import org.geogit.storage.text.TextValueSerializer;
+import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.opengis.feature.Feature;
+import org.opengis.feature.FeatureFactory;
 import org.opengis.feature.GeometryAttribute;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
@@ -128,9 +130,11 @@ public class MappingRule {
     @Nullable
     private List<DefaultField> defaultFields;
 
-    private SimpleFeatureType featureType;
-
-    private SimpleFeatureBuilder featureBuilder;
+    /**
+     * Lazily created, and published last so that a non null value means {@link #geometryType} is
+     * set too
+     */
+    private volatile SimpleFeatureType featureType;
 
     private Class<?> geometryType;
 
@@ -138,6 +142,10 @@ public class MappingRule {
 
     private static GeometryFactory gf = new GeometryFactory();
 
+    /** Cached instance to avoid a factory lookup per feature builder */
+    private static final FeatureFactory FEATURE_FACTORY = CommonFactoryFinder
+            .getFeatureFactory(null);
+
     public MappingRule(final String name, final Map<String, List<String>> filter,
             @Nullable final Map<String, List<String>> filterExclude,
             final Map<String, AttributeDefinition> fields,
@@ -166,6 +174,14 @@ public class MappingRule {
      * @return
      */
     public SimpleFeatureType getFeatureType() {
+        SimpleFeatureType featureType = this.featureType;
+        if (featureType == null) {
+            featureType = buildFeatureType();
+        }
+        return featureType;
+    }
+
+    private synchronized SimpleFeatureType buildFeatureType() {
         if (featureType == null) {
             SimpleFeatureTypeBuilder fb = new SimpleFeatureTypeBuilder();
             fb.setName(name);
@@ -194,12 +210,8 @@ public class MappingRule {
                 fb.add("nodes", String.class);
             }
             featureType = fb.buildFeatureType();
-
-            featureBuilder = new SimpleFeatureBuilder(featureType);
-
         }
         return featureType;
-
     }
 
     private GeomRestriction getGeomRestriction() {
@@ -229,7 +241,9 @@ public class MappingRule {
      * Returns the feature resulting from transforming a given feature using this rule. This method
      * takes a collection of tags, so there is no need to compute them from the 'tags' attribute.
      * This is meant as a faster alternative to the apply(Feature) method, in case the mapping
-     * object calling this has already computed the tags, to avoid recomputing them
+     * object calling this has already computed the tags, to avoid recomputing them.
+     * <p>
+     * This method is thread safe, so a single rule can be applied to features from several threads.
      * 
      * @param feature
      * @param tags
@@ -239,7 +253,10 @@ public class MappingRule {
         if (!canBeApplied(feature, tags)) {
             return Optional.absent();
         }
-        for (AttributeDescriptor attribute : getFeatureType().getAttributeDescriptors()) {
+        final SimpleFeatureType featureType = getFeatureType();
+        final SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(featureType,
+                FEATURE_FACTORY);
+        for (AttributeDescriptor attribute : featureType.getAttributeDescriptors()) {
             String attrName = attribute.getName().toString();
             Class<?> clazz = attribute.getType().getBinding();
             if (Geometry.class.isAssignableFrom(clazz)) {
@@ -0,0 +1,496 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.osm.internal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.geogit.api.AbstractGeoGitOp;
+import org.geogit.api.CommitBuilder;
+import org.geogit.api.Node;
+import org.geogit.api.NodeRef;
+import org.geogit.api.ObjectId;
+import org.geogit.api.ProgressListener;
+import org.geogit.api.Ref;
+import org.geogit.api.RevCommit;
+import org.geogit.api.RevFeature;
+import org.geogit.api.RevFeatureBuilder;
+import org.geogit.api.RevFeatureType;
+import org.geogit.api.RevObject;
+import org.geogit.api.RevObject.TYPE;
+import org.geogit.api.RevTree;
+import org.geogit.api.RevTreeBuilder;
+import org.geogit.api.SymRef;
+import org.geogit.api.plumbing.FindTreeChild;
+import org.geogit.api.plumbing.RefParse;
+import org.geogit.api.plumbing.ResolveTreeish;
+import org.geogit.api.plumbing.UpdateHistoryIndex;
+import org.geogit.api.plumbing.UpdateRef;
+import org.geogit.api.plumbing.WriteBack;
+import org.geogit.api.porcelain.ConfigGet;
+import org.geogit.osm.internal.log.AddOSMLogEntry;
+import org.geogit.osm.internal.log.OSMLogEntry;
+import org.geogit.repository.DepthSearch;
+import org.geogit.storage.NodePathStorageOrder;
+import org.geogit.storage.ObjectDatabase;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.PropertyDescriptor;
+import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+import org.openstreetmap.osmosis.core.task.common.ChangeAction;
+import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
+import org.openstreetmap.osmosis.xml.common.CompressionMethod;
+import org.openstreetmap.osmosis.xml.v0_6.XmlChangeReader;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequenceFactory;
+
+/**
+ * Applies an OSM diff file on top of the current branch and commits the result, without going
+ * through the working tree and the index.
+ * <p>
+ * {@link OSMApplyDiffOp} inserts the changes in the working tree, which then have to be staged and
+ * committed, each step comparing and rewriting the whole feature trees. For small diffs applied to
+ * large repositories, such as minutely replication diffs, this operation instead reads the whole
+ * diff first and sorts the changes of each feature tree in {@link NodePathStorageOrder storage
+ * order}. The nodes that the changed features replace, and the nodes referenced by changed ways
+ * that are not part of the diff, are then resolved in bulk, bucket by bucket, and only the buckets
+ * that contain changes are rewritten, starting from the trees of the HEAD commit.
+ * <p>
+ * Changes are filtered the same way {@link OSMApplyDiffOp} does: created features are only added
+ * if within the bounds of the current OSM data, and modified features only if they already exist.
+ * As with the other OSM operations, ways whose nodes did not change are not updated.
+ * <p>
+ * The working tree and the index must be clean, and are updated to the new commit.
+ */
+public class OSMCommitDiffOp extends AbstractGeoGitOp<Optional<OSMReport>> {
+
+    private static final NodePathStorageOrder STORAGE_ORDER = new NodePathStorageOrder();
+
+    private static final GeometryFactory GEOMF = new GeometryFactory(
+            new PackedCoordinateSequenceFactory());
+
+    private File file;
+
+    private String message;
+
+    /**
+     * @param file the OSM diff file to apply
+     * @return {@code this}
+     */
+    public OSMCommitDiffOp setDiffFile(File file) {
+        this.file = file;
+        return this;
+    }
+
+    /**
+     * @param message the message of the resulting commit
+     * @return {@code this}
+     */
+    public OSMCommitDiffOp setMessage(@Nullable String message) {
+        this.message = message;
+        return this;
+    }
+
+    /**
+     * Executes the operation.
+     *
+     * @return a report of the applied changes, or absent if the diff did not change anything and
+     *         hence no commit was created
+     */
+    @Override
+    protected Optional<OSMReport> _call() {
+        checkNotNull(file);
+        checkArgument(file.exists(), "File does not exist: " + file);
+        checkState(workingTree().isClean() && index().isClean(),
+                "The working tree and index must be clean to commit a diff directly");
+
+        final Optional<Ref> currHead = command(RefParse.class).setName(Ref.HEAD).call();
+        checkState(currHead.isPresent(), "Repository has no HEAD, can't commit");
+        checkState(currHead.get() instanceof SymRef,
+                "HEAD is in a dettached state, cannot commit");
+        final String currentBranch = ((SymRef) currHead.get()).getTarget();
+        final ObjectId parentCommitId = currHead.get().getObjectId();
+        checkArgument(!parentCommitId.isNull(), "There is no OSM data currently in the repository");
+
+        final ObjectDatabase objectDb = objectDatabase();
+        final RevTree headTree = objectDb.getTree(command(ResolveTreeish.class)
+                .setTreeish(parentCommitId).call().get());
+
+        final ProgressListener listener = getProgressListener();
+        listener.started();
+        listener.setDescription("Reading OSM diff file...");
+        final ChangeCollector diff = new ChangeCollector();
+        XmlChangeReader reader = new XmlChangeReader(file, true, resolveCompressionMethod(file));
+        reader.setChangeSink(diff);
+        reader.run();
+
+        final FeatureTreeUpdate nodes = new FeatureTreeUpdate(headTree, OSMUtils.NODE_TYPE_NAME,
+                OSMUtils.nodeType());
+        final FeatureTreeUpdate ways = new FeatureTreeUpdate(headTree, OSMUtils.WAY_TYPE_NAME,
+                OSMUtils.wayType());
+        checkArgument(nodes.treeRef.isPresent() || ways.treeRef.isPresent(),
+                "There is no OSM data currently in the repository");
+        final Geometry bbox = GEOMF.toGeometry(bounds(nodes, ways));
+
+        listener.setDescription("Applying changes...");
+        final Map<Long, Coordinate> locations = Maps.newHashMap();
+        final Report report = new Report();
+        for (ChangeContainer change : diff.nodes.values()) {
+            org.openstreetmap.osmosis.core.domain.v0_6.Node node;
+            node = (org.openstreetmap.osmosis.core.domain.v0_6.Node) change.getEntityContainer()
+                    .getEntity();
+            if (!ChangeAction.Delete.equals(change.getAction())) {
+                locations.put(Long.valueOf(node.getId()),
+                        new Coordinate(node.getLongitude(), node.getLatitude()));
+            }
+        }
+        nodes.apply(diff.nodes, bbox, report, new Function<Entity, Geometry>() {
+            @Override
+            public Geometry apply(Entity entity) {
+                return GEOMF.createPoint(locations.get(Long.valueOf(entity.getId())));
+            }
+        });
+
+        resolveWayNodeLocations(diff, nodes, locations);
+        ways.apply(diff.ways, bbox, report, new Function<Entity, Geometry>() {
+            @Override
+            public Geometry apply(Entity entity) {
+                List<WayNode> wayNodes = ((Way) entity).getWayNodes();
+                if (wayNodes.size() < 2) {
+                    return null;
+                }
+                Coordinate[] coordinates = new Coordinate[wayNodes.size()];
+                for (int i = 0; i < coordinates.length; i++) {
+                    coordinates[i] = locations.get(Long.valueOf(wayNodes.get(i).getNodeId()));
+                    if (coordinates[i] == null) {
+                        return null;
+                    }
+                }
+                return GEOMF.createLineString(coordinates);
+            }
+        });
+
+        if (!nodes.changed && !ways.changed) {
+            listener.complete();
+            return Optional.absent();
+        }
+
+        listener.setDescription("Writing changed trees...");
+        RevTree root = headTree;
+        for (FeatureTreeUpdate update : ImmutableList.of(nodes, ways)) {
+            if (update.changed) {
+                objectDb.putAll(update.features.iterator());
+                ObjectId newRootId = command(WriteBack.class)
+                        .setAncestor(root.builder(objectDb)).setChildPath(update.path)
+                        .setMetadataId(update.metadataId()).setToIndex(false)
+                        .setTree(update.builder.build()).call();
+                root = objectDb.getTree(newRootId);
+            }
+        }
+        final ObjectId newTreeId = root.getId();
+
+        RevCommit commit = commit(parentCommitId, newTreeId);
+        objectDb.put(commit);
+        command(UpdateRef.class).setName(currentBranch).setNewValue(commit.getId()).call();
+        index().updateStageHead(newTreeId);
+        workingTree().updateWorkHead(newTreeId);
+        command(UpdateHistoryIndex.class).addTip(commit.getId()).call();
+        command(AddOSMLogEntry.class)
+                .setEntry(new OSMLogEntry(newTreeId, diff.latestChangeset, diff.latestTimestamp))
+                .call();
+
+        listener.complete();
+        return Optional.of(new OSMReport(report.count, report.nodeCount, report.wayCount,
+                report.unprocessedCount, diff.latestChangeset, diff.latestTimestamp));
+    }
+
+    /**
+     * Adds the locations of the nodes referenced by the changed ways that are not in the diff,
+     * looking them up in the original node tree all at once.
+     */
+    private void resolveWayNodeLocations(ChangeCollector diff, FeatureTreeUpdate nodes,
+            Map<Long, Coordinate> locations) {
+        if (!nodes.treeRef.isPresent()) {
+            return;
+        }
+        Set<String> missing = Sets.newHashSet();
+        for (ChangeContainer change : diff.ways.values()) {
+            if (ChangeAction.Delete.equals(change.getAction())) {
+                continue;
+            }
+            for (WayNode wayNode : ((Way) change.getEntityContainer().getEntity()).getWayNodes()) {
+                Long nodeId = Long.valueOf(wayNode.getNodeId());
+                if (!locations.containsKey(nodeId)) {
+                    missing.add(nodeId.toString());
+                }
+            }
+        }
+        // the nodes in the diff either have a location already or were deleted
+        missing.removeAll(diff.nodes.keySet());
+        if (missing.isEmpty()) {
+            return;
+        }
+        Map<String, Node> found = nodes.find(missing);
+        // nodes with the same contents share their feature
+        SetMultimap<ObjectId, String> names = HashMultimap.create();
+        for (Node node : found.values()) {
+            names.put(node.getObjectId(), node.getName());
+        }
+
+        final ObjectDatabase objectDb = objectDatabase();
+        RevFeatureType nodeType = objectDb.getFeatureType(nodes.metadataId());
+        final int locationIndex = indexOf(nodeType.sortedDescriptors(), "location");
+        Iterator<RevObject> features = objectDb.getAll(names.keySet());
+        while (features.hasNext()) {
+            RevFeature feature = (RevFeature) features.next();
+            Optional<Object> location = feature.getValues().get(locationIndex);
+            if (location.isPresent()) {
+                Coordinate coordinate = ((Point) location.get()).getCoordinate();
+                for (String name : names.get(feature.getId())) {
+                    locations.put(Long.valueOf(name), coordinate);
+                }
+            }
+        }
+    }
+
+    private static int indexOf(List<PropertyDescriptor> descriptors, String name) {
+        for (int i = 0; i < descriptors.size(); i++) {
+            if (name.equals(descriptors.get(i).getName().getLocalPart())) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("The node feature type has no " + name + " attribute");
+    }
+
+    private static Envelope bounds(FeatureTreeUpdate... updates) {
+        Envelope envelope = new Envelope();
+        for (FeatureTreeUpdate update : updates) {
+            if (update.treeRef.isPresent()) {
+                update.treeRef.get().expand(envelope);
+            }
+        }
+        return envelope;
+    }
+
+    private RevCommit commit(ObjectId parentCommitId, ObjectId treeId) {
+        String committer = resolveConfig("user.name");
+        String committerEmail = resolveConfig("user.email");
+        CommitBuilder cb = new CommitBuilder();
+        cb.setAuthor(committer);
+        cb.setAuthorEmail(committerEmail);
+        cb.setCommitter(committer);
+        cb.setCommitterEmail(committerEmail);
+        cb.setMessage(message == null ? "Applied OSM diff " + file.getName() : message);
+        cb.setParentIds(Lists.newArrayList(parentCommitId));
+        cb.setTreeId(treeId);
+        long timestamp = platform().currentTimeMillis();
+        cb.setCommitterTimestamp(timestamp);
+        cb.setAuthorTimestamp(timestamp);
+        cb.setCommitterTimeZoneOffset(platform().timeZoneOffset(timestamp));
+        cb.setAuthorTimeZoneOffset(platform().timeZoneOffset(timestamp));
+        return cb.build();
+    }
+
+    private String resolveConfig(final String key) {
+        Optional<String> value = command(ConfigGet.class).setName(key).call();
+        checkState(value.isPresent(),
+                "%s not found in config. Use geogit config [--global] %s <value> to configure it.",
+                key, key);
+        return value.get();
+    }
+
+    private CompressionMethod resolveCompressionMethod(File file) {
+        String fileName = file.getName();
+        if (fileName.endsWith(".gz")) {
+            return CompressionMethod.GZip;
+        } else if (fileName.endsWith(".bz2")) {
+            return CompressionMethod.BZip2;
+        }
+        return CompressionMethod.None;
+    }
+
+    private static class Report {
+
+        private long count;
+
+        private long nodeCount;
+
+        private long wayCount;
+
+        private long unprocessedCount;
+    }
+
+    /**
+     * Collects the changes in a diff, sorted by feature tree and storage order. Only the last
+     * change to each entity is kept.
+     */
+    private static class ChangeCollector implements ChangeSink {
+
+        private final Map<String, ChangeContainer> nodes = Maps.newTreeMap(STORAGE_ORDER);
+
+        private final Map<String, ChangeContainer> ways = Maps.newTreeMap(STORAGE_ORDER);
+
+        private long latestChangeset;
+
+        private long latestTimestamp;
+
+        @Override
+        public void process(ChangeContainer change) {
+            Entity entity = change.getEntityContainer().getEntity();
+            String id = Long.toString(entity.getId());
+            switch (entity.getType()) {
+            case Node:
+                nodes.put(id, change);
+                break;
+            case Way:
+                ways.put(id, change);
+                break;
+            default:
+                return;
+            }
+            latestChangeset = Math.max(latestChangeset, entity.getChangesetId());
+            latestTimestamp = Math.max(latestTimestamp, entity.getTimestamp().getTime());
+        }
+
+        @Override
+        public void initialize(Map<String, Object> metaData) {
+        }
+
+        @Override
+        public void complete() {
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+
+    /**
+     * The changes to one of the OSM feature trees, applied on top of its original version so that
+     * only the buckets with changes are rewritten
+     */
+    private class FeatureTreeUpdate {
+
+        private final String path;
+
+        private final SimpleFeatureType type;
+
+        private final Optional<NodeRef> treeRef;
+
+        private final RevTree original;
+
+        private final RevTreeBuilder builder;
+
+        private final List<RevFeature> features = Lists.newArrayList();
+
+        private final EntityConverter converter = new EntityConverter();
+
+        private boolean changed;
+
+        FeatureTreeUpdate(RevTree root, String path, SimpleFeatureType type) {
+            this.path = path;
+            this.type = type;
+            this.treeRef = command(FindTreeChild.class).setIndex(false).setParent(root)
+                    .setChildPath(path).call();
+            this.original = treeRef.isPresent() ? objectDatabase().getTree(
+                    treeRef.get().objectId()) : RevTree.EMPTY;
+            this.builder = original.builder(objectDatabase());
+        }
+
+        ObjectId metadataId() {
+            if (treeRef.isPresent() && !treeRef.get().getMetadataId().isNull()) {
+                return treeRef.get().getMetadataId();
+            }
+            RevFeatureType revFeatureType = RevFeatureType.build(type);
+            objectDatabase().put(revFeatureType);
+            return revFeatureType.getId();
+        }
+
+        /**
+         * @return the nodes found in the original tree for the given feature ids
+         */
+        Map<String, Node> find(Set<String> ids) {
+            return new DepthSearch(objectDatabase()).getDirectChildren(original, ids, 0);
+        }
+
+        /**
+         * @param geometryBuilder builds the geometry of an entity, or returns {@code null} if it
+         *        can't be built
+         */
+        void apply(Map<String, ChangeContainer> changes, Geometry bbox, Report report,
+                Function<Entity, Geometry> geometryBuilder) {
+
+            // only the modified and deleted entities already in the tree are applied
+            Set<String> updated = Sets.newHashSet();
+            for (Map.Entry<String, ChangeContainer> e : changes.entrySet()) {
+                if (!ChangeAction.Create.equals(e.getValue().getAction())) {
+                    updated.add(e.getKey());
+                }
+            }
+            final Set<String> existing = find(updated).keySet();
+
+            for (Map.Entry<String, ChangeContainer> e : changes.entrySet()) {
+                final String id = e.getKey();
+                final ChangeAction action = e.getValue().getAction();
+                final Entity entity = e.getValue().getEntityContainer().getEntity();
+                if (ChangeAction.Delete.equals(action)) {
+                    if (existing.contains(id)) {
+                        builder.remove(id);
+                        changed = true;
+                    }
+                    continue;
+                }
+                if (ChangeAction.Modify.equals(action) && !existing.contains(id)) {
+                    continue;
+                }
+                report.count++;
+                if (entity instanceof Way) {
+                    report.wayCount++;
+                } else {
+                    report.nodeCount++;
+                }
+                Geometry geom = geometryBuilder.apply(entity);
+                if (geom == null) {
+                    report.unprocessedCount++;
+                    continue;
+                }
+                if (ChangeAction.Create.equals(action) && !geom.within(bbox)) {
+                    continue;
+                }
+                SimpleFeature feature = converter.toFeature(entity, geom);
+                RevFeature revFeature = RevFeatureBuilder.build(feature);
+                features.add(revFeature);
+                builder.put(Node.create(id, revFeature.getId(), ObjectId.NULL, TYPE.FEATURE,
+                        geom.getEnvelopeInternal()));
+                changed = true;
+            }
+        }
+    }
+}
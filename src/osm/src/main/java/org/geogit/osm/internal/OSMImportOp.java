@@ -12,8 +12,16 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
@@ -22,6 +30,8 @@ import org.geogit.api.AbstractGeoGitOp;
 import org.geogit.api.ObjectId;
 import org.geogit.api.Platform;
 import org.geogit.api.ProgressListener;
+import org.geogit.api.RevFeature;
+import org.geogit.api.RevFeatureBuilder;
 import org.geogit.api.hooks.Hookable;
 import org.geogit.api.SubProgressListener;
 import org.geogit.api.porcelain.AddOp;
@@ -47,8 +57,10 @@ import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
@@ -56,8 +68,6 @@ import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.impl.PackedCoordinateSequenceFactory;
 
-import crosby.binary.osmosis.OsmosisReader;
-
 /**
  * Imports data from OSM, whether from a URL that represents an endpoint that supports the OSM
  * overpass api, or from a file with OSM data
@@ -66,6 +76,12 @@ import crosby.binary.osmosis.OsmosisReader;
 @Hookable(name = "osmimport")
 public class OSMImportOp extends AbstractGeoGitOp<Optional<OSMReport>> {
 
+    /**
+     * System property that can be set to {@code bdbje} to resolve way geometries through a
+     * {@link BDBJEPointCache} instead of the default {@link MappedPointCache}
+     */
+    static final String POINT_CACHE_PROPERTY = "geogit.osm.pointCache";
+
     /**
      * The filter to use if calling the overpass API
      */
@@ -281,9 +297,10 @@ public class OSMImportOp extends AbstractGeoGitOp<Optional<OSMReport>> {
             compression = resolveCompressionMethod(file);
         }
 
+        final int nThreads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
         RunnableSource reader;
         if (pbf) {
-            reader = new OsmosisReader(dataIn);
+            reader = new ParallelPbfReader(dataIn, nThreads);
         } else {
             reader = new org.geogit.osm.internal.XmlReader(dataIn, true, compression);
         }
@@ -294,18 +311,18 @@ public class OSMImportOp extends AbstractGeoGitOp<Optional<OSMReport>> {
             workTree.delete(OSMUtils.WAY_TYPE_NAME);
         }
 
-        final int queueCapacity = 100 * 1000;
+        final int queueCapacity = 100 * 1000 / ConvertAndImportSink.BATCH_SIZE;
         final int timeout = 1;
         final TimeUnit timeoutUnit = TimeUnit.SECONDS;
         // With this iterator and the osm parsing happening on a separate thread, we follow a
-        // producer/consumer approach so that the osm parse thread produces featrures into the
-        // iterator's queue, and WorkingTree.insert consumes them on this thread
-        QueueIterator<Feature> iterator = new QueueIterator<Feature>(queueCapacity, timeout,
-                timeoutUnit);
+        // producer/consumer approach so that the osm parse thread produces batches of featrures
+        // into the iterator's queue, and WorkingTree.insert consumes them on this thread
+        QueueIterator<List<Feature>> batches = new QueueIterator<List<Feature>>(queueCapacity,
+                timeout, timeoutUnit);
 
         ProgressListener progressListener = getProgressListener();
-        ConvertAndImportSink sink = new ConvertAndImportSink(converter, iterator, platform(),
-                mapping, noRaw, new SubProgressListener(progressListener, 100));
+        ConvertAndImportSink sink = new ConvertAndImportSink(converter, batches, platform(),
+                mapping, noRaw, new SubProgressListener(progressListener, 100), nThreads);
         reader.setSink(sink);
 
         Thread readerThread = new Thread(reader, "osm-import-reader-thread");
@@ -330,7 +347,14 @@ public class OSMImportOp extends AbstractGeoGitOp<Optional<OSMReport>> {
                 // no-op
             }
         };
-        workTree.insert(parentTreePathResolver, iterator, noPorgressReportingListener, null, null);
+        Iterator<Feature> features = Iterators.concat(Iterators.transform(batches,
+                new Function<List<Feature>, Iterator<Feature>>() {
+                    @Override
+                    public Iterator<Feature> apply(List<Feature> batch) {
+                        return batch.iterator();
+                    }
+                }));
+        workTree.insert(parentTreePathResolver, features, noPorgressReportingListener, null, null);
 
         if (sink.getCount() == 0) {
             throw new EmptyOSMDownloadException();
@@ -354,10 +378,21 @@ public class OSMImportOp extends AbstractGeoGitOp<Optional<OSMReport>> {
     /**
      * A sink that processes OSM entities by converting them to GeoGit features and inserting them
      * into the repository working tree
-     * 
+     * <p>
+     * Entities are received in order on a single thread, where node locations are cached and way
+     * geometries resolved, so a way always sees the nodes that came before it. The rest of the work
+     * (converting to features, applying the mapping and building the {@link RevFeature revision
+     * features} the insert needs) is done in batches on a pool of threads. Converted batches are
+     * handed to the insert in the order they were received, and the number of batches in flight is
+     * bounded so that memory use does not depend on the size of the import.
      */
     static class ConvertAndImportSink implements Sink {
 
+        /**
+         * Number of entities converted per task and features handed to the insert at a time
+         */
+        static final int BATCH_SIZE = 1000;
+
         private static final Function<WayNode, Long> NODELIST_TO_ID_LIST = new Function<WayNode, Long>() {
             @Override
             public Long apply(WayNode input) {
@@ -381,7 +416,7 @@ public class OSMImportOp extends AbstractGeoGitOp<Optional<OSMReport>> {
 
         private PointCache pointCache;
 
-        private QueueIterator<Feature> target;
+        private QueueIterator<List<Feature>> target;
 
         private ProgressListener progressListener;
 
@@ -391,8 +426,22 @@ public class OSMImportOp extends AbstractGeoGitOp<Optional<OSMReport>> {
 
         private Stopwatch sw;
 
-        public ConvertAndImportSink(EntityConverter converter, QueueIterator<Feature> target,
-                Platform platform, Mapping mapping, boolean noRaw, ProgressListener progressListener) {
+        private final ExecutorService converterService;
+
+        private final int maxPendingBatches;
+
+        private final Queue<Future<List<Feature>>> pendingBatches;
+
+        private List<Entity> batchEntities;
+
+        private List<Geometry> batchGeometries;
+
+        /**
+         * @param nThreads the number of threads to convert entities on
+         */
+        public ConvertAndImportSink(EntityConverter converter,
+                QueueIterator<List<Feature>> target, Platform platform, Mapping mapping,
+                boolean noRaw, ProgressListener progressListener, int nThreads) {
             super();
             this.converter = converter;
             this.target = target;
@@ -401,7 +450,17 @@ public class OSMImportOp extends AbstractGeoGitOp<Optional<OSMReport>> {
             this.progressListener = progressListener;
             this.latestChangeset = 0;
             this.latestTimestamp = 0;
-            this.pointCache = new BDBJEPointCache(platform);
+            if ("bdbje".equalsIgnoreCase(System.getProperty(POINT_CACHE_PROPERTY))) {
+                this.pointCache = new BDBJEPointCache(platform);
+            } else {
+                this.pointCache = new MappedPointCache(platform);
+            }
+            this.converterService = Executors.newFixedThreadPool(nThreads,
+                    new ThreadFactoryBuilder().setDaemon(true)
+                            .setNameFormat("osm-import-converter-thread-%d").build());
+            this.maxPendingBatches = 2 * nThreads;
+            this.pendingBatches = new ArrayDeque<Future<List<Feature>>>(maxPendingBatches + 1);
+            newBatch();
             this.sw = new Stopwatch().start();
         }
 
@@ -423,6 +482,11 @@ public class OSMImportOp extends AbstractGeoGitOp<Optional<OSMReport>> {
 
         @Override
         public void complete() {
+            submitBatch();
+            while (!pendingBatches.isEmpty()) {
+                handOff(pendingBatches.poll());
+            }
+            converterService.shutdown();
             progressListener.setProgress(count);
             progressListener.complete();
             target.finish();
@@ -434,6 +498,7 @@ public class OSMImportOp extends AbstractGeoGitOp<Optional<OSMReport>> {
 
         @Override
         public void release() {
+            converterService.shutdownNow();
             pointCache.dispose();
         }
 
@@ -459,22 +524,87 @@ public class OSMImportOp extends AbstractGeoGitOp<Optional<OSMReport>> {
                 return;
             }
             if (geom != null) {
+                batchEntities.add(entity);
+                batchGeometries.add(geom);
+                if (batchEntities.size() == BATCH_SIZE) {
+                    submitBatch();
+                }
+            }
+        }
 
+        private void newBatch() {
+            batchEntities = Lists.newArrayListWithCapacity(BATCH_SIZE);
+            batchGeometries = Lists.newArrayListWithCapacity(BATCH_SIZE);
+        }
+
+        /**
+         * Sends the current batch to be converted, handing off the oldest converted batches to the
+         * insert if there are too many in flight.
+         */
+        private void submitBatch() {
+            if (batchEntities.isEmpty()) {
+                return;
+            }
+            final List<Entity> entities = batchEntities;
+            final List<Geometry> geometries = batchGeometries;
+            newBatch();
+            pendingBatches.add(converterService.submit(new Callable<List<Feature>>() {
+                @Override
+                public List<Feature> call() {
+                    return convert(entities, geometries);
+                }
+            }));
+            while (pendingBatches.size() > maxPendingBatches) {
+                handOff(pendingBatches.poll());
+            }
+        }
+
+        private void handOff(Future<List<Feature>> batch) {
+            List<Feature> features;
+            try {
+                features = batch.get();
+            } catch (InterruptedException e) {
+                throw Throwables.propagate(e);
+            } catch (ExecutionException e) {
+                throw Throwables.propagate(e.getCause());
+            }
+            if (!features.isEmpty()) {
+                target.put(features);
+            }
+        }
+
+        /**
+         * Converts the given entities to features, applying the mapping if any, and precomputes the
+         * revision features for the insert. Runs on the converter threads.
+         */
+        private List<Feature> convert(List<Entity> entities, List<Geometry> geometries) {
+            List<Feature> features = Lists.newArrayListWithCapacity(entities.size());
+            for (int i = 0; i < entities.size(); i++) {
                 @Nullable
-                Feature feature = converter.toFeature(entity, geom);
+                Feature feature = converter.toFeature(entities.get(i), geometries.get(i));
                 if (mapping != null && feature != null) {
                     Optional<MappedFeature> mapped = mapping.map(feature);
                     if (mapped.isPresent()) {
                         MappedFeature mappedFeature = mapped.get();
-                        target.put(mappedFeature);
+                        precomputeRevFeature(mappedFeature);
+                        features.add(mappedFeature);
                     }
                 }
                 if (feature == null || noRaw) {
-                    return;
+                    continue;
                 }
-                target.put(feature);
-
+                precomputeRevFeature(feature);
+                features.add(feature);
             }
+            return features;
+        }
+
+        /**
+         * Hashes the feature ahead of time, see
+         * {@link WorkingTree#insert(Function, java.util.Iterator, ProgressListener, List, Integer)}
+         */
+        private static void precomputeRevFeature(Feature feature) {
+            feature.getUserData().put(RevFeature.class, RevFeatureBuilder.build(feature));
         }
 
         /**
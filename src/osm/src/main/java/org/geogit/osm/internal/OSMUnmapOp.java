@@ -12,6 +12,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 
 import org.geogit.api.AbstractGeoGitOp;
+import org.geogit.api.FeatureBuilder;
 import org.geogit.api.NodeRef;
 import org.geogit.api.ObjectId;
 import org.geogit.api.RevFeature;
@@ -29,7 +30,6 @@ import org.geogit.osm.internal.log.ReadOSMMappingLogEntry;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.opengis.feature.Property;
 import org.opengis.feature.simple.SimpleFeature;
-import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.PropertyDescriptor;
 import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
 
@@ -134,23 +134,7 @@ public class OSMUnmapOp extends AbstractGeoGitOp<RevTree> {
             NodeRef node = iter.next();
             RevFeature revFeature = command(RevObjectParse.class).setObjectId(node.objectId())
                     .call(RevFeature.class).get();
-            RevFeatureType revFeatureType = command(RevObjectParse.class)
-                    .setObjectId(node.getMetadataId()).call(RevFeatureType.class).get();
-            List<PropertyDescriptor> descriptors = revFeatureType.sortedDescriptors();
-            ImmutableList<Optional<Object>> values = revFeature.getValues();
-            SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(
-                    (SimpleFeatureType) revFeatureType.type());
-            String id = null;
-            for (int i = 0; i < descriptors.size(); i++) {
-                PropertyDescriptor descriptor = descriptors.get(i);
-                if (descriptor.getName().getLocalPart().equals("id")) {
-                    id = values.get(i).get().toString();
-                }
-                Optional<Object> value = values.get(i);
-                featureBuilder.set(descriptor.getName(), value.orNull());
-            }
-            Preconditions.checkNotNull(id, "No 'id' attribute found");
-            SimpleFeature feature = featureBuilder.buildFeature(id);
+            SimpleFeature feature = toFeature(node.getMetadataId(), revFeature);
             unmapFeature(feature, flusher);
 
         }
@@ -173,24 +157,9 @@ public class OSMUnmapOp extends AbstractGeoGitOp<RevTree> {
                     ObjectId featureId = diff.getOldObject().getNode().getObjectId();
                     RevFeature revFeature = command(RevObjectParse.class).setObjectId(featureId)
                             .call(RevFeature.class).get();
-                    RevFeatureType revFeatureType = command(RevObjectParse.class)
-                            .setObjectId(diff.getOldObject().getMetadataId())
-                            .call(RevFeatureType.class).get();
-                    List<PropertyDescriptor> descriptors = revFeatureType.sortedDescriptors();
-                    ImmutableList<Optional<Object>> values = revFeature.getValues();
-                    SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(
-                            (SimpleFeatureType) revFeatureType.type());
-                    String id = null;
-                    for (int i = 0; i < descriptors.size(); i++) {
-                        PropertyDescriptor descriptor = descriptors.get(i);
-                        if (descriptor.getName().getLocalPart().equals("id")) {
-                            id = values.get(i).get().toString();
-                        }
-                        Optional<Object> value = values.get(i);
-                        featureBuilder.set(descriptor.getName(), value.orNull());
-                    }
-                    Preconditions.checkNotNull(id, "No 'id' attribute found");
-                    SimpleFeature feature = featureBuilder.buildFeature(id);
+                    SimpleFeature feature = toFeature(diff.getOldObject().getMetadataId(),
+                            revFeature);
+                    String id = feature.getID();
                     Class<?> clazz = feature.getDefaultGeometryProperty().getType().getBinding();
                     String deletePath = clazz.equals(Point.class) ? OSMUtils.NODE_TYPE_NAME
                             : OSMUtils.WAY_TYPE_NAME;
@@ -203,6 +172,25 @@ public class OSMUnmapOp extends AbstractGeoGitOp<RevTree> {
 
     }
 
+    /**
+     * Builds a mapped feature, identified by its {@code id} attribute
+     */
+    private SimpleFeature toFeature(ObjectId featureTypeId, RevFeature revFeature) {
+        FeatureBuilder featureBuilder = FeatureBuilder.forType(featureTypeId, stagingDatabase());
+        // the values of the feature are in the order of the sorted descriptors of its type
+        ImmutableList<PropertyDescriptor> descriptors = featureBuilder.getType()
+                .sortedDescriptors();
+        Object id = null;
+        for (int i = 0; i < descriptors.size(); i++) {
+            if (descriptors.get(i).getName().getLocalPart().equals("id")) {
+                id = revFeature.getValues().get(i).orNull();
+                break;
+            }
+        }
+        Preconditions.checkNotNull(id, "No 'id' attribute found");
+        return (SimpleFeature) featureBuilder.build(id.toString(), revFeature);
+    }
+
     private void unmapFeature(SimpleFeature feature, FeatureMapFlusher mapFlusher) {
         Class<?> clazz = feature.getDefaultGeometryProperty().getType().getBinding();
         if (clazz.equals(Point.class)) {
@@ -0,0 +1,195 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.osm.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
+import org.openstreetmap.osmosis.core.task.v0_6.RunnableSource;
+import org.openstreetmap.osmosis.core.task.v0_6.Sink;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import crosby.binary.file.BlockInputStream;
+import crosby.binary.file.BlockReaderAdapter;
+import crosby.binary.file.FileBlock;
+import crosby.binary.file.FileBlockPosition;
+import crosby.binary.osmosis.OsmosisBinaryParser;
+
+/**
+ * An OSM data source reading from a PBF stream that decodes the file blocks concurrently.
+ * <p>
+ * Unlike {@link crosby.binary.osmosis.OsmosisReader}, which inflates and parses each block on the
+ * thread that reads the stream, this reader only splits the stream into blocks on a dedicated
+ * thread and hands each block to a pool of decoder threads. The decoded blocks are sent to the
+ * sink on the thread calling {@link #run()} in the same order they appear in the file, so the sink
+ * still sees all the nodes before the ways that reference them. The number of blocks being decoded
+ * or waiting to be consumed is bounded, so a slow sink throttles the reading.
+ */
+class ParallelPbfReader implements RunnableSource {
+
+    private static final List<EntityContainer> END_OF_DATA = Collections.emptyList();
+
+    private final InputStream input;
+
+    private final int nThreads;
+
+    private Sink sink;
+
+    /**
+     * @param input the PBF stream to read
+     * @param nThreads the number of threads to decode blocks on
+     */
+    public ParallelPbfReader(InputStream input, int nThreads) {
+        this.input = input;
+        this.nThreads = nThreads;
+    }
+
+    @Override
+    public void setSink(Sink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Reads all data from the stream and sends it to the sink.
+     */
+    @Override
+    public void run() {
+        final ExecutorService decoders = Executors.newFixedThreadPool(nThreads,
+                new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat("osm-pbf-decoder-thread-%d").build());
+        final BlockingQueue<Future<List<EntityContainer>>> decoded;
+        decoded = new ArrayBlockingQueue<Future<List<EntityContainer>>>(2 * nThreads);
+
+        Thread blockReader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    new BlockInputStream(input, new BlockSplitter(decoders, decoded)).process();
+                } catch (Exception e) {
+                    enqueue(decoded, Futures.<List<EntityContainer>> immediateFailedFuture(e));
+                }
+            }
+        }, "osm-pbf-block-reader-thread");
+        blockReader.setDaemon(true);
+
+        try {
+            sink.initialize(Collections.<String, Object> emptyMap());
+            blockReader.start();
+            List<EntityContainer> block;
+            while ((block = decoded.take().get()) != END_OF_DATA) {
+                for (EntityContainer entity : block) {
+                    sink.process(entity);
+                }
+            }
+            sink.complete();
+        } catch (InterruptedException e) {
+            throw Throwables.propagate(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            Throwables.propagateIfPossible(cause);
+            throw new OsmosisRuntimeException("Unable to read PBF data.", cause);
+        } finally {
+            blockReader.interrupt();
+            decoders.shutdownNow();
+            sink.release();
+        }
+    }
+
+    private static void enqueue(BlockingQueue<Future<List<EntityContainer>>> queue,
+            Future<List<EntityContainer>> block) {
+        try {
+            queue.put(block);
+        } catch (InterruptedException e) {
+            // the consumer gave up
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Hands each block read from the stream to the decoder threads, queueing the pending results
+     * in file order.
+     */
+    private static class BlockSplitter implements BlockReaderAdapter {
+
+        private final ExecutorService decoders;
+
+        private final BlockingQueue<Future<List<EntityContainer>>> decoded;
+
+        BlockSplitter(ExecutorService decoders,
+                BlockingQueue<Future<List<EntityContainer>>> decoded) {
+            this.decoders = decoders;
+            this.decoded = decoded;
+        }
+
+        @Override
+        public boolean skipBlock(FileBlockPosition block) {
+            String type = block.getType();
+            return !"OSMData".equals(type) && !"OSMHeader".equals(type);
+        }
+
+        @Override
+        public void handleBlock(final FileBlock block) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new OsmosisRuntimeException("PBF reading cancelled");
+            }
+            enqueue(decoded, decoders.submit(new Callable<List<EntityContainer>>() {
+                @Override
+                public List<EntityContainer> call() {
+                    return decode(block);
+                }
+            }));
+        }
+
+        @Override
+        public void complete() {
+            enqueue(decoded, Futures.immediateFuture(END_OF_DATA));
+        }
+
+        /**
+         * Inflates and parses a single block. Blocks are self contained, so each one gets its own
+         * parser.
+         */
+        private static List<EntityContainer> decode(FileBlock block) {
+            final List<EntityContainer> entities = Lists.newArrayListWithCapacity(8000);
+            OsmosisBinaryParser parser = new OsmosisBinaryParser();
+            parser.setSink(new Sink() {
+                @Override
+                public void process(EntityContainer entityContainer) {
+                    entities.add(entityContainer);
+                }
+
+                @Override
+                public void initialize(Map<String, Object> metaData) {
+                }
+
+                @Override
+                public void complete() {
+                }
+
+                @Override
+                public void release() {
+                }
+            });
+            parser.handleBlock(block);
+            return entities;
+        }
+    }
+}
@@ -14,6 +14,7 @@ import jline.console.ConsoleReader;
 import org.geogit.api.GeoGIT;
 import org.geogit.api.GlobalContextBuilder;
 import org.geogit.api.Platform;
+import org.geogit.api.RevCommit;
 import org.geogit.api.RevFeature;
 import org.geogit.api.RevFeatureType;
 import org.geogit.api.TestPlatform;
@@ -21,6 +22,7 @@ import org.geogit.api.plumbing.RevObjectParse;
 import org.geogit.api.plumbing.diff.DiffEntry;
 import org.geogit.api.plumbing.diff.DiffEntry.ChangeType;
 import org.geogit.api.porcelain.DiffOp;
+import org.geogit.api.porcelain.LogOp;
 import org.geogit.cli.GeogitCLI;
 import org.geogit.cli.test.functional.CLITestContextBuilder;
 import org.geotools.referencing.CRS;
@@ -35,6 +37,7 @@ import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import com.vividsolutions.jts.geom.Geometry;
 
 /**
  *
@@ -104,4 +107,37 @@ public class OSMHistoryImportTest extends Assert {
         assertTrue(actual.toString(), CRS.equalsIgnoreMetadata(expected, actual));
     }
 
+    @Test
+    public void testCommitsInChangesetOrder() throws Exception {
+        cli.execute("config", "user.name", "Gabriel Roldan");
+        cli.execute("config", "user.email", "groldan@opengeo.org");
+        cli.execute("osm", "import-history", fakeOsmApiUrl, "--to", "9", "--numthreads", "4");
+
+        GeoGIT geogit = cli.getGeogit();
+        List<RevCommit> log = ImmutableList.copyOf(geogit.command(LogOp.class).call());
+        assertEquals(9, log.size());
+        for (int i = 0; i < log.size(); i++) {
+            RevCommit commit = log.get(i);
+            assertTrue(commit.getMessage(), commit.getMessage().endsWith("changeset " + (9 - i)));
+        }
+        assertEquals("Al_Friede", log.get(0).getAuthor().getName().get());
+        assertEquals("guggis", log.get(8).getAuthor().getName().get());
+        assertEquals("Gabriel Roldan", log.get(8).getCommitter().getName().get());
+        assertTrue(geogit.getRepository().workingTree().isClean());
+        assertTrue(geogit.getRepository().index().isClean());
+
+        // way 2 is made of two nodes from changeset 1 and two nodes from changeset 2
+        Optional<RevFeature> way = geogit.command(RevObjectParse.class).setRefSpec("HEAD:way/2")
+                .call(RevFeature.class);
+        assertTrue(way.isPresent());
+        Geometry geom = null;
+        for (Optional<Object> value : way.get().getValues()) {
+            if (value.isPresent() && value.get() instanceof Geometry) {
+                geom = (Geometry) value.get();
+            }
+        }
+        assertNotNull(geom);
+        assertEquals(4, geom.getNumPoints());
+    }
+
 }
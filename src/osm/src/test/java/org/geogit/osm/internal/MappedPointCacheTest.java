@@ -0,0 +1,117 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.osm.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableList;
+import com.vividsolutions.jts.geom.Coordinate;
+
+public class MappedPointCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File directory;
+
+    private MappedPointCache cache;
+
+    @Before
+    public void setUp() {
+        directory = tmp.newFolder("osm");
+        cache = new MappedPointCache(directory);
+    }
+
+    @After
+    public void tearDown() {
+        cache.dispose();
+    }
+
+    @Test
+    public void testSortedIds() {
+        for (long id = 1; id <= 1000; id++) {
+            cache.put(Long.valueOf(id * 3), coord(id));
+        }
+        assertEquals(0, directory.list().length);
+        assertEquals(coord(1), cache.get(3));
+        assertEquals(coord(1000), cache.get(3000));
+        assertArrayEquals(new Coordinate[] { coord(10), coord(5), coord(10) },
+                cache.get(ImmutableList.of(Long.valueOf(30), Long.valueOf(15), Long.valueOf(30))));
+        assertMissing(4);
+    }
+
+    @Test
+    public void testOutOfOrderIdsSwitchToMappedFile() {
+        cache.put(Long.valueOf(10), coord(10));
+        cache.put(Long.valueOf(20), coord(20));
+        cache.put(Long.valueOf(5), coord(5));
+        // far apart ids land in different segments
+        cache.put(Long.valueOf(3000000000L), coord(3));
+        cache.put(Long.valueOf(-7), coord(7));
+        assertEquals(1, directory.list().length);
+
+        assertEquals(coord(10), cache.get(10));
+        assertEquals(coord(20), cache.get(20));
+        assertEquals(coord(5), cache.get(5));
+        assertEquals(coord(3), cache.get(3000000000L));
+        assertEquals(coord(7), cache.get(-7));
+        assertArrayEquals(new Coordinate[] { coord(5), coord(3), coord(7) },
+                cache.get(ImmutableList.of(Long.valueOf(5), Long.valueOf(3000000000L),
+                        Long.valueOf(-7))));
+        assertMissing(6);
+        assertMissing(2000000000L);
+        assertMissing(-8);
+
+        cache.dispose();
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void testOverwrite() {
+        cache.put(Long.valueOf(1), coord(1));
+        cache.put(Long.valueOf(1), coord(2));
+        assertEquals(coord(2), cache.get(1));
+        cache.put(Long.valueOf(0), coord(0));
+        cache.put(Long.valueOf(1), coord(3));
+        assertEquals(coord(3), cache.get(1));
+        assertEquals(coord(0), cache.get(0));
+    }
+
+    @Test
+    public void testPrecision() {
+        Coordinate[] coords = { new Coordinate(0, 0), new Coordinate(-180, -90),
+                new Coordinate(180, 90), new Coordinate(-0.1234567, 51.5074001),
+                new Coordinate(179.9999999, -89.9999999) };
+        for (int i = 0; i < coords.length; i++) {
+            cache.put(Long.valueOf(i), coords[i]);
+        }
+        for (int i = 0; i < coords.length; i++) {
+            assertEquals(coords[i], cache.get(i));
+        }
+    }
+
+    private void assertMissing(long id) {
+        try {
+            cache.get(id);
+            fail("expected IAE");
+        } catch (IllegalArgumentException e) {
+            assertEquals(String.format("Node id %d not found", id), e.getMessage());
+        }
+    }
+
+    private static Coordinate coord(long i) {
+        return new Coordinate(i % 360 - 180 + 0.1234567, i % 180 - 90 + 0.7654321);
+    }
+}
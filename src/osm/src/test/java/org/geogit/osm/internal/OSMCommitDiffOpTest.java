@@ -0,0 +1,116 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+
+package org.geogit.osm.internal;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.List;
+
+import org.geogit.api.RevCommit;
+import org.geogit.api.RevFeature;
+import org.geogit.api.plumbing.RevObjectParse;
+import org.geogit.api.porcelain.AddOp;
+import org.geogit.api.porcelain.CommitOp;
+import org.geogit.api.porcelain.LogOp;
+import org.geogit.osm.internal.log.OSMLogEntry;
+import org.geogit.osm.internal.log.ReadOSMLogEntries;
+import org.geogit.test.integration.RepositoryTestCase;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+
+public class OSMCommitDiffOpTest extends RepositoryTestCase {
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        repo.configDatabase().put("user.name", "groldan");
+        repo.configDatabase().put("user.email", "groldan@opengeo.org");
+    }
+
+    private void importAndCommit(String resource) {
+        String filename = getClass().getResource(resource).getFile();
+        geogit.command(OSMImportOp.class).setDataSource(new File(filename).getAbsolutePath())
+                .call();
+        geogit.command(AddOp.class).call();
+        geogit.command(CommitOp.class).setMessage("initial import").call();
+    }
+
+    private Optional<RevFeature> feature(String refSpec) {
+        return geogit.command(RevObjectParse.class).setRefSpec(refSpec).call(RevFeature.class);
+    }
+
+    @Test
+    public void testCommitChangeset() throws Exception {
+        importAndCommit("nodes_for_changeset2.xml");
+        assertTrue(feature("HEAD:node/2059114068").isPresent());
+        assertFalse(feature("HEAD:node/507464865").isPresent());
+        Optional<RevFeature> modified = feature("HEAD:node/1633594723");
+        assertTrue(modified.isPresent());
+
+        String changesetFilename = getClass().getResource("changeset.xml").getFile();
+        Optional<OSMReport> report = geogit.command(OSMCommitDiffOp.class)
+                .setDiffFile(new File(changesetFilename)).setMessage("minutely diff").call();
+        assertTrue(report.isPresent());
+
+        assertFalse(feature("HEAD:node/2059114068").isPresent());
+        assertTrue(feature("HEAD:node/507464865").isPresent());
+        assertFalse(modified.get().equals(feature("HEAD:node/1633594723").get()));
+
+        Iterator<RevCommit> log = geogit.command(LogOp.class).call();
+        RevCommit commit = log.next();
+        assertEquals("minutely diff", commit.getMessage());
+        assertEquals("initial import", log.next().getMessage());
+        assertFalse(log.hasNext());
+
+        assertTrue(geogit.getRepository().workingTree().isClean());
+        assertTrue(geogit.getRepository().index().isClean());
+        assertEquals(commit.getTreeId(), geogit.getRepository().workingTree().getTree().getId());
+        List<OSMLogEntry> entries = geogit.command(ReadOSMLogEntries.class).call();
+        assertEquals(commit.getTreeId(), entries.get(entries.size() - 1).getId());
+    }
+
+    @Test
+    public void testCommitChangesetWithMissingNode() throws Exception {
+        importAndCommit("nodes_for_changeset2.xml");
+
+        String changesetFilename = getClass().getResource("changeset_missing_nodes.xml").getFile();
+        OSMReport report = geogit.command(OSMCommitDiffOp.class)
+                .setDiffFile(new File(changesetFilename)).call().get();
+        assertEquals(1, report.getUnpprocessedCount());
+        assertEquals(4, report.getCount());
+        assertTrue(feature("HEAD:way/51502277").isPresent());
+        assertFalse(feature("HEAD:way/31347480").isPresent());
+    }
+
+    @Test
+    public void testDeletesOutsideRepositoryNotCommitted() throws Exception {
+        importAndCommit("nodes_for_changeset2.xml");
+        RevCommit head = geogit.command(LogOp.class).call().next();
+
+        String changesetFilename = getClass().getResource("changeset_unknown_deletes.xml")
+                .getFile();
+        Optional<OSMReport> report = geogit.command(OSMCommitDiffOp.class)
+                .setDiffFile(new File(changesetFilename)).call();
+        assertFalse(report.isPresent());
+        assertEquals(head, geogit.command(LogOp.class).call().next());
+    }
+
+    @Test
+    public void testDirtyWorkingTree() throws Exception {
+        String filename = getClass().getResource("nodes_for_changeset2.xml").getFile();
+        geogit.command(OSMImportOp.class).setDataSource(new File(filename).getAbsolutePath())
+                .call();
+
+        String changesetFilename = getClass().getResource("changeset.xml").getFile();
+        try {
+            geogit.command(OSMCommitDiffOp.class).setDiffFile(new File(changesetFilename))
+                    .call();
+            fail("expected ISE");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("must be clean"));
+        }
+    }
+}
@@ -12,10 +12,13 @@ import static com.sleepycat.je.OperationStatus.SUCCESS;
 import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -87,6 +90,23 @@ public class JEObjectDatabase extends AbstractObjectDatabase implements ObjectDa
 
     private ExecutorService writerService;
 
+    /**
+     * Decodes the objects returned by {@link #getAll(Iterable, BulkOpListener)} while the caller
+     * consumes the previously decoded ones
+     */
+    private ExecutorService readerService;
+
+    /**
+     * Number of objects per decoding task of {@link #getAll(Iterable, BulkOpListener)}
+     */
+    private static final int DECODE_BATCH_SIZE = 256;
+
+    /**
+     * Max number of batches {@link #getAll(Iterable, BulkOpListener)} reads and schedules for
+     * decoding ahead of the one being consumed
+     */
+    private static final int DECODE_AHEAD = 4;
+
     /**
      * The default number of objects bulk operations are partitioned into
      * 
@@ -155,6 +175,11 @@ public class JEObjectDatabase extends AbstractObjectDatabase implements ObjectDa
                 writerService.shutdown();
                 waitForServiceShutDown(writerService);
             }
+            if (readerService != null) {
+                readerService.shutdown();
+                waitForServiceShutDown(readerService);
+                readerService = null;
+            }
             if (objectDb != null) {
                 objectDb.close();
                 objectDb = null;
@@ -201,6 +226,10 @@ public class JEObjectDatabase extends AbstractObjectDatabase implements ObjectDa
         int nWriterThreads = 1;
         writerService = Executors.newFixedThreadPool(nWriterThreads, new ThreadFactoryBuilder()
                 .setNameFormat("BDBJE-" + env.getHome().getName() + "-WRITE-THREAD-%d").build());
+        int nReaderThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
+        readerService = Executors.newFixedThreadPool(nReaderThreads, new ThreadFactoryBuilder()
+                .setNameFormat("BDBJE-" + env.getHome().getName() + "-READ-THREAD-%d")
+                .setDaemon(true).build());
         if (!objectDb.getConfig().getTransactional()) {
             dbSyncService = Executors.newFixedThreadPool(nWriterThreads, new ThreadFactoryBuilder()
                     .setNameFormat("BDBJE-" + env.getHome().getName() + "-SYNC-THREAD-%d").build());
@@ -730,10 +759,21 @@ public class JEObjectDatabase extends AbstractObjectDatabase implements ObjectDa
         return new CursorRevObjectIterator(ids.iterator(), listener);
     }
 
+    /**
+     * Reads the objects a window of {@link #getBulkPartitionSize()} ids at a time. The ids of each
+     * window are sorted and their raw contents fetched in key order, for cursor locality, on the
+     * consuming thread, a batch of {@link #DECODE_BATCH_SIZE} at a time. Each batch is handed over
+     * to {@link #readerService} for decompressing and parsing as soon as it's read, and no more than
+     * {@link #DECODE_AHEAD} batches are read ahead of the one being consumed, so the first objects
+     * are returned without waiting for the whole window to be read, and the next batches are being
+     * decoded while the caller consumes the current one.
+     * <p>
+     * As allowed by {@link ObjectDatabase#getAll(Iterable, BulkOpListener)}, objects are returned
+     * in key order within each window rather than in the order they were requested. Found objects
+     * are reported to the listener once they've been decoded.
+     */
     private class CursorRevObjectIterator extends AbstractIterator<RevObject> implements Closeable {
 
-        private final ObjectReader<RevObject> reader = serializationFactory.createObjectReader();
-
         @Nullable
         private Transaction transaction;
 
@@ -743,7 +783,15 @@ public class JEObjectDatabase extends AbstractObjectDatabase implements ObjectDa
 
         private UnmodifiableIterator<List<ObjectId>> unsortedIds;
 
-        private Iterator<ObjectId> sortedIds;
+        private Iterator<ObjectId> window;
+
+        private final Deque<DecodeTask> pending;
+
+        private Iterator<RevObject> decoded;
+
+        private final byte[] keyBuff = new byte[ObjectId.NUM_BYTES];
+
+        private final DatabaseEntry key = new DatabaseEntry(keyBuff);
 
         /**
          * Uses a transaction to open a read only cursor for it to work when called from a different
@@ -753,7 +801,9 @@ public class JEObjectDatabase extends AbstractObjectDatabase implements ObjectDa
                 final BulkOpListener listener) {
 
             this.unsortedIds = Iterators.partition(objectIds, getBulkPartitionSize());
-            this.sortedIds = Iterators.emptyIterator();
+            this.window = Iterators.emptyIterator();
+            this.pending = new ArrayDeque<DecodeTask>(DECODE_AHEAD);
+            this.decoded = Iterators.emptyIterator();
 
             this.listener = listener;
             CursorConfig cursorConfig = new CursorConfig();
@@ -775,24 +825,50 @@ public class JEObjectDatabase extends AbstractObjectDatabase implements ObjectDa
 
         @Override
         protected RevObject computeNext() {
-            if (!sortedIds.hasNext()) {
-                if (unsortedIds.hasNext()) {
-                    List<ObjectId> unsorted = unsortedIds.next();
-                    List<ObjectId> sorted = ObjectId.NATURAL_ORDER.sortedCopy(unsorted);
-                    this.sortedIds = sorted.iterator();
-                } else {
+            try {
+                while (!decoded.hasNext()) {
+                    readAhead();
+                    DecodeTask batch = pending.poll();
+                    if (batch == null) {
+                        close();
+                        return endOfData();
+                    }
+                    List<RevObject> objects = batch.result.get();
+                    for (int i = 0; i < batch.ids.size(); i++) {
+                        listener.found(batch.ids.get(i), batch.rawData.get(i).length);
+                    }
+                    decoded = objects.iterator();
+                }
+                return decoded.next();
+            } catch (Exception e) {
+                try {
+                    if (e instanceof ExecutionException) {
+                        throw Throwables.propagate(e.getCause());
+                    }
+                    throw Throwables.propagate(e);
+                } finally {
                     close();
-                    return endOfData();
                 }
             }
-            try {
-
-                byte[] keyBuff = new byte[ObjectId.NUM_BYTES];
-                DatabaseEntry key = new DatabaseEntry(keyBuff);
+        }
 
-                RevObject found = null;
-                while (sortedIds.hasNext() && found == null) {
-                    ObjectId id = sortedIds.next();
+        /**
+         * Reads batches and schedules them for decoding until {@link #DECODE_AHEAD} of them are
+         * pending or there are no more ids.
+         */
+        private void readAhead() {
+            while (pending.size() < DECODE_AHEAD) {
+                List<ObjectId> batchIds = new ArrayList<ObjectId>(DECODE_BATCH_SIZE);
+                List<byte[]> batchData = new ArrayList<byte[]>(DECODE_BATCH_SIZE);
+                while (batchIds.size() < DECODE_BATCH_SIZE) {
+                    if (!window.hasNext()) {
+                        if (!unsortedIds.hasNext()) {
+                            break;
+                        }
+                        window = ObjectId.NATURAL_ORDER.sortedCopy(unsortedIds.next()).iterator();
+                        continue;
+                    }
+                    ObjectId id = window.next();
                     id.getRawValue(keyBuff);
                     key.setData(keyBuff);
 
@@ -801,30 +877,28 @@ public class JEObjectDatabase extends AbstractObjectDatabase implements ObjectDa
                     OperationStatus status;
                     status = cursor.getSearchKey(key, data, LockMode.READ_UNCOMMITTED);
                     if (SUCCESS.equals(status)) {
-                        InputStream rawData;
-                        rawData = new LZFInputStream(new ByteArrayInputStream(data.getData()));
-                        found = reader.read(id, rawData);
-                        listener.found(found.getId(), data.getSize());
+                        batchIds.add(id);
+                        batchData.add(data.getData());
                     } else {
                         listener.notFound(id);
                     }
                 }
-                if (found == null) {
-                    return computeNext();
-                }
-                return found;
-            } catch (Exception e) {
-                try {
-                    throw Throwables.propagate(e);
-                } finally {
-                    close();
+                if (batchIds.isEmpty()) {
+                    return;
                 }
+                DecodeTask batch = new DecodeTask(batchIds, batchData);
+                batch.result = readerService.submit(batch);
+                pending.add(batch);
             }
         }
 
         @Override
         public void close() {
-            sortedIds = null;
+            for (DecodeTask batch : pending) {
+                batch.result.cancel(false);
+            }
+            pending.clear();
+            decoded = Iterators.emptyIterator();
             Cursor cursor = this.cursor;
             this.cursor = null;
             if (cursor != null) {
@@ -837,6 +911,105 @@ public class JEObjectDatabase extends AbstractObjectDatabase implements ObjectDa
         }
     }
 
+    /**
+     * Decompresses and parses a batch of raw objects, with its own {@link ObjectReader} as readers
+     * are not meant to be shared among threads.
+     */
+    private class DecodeTask implements Callable<List<RevObject>> {
+
+        private final List<ObjectId> ids;
+
+        private final List<byte[]> rawData;
+
+        private Future<List<RevObject>> result;
+
+        DecodeTask(List<ObjectId> ids, List<byte[]> rawData) {
+            this.ids = ids;
+            this.rawData = rawData;
+        }
+
+        @Override
+        public List<RevObject> call() throws IOException {
+            final ObjectReader<RevObject> reader = serializationFactory.createObjectReader();
+            List<RevObject> objects = new ArrayList<RevObject>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                InputStream raw = new LZFInputStream(new ByteArrayInputStream(rawData.get(i)));
+                objects.add(reader.read(ids.get(i), raw));
+            }
+            return objects;
+        }
+    }
+
+    /**
+     * Scans the object keys in chunks of {@link #getBulkPartitionSize()}, opening a short lived
+     * cursor per chunk that's positioned right after the last key of the previous one, so that no
+     * cursor (and its locks) is held while the caller consumes the ids.
+     */
+    @Override
+    public Iterator<ObjectId> getAllIds(final BulkOpListener listener) {
+        checkNotNull(listener, "listener");
+        final int chunkSize = getBulkPartitionSize();
+
+        return new AbstractIterator<ObjectId>() {
+
+            private Iterator<ObjectId> chunk = Iterators.emptyIterator();
+
+            @Nullable
+            private byte[] lastKey;
+
+            private boolean exhausted;
+
+            @Override
+            protected ObjectId computeNext() {
+                if (!chunk.hasNext()) {
+                    if (exhausted) {
+                        return endOfData();
+                    }
+                    chunk = nextChunk();
+                    if (!chunk.hasNext()) {
+                        return endOfData();
+                    }
+                }
+                return chunk.next();
+            }
+
+            private Iterator<ObjectId> nextChunk() {
+                List<ObjectId> ids = new ArrayList<ObjectId>(chunkSize);
+
+                CursorConfig cursorConfig = new CursorConfig();
+                cursorConfig.setReadUncommitted(true);
+                Cursor cursor = objectDb.openCursor(null, cursorConfig);
+                try {
+                    DatabaseEntry key = new DatabaseEntry();
+                    DatabaseEntry data = new DatabaseEntry();
+                    OperationStatus status;
+                    if (lastKey == null) {
+                        status = cursor.getFirst(key, data, LockMode.READ_UNCOMMITTED);
+                    } else {
+                        key.setData(lastKey);
+                        status = cursor.getSearchKeyRange(key, data, LockMode.READ_UNCOMMITTED);
+                        if (SUCCESS.equals(status) && Arrays.equals(lastKey, key.getData())) {
+                            status = cursor.getNext(key, data, LockMode.READ_UNCOMMITTED);
+                        }
+                    }
+                    while (SUCCESS.equals(status) && ids.size() < chunkSize) {
+                        ObjectId id = new ObjectId(key.getData());
+                        ids.add(id);
+                        listener.found(id, data.getSize());
+                        lastKey = key.getData();
+                        if (ids.size() < chunkSize) {
+                            status = cursor.getNext(key, data, LockMode.READ_UNCOMMITTED);
+                        }
+                    }
+                    exhausted = !SUCCESS.equals(status);
+                } finally {
+                    cursor.close();
+                }
+                return ids.iterator();
+            }
+        };
+    }
+
     private int getBulkPartitionSize() {
         Optional<Integer> configuredSize = configDB
                 .get(BULK_PARTITIONING_CONFIG_KEY, Integer.class);
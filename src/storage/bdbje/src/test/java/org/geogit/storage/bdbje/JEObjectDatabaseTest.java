@@ -1,11 +1,16 @@
 package org.geogit.storage.bdbje;
 
 import java.io.File;
+import java.util.List;
 
+import org.geogit.api.CommitBuilder;
+import org.geogit.api.ObjectId;
 import org.geogit.api.RevObject;
 import org.geogit.api.RevTree;
 import org.geogit.api.TestPlatform;
 import org.geogit.repository.Hints;
+import org.geogit.storage.BulkOpListener;
+import org.geogit.storage.BulkOpListener.CountingListener;
 import org.geogit.storage.ConfigDatabase;
 import org.geogit.storage.ObjectDatabase;
 import org.geogit.storage.fs.IniFileConfigDatabase;
@@ -16,6 +21,9 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
 public class JEObjectDatabaseTest extends Assert {
 
     @Rule
@@ -145,4 +153,27 @@ public class JEObjectDatabaseTest extends Assert {
         RevObject revObject = db.get(obj.getId());
         assertEquals(obj, revObject);
     }
+
+    @Test
+    public void testGetAllSeveralDecodeBatches() {
+        db = createDb();
+        List<RevObject> commits = Lists.newArrayList();
+        List<ObjectId> query = Lists.newArrayList();
+        for (int i = 0; i < 1000; i++) {
+            RevObject commit = new CommitBuilder().setTreeId(RevTree.EMPTY.getId())
+                    .setAuthor("groldan").setMessage("commit " + i).setCommitterTimestamp(i)
+                    .build();
+            commits.add(commit);
+            query.add(commit.getId());
+        }
+        db.putAll(commits.iterator());
+        query.add(500, ObjectId.forString("not stored"));
+
+        CountingListener listener = BulkOpListener.newCountingListener();
+        List<RevObject> found = Lists.newArrayList(db.getAll(query, listener));
+        assertEquals(1000, found.size());
+        assertEquals(ImmutableSet.copyOf(commits), ImmutableSet.copyOf(found));
+        assertEquals(1000, listener.found());
+        assertEquals(1, listener.notFound());
+    }
 }
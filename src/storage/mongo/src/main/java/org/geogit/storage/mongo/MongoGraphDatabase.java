@@ -32,12 +32,14 @@ public class MongoGraphDatabase extends BlueprintsGraphDatabase<MongoGraph> {
 
     @Override
     public void configure() throws RepositoryConnectionException {
-        RepositoryConnectionException.StorageType.GRAPH.configure(config, "mongodb", "0.1");
+        RepositoryConnectionException.StorageType.GRAPH.configure(config, "mongodb",
+                MongoObjectDatabase.VERSION);
     }
 
     @Override
     public void checkConfig() throws RepositoryConnectionException {
-        RepositoryConnectionException.StorageType.GRAPH.verify(config, "mongodb", "0.1");
+        RepositoryConnectionException.StorageType.GRAPH.verify(config, "mongodb",
+                MongoObjectDatabase.VERSION);
     }
 
     @Override
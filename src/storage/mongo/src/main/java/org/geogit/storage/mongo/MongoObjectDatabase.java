@@ -8,9 +8,12 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 import org.geogit.api.ObjectId;
 import org.geogit.api.RevCommit;
@@ -28,10 +31,11 @@ import org.geogit.storage.ObjectSerializingFactory;
 import org.geogit.storage.ObjectWriter;
 import org.geogit.storage.datastream.DataStreamSerializationFactory;
 
-import com.google.common.base.Functions;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.mongodb.BasicDBObject;
 import com.mongodb.BasicDBObjectBuilder;
@@ -40,14 +44,32 @@ import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
 import com.mongodb.WriteResult;
 
 /**
  * An Object database that uses a MongoDB server for persistence.
+ * <p>
+ * Each object is stored as a document whose {@code _id} is the object id's raw bytes, so that
+ * lookups go through the collection's primary index, and whose {@code serialized_object} field
+ * holds the object's serialized form. Bulk operations work on batches of
+ * {@value #BULK_PARTITION_SIZE} objects, each costing a single round trip to the server.
  * 
  * @see http://mongodb.com/
  */
 public class MongoObjectDatabase implements ObjectDatabase {
+
+    static final String VERSION = "0.2";
+
+    private static final int BULK_PARTITION_SIZE = 500;
+
+    private static final String ID = "_id";
+
+    private static final String SERIALIZED_OBJECT = "serialized_object";
+
+    private static final DBObject ID_ONLY = new BasicDBObject(ID, 1);
+
     private final MongoConnectionManager manager;
 
     protected final ConfigDatabase config;
@@ -104,7 +126,6 @@ public class MongoObjectDatabase implements ObjectDatabase {
         client = manager.acquire(new MongoAddress(uri));
         db = client.getDB(database);
         collection = db.getCollection(getCollectionName());
-        collection.ensureIndex("oid");
     }
 
     @Override
@@ -114,7 +135,7 @@ public class MongoObjectDatabase implements ObjectDatabase {
 
     @Override
     public void configure() throws RepositoryConnectionException {
-        RepositoryConnectionException.StorageType.OBJECT.configure(config, "mongodb", "0.1");
+        RepositoryConnectionException.StorageType.OBJECT.configure(config, "mongodb", VERSION);
         String uri = config.get("mongodb.uri").or(config.getGlobal("mongodb.uri"))
                 .or("mongodb://localhost:27017/");
         String database = config.get("mongodb.database").or(config.getGlobal("mongodb.database"))
@@ -125,7 +146,7 @@ public class MongoObjectDatabase implements ObjectDatabase {
 
     @Override
     public void checkConfig() throws RepositoryConnectionException {
-        RepositoryConnectionException.StorageType.OBJECT.verify(config, "mongodb", "0.1");
+        RepositoryConnectionException.StorageType.OBJECT.verify(config, "mongodb", VERSION);
     }
 
     @Override
@@ -138,26 +159,74 @@ public class MongoObjectDatabase implements ObjectDatabase {
         collection = null;
     }
 
+    private static DBObject idQuery(ObjectId id) {
+        return new BasicDBObject(ID, id.getRawValue());
+    }
+
+    private static DBObject idsQuery(List<ObjectId> ids) {
+        List<byte[]> rawIds = Lists.newArrayListWithCapacity(ids.size());
+        for (ObjectId id : ids) {
+            rawIds.add(id.getRawValue());
+        }
+        return new BasicDBObject(ID, new BasicDBObject("$in", rawIds));
+    }
+
+    private static ObjectId objectId(DBObject record) {
+        return ObjectId.createNoClone((byte[]) record.get(ID));
+    }
+
     @Override
     public boolean exists(ObjectId id) {
-        DBObject query = new BasicDBObject();
-        query.put("oid", id.toString());
-        return collection.find(query).hasNext();
+        return collection.findOne(idQuery(id), ID_ONLY) != null;
+    }
+
+    /**
+     * Checks which of the given ids exist with a single query
+     */
+    private Set<ObjectId> existing(List<ObjectId> ids) {
+        Set<ObjectId> existing = Sets.newHashSet();
+        DBCursor cursor = collection.find(idsQuery(ids), ID_ONLY);
+        try {
+            while (cursor.hasNext()) {
+                existing.add(objectId(cursor.next()));
+            }
+        } finally {
+            cursor.close();
+        }
+        return existing;
     }
 
     @Override
     public List<ObjectId> lookUp(final String partialId) {
         if (partialId.matches("[a-fA-F0-9]+")) {
-            DBObject regex = new BasicDBObject();
-            regex.put("$regex", "^" + partialId);
-            DBObject query = new BasicDBObject();
-            query.put("oid", regex);
-            DBCursor cursor = collection.find(query);
+            // ids are stored in binary form. Binary values of the same length compare byte by
+            // byte, so the ids starting with the prefix are the ones in the range given by the
+            // prefix padded with the lowest and highest possible values
+            byte[] lowest = new byte[ObjectId.NUM_BYTES];
+            byte[] highest = new byte[ObjectId.NUM_BYTES];
+            Arrays.fill(highest, (byte) 0xFF);
+            final int nibbles = Math.min(partialId.length(), 2 * ObjectId.NUM_BYTES);
+            for (int i = 0; i < nibbles; i++) {
+                int nibble = Character.digit(partialId.charAt(i), 16);
+                int index = i / 2;
+                if (i % 2 == 0) {
+                    lowest[index] = (byte) (nibble << 4);
+                    highest[index] = (byte) ((nibble << 4) | 0x0F);
+                } else {
+                    lowest[index] = (byte) (lowest[index] | nibble);
+                    highest[index] = (byte) ((highest[index] & 0xF0) | nibble);
+                }
+            }
+            DBObject range = BasicDBObjectBuilder.start().add("$gte", lowest)
+                    .add("$lte", highest).get();
+            DBCursor cursor = collection.find(new BasicDBObject(ID, range), ID_ONLY);
             List<ObjectId> ids = new ArrayList<ObjectId>();
-            while (cursor.hasNext()) {
-                DBObject elem = cursor.next();
-                String oid = (String) elem.get("oid");
-                ids.add(ObjectId.valueOf(oid));
+            try {
+                while (cursor.hasNext()) {
+                    ids.add(objectId(cursor.next()));
+                }
+            } finally {
+                cursor.close();
             }
             return ids;
         } else {
@@ -183,12 +252,9 @@ public class MongoObjectDatabase implements ObjectDatabase {
 
     @Override
     public RevObject getIfPresent(ObjectId id) {
-        DBObject query = new BasicDBObject();
-        query.put("oid", id.toString());
-        DBCursor results = collection.find(query);
-        if (results.hasNext()) {
-            DBObject result = results.next();
-            return fromBytes(id, (byte[]) result.get("serialized_object"));
+        DBObject result = collection.findOne(idQuery(id));
+        if (result != null) {
+            return fromBytes(id, (byte[]) result.get(SERIALIZED_OBJECT));
         } else {
             return null;
         }
@@ -225,17 +291,13 @@ public class MongoObjectDatabase implements ObjectDatabase {
     }
 
     private long deleteChunk(List<ObjectId> ids) {
-        List<String> idStrings = Lists.transform(ids, Functions.toStringFunction());
-        DBObject query = BasicDBObjectBuilder.start().push("oid").add("$in", idStrings).pop().get();
-        WriteResult result = collection.remove(query);
+        WriteResult result = collection.remove(idsQuery(ids));
         return result.getN();
     }
 
     @Override
     public boolean delete(ObjectId id) {
-        DBObject query = new BasicDBObject();
-        query.put("oid", id.toString());
-        return collection.remove(query).getLastError().ok();
+        return collection.remove(idQuery(id)).getN() > 0;
     }
 
     @Override
@@ -245,7 +307,7 @@ public class MongoObjectDatabase implements ObjectDatabase {
 
     @Override
     public long deleteAll(Iterator<ObjectId> ids, BulkOpListener listener) {
-        Iterator<List<ObjectId>> chunks = Iterators.partition(ids, 500);
+        Iterator<List<ObjectId>> chunks = Iterators.partition(ids, BULK_PARTITION_SIZE);
         long count = 0;
         while (chunks.hasNext()) {
             count += deleteChunk(chunks.next());
@@ -255,12 +317,18 @@ public class MongoObjectDatabase implements ObjectDatabase {
 
     @Override
     public boolean put(final RevObject object) {
-        DBObject query = new BasicDBObject();
-        query.put("oid", object.getId().toString());
-        DBObject record = new BasicDBObject();
-        record.put("oid", object.getId().toString());
-        record.put("serialized_object", toBytes(object));
-        return collection.update(query, record, true, false).getLastError().ok();
+        try {
+            collection.insert(toRecord(object));
+        } catch (MongoException.DuplicateKey alreadyExists) {
+            return false;
+        }
+        return true;
+    }
+
+    private DBObject toRecord(RevObject object) {
+        DBObject record = new BasicDBObject(ID, object.getId().getRawValue());
+        record.put(SERIALIZED_OBJECT, toBytes(object));
+        return record;
     }
 
     @Override
@@ -270,15 +338,49 @@ public class MongoObjectDatabase implements ObjectDatabase {
 
     @Override
     public void putAll(Iterator<? extends RevObject> objects, BulkOpListener listener) {
-        while (objects.hasNext()) {
-            RevObject object = objects.next();
-            boolean put = put(object);
-            if (put) {
-                listener.inserted(object.getId(), null);
+        Iterator<? extends List<? extends RevObject>> batches = Iterators.partition(objects,
+                BULK_PARTITION_SIZE);
+        while (batches.hasNext()) {
+            putBatch(batches.next(), listener);
+        }
+    }
+
+    /**
+     * Inserts the objects of the batch that don't already exist with a single unordered bulk
+     * insert, that goes on past duplicate keys in case some other writer inserted some of them in
+     * the meantime.
+     */
+    private void putBatch(List<? extends RevObject> batch, BulkOpListener listener) {
+        List<ObjectId> ids = Lists.newArrayListWithCapacity(batch.size());
+        for (RevObject object : batch) {
+            ids.add(object.getId());
+        }
+        final Set<ObjectId> existing = existing(ids);
+
+        List<DBObject> records = Lists.newArrayListWithCapacity(batch.size() - existing.size());
+        List<RevObject> inserted = Lists.newArrayListWithCapacity(records.size());
+        for (RevObject object : batch) {
+            // also skips duplicates within the batch
+            if (existing.add(object.getId())) {
+                records.add(toRecord(object));
+                inserted.add(object);
             } else {
                 listener.found(object.getId(), null);
             }
         }
+        if (records.isEmpty()) {
+            return;
+        }
+        WriteConcern writeConcern = collection.getWriteConcern().continueOnErrorForInsert(true);
+        try {
+            collection.insert(records, writeConcern);
+        } catch (MongoException.DuplicateKey concurrentlyInserted) {
+            // the rest of the batch has been inserted anyway
+        }
+        for (int i = 0; i < records.size(); i++) {
+            byte[] serialized = (byte[]) records.get(i).get(SERIALIZED_OBJECT);
+            listener.inserted(inserted.get(i).getId(), serialized.length);
+        }
     }
 
     @Override
@@ -291,28 +393,71 @@ public class MongoObjectDatabase implements ObjectDatabase {
         return getAll(ids, BulkOpListener.NOOP_LISTENER);
     }
 
+    /**
+     * Queries the ids in batches, returning the objects in the order they were requested.
+     */
     @Override
     public Iterator<RevObject> getAll(final Iterable<ObjectId> ids, final BulkOpListener listener) {
 
+        final Iterator<List<ObjectId>> batches = Iterators.partition(ids.iterator(),
+                BULK_PARTITION_SIZE);
+
         return new AbstractIterator<RevObject>() {
-            final Iterator<ObjectId> queryIds = ids.iterator();
+
+            private Iterator<RevObject> batch = Iterators.emptyIterator();
 
             @Override
             protected RevObject computeNext() {
-                RevObject obj = null;
-                while (obj == null) {
-                    if (!queryIds.hasNext()) {
+                while (!batch.hasNext()) {
+                    if (!batches.hasNext()) {
                         return endOfData();
                     }
-                    ObjectId id = queryIds.next();
-                    obj = getIfPresent(id);
-                    if (obj == null) {
-                        listener.notFound(id);
-                    } else {
-                        listener.found(obj.getId(), null);
-                    }
+                    batch = getBatch(batches.next(), listener);
+                }
+                return batch.next();
+            }
+        };
+    }
+
+    private Iterator<RevObject> getBatch(List<ObjectId> ids, BulkOpListener listener) {
+        Map<ObjectId, byte[]> found = Maps.newHashMap();
+        DBCursor cursor = collection.find(idsQuery(ids));
+        try {
+            while (cursor.hasNext()) {
+                DBObject record = cursor.next();
+                found.put(objectId(record), (byte[]) record.get(SERIALIZED_OBJECT));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        List<RevObject> objects = Lists.newArrayListWithCapacity(found.size());
+        for (ObjectId id : ids) {
+            byte[] serialized = found.get(id);
+            if (serialized == null) {
+                listener.notFound(id);
+            } else {
+                objects.add(fromBytes(id, serialized));
+                listener.found(id, serialized.length);
+            }
+        }
+        return objects.iterator();
+    }
+
+    @Override
+    public Iterator<ObjectId> getAllIds(final BulkOpListener listener) {
+        final DBCursor cursor = collection.find(new BasicDBObject(), ID_ONLY);
+
+        return new AbstractIterator<ObjectId>() {
+            @Override
+            protected ObjectId computeNext() {
+                if (!cursor.hasNext()) {
+                    cursor.close();
+                    return endOfData();
                 }
-                return obj == null ? endOfData() : obj;
+                ObjectId id = objectId(cursor.next());
+                listener.found(id, null);
+                return id;
             }
         };
     }
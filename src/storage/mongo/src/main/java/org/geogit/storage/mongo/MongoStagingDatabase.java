@@ -158,11 +158,13 @@ public class MongoStagingDatabase extends AbstractStagingDatabase implements Sta
 
     @Override
     public void configure() throws RepositoryConnectionException {
-        RepositoryConnectionException.StorageType.STAGING.configure(config, "mongodb", "0.1");
+        RepositoryConnectionException.StorageType.STAGING.configure(config, "mongodb",
+                MongoObjectDatabase.VERSION);
     }
 
     @Override
     public void checkConfig() throws RepositoryConnectionException {
-        RepositoryConnectionException.StorageType.STAGING.verify(config, "mongodb", "0.1");
+        RepositoryConnectionException.StorageType.STAGING.verify(config, "mongodb",
+                MongoObjectDatabase.VERSION);
     }
 }
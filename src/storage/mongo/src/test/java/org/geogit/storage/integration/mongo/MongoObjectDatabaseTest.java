@@ -0,0 +1,142 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.storage.integration.mongo;
+
+import java.util.List;
+
+import org.geogit.api.CommitBuilder;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevCommit;
+import org.geogit.api.RevObject;
+import org.geogit.api.RevTree;
+import org.geogit.api.TestPlatform;
+import org.geogit.storage.BulkOpListener;
+import org.geogit.storage.BulkOpListener.CountingListener;
+import org.geogit.storage.mongo.MongoConnectionManager;
+import org.geogit.storage.mongo.MongoObjectDatabase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientURI;
+
+public class MongoObjectDatabaseTest extends Assert {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MongoObjectDatabase db;
+
+    @Before
+    public void setUp() throws Exception {
+        final IniMongoProperties properties = new IniMongoProperties();
+        final String uri = properties.get("mongodb.uri", String.class).or(
+                "mongodb://localhost:27017/");
+        final String database = properties.get("mongodb.database", String.class).or("geogit");
+        MongoClient client = new MongoClient(new MongoClientURI(uri));
+        client.getDB(database).dropDatabase();
+        client.close();
+
+        TestPlatform platform = new TestPlatform(folder.getRoot());
+        db = new MongoObjectDatabase(new TestConfigDatabase(platform), new MongoConnectionManager());
+        db.open();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    private List<RevObject> commits(int count) {
+        List<RevObject> commits = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            RevCommit commit = new CommitBuilder().setTreeId(RevTree.EMPTY.getId())
+                    .setAuthor("groldan").setMessage("commit " + i).setCommitterTimestamp(i)
+                    .build();
+            commits.add(commit);
+        }
+        return commits;
+    }
+
+    private List<ObjectId> ids(List<RevObject> objects) {
+        List<ObjectId> ids = Lists.newArrayList();
+        for (RevObject o : objects) {
+            ids.add(o.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testPutAllSeveralBatches() {
+        List<RevObject> objects = commits(1200);
+        CountingListener listener = BulkOpListener.newCountingListener();
+        db.putAll(objects.subList(0, 700).iterator(), listener);
+        assertEquals(700, listener.inserted());
+
+        listener = BulkOpListener.newCountingListener();
+        db.putAll(objects.iterator(), listener);
+        assertEquals(500, listener.inserted());
+        assertEquals(700, listener.found());
+
+        for (RevObject o : objects) {
+            assertTrue(db.exists(o.getId()));
+        }
+        assertFalse(db.exists(ObjectId.forString("not stored")));
+    }
+
+    @Test
+    public void testPut() {
+        RevObject commit = commits(1).get(0);
+        assertTrue(db.put(commit));
+        assertFalse(db.put(commit));
+        assertEquals(commit, db.get(commit.getId()));
+        assertTrue(db.delete(commit.getId()));
+        assertFalse(db.delete(commit.getId()));
+        assertNull(db.getIfPresent(commit.getId()));
+    }
+
+    @Test
+    public void testGetAllKeepsRequestedOrder() {
+        List<RevObject> objects = commits(1100);
+        db.putAll(objects.iterator());
+
+        List<ObjectId> query = Lists.newArrayList(ids(objects));
+        ObjectId missing = ObjectId.forString("not stored");
+        query.add(600, missing);
+        query = Lists.reverse(query);
+
+        CountingListener listener = BulkOpListener.newCountingListener();
+        List<RevObject> found = ImmutableList.copyOf(db.getAll(query, listener));
+        assertEquals(Lists.reverse(objects), found);
+        assertEquals(1100, listener.found());
+        assertEquals(1, listener.notFound());
+    }
+
+    @Test
+    public void testLookUp() {
+        List<RevObject> objects = commits(10);
+        db.putAll(objects.iterator());
+        for (ObjectId id : ids(objects)) {
+            String hex = id.toString();
+            assertEquals(ImmutableList.of(id), db.lookUp(hex));
+            assertTrue(db.lookUp(hex.substring(0, 7)).contains(id));
+            assertTrue(db.lookUp(hex.substring(0, 8)).contains(id));
+        }
+    }
+
+    @Test
+    public void testDeleteAll() {
+        List<RevObject> objects = commits(600);
+        db.putAll(objects.iterator());
+        assertEquals(600, db.deleteAll(ids(objects).iterator()));
+        assertFalse(db.getAllIds(BulkOpListener.NOOP_LISTENER).hasNext());
+    }
+}
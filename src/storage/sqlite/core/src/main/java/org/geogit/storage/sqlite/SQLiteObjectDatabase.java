@@ -181,6 +181,18 @@ public abstract class SQLiteObjectDatabase<C> implements ObjectDatabase {
         }), Predicates.notNull()).iterator();
     }
 
+    @Override
+    public Iterator<ObjectId> getAllIds(final BulkOpListener listener) {
+        return transform(list(cx), new Function<String, ObjectId>() {
+            @Override
+            public ObjectId apply(String id) {
+                ObjectId objectId = ObjectId.valueOf(id);
+                listener.found(objectId, null);
+                return objectId;
+            }
+        }).iterator();
+    }
+
     @Override
     public boolean put(RevObject object) {
         String id = object.getId().toString();
@@ -296,6 +308,11 @@ public abstract class SQLiteObjectDatabase<C> implements ObjectDatabase {
      */
     protected abstract Iterable<String> search(String partialId, C cx);
 
+    /**
+     * Lists the ids of all the objects in the database.
+     */
+    protected abstract Iterable<String> list(C cx);
+
     /**
      * Retrieves the object with the specified id.
      * <p>
@@ -115,6 +115,20 @@ public class XerialObjectDatabase extends SQLiteObjectDatabase<DataSource> {
         return new StringResultSetIterable(rs, cx);
     }
 
+    @Override
+    public Iterable<String> list(DataSource ds) {
+        Connection cx = Xerial.newConnection(ds);
+        final ResultSet rs = new DbOp<ResultSet>() {
+            @Override
+            protected ResultSet doRun(Connection cx) throws SQLException {
+                String sql = format("SELECT id FROM %s", OBJECTS);
+                return cx.createStatement().executeQuery(log(sql, LOG));
+            }
+        }.run(cx);
+
+        return new StringResultSetIterable(rs, cx);
+    }
+
     @Override
     public InputStream get(final String id, DataSource ds) {
         return new DbOp<InputStream>() {
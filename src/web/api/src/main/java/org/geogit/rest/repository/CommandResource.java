@@ -5,11 +5,13 @@
 package org.geogit.rest.repository;
 
 import static org.geogit.rest.repository.RESTUtils.getGeogit;
+import static org.geogit.rest.repository.RESTUtils.getReadOnlyGeogit;
 
 import java.io.IOException;
 import java.io.Writer;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -17,20 +19,25 @@ import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
-import org.codehaus.jettison.mapped.MappedNamespaceConvention;
-import org.codehaus.jettison.mapped.MappedXMLStreamWriter;
+import org.geogit.api.DefaultProgressListener;
 import org.geogit.api.GeoGIT;
+import org.geogit.api.ProgressListener;
+import org.geogit.rest.repository.JobManager.Job;
+import org.geogit.web.api.AbstractWebAPICommand;
 import org.geogit.web.api.CommandBuilder;
 import org.geogit.web.api.CommandContext;
 import org.geogit.web.api.CommandResponse;
 import org.geogit.web.api.CommandSpecException;
 import org.geogit.web.api.ParameterSet;
+import org.geogit.web.api.ReadOnly;
 import org.geogit.web.api.ResponseWriter;
 import org.geogit.web.api.StreamResponse;
+import org.geogit.web.api.StreamingJSONWriter;
 import org.geogit.web.api.WebAPICommand;
 import org.restlet.Context;
 import org.restlet.data.Form;
 import org.restlet.data.MediaType;
+import org.restlet.data.Reference;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
 import org.restlet.resource.Representation;
@@ -38,7 +45,6 @@ import org.restlet.resource.Resource;
 import org.restlet.resource.Variant;
 
 import com.google.common.base.Optional;
-import com.google.common.base.Preconditions;
 
 /**
  *
@@ -82,15 +88,16 @@ public class CommandResource extends Resource {
     @Override
     public Representation getRepresentation(Variant variant) {
         Request request = getRequest();
-        Representation representation = runCommand(variant, request);
-        return representation;
+        try {
+            return runCommand(variant, request);
+        } catch (RestletException e) {
+            getResponse().setStatus(e.getStatus());
+            return e.getRepresentation();
+        }
     }
 
     private Representation runCommand(Variant variant, Request request) {
 
-        final Optional<GeoGIT> geogit = getGeogit(request);
-        Preconditions.checkState(geogit.isPresent());
-
         Representation rep = null;
         WebAPICommand command = null;
         Form options = getRequest().getResourceRef().getQueryAsForm();
@@ -101,13 +108,44 @@ public class CommandResource extends Resource {
             command = CommandBuilder.build(commandName, params);
             assert command != null;
         } catch (CommandSpecException ex) {
-            rep = formatException(ex, format);
+            return formatException(ex, format);
         }
+
+        final Optional<GeoGIT> geogit;
+        if (command.getClass().isAnnotationPresent(ReadOnly.class)) {
+            // runs against a snapshot of the refs, not blocked by nor blocking a push
+            geogit = getReadOnlyGeogit(request);
+        } else {
+            geogit = getGeogit(request);
+        }
+        if (!geogit.isPresent()) {
+            throw new RestletException("Repository not found",
+                    org.restlet.data.Status.CLIENT_ERROR_NOT_FOUND);
+        }
+
+        ImmutableResponse immutable = null;
+        if (command instanceof AbstractWebAPICommand
+                && ((AbstractWebAPICommand) command).isCacheable()) {
+            immutable = new ImmutableResponse(request, getResponse(), format);
+            if (immutable.isNotModified()) {
+                return immutable.notModified();
+            }
+            Representation cached = immutable.cached();
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        if (Boolean.parseBoolean(options.getFirstValue("async"))) {
+            return submit(commandName, command, geogit.get(), format);
+        }
+
         try {
-            if (command != null) {
-                RestletContext ctx = new RestletContext(geogit.get());
-                command.run(ctx);
-                rep = ctx.getRepresentation(format, getJSONPCallback());
+            RestletContext ctx = new RestletContext(geogit.get());
+            command.run(ctx);
+            rep = ctx.getRepresentation(format, getJSONPCallback());
+            if (immutable != null) {
+                rep = immutable.cache(rep);
             }
         } catch (IllegalArgumentException ex) {
             rep = formatException(ex, format);
@@ -117,6 +155,35 @@ public class CommandResource extends Resource {
         return rep;
     }
 
+    /**
+     * Runs the command in the background, responding right away with the status of the job, which
+     * can be polled at {@code jobs/<id>} and whose response is served at {@code jobs/<id>/result}
+     * once it's done.
+     */
+    private Representation submit(String commandName, final WebAPICommand command,
+            final GeoGIT geogit, final MediaType format) {
+        ProgressListener progress = new DefaultProgressListener();
+        if (command instanceof AbstractWebAPICommand) {
+            ((AbstractWebAPICommand) command).setProgressListener(progress);
+        }
+        final String callback = getJSONPCallback();
+        Job job = JobManager.submit(JobManager.repositoryKey(geogit), commandName,
+                new Callable<Representation>() {
+                    @Override
+                    public Representation call() throws Exception {
+                        RestletContext ctx = new RestletContext(geogit);
+                        command.run(ctx);
+                        return ctx.getRepresentation(format, callback);
+                    }
+                }, progress);
+        Response response = getResponse();
+        response.setStatus(org.restlet.data.Status.SUCCESS_ACCEPTED);
+        response.setLocationRef(new Reference(getRequest().getResourceRef(), "jobs/"
+                + job.getId()).getTargetRef());
+        MediaType statusFormat = format == CSV_MEDIA_TYPE ? MediaType.APPLICATION_XML : format;
+        return new JettisonRepresentation(statusFormat, JobResource.status(job), callback);
+    }
+
     private Representation formatException(IllegalArgumentException ex, MediaType format) {
         Logger logger = getLogger();
         if (logger.isLoggable(Level.FINE)) {
@@ -238,7 +305,8 @@ public class CommandResource extends Resource {
                 }
                 callback = null; // this doesn't make sense
             } else if (mediaType == MediaType.APPLICATION_JSON) {
-                xml = new MappedXMLStreamWriter(new MappedNamespaceConvention(), writer);
+                // same output as Jettison's MappedXMLStreamWriter, but streamed
+                xml = new StreamingJSONWriter(writer);
             } else {
                 throw new RuntimeException("mediatype not handled " + mediaType);
             }
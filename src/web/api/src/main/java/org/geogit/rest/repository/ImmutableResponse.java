@@ -0,0 +1,281 @@
+/* Copyright (c) 2014 OpenPlans. All rights reserved.
+ * This code is licensed under the GNU GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geogit.rest.repository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+
+import javax.annotation.Nullable;
+
+import org.restlet.data.CharacterSet;
+import org.restlet.data.Form;
+import org.restlet.data.MediaType;
+import org.restlet.data.Reference;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.resource.OutputRepresentation;
+import org.restlet.resource.Representation;
+
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.Hashing;
+
+/**
+ * The response to a request that only depends on content addressed objects, like an object, the
+ * parents of a commit or the diff between two trees given by their ids, and hence never changes.
+ * <p>
+ * Such a response is given a strong {@link Tag ETag} derived from the request and headers that let
+ * clients and proxies cache it for a year. A request whose {@code If-None-Match} header matches the
+ * tag is answered with a {@code 304 Not Modified} status and no content, and the content of the
+ * responses is kept in a bounded server side cache so that hot requests don't walk the same trees
+ * over and over. The cache size in bytes can be set through the
+ * {@code geogit.web.responseCacheSize} system property, {@code 0} disabling it.
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * <code>
+ * ImmutableResponse immutable = new ImmutableResponse(request, response, mediaType);
+ * if (immutable.isNotModified()) {
+ *     return immutable.notModified();
+ * }
+ * Representation cached = immutable.cached();
+ * if (cached != null) {
+ *     return cached;
+ * }
+ * ...
+ * return immutable.cache(representation);
+ * </code>
+ * </pre>
+ */
+final class ImmutableResponse {
+
+    private static final int MAX_AGE_SECONDS = 365 * 24 * 60 * 60;
+
+    private static final String CACHE_CONTROL = "public, max-age=" + MAX_AGE_SECONDS;
+
+    private static final String HEADERS_ATTRIBUTE = "org.restlet.http.headers";
+
+    private static final long MAX_SIZE = Long.getLong("geogit.web.responseCacheSize",
+            32 * 1024 * 1024);
+
+    /**
+     * Larger responses are not cached, so that a few of them can't evict all the others
+     */
+    private static final int MAX_ENTRY_SIZE = (int) Math.min(MAX_SIZE / 16, Integer.MAX_VALUE);
+
+    private static final Cache<String, Content> RESPONSES = CacheBuilder.newBuilder()
+            .maximumWeight(MAX_SIZE).weigher(new Weigher<String, Content>() {
+                @Override
+                public int weigh(String key, Content content) {
+                    return key.length() + content.bytes.length;
+                }
+            }).build();
+
+    private final Request request;
+
+    private final Response response;
+
+    private final String key;
+
+    private final Tag tag;
+
+    /**
+     * @param request the request, whose path and query shall identify the response
+     * @param response the response to the request
+     * @param mediaType the format of the response
+     */
+    ImmutableResponse(Request request, Response response, MediaType mediaType) {
+        this.request = request;
+        this.response = response;
+        Reference ref = request.getResourceRef();
+        String query = ref.getQuery();
+        this.key = ref.getPath() + (query == null ? "" : "?" + query) + " " + mediaType;
+        this.tag = new Tag(Hashing.sha1().hashString(key, Charsets.UTF_8).toString(), false);
+    }
+
+    /**
+     * @return whether the request has a {@code If-None-Match} condition matching the response
+     */
+    public boolean isNotModified() {
+        // If-None-Match uses the weak comparison function
+        for (Tag t : request.getConditions().getNoneMatch()) {
+            if ("*".equals(t.getName()) || tag.getName().equals(t.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets the response status to {@code 304 Not Modified}
+     *
+     * @return the response entity, {@code null}
+     */
+    @Nullable
+    public Representation notModified() {
+        response.setStatus(Status.REDIRECTION_NOT_MODIFIED);
+        setCacheControl();
+        return null;
+    }
+
+    /**
+     * @return the cached response content, or {@code null} if it's not in the cache
+     */
+    @Nullable
+    public Representation cached() {
+        Content content = RESPONSES.getIfPresent(key);
+        if (content == null) {
+            return null;
+        }
+        return tag(new CachedRepresentation(content));
+    }
+
+    /**
+     * @param representation the response content
+     * @return {@code representation}, tagged and cached as it's written
+     */
+    public Representation cache(Representation representation) {
+        if (MAX_SIZE > 0) {
+            representation = new CachingRepresentation(representation);
+        }
+        return tag(representation);
+    }
+
+    /**
+     * Calls {@link #notModified()}, {@link #cached()} or {@link #cache(Representation)} as
+     * appropriate
+     */
+    @Nullable
+    public Representation respond(Representation representation) {
+        if (isNotModified()) {
+            return notModified();
+        }
+        Representation cached = cached();
+        if (cached != null) {
+            return cached;
+        }
+        return cache(representation);
+    }
+
+    private Representation tag(Representation representation) {
+        representation.setTag(tag);
+        representation.setExpirationDate(new Date(System.currentTimeMillis() + MAX_AGE_SECONDS
+                * 1000L));
+        setCacheControl();
+        return representation;
+    }
+
+    private void setCacheControl() {
+        Form headers = (Form) response.getAttributes().get(HEADERS_ATTRIBUTE);
+        if (headers == null) {
+            headers = new Form();
+            response.getAttributes().put(HEADERS_ATTRIBUTE, headers);
+        }
+        if (headers.getFirst("Cache-Control") == null) {
+            headers.add("Cache-Control", CACHE_CONTROL);
+        }
+    }
+
+    private static class Content {
+
+        final byte[] bytes;
+
+        final MediaType mediaType;
+
+        final CharacterSet characterSet;
+
+        Content(byte[] bytes, MediaType mediaType, CharacterSet characterSet) {
+            this.bytes = bytes;
+            this.mediaType = mediaType;
+            this.characterSet = characterSet;
+        }
+    }
+
+    private static class CachedRepresentation extends OutputRepresentation {
+
+        private final Content content;
+
+        CachedRepresentation(Content content) {
+            super(content.mediaType);
+            this.content = content;
+            setCharacterSet(content.characterSet);
+            setSize(content.bytes.length);
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            out.write(content.bytes);
+        }
+    }
+
+    /**
+     * Writes the response content and keeps a copy of it to cache once fully written
+     */
+    private class CachingRepresentation extends OutputRepresentation {
+
+        private final Representation content;
+
+        CachingRepresentation(Representation content) {
+            super(content.getMediaType());
+            this.content = content;
+            setCharacterSet(content.getCharacterSet());
+        }
+
+        @Override
+        public void write(final OutputStream out) throws IOException {
+            CopyingOutputStream copying = new CopyingOutputStream(out);
+            content.write(copying);
+            if (copying.copy != null) {
+                RESPONSES.put(key, new Content(copying.copy.toByteArray(), getMediaType(),
+                        getCharacterSet()));
+            }
+        }
+    }
+
+    /**
+     * Keeps a copy of what's written until it gets larger than {@link #MAX_ENTRY_SIZE}
+     */
+    private static class CopyingOutputStream extends FilterOutputStream {
+
+        @Nullable
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        CopyingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (copy != null) {
+                copy.write(b);
+                checkSize();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (copy != null) {
+                copy.write(b, off, len);
+                checkSize();
+            }
+        }
+
+        private void checkSize() {
+            if (copy.size() > MAX_ENTRY_SIZE) {
+                copy = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,365 @@
+/* Copyright (c) 2014 OpenPlans. All rights reserved.
+ * This code is licensed under the GNU GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geogit.rest.repository;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+
+import org.geogit.api.GeoGIT;
+import org.geogit.api.ProgressListener;
+import org.geogit.web.api.RepositoryLeases;
+import org.geogit.web.api.RepositoryLeases.Lease;
+import org.restlet.data.CharacterSet;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.resource.OutputRepresentation;
+import org.restlet.resource.Representation;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs web API commands in the background, so that long running ones like {@code fetch},
+ * {@code pull}, {@code merge} or large {@code log} and {@code diff} exports don't hold a request
+ * thread for minutes.
+ * <p>
+ * A {@link Job job} runs its command and writes the response to a temporary file, which is served
+ * once the job is done. Jobs run on a fixed pool of {@code geogit.web.jobThreads} threads (4 by
+ * default), with at most {@code geogit.web.jobsPerRepository} (2 by default) of them running at
+ * the same time against the same repository, the others waiting for their turn. No more than
+ * {@code geogit.web.maxJobs} (64 by default) jobs can be waiting or running at a time. Finished
+ * jobs and their responses are kept for {@code geogit.web.jobTimeout} seconds (10 minutes by
+ * default).
+ * <p>
+ * A job holds a {@link RepositoryLeases lease} on its repository from the moment it's submitted
+ * until it's done or cancelled, so the repository isn't closed under it.
+ */
+final class JobManager {
+
+    private static final Logger LOGGER = Logger.getLogger(JobManager.class.getName());
+
+    private static final int THREADS = Integer.getInteger("geogit.web.jobThreads", 4);
+
+    static final int MAX_PER_REPOSITORY = Integer.getInteger(
+            "geogit.web.jobsPerRepository", 2);
+
+    static final int MAX_JOBS = Integer.getInteger("geogit.web.maxJobs", 64);
+
+    static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong(
+            "geogit.web.jobTimeout", 600));
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS,
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("geogit-web-job-%d").build());
+
+    private static final Map<String, Job> JOBS = new ConcurrentHashMap<String, Job>();
+
+    /**
+     * Guarded by the {@code JobManager} class lock, as are {@link #WAITING} and {@link #active}
+     */
+    private static final Multiset<String> RUNNING = HashMultiset.create();
+
+    private static final Map<String, Deque<Job>> WAITING = Maps.newHashMap();
+
+    private static int active;
+
+    private JobManager() {
+        // static access only
+    }
+
+    /**
+     * The state of a {@link Job}
+     */
+    enum JobStatus {
+        WAITING, RUNNING, FINISHED, FAILED, CANCELLED
+    }
+
+    /**
+     * A command running in the background.
+     */
+    static class Job implements Runnable {
+
+        private final String id = UUID.randomUUID().toString();
+
+        private final String repository;
+
+        private final String command;
+
+        private final Callable<Representation> work;
+
+        private final ProgressListener progress;
+
+        private final Lease lease;
+
+        private volatile JobStatus status = JobStatus.WAITING;
+
+        @Nullable
+        private volatile String error;
+
+        private volatile boolean clientError;
+
+        @Nullable
+        private volatile File result;
+
+        private MediaType mediaType;
+
+        private CharacterSet characterSet;
+
+        private volatile long finished;
+
+        Job(String repository, String command, Callable<Representation> work,
+                ProgressListener progress, Lease lease) {
+            this.repository = repository;
+            this.command = command;
+            this.work = work;
+            this.progress = progress;
+            this.lease = lease;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        public JobStatus getStatus() {
+            return status;
+        }
+
+        public ProgressListener getProgress() {
+            return progress;
+        }
+
+        /**
+         * @return the error message of a {@link JobStatus#FAILED failed} job
+         */
+        @Nullable
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * @return whether a {@link JobStatus#FAILED failed} job failed because of the request
+         *         itself, like a {@link org.geogit.web.api.CommandSpecException wrong argument},
+         *         rather than because of an unexpected error
+         */
+        public boolean isClientError() {
+            return clientError;
+        }
+
+        /**
+         * @return the response of a {@link JobStatus#FINISHED finished} job, or {@code null}
+         */
+        @Nullable
+        public Representation getResult() {
+            final File file = result;
+            if (file == null) {
+                return null;
+            }
+            OutputRepresentation representation = new OutputRepresentation(mediaType) {
+                @Override
+                public void write(OutputStream out) throws IOException {
+                    Files.copy(file, out);
+                }
+            };
+            representation.setCharacterSet(characterSet);
+            representation.setSize(file.length());
+            return representation;
+        }
+
+        @Override
+        public void run() {
+            File file = null;
+            JobStatus outcome = JobStatus.FAILED;
+            try {
+                if (progress.isCanceled()) {
+                    outcome = JobStatus.CANCELLED;
+                    return;
+                }
+                status = JobStatus.RUNNING;
+                progress.started();
+                Representation representation = work.call();
+                file = File.createTempFile("geogit-job-", ".tmp");
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+                try {
+                    representation.write(out);
+                } finally {
+                    out.close();
+                }
+                mediaType = representation.getMediaType();
+                characterSet = representation.getCharacterSet();
+                result = file;
+                outcome = progress.isCanceled() ? JobStatus.CANCELLED : JobStatus.FINISHED;
+            } catch (IllegalArgumentException e) {
+                // CommandSpecException included
+                error = e.getMessage();
+                clientError = true;
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Job " + id + " failed", e);
+                error = String.valueOf(e.getMessage());
+            } finally {
+                if (result == null && file != null) {
+                    file.delete();
+                }
+                progress.complete();
+                done(this, outcome);
+                // outside of the JobManager lock, as it may close the repository
+                lease.close();
+            }
+        }
+
+        private boolean isExpired(long now) {
+            return finished > 0 && now - finished > TIMEOUT_MILLIS;
+        }
+
+        private void dispose() {
+            File file = result;
+            result = null;
+            if (file != null) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * @return the key jobs running against the given repository are grouped by
+     */
+    static String repositoryKey(GeoGIT geogit) {
+        return RepositoryLeases.key(geogit.getContext());
+    }
+
+    /**
+     * Queues a command to be run in the background.
+     *
+     * @param repository identifies the repository the command runs against
+     * @param command the command name
+     * @param work runs the command and returns its response
+     * @param progress the listener the command reports its progress to
+     * @return the job, waiting or already running
+     * @throws RestletException with a {@code 503} status if there are already too many jobs
+     */
+    static synchronized Job submit(String repository, String command,
+            Callable<Representation> work, ProgressListener progress) {
+        purge();
+        if (active >= MAX_JOBS) {
+            throw new RestletException("Too many jobs, try again later",
+                    Status.SERVER_ERROR_SERVICE_UNAVAILABLE);
+        }
+        Job job = new Job(repository, command, work, progress,
+                RepositoryLeases.acquire(repository));
+        JOBS.put(job.getId(), job);
+        active++;
+        if (RUNNING.count(repository) < MAX_PER_REPOSITORY) {
+            start(job);
+        } else {
+            Deque<Job> waiting = WAITING.get(repository);
+            if (waiting == null) {
+                waiting = new ArrayDeque<Job>();
+                WAITING.put(repository, waiting);
+            }
+            waiting.add(job);
+        }
+        return job;
+    }
+
+    /**
+     * @return the job with the given id, if it was submitted for the given repository and hasn't
+     *         expired yet
+     */
+    @Nullable
+    static Job get(String repository, String id) {
+        purge();
+        Job job = JOBS.get(id);
+        if (job == null || !job.repository.equals(repository)) {
+            return null;
+        }
+        return job;
+    }
+
+    /**
+     * Cancels a job. A waiting job is dropped right away, a running one is asked to stop through
+     * its {@link ProgressListener#cancel() progress listener}, which the command may or may not
+     * check.
+     */
+    static synchronized void cancel(Job job) {
+        job.progress.cancel();
+        if (job.status == JobStatus.WAITING) {
+            Deque<Job> waiting = WAITING.get(job.repository);
+            if (waiting != null && waiting.remove(job)) {
+                job.status = JobStatus.CANCELLED;
+                job.finished = System.currentTimeMillis();
+                active--;
+                job.lease.close();
+            }
+        }
+    }
+
+    private static void start(Job job) {
+        RUNNING.add(job.repository);
+        EXECUTOR.execute(job);
+    }
+
+    /**
+     * Frees the slot of a job that's done and starts the next one waiting, if any. The job
+     * status is only set last, so that a job is not seen as done while it still holds its slot.
+     */
+    private static synchronized void done(Job job, JobStatus outcome) {
+        job.finished = System.currentTimeMillis();
+        active--;
+        RUNNING.remove(job.repository);
+        Deque<Job> waiting = WAITING.get(job.repository);
+        if (waiting != null) {
+            Job next = waiting.poll();
+            if (waiting.isEmpty()) {
+                WAITING.remove(job.repository);
+            }
+            if (next != null) {
+                start(next);
+            }
+        }
+        job.status = outcome;
+    }
+
+    private static void purge() {
+        purge(System.currentTimeMillis());
+    }
+
+    /**
+     * Drops the jobs that finished more than {@link #TIMEOUT_MILLIS} before the given time, and
+     * deletes their responses
+     */
+    @VisibleForTesting
+    static void purge(final long now) {
+        for (Iterator<Job> it = JOBS.values().iterator(); it.hasNext();) {
+            Job job = it.next();
+            if (job.isExpired(now)) {
+                it.remove();
+                job.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/* Copyright (c) 2014 OpenPlans. All rights reserved.
+ * This code is licensed under the GNU GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geogit.rest.repository;
+
+import static org.geogit.rest.repository.RESTUtils.getGeogit;
+
+import java.util.List;
+
+import org.geogit.api.GeoGIT;
+import org.geogit.api.ProgressListener;
+import org.geogit.rest.repository.CommandResource.JettisonRepresentation;
+import org.geogit.rest.repository.JobManager.Job;
+import org.geogit.rest.repository.JobManager.JobStatus;
+import org.geogit.web.api.CommandResponse;
+import org.geogit.web.api.ResponseWriter;
+import org.restlet.Context;
+import org.restlet.data.Form;
+import org.restlet.data.MediaType;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.resource.Representation;
+import org.restlet.resource.Resource;
+import org.restlet.resource.Variant;
+
+import com.google.common.base.Optional;
+
+/**
+ * Reports the status of a command submitted with {@code async=true}, at {@code jobs/<id>}, and
+ * serves its response once it's done, at {@code jobs/<id>/result}. Passing {@code cancel=true}
+ * to the former cancels the job. The error of a failed job is served with a {@code 400} status if
+ * the command was given wrong arguments, and with a {@code 500} status otherwise.
+ */
+public class JobResource extends Resource {
+
+    private static final Variant JSON = new Variant(MediaType.APPLICATION_JSON);
+
+    private static final Variant XML = new Variant(MediaType.APPLICATION_XML);
+
+    @Override
+    public void init(Context context, Request request, Response response) {
+        super.init(context, request, response);
+        List<Variant> variants = getVariants();
+        variants.add(XML);
+        variants.add(JSON);
+    }
+
+    @Override
+    public Variant getPreferredVariant() {
+        String extension = RESTUtils.getStringAttribute(getRequest(), "extension");
+        if ("xml".equals(extension)) {
+            return XML;
+        }
+        if ("json".equals(extension)) {
+            return JSON;
+        }
+        return super.getPreferredVariant();
+    }
+
+    @Override
+    public Representation getRepresentation(Variant variant) {
+        try {
+            return jobRepresentation(variant);
+        } catch (RestletException e) {
+            getResponse().setStatus(e.getStatus());
+            return e.getRepresentation();
+        }
+    }
+
+    private Representation jobRepresentation(Variant variant) {
+        Request request = getRequest();
+        Form options = request.getResourceRef().getQueryAsForm();
+        MediaType format = variant.getMediaType();
+        String requested = options.getFirstValue("output_format");
+        if ("json".equalsIgnoreCase(requested)) {
+            format = MediaType.APPLICATION_JSON;
+        } else if ("xml".equalsIgnoreCase(requested)) {
+            format = MediaType.APPLICATION_XML;
+        }
+        String callback = options.getFirstValue("callback", null);
+
+        Optional<GeoGIT> geogit = getGeogit(request);
+        if (!geogit.isPresent()) {
+            throw new RestletException("Repository not found", Status.CLIENT_ERROR_NOT_FOUND);
+        }
+        String id = RESTUtils.getStringAttribute(request, "jobId");
+        Job job = JobManager.get(JobManager.repositoryKey(geogit.get()), id);
+        if (job == null) {
+            getResponse().setStatus(Status.CLIENT_ERROR_NOT_FOUND);
+            return new JettisonRepresentation(format, CommandResponse.error("No job with id "
+                    + id), callback);
+        }
+
+        if (request.getResourceRef().getPath().endsWith("/result")) {
+            Representation result = job.getResult();
+            if (result != null) {
+                return result;
+            }
+            if (job.getStatus() == JobStatus.FAILED) {
+                getResponse().setStatus(job.isClientError() ? Status.CLIENT_ERROR_BAD_REQUEST
+                        : Status.SERVER_ERROR_INTERNAL);
+                return new JettisonRepresentation(format, CommandResponse.error(job.getError()),
+                        callback);
+            }
+            getResponse().setStatus(Status.CLIENT_ERROR_NOT_FOUND);
+            return new JettisonRepresentation(format, CommandResponse.error("Job " + id + " is "
+                    + job.getStatus()), callback);
+        }
+
+        if (Boolean.parseBoolean(options.getFirstValue("cancel"))) {
+            JobManager.cancel(job);
+        }
+        return new JettisonRepresentation(format, status(job), callback);
+    }
+
+    /**
+     * @return a response describing the current status and progress of the given job
+     */
+    static CommandResponse status(final Job job) {
+        return new CommandResponse() {
+            @Override
+            public void write(ResponseWriter out) throws Exception {
+                ProgressListener progress = job.getProgress();
+                JobStatus status = job.getStatus();
+                out.start();
+                out.getWriter().writeStartElement("job");
+                out.writeElement("id", job.getId());
+                out.writeElement("command", job.getCommand());
+                out.writeElement("status", status.toString());
+                if (progress.getDescription() != null) {
+                    out.writeElement("description", progress.getDescription());
+                }
+                out.writeElement("progress", Float.toString(progress.getProgress()));
+                out.writeElement("maxProgress", Float.toString(progress.getMaxProgress()));
+                if (job.getError() != null) {
+                    out.writeElement("error", job.getError());
+                }
+                out.getWriter().writeEndElement();
+                out.finish();
+            }
+        };
+    }
+}
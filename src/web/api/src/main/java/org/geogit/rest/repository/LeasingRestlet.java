@@ -0,0 +1,118 @@
+/* Copyright (c) 2014 OpenPlans. All rights reserved.
+ * This code is licensed under the GNU GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geogit.rest.repository;
+
+import static org.geogit.rest.repository.RESTUtils.getGeogit;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.annotation.Nullable;
+
+import org.geogit.api.Context;
+import org.geogit.api.GeoGIT;
+import org.geogit.web.api.RepositoryLeases;
+import org.geogit.web.api.RepositoryLeases.Lease;
+import org.restlet.Restlet;
+import org.restlet.data.Method;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.resource.OutputRepresentation;
+import org.restlet.resource.Representation;
+
+import com.google.common.base.Optional;
+
+/**
+ * Holds a {@link RepositoryLeases lease} on the requested repository while the wrapped restlet
+ * handles the request and until its response is fully written, so that the repository isn't
+ * closed under it.
+ */
+public class LeasingRestlet extends Restlet {
+
+    private final Restlet next;
+
+    public LeasingRestlet(Restlet next) {
+        super(next.getContext());
+        this.next = next;
+    }
+
+    @Override
+    public void handle(Request request, Response response) {
+        super.handle(request, response);
+        Lease lease = lease(request);
+        if (lease == null) {
+            next.handle(request, response);
+            return;
+        }
+        boolean handled = false;
+        try {
+            next.handle(request, response);
+            Representation entity = response.getEntity();
+            if (entity != null && !Method.HEAD.equals(request.getMethod())) {
+                response.setEntity(new LeasedRepresentation(entity, lease));
+                handled = true;
+            }
+        } finally {
+            if (!handled) {
+                lease.close();
+            }
+        }
+    }
+
+    /**
+     * @return a lease on the requested repository, or {@code null} if there's no such repository
+     */
+    @Nullable
+    private Lease lease(Request request) {
+        Optional<GeoGIT> geogit = getGeogit(request);
+        while (geogit.isPresent()) {
+            // a closed repository has no context
+            Context context = geogit.get().getContext();
+            Lease lease = context == null ? null : RepositoryLeases.acquire(context);
+            // the repository may have been closed right before it was leased, in which case the
+            // provider opens it again
+            Optional<GeoGIT> leased = getGeogit(request);
+            if (leased.isPresent() && leased.get() == geogit.get()) {
+                return lease;
+            }
+            if (lease != null) {
+                lease.close();
+            }
+            geogit = leased;
+        }
+        return null;
+    }
+
+    /**
+     * Releases the lease once the wrapped representation is written
+     */
+    private static class LeasedRepresentation extends OutputRepresentation {
+
+        private final Representation content;
+
+        private final Lease lease;
+
+        LeasedRepresentation(Representation content, Lease lease) {
+            super(content.getMediaType(), content.getSize());
+            this.content = content;
+            this.lease = lease;
+            setCharacterSet(content.getCharacterSet());
+            setTag(content.getTag());
+            setExpirationDate(content.getExpirationDate());
+            setModificationDate(content.getModificationDate());
+            getEncodings().addAll(content.getEncodings());
+            getLanguages().addAll(content.getLanguages());
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            try {
+                content.write(out);
+            } finally {
+                lease.close();
+            }
+        }
+    }
+}
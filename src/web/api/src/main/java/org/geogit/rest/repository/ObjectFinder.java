@@ -23,6 +23,7 @@ import org.restlet.data.MediaType;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
 import org.restlet.resource.OutputRepresentation;
+import org.restlet.resource.Representation;
 import org.restlet.resource.Resource;
 import org.restlet.resource.Variant;
 
@@ -77,6 +78,13 @@ public class ObjectFinder extends Finder {
 
             variants.add(new RevObjectBinaryRepresentation(oid, geogit));
         }
+
+        @Override
+        public Representation getRepresentation(Variant variant) {
+            ImmutableResponse immutable = new ImmutableResponse(getRequest(), getResponse(),
+                    variant.getMediaType());
+            return immutable.respond(super.getRepresentation(variant));
+        }
     }
 
     private static class RevObjectBinaryRepresentation extends OutputRepresentation {
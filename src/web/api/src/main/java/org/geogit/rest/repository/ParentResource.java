@@ -14,12 +14,14 @@ import java.util.List;
 
 import org.geogit.api.GeoGIT;
 import org.geogit.api.ObjectId;
+import org.geogit.repository.Repository;
 import org.restlet.Context;
 import org.restlet.data.Form;
 import org.restlet.data.MediaType;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
 import org.restlet.resource.OutputRepresentation;
+import org.restlet.resource.Representation;
 import org.restlet.resource.Resource;
 import org.restlet.resource.Variant;
 
@@ -39,6 +41,41 @@ public class ParentResource extends Resource {
         variants.add(new ParentRepresentation(request));
     }
 
+    @Override
+    public Representation getRepresentation(Variant variant) {
+        Representation representation = super.getRepresentation(variant);
+        Form options = getRequest().getResourceRef().getQueryAsForm();
+        String commitId = options.getFirstValue("commitId", null);
+        if (commitId != null && isKnownCommit(commitId)) {
+            // the parents of a given commit never change, but a commit that's not in the
+            // repository yet may be pushed later on
+            ImmutableResponse immutable = new ImmutableResponse(getRequest(), getResponse(),
+                    variant.getMediaType());
+            representation = immutable.respond(representation);
+        }
+        return representation;
+    }
+
+    /**
+     * @return whether the given commit is both in the object and the graph databases, and hence
+     *         its parents are known for good
+     */
+    private boolean isKnownCommit(String commitId) {
+        Optional<GeoGIT> geogit = getGeogit(getRequest());
+        if (!geogit.isPresent()) {
+            return false;
+        }
+        final ObjectId id;
+        try {
+            id = ObjectId.valueOf(commitId);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        Repository repository = geogit.get().getRepository();
+        return repository != null && repository.objectDatabase().exists(id)
+                && repository.graphDatabase().exists(id);
+    }
+
     private static class ParentRepresentation extends OutputRepresentation {
 
         private Request request;
@@ -22,6 +22,12 @@ public class RESTUtils {
         return geogit;
     }
 
+    public static Optional<GeoGIT> getReadOnlyGeogit(Request request) {
+        RepositoryProvider provider = repositoryProvider(request);
+        Optional<GeoGIT> geogit = provider.getReadOnlyGeogit(request);
+        return geogit;
+    }
+
     public static RepositoryProvider repositoryProvider(Request request) {
         Object provider = request.getAttributes().get(RepositoryProvider.KEY);
         Preconditions.checkNotNull(provider,
@@ -6,6 +6,7 @@
 package org.geogit.rest.repository;
 
 import org.geogit.api.GeoGIT;
+import org.geogit.api.SnapshotContext;
 import org.restlet.data.Request;
 
 import com.google.common.base.Optional;
@@ -20,4 +21,15 @@ public interface RepositoryProvider {
 
     public Optional<GeoGIT> getGeogit(Request request);
 
-}
\ No newline at end of file
+    /**
+     * Returns the repository for the request as seen by read only commands, like {@code log} or
+     * {@code diff}.
+     * <p>
+     * The returned facade shares the repository with {@link #getGeogit(Request)} but runs its
+     * commands through a {@link SnapshotContext}, so they neither lock nor update the refs and keep
+     * seeing the commits they started with while the repository is pushed to. It must not be
+     * {@link GeoGIT#close() closed}.
+     */
+    public Optional<GeoGIT> getReadOnlyGeogit(Request request);
+
+}
@@ -6,8 +6,15 @@ package org.geogit.web.api;
 
 import java.util.UUID;
 
+import javax.annotation.Nullable;
+
 import org.geogit.api.Context;
+import org.geogit.api.DefaultProgressListener;
 import org.geogit.api.GeogitTransaction;
+import org.geogit.api.ObjectId;
+import org.geogit.api.ProgressListener;
+
+import com.google.common.base.CharMatcher;
 
 /**
  * An abstract command that allows WebAPICommands to support long transactions.
@@ -15,8 +22,13 @@ import org.geogit.api.GeogitTransaction;
 
 public abstract class AbstractWebAPICommand implements WebAPICommand {
 
+    private static final CharMatcher HEX_DIGITS = CharMatcher.inRange('0', '9')
+            .or(CharMatcher.inRange('a', 'f')).or(CharMatcher.inRange('A', 'F'));
+
     private UUID transactionId = null;
 
+    private ProgressListener progressListener = new DefaultProgressListener();
+
     /**
      * Accessor for the transactionId
      * 
@@ -37,6 +49,25 @@ public abstract class AbstractWebAPICommand implements WebAPICommand {
         }
     }
 
+    /**
+     * Accessor for the progressListener
+     * 
+     * @return the listener long running operations shall report their progress to
+     */
+    public ProgressListener getProgressListener() {
+        return progressListener;
+    }
+
+    /**
+     * Mutator for the progressListener
+     * 
+     * @param progressListener - the listener long running operations shall report their progress
+     *        to, e.g. the one of the job the command runs in
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
     /**
      * This function either builds a GeoGitTransaction to run commands off of if there is a
      * transactionId to build off of or the GeoGit commandLocator otherwise.
@@ -51,6 +82,26 @@ public abstract class AbstractWebAPICommand implements WebAPICommand {
         return context.getGeoGIT().getContext();
     }
 
+    /**
+     * Whether the response to this command only depends on content addressed objects, i.e. all the
+     * revisions it's given are object ids rather than refs, so that it never changes and can be
+     * cached by clients and the server.
+     * 
+     * @return {@code false}, to be overridden by the commands that can tell
+     */
+    public boolean isCacheable() {
+        return false;
+    }
+
+    /**
+     * @return whether {@code refSpec} is the full string representation of an object id, rather
+     *         than a ref name, an abbreviated id or an expression relative to a ref
+     */
+    protected static boolean isObjectId(@Nullable String refSpec) {
+        return refSpec != null && refSpec.length() == 2 * ObjectId.NUM_BYTES
+                && HEX_DIGITS.matchesAllOf(refSpec);
+    }
+
     public abstract void run(CommandContext context);
 
 }
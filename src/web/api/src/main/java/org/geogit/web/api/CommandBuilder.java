@@ -148,6 +148,8 @@ public class CommandBuilder {
         Status command = new Status();
         command.setLimit(parseInt(options, "limit", 50));
         command.setOffset(parseInt(options, "offset", 0));
+        command.setStagedToken(options.getFirstValue("stagedToken", null));
+        command.setUnstagedToken(options.getFirstValue("unstagedToken", null));
         return command;
     }
 
@@ -173,6 +175,7 @@ public class CommandBuilder {
         command.setCountChanges(Boolean.valueOf(options.getFirstValue("countChanges", "false")));
         command.setReturnRange(Boolean.valueOf(options.getFirstValue("returnRange", "false")));
         command.setSummary(Boolean.valueOf(options.getFirstValue("summary", "false")));
+        command.setToken(options.getFirstValue("token", null));
         return command;
     }
 
@@ -204,6 +207,8 @@ public class CommandBuilder {
         lsTree.setRecursive(Boolean.valueOf(options.getFirstValue("recursive", "false")));
         lsTree.setVerbose(Boolean.valueOf(options.getFirstValue("verbose", "false")));
         lsTree.setRefList(Arrays.asList(options.getValuesArray("path")));
+        lsTree.setElementsPerPage(parseInt(options, "show", -1));
+        lsTree.setToken(options.getFirstValue("token", null));
         return lsTree;
     }
 
@@ -236,6 +241,7 @@ public class CommandBuilder {
                 "showGeometryChanges", "false")));
         command.setPage(parseInt(options, "page", 0));
         command.setElementsPerPage(parseInt(options, "show", 30));
+        command.setToken(options.getFirstValue("token", null));
         return command;
     }
 
@@ -0,0 +1,248 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.web.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.annotation.Nullable;
+
+import org.geogit.api.ObjectId;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.collect.UnmodifiableIterator;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * An opaque token handed out to web API clients along with a page of results, allowing them to
+ * request the next page without the server having to recompute and discard all the previous ones.
+ * <p>
+ * A token records the two objects the results were computed from (for example the old and new
+ * trees of a diff), the filter the results were restricted to, the path of the last entry that
+ * was returned, which is enough to seek directly to the next entry since tree walks return entries
+ * in storage order, and the number of entries returned so far.
+ *
+ * @see CursorCache
+ */
+public class ContinuationToken {
+
+    private static final byte VERSION = 2;
+
+    private final String kind;
+
+    private final ObjectId left;
+
+    private final ObjectId right;
+
+    private final String filter;
+
+    private final String lastPath;
+
+    private final int position;
+
+    /**
+     * @param kind identifies what the token pages through, so that a token handed out by one
+     *        command is not accepted by another
+     * @param left the first object the results are computed from
+     * @param right the second object the results are computed from, {@link ObjectId#NULL} if
+     *        unused
+     * @param lastPath the path of the last returned entry, empty if unused
+     * @param position the number of entries returned so far
+     */
+    public ContinuationToken(String kind, ObjectId left, ObjectId right, String lastPath,
+            int position) {
+        this(kind, left, right, "", lastPath, position);
+    }
+
+    /**
+     * @param kind identifies what the token pages through, so that a token handed out by one
+     *        command is not accepted by another
+     * @param left the first object the results are computed from
+     * @param right the second object the results are computed from, {@link ObjectId#NULL} if
+     *        unused
+     * @param filter the filter the results are restricted to, empty if none, so that a token is
+     *        not used to resume differently filtered results
+     * @param lastPath the path of the last returned entry, empty if unused
+     * @param position the number of entries returned so far
+     */
+    public ContinuationToken(String kind, ObjectId left, ObjectId right, String filter,
+            String lastPath, int position) {
+        Preconditions.checkNotNull(kind);
+        Preconditions.checkNotNull(left);
+        Preconditions.checkNotNull(right);
+        Preconditions.checkNotNull(filter);
+        Preconditions.checkNotNull(lastPath);
+        this.kind = kind;
+        this.left = left;
+        this.right = right;
+        this.filter = filter;
+        this.lastPath = lastPath;
+        this.position = position;
+    }
+
+    public ObjectId left() {
+        return left;
+    }
+
+    public ObjectId right() {
+        return right;
+    }
+
+    public String filter() {
+        return filter;
+    }
+
+    public String lastPath() {
+        return lastPath;
+    }
+
+    public int position() {
+        return position;
+    }
+
+    /**
+     * @return the URL safe string representation of this token
+     */
+    public String encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(VERSION);
+            out.writeUTF(kind);
+            left.writeTo(out);
+            right.writeTo(out);
+            out.writeUTF(filter);
+            out.writeUTF(lastPath);
+            out.writeInt(position);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        return BaseEncoding.base64Url().omitPadding().encode(bytes.toByteArray());
+    }
+
+    /**
+     * Parses a token previously created by {@link #encode()} for unfiltered results.
+     *
+     * @param token the encoded token
+     * @param kind the kind of token expected
+     * @throws CommandSpecException if {@code token} is not a valid token of the given kind
+     */
+    public static ContinuationToken decode(String token, String kind) {
+        return decode(token, kind, null);
+    }
+
+    /**
+     * Parses a token previously created by {@link #encode()}.
+     *
+     * @param token the encoded token
+     * @param kind the kind of token expected
+     * @param filter the filter the results are restricted to, {@code null} or empty if none
+     * @throws CommandSpecException if {@code token} is not a valid token of the given kind, or was
+     *         handed out for results restricted to another filter
+     */
+    public static ContinuationToken decode(String token, String kind, @Nullable String filter) {
+        ContinuationToken decoded = parse(token, kind);
+        if (!decoded.filter.equals(Strings.nullToEmpty(filter))) {
+            throw new CommandSpecException(
+                    "Continuation token was handed out for a different filter");
+        }
+        return decoded;
+    }
+
+    private static ContinuationToken parse(String token, String kind) {
+        try {
+            byte[] bytes = BaseEncoding.base64Url().omitPadding().decode(token);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readByte() != VERSION || !kind.equals(in.readUTF())) {
+                throw new CommandSpecException("Invalid continuation token");
+            }
+            ObjectId left = ObjectId.readFrom(in);
+            ObjectId right = ObjectId.readFrom(in);
+            String filter = in.readUTF();
+            String lastPath = in.readUTF();
+            int position = in.readInt();
+            if (in.read() != -1 || position < 0) {
+                throw new CommandSpecException("Invalid continuation token");
+            }
+            return new ContinuationToken(kind, left, right, filter, lastPath, position);
+        } catch (IllegalArgumentException e) {
+            if (e instanceof CommandSpecException) {
+                throw e;
+            }
+            throw new CommandSpecException("Invalid continuation token");
+        } catch (IOException e) {
+            throw new CommandSpecException("Invalid continuation token");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+
+    /**
+     * Wraps an iterator keeping track of the last returned element and the number of returned
+     * elements, so that a token can be created for the position it was left at. Only
+     * {@link #next()} moves the position, so checking {@link #hasNext()} at the end of a page does
+     * not.
+     */
+    public static class Tracker<T> extends UnmodifiableIterator<T> {
+
+        private final Iterator<T> delegate;
+
+        private final Function<T, String> pathFunction;
+
+        private String lastPath;
+
+        private int position;
+
+        /**
+         * @param delegate the iterator to track
+         * @param pathFunction resolves the path to seek after for each element
+         * @param position the number of elements returned before {@code delegate}'s first one
+         */
+        public Tracker(Iterator<T> delegate, Function<T, String> pathFunction, int position) {
+            this.delegate = delegate;
+            this.pathFunction = pathFunction;
+            this.position = position;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public T next() {
+            T next = delegate.next();
+            lastPath = pathFunction.apply(next);
+            position++;
+            return next;
+        }
+
+        /**
+         * @return the path of the last returned element, or {@code null} if none was returned
+         */
+        @Nullable
+        public String lastPath() {
+            return lastPath;
+        }
+
+        /**
+         * @return the number of elements returned so far, including those returned before this
+         *         tracker was created
+         */
+        public int position() {
+            return position;
+        }
+    }
+}
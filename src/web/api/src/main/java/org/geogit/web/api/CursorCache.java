@@ -0,0 +1,151 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.web.api;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.geogit.api.Context;
+import org.geogit.api.SnapshotContext;
+import org.geogit.web.api.RepositoryLeases.Lease;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+/**
+ * A short lived cache of the live iterators behind the {@link ContinuationToken continuation
+ * tokens} handed out to clients, so that a client asking for the next page right away gets it
+ * straight from where the previous page left off.
+ * <p>
+ * A cached cursor can only be {@link #take taken} once. If it expired or was evicted, commands
+ * fall back to seeking to the position recorded in the token, so the cache is only an
+ * optimization. Its size can be set through the {@code geogit.web.cursorCacheSize} system property,
+ * {@code 0} disabling it.
+ * <p>
+ * A cached cursor holds a {@link RepositoryLeases lease} on its repository until it's taken,
+ * expires or is evicted, so the repository isn't closed under it.
+ */
+public class CursorCache {
+
+    private static final int MAX_SIZE = Integer.getInteger("geogit.web.cursorCacheSize", 64);
+
+    private static final Cache<Key, Entry> CURSORS = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SIZE).expireAfterAccess(2, TimeUnit.MINUTES)
+            .removalListener(new ReleaseOnRemoval()).build();
+
+    private CursorCache() {
+        // static access only
+    }
+
+    /**
+     * Caches the iterator the given token's next page shall be read from.
+     *
+     * @param context the context the iterator was created in
+     * @param token the token handed out to the client
+     * @param cursor the iterator, positioned right after the last returned element
+     */
+    public static void put(Context context, ContinuationToken token,
+            ContinuationToken.Tracker<?> cursor) {
+        if (MAX_SIZE > 0) {
+            CURSORS.put(new Key(context, token.encode()),
+                    new Entry(cursor, RepositoryLeases.acquire(context)));
+        }
+    }
+
+    /**
+     * Removes and returns the iterator cached for the given token, if any.
+     *
+     * @param context the context the command runs in; cursors created in another context are not
+     *        returned, but for those created in a {@link SnapshotContext} of the same repository
+     * @param token the token sent by the client
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    public static <T> ContinuationToken.Tracker<T> take(Context context, ContinuationToken token) {
+        Key key = new Key(context, token.encode());
+        Entry entry = CURSORS.asMap().remove(key);
+        return entry == null ? null : (ContinuationToken.Tracker<T>) entry.cursor;
+    }
+
+    /**
+     * Discards the iterators created against the given repository, for example before closing it.
+     *
+     * @param context the repository context, or a {@link SnapshotContext} of it
+     */
+    public static void invalidate(Context context) {
+        if (context instanceof SnapshotContext) {
+            context = ((SnapshotContext) context).getRepositoryContext();
+        }
+        // releases the leases of the expired cursors too
+        CURSORS.cleanUp();
+        for (Iterator<Key> it = CURSORS.asMap().keySet().iterator(); it.hasNext();) {
+            if (it.next().context == context) {
+                it.remove();
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private final ContinuationToken.Tracker<?> cursor;
+
+        private final Lease lease;
+
+        Entry(ContinuationToken.Tracker<?> cursor, Lease lease) {
+            this.cursor = cursor;
+            this.lease = lease;
+        }
+    }
+
+    /**
+     * Releases the lease of a cursor once it's taken, expired or evicted
+     */
+    private static class ReleaseOnRemoval implements RemovalListener<Key, Entry> {
+
+        @Override
+        public void onRemoval(RemovalNotification<Key, Entry> notification) {
+            Entry entry = notification.getValue();
+            if (entry != null) {
+                entry.lease.close();
+            }
+        }
+    }
+
+    private static class Key {
+
+        private final Context context;
+
+        private final String token;
+
+        Key(Context context, String token) {
+            // snapshots are taken per request, and a cursor keeps reading the commits it started
+            // with anyway
+            if (context instanceof SnapshotContext) {
+                context = ((SnapshotContext) context).getRepositoryContext();
+            }
+            this.context = context;
+            this.token = token;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return context == k.context && token.equals(k.token);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(System.identityHashCode(context), token);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.web.api;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
+
+import org.geogit.api.Context;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Keeps track of who is using which repository, so that a repository being evicted by the server
+ * isn't closed under the requests, background jobs and cached cursors still reading from it.
+ * <p>
+ * Each of those {@link #acquire acquires} a {@link Lease lease} on the repository for as long as
+ * it uses it, and whoever wants to close a repository asks for it to be
+ * {@link #closeWhenReleased closed when released}, which happens right away if nobody holds a
+ * lease on it, or as soon as the last lease is released otherwise.
+ * <p>
+ * Repositories are identified by their working directory, as the same repository may be reached
+ * through different {@link Context contexts}, like the snapshots read only requests run against.
+ */
+public class RepositoryLeases {
+
+    /**
+     * Guarded by the {@code RepositoryLeases} class lock
+     */
+    private static final Map<String, Entry> LEASES = Maps.newHashMap();
+
+    private RepositoryLeases() {
+        // static access only
+    }
+
+    /**
+     * A lease on a repository, preventing it from being closed until it's {@link #close()
+     * released}. Releasing a lease more than once has no effect.
+     */
+    public static class Lease implements Closeable {
+
+        private final String repository;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(String repository) {
+            this.repository = repository;
+        }
+
+        /**
+         * Releases the lease, closing the repository if it was waiting for this lease to be
+         * released.
+         */
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                release(repository);
+            }
+        }
+    }
+
+    private static class Entry {
+
+        int leases;
+
+        @Nullable
+        Runnable onRelease;
+    }
+
+    /**
+     * @return the key leases on the repository of the given context are tracked by
+     */
+    public static String key(Context context) {
+        File workingDir = context.platform().pwd();
+        return workingDir == null ? "" : workingDir.getAbsolutePath();
+    }
+
+    /**
+     * @param context the context of the repository to lease, or of a snapshot of it
+     * @return the lease, to be {@link Lease#close() released} once the repository isn't used
+     *         anymore
+     */
+    public static Lease acquire(Context context) {
+        return acquire(key(context));
+    }
+
+    /**
+     * @param repository the {@link #key(Context) key} of the repository to lease
+     * @return the lease, to be {@link Lease#close() released} once the repository isn't used
+     *         anymore
+     */
+    public static synchronized Lease acquire(String repository) {
+        Entry entry = LEASES.get(repository);
+        if (entry == null) {
+            entry = new Entry();
+            LEASES.put(repository, entry);
+        }
+        entry.leases++;
+        return new Lease(repository);
+    }
+
+    /**
+     * @return whether anybody holds a lease on the repository of the given context
+     */
+    public static synchronized boolean isLeased(Context context) {
+        Entry entry = LEASES.get(key(context));
+        return entry != null && entry.leases > 0;
+    }
+
+    /**
+     * Runs {@code close} right away if nobody holds a lease on the repository of the given
+     * context, or once the last lease on it is released otherwise. Only the last given
+     * {@code close} is run if this is called again before the repository is released.
+     *
+     * @param context the context of the repository to close
+     * @param close closes the repository
+     */
+    public static void closeWhenReleased(Context context, Runnable close) {
+        final String repository = key(context);
+        synchronized (RepositoryLeases.class) {
+            Entry entry = LEASES.get(repository);
+            if (entry != null && entry.leases > 0) {
+                entry.onRelease = close;
+                return;
+            }
+        }
+        close.run();
+    }
+
+    private static void release(String repository) {
+        Runnable close = null;
+        synchronized (RepositoryLeases.class) {
+            Entry entry = LEASES.get(repository);
+            if (entry == null) {
+                return;
+            }
+            entry.leases--;
+            if (entry.leases <= 0) {
+                LEASES.remove(repository);
+                close = entry.onRelease;
+            }
+        }
+        if (close != null) {
+            close.run();
+        }
+    }
+}
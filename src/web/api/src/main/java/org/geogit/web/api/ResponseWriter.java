@@ -4,7 +4,6 @@
  */
 package org.geogit.web.api;
 
-import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -77,6 +76,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTWriter;
 
 /**
  * Provides a wrapper for writing common GeoGit objects to a provided {@link XMLStreamWriter}.
@@ -85,6 +85,11 @@ public class ResponseWriter {
 
     protected final XMLStreamWriter out;
 
+    @Nullable
+    private final StreamingJSONWriter json;
+
+    private final WKTWriter wktWriter = new WKTWriter();
+
     /**
      * Constructs a new {code ResponseWriter} with the given {@link XMLStreamWriter}.
      * 
@@ -92,6 +97,7 @@ public class ResponseWriter {
      */
     public ResponseWriter(XMLStreamWriter out) {
         this.out = out;
+        this.json = out instanceof StreamingJSONWriter ? (StreamingJSONWriter) out : null;
         if (out instanceof AbstractXMLStreamWriter) {
             configureJSONOutput((AbstractXMLStreamWriter) out);
         }
@@ -176,6 +182,10 @@ public class ResponseWriter {
      * @throws XMLStreamException
      */
     public void writeElement(String element, @Nullable String content) throws XMLStreamException {
+        if (json != null) {
+            json.writeElement(element, content);
+            return;
+        }
         out.writeStartElement(element);
         if (content != null) {
             out.writeCharacters(content);
@@ -274,6 +284,17 @@ public class ResponseWriter {
         }
     }
 
+    /**
+     * Writes the token a client can use to request the page that follows the one just written.
+     * 
+     * @param name the element name
+     * @param token the continuation token
+     * @throws XMLStreamException
+     */
+    public void writeNextToken(String name, ContinuationToken token) throws XMLStreamException {
+        writeElement(name, token.encode());
+    }
+
     public void writeCommit(RevCommit commit, String tag, @Nullable Integer adds,
             @Nullable Integer modifies, @Nullable Integer removes) throws XMLStreamException {
         out.writeStartElement(tag);
@@ -520,12 +541,16 @@ public class ResponseWriter {
      * 
      * @param iter the iterator of {@link NodeRefs}
      * @param verbose if true, more detailed information about each node will be provided
+     * @param length the number of nodes to write, a negative value meaning all of them
      * @throws XMLStreamException
      */
-    public void writeLsTreeResponse(Iterator<NodeRef> iter, boolean verbose)
+    public void writeLsTreeResponse(Iterator<NodeRef> iter, boolean verbose, int length)
             throws XMLStreamException {
-
-        while (iter.hasNext()) {
+        if (length < 0) {
+            length = Integer.MAX_VALUE;
+        }
+        int counter = 0;
+        while (iter.hasNext() && counter < length) {
             NodeRef node = iter.next();
             out.writeStartElement("node");
             writeElement("path", node.path());
@@ -535,8 +560,11 @@ public class ResponseWriter {
                 writeElement("objectId", node.objectId().toString());
             }
             out.writeEndElement();
+            counter++;
+        }
+        if (iter.hasNext()) {
+            writeElement("nextPage", "true");
         }
-
     }
 
     /**
@@ -826,32 +854,10 @@ public class ResponseWriter {
                         if (feature.isPresent() && feature.get() instanceof RevFeature
                                 && type.isPresent() && type.get() instanceof RevFeatureType) {
                             RevFeatureType featureType = (RevFeatureType) type.get();
-                            Collection<PropertyDescriptor> attribs = featureType.type()
-                                    .getDescriptors();
-
-                            for (PropertyDescriptor attrib : attribs) {
-                                PropertyType attrType = attrib.getType();
-                                if (attrType instanceof GeometryType) {
-                                    GeometryType gt = (GeometryType) attrType;
-                                    CoordinateReferenceSystem crs = gt
-                                            .getCoordinateReferenceSystem();
-                                    if (crs != null) {
-                                        try {
-                                            crsCode = CRS.lookupIdentifier(Citations.EPSG, crs,
-                                                    false);
-                                        } catch (FactoryException e) {
-                                            crsCode = null;
-                                        }
-                                        if (crsCode != null) {
-                                            crsCode = "EPSG:" + crsCode;
-                                        }
-                                    }
-                                    break;
-                                }
-                            }
+                            FeatureBuilder builder = FeatureBuilder.forType(featureType);
+                            crsCode = builder.getCrsCode();
 
                             RevFeature revFeature = (RevFeature) feature.get();
-                            FeatureBuilder builder = new FeatureBuilder(featureType);
                             GeogitSimpleFeature simpleFeature = (GeogitSimpleFeature) builder
                                     .build(revFeature.getId().toString(), revFeature);
                             change = new GeometryChange(simpleFeature, input.changeType(), path,
@@ -872,7 +878,7 @@ public class ResponseWriter {
                 List<Object> attributes = feature.getAttributes();
                 for (Object attribute : attributes) {
                     if (attribute instanceof Geometry) {
-                        writeElement("geometry", ((Geometry) attribute).toText());
+                        writeElement("geometry", wktWriter.write((Geometry) attribute));
                         break;
                     }
                 }
@@ -951,32 +957,8 @@ public class ResponseWriter {
                         GeometryConflict conflict = null;
 
                         if (feature != null && type != null) {
-                            String crsCode = null;
-                            Collection<PropertyDescriptor> attribs = type.type().getDescriptors();
-
-                            for (PropertyDescriptor attrib : attribs) {
-                                PropertyType attrType = attrib.getType();
-                                if (attrType instanceof GeometryType) {
-                                    GeometryType gt = (GeometryType) attrType;
-                                    CoordinateReferenceSystem crs = gt
-                                            .getCoordinateReferenceSystem();
-
-                                    if (crs != null) {
-                                        try {
-                                            crsCode = CRS.lookupIdentifier(Citations.EPSG, crs,
-                                                    false);
-                                        } catch (FactoryException e) {
-                                            crsCode = null;
-                                        }
-                                        if (crsCode != null) {
-                                            crsCode = "EPSG:" + crsCode;
-                                        }
-                                    }
-                                    break;
-                                }
-                            }
-
-                            FeatureBuilder builder = new FeatureBuilder(type);
+                            FeatureBuilder builder = FeatureBuilder.forType(type);
+                            String crsCode = builder.getCrsCode();
                             GeogitSimpleFeature simpleFeature = (GeogitSimpleFeature) builder
                                     .build(feature.getId().toString(), feature);
                             Geometry geom = null;
@@ -1001,7 +983,7 @@ public class ResponseWriter {
                 writeElement("id", next.getConflict().getPath());
                 writeElement("ourvalue", next.getConflict().getOurs().toString());
                 writeElement("theirvalue", next.getConflict().getTheirs().toString());
-                writeElement("geometry", next.getGeometry().toText());
+                writeElement("geometry", wktWriter.write(next.getGeometry()));
                 if (next.getCRS() != null) {
                     writeElement("crs", next.getCRS());
                 }
@@ -1026,30 +1008,8 @@ public class ResponseWriter {
                         GeometryChange change = null;
                         RevFeature revFeature = RevFeatureBuilder.build(input.getFeature());
                         RevFeatureType featureType = input.getFeatureType();
-                        Collection<PropertyDescriptor> attribs = featureType.type()
-                                .getDescriptors();
-                        String crsCode = null;
-
-                        for (PropertyDescriptor attrib : attribs) {
-                            PropertyType attrType = attrib.getType();
-                            if (attrType instanceof GeometryType) {
-                                GeometryType gt = (GeometryType) attrType;
-                                CoordinateReferenceSystem crs = gt.getCoordinateReferenceSystem();
-                                if (crs != null) {
-                                    try {
-                                        crsCode = CRS.lookupIdentifier(Citations.EPSG, crs, false);
-                                    } catch (FactoryException e) {
-                                        crsCode = null;
-                                    }
-                                    if (crsCode != null) {
-                                        crsCode = "EPSG:" + crsCode;
-                                    }
-                                }
-                                break;
-                            }
-                        }
-
-                        FeatureBuilder builder = new FeatureBuilder(featureType);
+                        FeatureBuilder builder = FeatureBuilder.forType(featureType);
+                        String crsCode = builder.getCrsCode();
                         GeogitSimpleFeature simpleFeature = (GeogitSimpleFeature) builder.build(
                                 revFeature.getId().toString(), revFeature);
                         change = new GeometryChange(simpleFeature, ChangeType.MODIFIED, input
@@ -1068,7 +1028,7 @@ public class ResponseWriter {
                 List<Object> attributes = feature.getAttributes();
                 for (Object attribute : attributes) {
                     if (attribute instanceof Geometry) {
-                        writeElement("geometry", ((Geometry) attribute).toText());
+                        writeElement("geometry", wktWriter.write((Geometry) attribute));
                         break;
                     }
                 }
@@ -0,0 +1,546 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.web.api;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * An {@link XMLStreamWriter} that writes the events it receives straight out as JSON, following
+ * the same mapping as Jettison's {@code MappedXMLStreamWriter}: elements become object fields,
+ * text only elements become primitive values and repeated sibling elements become arrays.
+ * <p>
+ * Unlike Jettison, which builds the whole document as a tree of {@code JSONObject}s and writes it
+ * when the document ends, this writer only holds on to the last child of each open element, until
+ * the next sibling tells whether it's part of an array or not. Elements in an array and the root
+ * element are written as they come, through a fixed size buffer, so memory stays flat no matter
+ * how many features, commits or diff entries a response has.
+ * <p>
+ * Repeated elements are only merged into an array when they are consecutive, which is how
+ * {@link ResponseWriter} writes all of its lists. Text is only supported in elements that have
+ * neither attributes nor child elements, which is all {@link ResponseWriter} writes too, an
+ * {@link UnsupportedOperationException} being thrown otherwise rather than dropping the text.
+ */
+public class StreamingJSONWriter implements XMLStreamWriter {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final Writer out;
+
+    private final char[] chunk = new char[CHUNK_SIZE];
+
+    private int chunkLength;
+
+    private Frame[] stack = new Frame[8];
+
+    private int depth = -1;
+
+    /**
+     * Constructs a new {@code StreamingJSONWriter} that writes to the given writer.
+     *
+     * @param out the writer to write the JSON document to
+     */
+    public StreamingJSONWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * An open element. Its value is written to {@code target}, or straight to the output if it's
+     * {@code null}.
+     */
+    private static class Frame {
+
+        String name;
+
+        @Nullable
+        StringBuilder target;
+
+        boolean object;
+
+        int fields;
+
+        @Nullable
+        String text;
+
+        /**
+         * The last child element, whose value is held in {@link #pendingValue} until it is known
+         * whether it's alone or the first one of an array
+         */
+        @Nullable
+        String pendingName;
+
+        final StringBuilder pendingValue = new StringBuilder();
+
+        /**
+         * The name of the child elements the array that's currently open holds
+         */
+        @Nullable
+        String arrayName;
+
+        void reset(String name, @Nullable StringBuilder target) {
+            this.name = name;
+            this.target = target;
+            this.object = false;
+            this.fields = 0;
+            this.text = null;
+            this.pendingName = null;
+            this.pendingValue.setLength(0);
+            this.arrayName = null;
+        }
+    }
+
+    private Frame push(String name, @Nullable StringBuilder target) {
+        depth++;
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        Frame frame = stack[depth];
+        if (frame == null) {
+            frame = stack[depth] = new Frame();
+        }
+        frame.reset(name, target);
+        return frame;
+    }
+
+    private Frame current() throws XMLStreamException {
+        if (depth < 0) {
+            throw new XMLStreamException("No open element, start the document first");
+        }
+        return stack[depth];
+    }
+
+    /**
+     * Sets up the parent of a new child element and returns where the child value shall be
+     * written to.
+     */
+    @Nullable
+    private StringBuilder startChild(String name) throws XMLStreamException {
+        Frame parent = current();
+        if (depth == 0) {
+            // the root element, there can only be one so it doesn't need to wait for siblings
+            appendField(parent, name);
+            return null;
+        }
+        openObject(parent);
+        if (name.equals(parent.arrayName)) {
+            append(parent.target, ',');
+            return parent.target;
+        }
+        if (name.equals(parent.pendingName)) {
+            // the second one, turn the pending one into the first element of an array
+            appendField(parent, name);
+            append(parent.target, '[');
+            append(parent.target, parent.pendingValue);
+            append(parent.target, ',');
+            parent.pendingName = null;
+            parent.pendingValue.setLength(0);
+            parent.arrayName = name;
+            return parent.target;
+        }
+        flushPending(parent);
+        parent.pendingName = name;
+        return parent.pendingValue;
+    }
+
+    private void openObject(Frame frame) throws XMLStreamException {
+        if (!frame.object) {
+            frame.object = true;
+            append(frame.target, '{');
+        }
+    }
+
+    private void flushPending(Frame frame) throws XMLStreamException {
+        if (frame.arrayName != null) {
+            append(frame.target, ']');
+            frame.arrayName = null;
+        }
+        if (frame.pendingName != null) {
+            appendField(frame, frame.pendingName);
+            append(frame.target, frame.pendingValue);
+            frame.pendingName = null;
+            frame.pendingValue.setLength(0);
+        }
+    }
+
+    private void appendField(Frame frame, String name) throws XMLStreamException {
+        if (frame.fields++ > 0) {
+            append(frame.target, ',');
+        }
+        appendString(frame.target, name);
+        append(frame.target, ':');
+    }
+
+    /**
+     * Writes the given element and its text content in one go, the same as calling
+     * {@link #writeStartElement(String)}, {@link #writeCharacters(String)} and
+     * {@link #writeEndElement()} but without opening a new element on the stack.
+     *
+     * @param name the element name
+     * @param content the element text, or {@code null} for an empty element
+     * @throws XMLStreamException
+     */
+    public void writeElement(String name, @Nullable String content) throws XMLStreamException {
+        StringBuilder target = startChild(name);
+        appendValue(target, content);
+    }
+
+    private void appendValue(@Nullable StringBuilder target, @Nullable String text)
+            throws XMLStreamException {
+        if (text == null) {
+            append(target, "\"\"");
+        } else if (isPrimitive(text)) {
+            append(target, text, 0, primitiveLength(text));
+        } else {
+            appendString(target, text);
+        }
+    }
+
+    /**
+     * Whether Jettison would write the given text unquoted, that is if it reads back as exactly
+     * the same long, finite double or boolean.
+     */
+    private static boolean isPrimitive(String text) {
+        if (text.isEmpty()) {
+            return false;
+        }
+        char c = text.charAt(0);
+        if (c == 't' || c == 'f') {
+            return "true".equals(text) || "false".equals(text);
+        }
+        if (!(c == '-' || (c >= '0' && c <= '9'))) {
+            return false;
+        }
+        try {
+            return Long.valueOf(text).toString().equals(text);
+        } catch (NumberFormatException notLong) {
+            try {
+                Double value = Double.valueOf(text);
+                // JSON has no literals for NaN and infinity
+                return !value.isInfinite() && !value.isNaN() && value.toString().equals(text);
+            } catch (NumberFormatException notNumber) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return the length of the given primitive as Jettison writes it, which drops the trailing
+     *         zeros of decimals that have no exponent, so {@code 1.0} is written as {@code 1}
+     */
+    private static int primitiveLength(String text) {
+        int length = text.length();
+        if (text.indexOf('.') < 0 || text.indexOf('E') >= 0) {
+            return length;
+        }
+        while (text.charAt(length - 1) == '0') {
+            length--;
+        }
+        if (text.charAt(length - 1) == '.') {
+            length--;
+        }
+        return length;
+    }
+
+    private void appendString(@Nullable StringBuilder target, String s)
+            throws XMLStreamException {
+        append(target, '"');
+        final int length = s.length();
+        int from = 0;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            String escape;
+            switch (c) {
+            case '"':
+                escape = "\\\"";
+                break;
+            case '\\':
+                escape = "\\\\";
+                break;
+            case '\n':
+                escape = "\\n";
+                break;
+            case '\r':
+                escape = "\\r";
+                break;
+            case '\t':
+                escape = "\\t";
+                break;
+            case '\b':
+                escape = "\\b";
+                break;
+            case '\f':
+                escape = "\\f";
+                break;
+            case '/':
+                escape = i > 0 && s.charAt(i - 1) == '<' ? "\\/" : null;
+                break;
+            default:
+                escape = c < ' ' ? String.format("\\u%04x", (int) c) : null;
+            }
+            if (escape != null) {
+                append(target, s, from, i);
+                append(target, escape);
+                from = i + 1;
+            }
+        }
+        append(target, s, from, length);
+        append(target, '"');
+    }
+
+    private void append(@Nullable StringBuilder target, char c) throws XMLStreamException {
+        if (target != null) {
+            target.append(c);
+            return;
+        }
+        if (chunkLength == CHUNK_SIZE) {
+            writeChunk();
+        }
+        chunk[chunkLength++] = c;
+    }
+
+    private void append(@Nullable StringBuilder target, CharSequence s) throws XMLStreamException {
+        append(target, s, 0, s.length());
+    }
+
+    private void append(@Nullable StringBuilder target, CharSequence s, int from, int to)
+            throws XMLStreamException {
+        if (target != null) {
+            target.append(s, from, to);
+            return;
+        }
+        while (from < to) {
+            if (chunkLength == CHUNK_SIZE) {
+                writeChunk();
+            }
+            int count = Math.min(to - from, CHUNK_SIZE - chunkLength);
+            if (s instanceof String) {
+                ((String) s).getChars(from, from + count, chunk, chunkLength);
+            } else if (s instanceof StringBuilder) {
+                ((StringBuilder) s).getChars(from, from + count, chunk, chunkLength);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    chunk[chunkLength + i] = s.charAt(from + i);
+                }
+            }
+            chunkLength += count;
+            from += count;
+        }
+    }
+
+    private void writeChunk() throws XMLStreamException {
+        try {
+            out.write(chunk, 0, chunkLength);
+        } catch (IOException e) {
+            throw new XMLStreamException(e);
+        }
+        chunkLength = 0;
+    }
+
+    @Override
+    public void writeStartDocument() throws XMLStreamException {
+        push(null, null);
+        append(null, '{');
+    }
+
+    @Override
+    public void writeStartDocument(String version) throws XMLStreamException {
+        writeStartDocument();
+    }
+
+    @Override
+    public void writeStartDocument(String encoding, String version) throws XMLStreamException {
+        writeStartDocument();
+    }
+
+    @Override
+    public void writeEndDocument() throws XMLStreamException {
+        while (depth > 0) {
+            writeEndElement();
+        }
+        if (depth == 0) {
+            append(null, '}');
+            depth--;
+        }
+        flush();
+    }
+
+    @Override
+    public void writeStartElement(String localName) throws XMLStreamException {
+        StringBuilder target = startChild(localName);
+        push(localName, target);
+    }
+
+    @Override
+    public void writeStartElement(String namespaceURI, String localName)
+            throws XMLStreamException {
+        writeStartElement(localName);
+    }
+
+    @Override
+    public void writeStartElement(String prefix, String localName, String namespaceURI)
+            throws XMLStreamException {
+        writeStartElement(localName);
+    }
+
+    @Override
+    public void writeEmptyElement(String localName) throws XMLStreamException {
+        writeElement(localName, null);
+    }
+
+    @Override
+    public void writeEmptyElement(String namespaceURI, String localName)
+            throws XMLStreamException {
+        writeElement(localName, null);
+    }
+
+    @Override
+    public void writeEmptyElement(String prefix, String localName, String namespaceURI)
+            throws XMLStreamException {
+        writeElement(localName, null);
+    }
+
+    @Override
+    public void writeEndElement() throws XMLStreamException {
+        Frame frame = current();
+        if (depth == 0) {
+            throw new XMLStreamException("No open element to end");
+        }
+        if (frame.object) {
+            if (frame.text != null) {
+                throw new UnsupportedOperationException("Element " + frame.name
+                        + " has both text and attributes or child elements");
+            }
+            flushPending(frame);
+            append(frame.target, '}');
+        } else {
+            appendValue(frame.target, frame.text);
+        }
+        depth--;
+    }
+
+    @Override
+    public void writeAttribute(String localName, String value) throws XMLStreamException {
+        Frame frame = current();
+        openObject(frame);
+        flushPending(frame);
+        appendField(frame, "@" + localName);
+        appendValue(frame.target, value);
+    }
+
+    @Override
+    public void writeAttribute(String prefix, String namespaceURI, String localName, String value)
+            throws XMLStreamException {
+        writeAttribute(localName, value);
+    }
+
+    @Override
+    public void writeAttribute(String namespaceURI, String localName, String value)
+            throws XMLStreamException {
+        writeAttribute(localName, value);
+    }
+
+    @Override
+    public void writeCharacters(String text) throws XMLStreamException {
+        Frame frame = current();
+        frame.text = frame.text == null ? text : frame.text + text;
+    }
+
+    @Override
+    public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+        writeCharacters(new String(text, start, len));
+    }
+
+    @Override
+    public void writeCData(String data) throws XMLStreamException {
+        writeCharacters(data);
+    }
+
+    @Override
+    public void writeNamespace(String prefix, String namespaceURI) throws XMLStreamException {
+        // namespaces are not mapped
+    }
+
+    @Override
+    public void writeDefaultNamespace(String namespaceURI) throws XMLStreamException {
+        // namespaces are not mapped
+    }
+
+    @Override
+    public void writeComment(String data) throws XMLStreamException {
+        // JSON has no comments
+    }
+
+    @Override
+    public void writeProcessingInstruction(String target) throws XMLStreamException {
+        // nothing to map it to
+    }
+
+    @Override
+    public void writeProcessingInstruction(String target, String data)
+            throws XMLStreamException {
+        // nothing to map it to
+    }
+
+    @Override
+    public void writeDTD(String dtd) throws XMLStreamException {
+        // nothing to map it to
+    }
+
+    @Override
+    public void writeEntityRef(String name) throws XMLStreamException {
+        // nothing to map it to
+    }
+
+    @Override
+    public String getPrefix(String uri) throws XMLStreamException {
+        return null;
+    }
+
+    @Override
+    public void setPrefix(String prefix, String uri) throws XMLStreamException {
+        // namespaces are not mapped
+    }
+
+    @Override
+    public void setDefaultNamespace(String uri) throws XMLStreamException {
+        // namespaces are not mapped
+    }
+
+    @Override
+    public void setNamespaceContext(NamespaceContext context) throws XMLStreamException {
+        // namespaces are not mapped
+    }
+
+    @Override
+    public NamespaceContext getNamespaceContext() {
+        return null;
+    }
+
+    @Override
+    public Object getProperty(String name) throws IllegalArgumentException {
+        throw new IllegalArgumentException("Unsupported property: " + name);
+    }
+
+    @Override
+    public void flush() throws XMLStreamException {
+        writeChunk();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new XMLStreamException(e);
+        }
+    }
+
+    @Override
+    public void close() throws XMLStreamException {
+        flush();
+    }
+}
@@ -16,6 +16,7 @@ import org.geogit.web.api.AbstractWebAPICommand;
 import org.geogit.web.api.CommandContext;
 import org.geogit.web.api.CommandResponse;
 import org.geogit.web.api.CommandSpecException;
+import org.geogit.web.api.ReadOnly;
 import org.geogit.web.api.ResponseWriter;
 
 import com.google.common.base.Optional;
@@ -26,6 +27,7 @@ import com.google.common.base.Optional;
  * Web interface for {@link BlameOp}, {@link BlameReport}
  */
 
+@ReadOnly
 public class BlameWebOp extends AbstractWebAPICommand {
 
     private String path;
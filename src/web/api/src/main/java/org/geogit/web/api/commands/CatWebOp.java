@@ -16,6 +16,7 @@ import org.geogit.web.api.AbstractWebAPICommand;
 import org.geogit.web.api.CommandContext;
 import org.geogit.web.api.CommandResponse;
 import org.geogit.web.api.CommandSpecException;
+import org.geogit.web.api.ReadOnly;
 import org.geogit.web.api.ResponseWriter;
 
 import com.google.common.base.Preconditions;
@@ -26,6 +27,7 @@ import com.google.common.base.Preconditions;
  * Note: This class does not use the internal CatObject implementation.
  */
 
+@ReadOnly
 public class CatWebOp extends AbstractWebAPICommand {
 
     private ObjectId object;
@@ -39,6 +41,14 @@ public class CatWebOp extends AbstractWebAPICommand {
         this.object = object;
     }
 
+    /**
+     * @return {@code true}, objects never change
+     */
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
     /**
      * Runs the command and builds the appropriate response
      * 
@@ -4,15 +4,16 @@
  */
 package org.geogit.web.api.commands;
 
-import java.util.Iterator;
-
 import org.geogit.api.Context;
+import org.geogit.api.ObjectId;
 import org.geogit.api.plumbing.diff.DiffEntry;
 import org.geogit.api.porcelain.DiffOp;
 import org.geogit.web.api.AbstractWebAPICommand;
 import org.geogit.web.api.CommandContext;
 import org.geogit.web.api.CommandResponse;
 import org.geogit.web.api.CommandSpecException;
+import org.geogit.web.api.ContinuationToken;
+import org.geogit.web.api.ReadOnly;
 import org.geogit.web.api.ResponseWriter;
 
 /**
@@ -21,6 +22,7 @@ import org.geogit.web.api.ResponseWriter;
  * Web interface for {@link DiffOp}
  */
 
+@ReadOnly
 public class Diff extends AbstractWebAPICommand {
     private String oldRefSpec;
 
@@ -34,6 +36,8 @@ public class Diff extends AbstractWebAPICommand {
 
     private int elementsPerPage;
 
+    private String token;
+
     /**
      * Mutator for the oldRefSpec variable
      * 
@@ -88,6 +92,25 @@ public class Diff extends AbstractWebAPICommand {
         this.elementsPerPage = elementsPerPage;
     }
 
+    /**
+     * Mutator for the token variable
+     * 
+     * @param token - a continuation token returned with a previous page, if given the page number
+     *        is ignored and the diff resumes right after the last entry of that page
+     */
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    /**
+     * @return whether both sides of the diff are given by their object ids, or by a continuation
+     *         token, which records the ids of the trees being compared
+     */
+    @Override
+    public boolean isCacheable() {
+        return token != null || (isObjectId(oldRefSpec) && isObjectId(newRefSpec));
+    }
+
     /**
      * Runs the command and builds the appropriate response
      * 
@@ -97,24 +120,38 @@ public class Diff extends AbstractWebAPICommand {
      */
     @Override
     public void run(CommandContext context) {
-        if (oldRefSpec == null || oldRefSpec.trim().isEmpty()) {
+        if (token == null && (oldRefSpec == null || oldRefSpec.trim().isEmpty())) {
             throw new CommandSpecException("No old ref spec");
         }
 
         final Context geogit = this.getCommandLocator(context);
 
-        final Iterator<DiffEntry> diff = geogit.command(DiffOp.class).setOldVersion(oldRefSpec)
-                .setNewVersion(newRefSpec).setFilter(pathFilter).call();
+        final DiffPager pager;
+        if (token == null) {
+            ObjectId oldTreeId = DiffPager.resolveTree(geogit, oldRefSpec);
+            ObjectId newTreeId;
+            if (newRefSpec == null) {
+                newTreeId = DiffPager.treeId(geogit.workingTree().getTree());
+            } else {
+                newTreeId = DiffPager.resolveTree(geogit, newRefSpec);
+            }
+            pager = new DiffPager("diff", oldTreeId, newTreeId, pathFilter);
+        } else {
+            pager = new DiffPager("diff", token, pathFilter);
+        }
+        final ContinuationToken.Tracker<DiffEntry> diff = pager.open(geogit, page
+                * elementsPerPage);
 
         context.setResponseContent(new CommandResponse() {
             @Override
             public void write(ResponseWriter out) throws Exception {
                 out.start();
                 if (showGeometryChanges) {
-                    out.writeGeometryChanges(geogit, diff, page, elementsPerPage);
+                    out.writeGeometryChanges(geogit, diff, 0, elementsPerPage);
                 } else {
-                    out.writeDiffEntries("diff", page * elementsPerPage, elementsPerPage, diff);
+                    out.writeDiffEntries("diff", 0, elementsPerPage, diff);
                 }
+                pager.writeNextToken(out, "nextToken", geogit, diff);
                 out.finish();
             }
         });
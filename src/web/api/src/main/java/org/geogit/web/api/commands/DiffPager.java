@@ -0,0 +1,146 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.web.api.commands;
+
+import java.util.Iterator;
+
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLStreamException;
+
+import org.geogit.api.Context;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevTree;
+import org.geogit.api.plumbing.DiffTree;
+import org.geogit.api.plumbing.ResolveTreeish;
+import org.geogit.api.plumbing.diff.DiffEntry;
+import org.geogit.web.api.CommandSpecException;
+import org.geogit.web.api.ContinuationToken;
+import org.geogit.web.api.CursorCache;
+import org.geogit.web.api.ResponseWriter;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Strings;
+import com.google.common.collect.Iterators;
+
+/**
+ * Pages through the diff between two trees for the commands that report diffs, handing out
+ * {@link ContinuationToken continuation tokens} so that the next page resumes right after the last
+ * returned entry instead of walking the diff from the start again.
+ */
+class DiffPager {
+
+    private static final Function<DiffEntry, String> PATH = new Function<DiffEntry, String>() {
+        @Override
+        public String apply(DiffEntry entry) {
+            return entry.newPath() == null ? entry.oldPath() : entry.newPath();
+        }
+    };
+
+    private final String kind;
+
+    private final ObjectId oldTreeId;
+
+    private final ObjectId newTreeId;
+
+    @Nullable
+    private final String pathFilter;
+
+    @Nullable
+    private final ContinuationToken resumeToken;
+
+    /**
+     * Creates a pager for the diff between the given trees.
+     *
+     * @param pathFilter the path the diff is restricted to, or {@code null}
+     */
+    DiffPager(String kind, ObjectId oldTreeId, ObjectId newTreeId, @Nullable String pathFilter) {
+        this.kind = kind;
+        this.oldTreeId = oldTreeId;
+        this.newTreeId = newTreeId;
+        this.pathFilter = pathFilter;
+        this.resumeToken = null;
+    }
+
+    /**
+     * Creates a pager that resumes the diff the given token was handed out for.
+     *
+     * @param pathFilter the path the diff is restricted to, or {@code null}
+     * @throws CommandSpecException if the token is invalid or was handed out for a diff
+     *         restricted to another path
+     */
+    DiffPager(String kind, String token, @Nullable String pathFilter) {
+        this.kind = kind;
+        this.resumeToken = ContinuationToken.decode(token, kind, pathFilter);
+        this.oldTreeId = resumeToken.left();
+        this.newTreeId = resumeToken.right();
+        this.pathFilter = pathFilter;
+    }
+
+    /**
+     * @param skip the number of entries to skip when not resuming from a token
+     * @return the diff entries for the page, tracked so that {@link #writeNextToken} knows where
+     *         the page ended
+     */
+    ContinuationToken.Tracker<DiffEntry> open(Context geogit, int skip) {
+        if (resumeToken != null) {
+            ContinuationToken.Tracker<DiffEntry> cursor = CursorCache.take(geogit, resumeToken);
+            if (cursor != null) {
+                return cursor;
+            }
+        }
+        // the trees are pinned to their ids so that all the pages come from the same diff
+        Iterator<DiffEntry> entries = geogit.command(DiffTree.class).setOldTree(oldTreeId)
+                .setNewTree(newTreeId).setFilterPath(pathFilter)
+                .setResumeAfter(resumeToken == null ? null : resumeToken.lastPath()).call();
+        final int position;
+        if (resumeToken == null) {
+            position = Iterators.advance(entries, skip);
+        } else {
+            position = resumeToken.position();
+        }
+        return new ContinuationToken.Tracker<DiffEntry>(entries, PATH, position);
+    }
+
+    /**
+     * Writes the token for the page following the one {@code diff} was just used to write, if
+     * there are more entries, and keeps {@code diff} around for it.
+     * 
+     * @param name the name of the token element
+     */
+    void writeNextToken(ResponseWriter out, String name, Context geogit,
+            ContinuationToken.Tracker<DiffEntry> diff) throws XMLStreamException {
+        if (diff.hasNext() && diff.lastPath() != null) {
+            ContinuationToken next = new ContinuationToken(kind, oldTreeId, newTreeId,
+                    Strings.nullToEmpty(pathFilter), diff.lastPath(), diff.position());
+            CursorCache.put(geogit, next, diff);
+            out.writeNextToken(name, next);
+        }
+    }
+
+    /**
+     * @return the id of the given tree, {@link ObjectId#NULL} for an empty tree as it may have
+     *         never been saved
+     */
+    static ObjectId treeId(RevTree tree) {
+        return tree.isEmpty() ? ObjectId.NULL : tree.getId();
+    }
+
+    /**
+     * @return the id of the tree {@code refSpec} resolves to
+     * @throws CommandSpecException if it does not resolve to a tree
+     */
+    static ObjectId resolveTree(Context geogit, String refSpec) {
+        if (ObjectId.NULL.toString().equals(refSpec)) {
+            return ObjectId.NULL;
+        }
+        Optional<ObjectId> treeId = geogit.command(ResolveTreeish.class).setTreeish(refSpec)
+                .call();
+        if (!treeId.isPresent()) {
+            throw new CommandSpecException("'" + refSpec + "' did not resolve to a tree");
+        }
+        return treeId.get();
+    }
+}
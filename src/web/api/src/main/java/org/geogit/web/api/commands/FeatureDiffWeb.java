@@ -25,6 +25,7 @@ import org.geogit.web.api.AbstractWebAPICommand;
 import org.geogit.web.api.CommandContext;
 import org.geogit.web.api.CommandResponse;
 import org.geogit.web.api.CommandSpecException;
+import org.geogit.web.api.ReadOnly;
 import org.geogit.web.api.ResponseWriter;
 import org.opengis.feature.type.PropertyDescriptor;
 
@@ -40,6 +41,7 @@ import com.vividsolutions.jts.geom.Geometry;
  * Web interface for {@link FeatureDiff}
  */
 
+@ReadOnly
 public class FeatureDiffWeb extends AbstractWebAPICommand {
 
     private String path;
@@ -68,6 +68,7 @@ public class FetchWebOp extends AbstractWebAPICommand {
         FetchOp command = geogit.command(FetchOp.class);
 
         command.addRemote(remote);
+        command.setProgressListener(getProgressListener());
 
         try {
             final FetchResult result = command.setAll(fetchAll).setPrune(prune).call();
@@ -14,6 +14,7 @@ import org.geogit.web.api.AbstractWebAPICommand;
 import org.geogit.web.api.CommandContext;
 import org.geogit.web.api.CommandResponse;
 import org.geogit.web.api.CommandSpecException;
+import org.geogit.web.api.ReadOnly;
 import org.geogit.web.api.ResponseWriter;
 
 import com.google.common.collect.Iterators;
@@ -24,6 +25,7 @@ import com.google.common.collect.Lists;
  * 
  */
 
+@ReadOnly
 public class GetCommitGraph extends AbstractWebAPICommand {
 
     private String commitId;
@@ -13,10 +13,13 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 
+import javax.xml.stream.XMLStreamException;
+
 import org.geogit.api.Context;
 import org.geogit.api.GeoGIT;
 import org.geogit.api.NodeRef;
 import org.geogit.api.ObjectId;
+import org.geogit.api.Ref;
 import org.geogit.api.RevCommit;
 import org.geogit.api.RevFeature;
 import org.geogit.api.RevFeatureType;
@@ -33,21 +36,27 @@ import org.geogit.web.api.AbstractWebAPICommand;
 import org.geogit.web.api.CommandContext;
 import org.geogit.web.api.CommandResponse;
 import org.geogit.web.api.CommandSpecException;
+import org.geogit.web.api.ContinuationToken;
+import org.geogit.web.api.CursorCache;
+import org.geogit.web.api.ReadOnly;
 import org.geogit.web.api.ResponseWriter;
 import org.geogit.web.api.StreamResponse;
 import org.geotools.util.Range;
 import org.opengis.feature.type.PropertyDescriptor;
 
 import com.google.common.base.Function;
+import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 
 /**
  * Interface for the Log operation in GeoGit.
  * 
  * Web interface for {@link LogOp}
  */
+@ReadOnly
 public class Log extends AbstractWebAPICommand {
 
     Integer skip;
@@ -76,6 +85,8 @@ public class Log extends AbstractWebAPICommand {
 
     boolean summary = false;
 
+    String token;
+
     /**
      * Mutator for the limit variable
      * 
@@ -195,6 +206,27 @@ public class Log extends AbstractWebAPICommand {
         this.returnRange = returnRange;
     }
 
+    /**
+     * Mutator for the token variable
+     * 
+     * @param token - a continuation token returned with a previous page, if given the page number
+     *        is ignored and the log resumes right after the last commit of that page
+     */
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    /**
+     * @return whether the range of the log is given by object ids, or by a continuation token,
+     *         which records the id of the newest commit of the log, and not by time, which may be
+     *         relative to now; the summary depends on the working tree so it's never cacheable
+     */
+    @Override
+    public boolean isCacheable() {
+        return (token != null || isObjectId(until)) && (since == null || isObjectId(since))
+                && sinceTime == null && untilTime == null && !summary;
+    }
+
     /**
      * Runs the command and builds the appropriate response
      * 
@@ -208,13 +240,6 @@ public class Log extends AbstractWebAPICommand {
 
         LogOp op = geogit.command(LogOp.class).setFirstParentOnly(firstParentOnly);
 
-        if (skip != null) {
-            op.setSkip(skip.intValue());
-        }
-        if (limit != null) {
-            op.setLimit(limit.intValue());
-        }
-
         if (this.sinceTime != null || this.untilTime != null) {
             Date since = new Date(0);
             Date until = new Date();
@@ -235,11 +260,13 @@ public class Log extends AbstractWebAPICommand {
             Preconditions.checkArgument(since.isPresent(), "Object not found '%s'", this.since);
             op.setSince(since.get());
         }
+        ObjectId untilId = null;
         if (this.until != null) {
             Optional<ObjectId> until;
             until = geogit.command(RevParse.class).setRefSpec(this.until).call();
             Preconditions.checkArgument(until.isPresent(), "Object not found '%s'", this.until);
-            op.setUntil(until.get());
+            untilId = until.get();
+            op.setUntil(untilId);
         }
         if (paths != null && !paths.isEmpty()) {
             for (String path : paths) {
@@ -247,9 +274,35 @@ public class Log extends AbstractWebAPICommand {
             }
         }
 
-        final Iterator<RevCommit> log = op.call();
-
-        Iterators.advance(log, page * elementsPerPage);
+        final ContinuationToken resumeToken = token == null ? null : ContinuationToken.decode(
+                token, "log", tokenFilter());
+        ContinuationToken.Tracker<RevCommit> cursor = null;
+        if (resumeToken != null) {
+            cursor = CursorCache.take(geogit, resumeToken);
+        }
+        final ObjectId newestCommitId;
+        if (resumeToken != null) {
+            newestCommitId = resumeToken.left();
+        } else if (untilId != null) {
+            newestCommitId = untilId;
+        } else {
+            newestCommitId = geogit.command(RevParse.class).setRefSpec(Ref.HEAD).call()
+                    .or(ObjectId.NULL);
+        }
+        if (cursor == null) {
+            Iterator<RevCommit> commits;
+            int position;
+            if (resumeToken == null) {
+                setSkipAndLimit(op, skip, limit);
+                commits = op.call();
+                position = Iterators.advance(commits, page * elementsPerPage);
+            } else {
+                commits = resume(geogit, op, resumeToken);
+                position = resumeToken.position();
+            }
+            cursor = new ContinuationToken.Tracker<RevCommit>(commits, COMMIT_ID, position);
+        }
+        final ContinuationToken.Tracker<RevCommit> log = cursor;
 
         if (countChanges) {
             final String pathFilter;
@@ -299,6 +352,7 @@ public class Log extends AbstractWebAPICommand {
                 public void write(ResponseWriter out) throws Exception {
                     out.start();
                     out.writeCommitsWithChangeCounts(summarizedLog, elementsPerPage);
+                    writeNextToken(out, geogit, newestCommitId, log);
                     out.finish();
                 }
             });
@@ -322,6 +376,9 @@ public class Log extends AbstractWebAPICommand {
                 public void write(ResponseWriter out) throws Exception {
                     out.start();
                     out.writeCommits(log, elementsPerPage, rangeLog);
+                    if (!rangeLog) {
+                        writeNextToken(out, geogit, newestCommitId, log);
+                    }
                     out.finish();
                 }
             });
@@ -329,6 +386,92 @@ public class Log extends AbstractWebAPICommand {
 
     }
 
+    /**
+     * Recreates the log a token was handed out for, positioned right after the last commit that
+     * was returned. Following only first parents, the log can start right at that commit's
+     * parent, otherwise it has to be walked again from the newest commit.
+     */
+    private Iterator<RevCommit> resume(Context geogit, LogOp op, ContinuationToken resumeToken) {
+        final int position = resumeToken.position();
+        Integer remaining = null;
+        if (limit != null) {
+            remaining = Integer.valueOf(limit.intValue() - position);
+            if (remaining.intValue() <= 0) {
+                return Iterators.emptyIterator();
+            }
+        }
+        if (firstParentOnly) {
+            Optional<RevCommit> last = geogit.command(RevObjectParse.class)
+                    .setObjectId(resumeToken.right()).call(RevCommit.class);
+            if (!last.isPresent()) {
+                throw new CommandSpecException("Invalid continuation token");
+            }
+            Optional<ObjectId> parent = last.get().parentN(0);
+            if (!parent.isPresent() || !geogit.stagingDatabase().exists(parent.get())) {
+                return Iterators.emptyIterator();
+            }
+            op.setUntil(parent.get());
+            setSkipAndLimit(op, null, remaining);
+        } else {
+            op.setUntil(resumeToken.left());
+            int toSkip = (skip == null ? 0 : skip.intValue()) + position;
+            setSkipAndLimit(op, Integer.valueOf(toSkip), remaining);
+        }
+        return op.call();
+    }
+
+    private static void setSkipAndLimit(LogOp op, Integer skip, Integer limit) {
+        if (skip != null && skip.intValue() > 0) {
+            op.setSkip(skip.intValue());
+        }
+        if (limit != null) {
+            op.setLimit(limit.intValue());
+        }
+    }
+
+    private void writeNextToken(ResponseWriter out, Context geogit, ObjectId newestCommitId,
+            ContinuationToken.Tracker<RevCommit> log) throws XMLStreamException {
+        if (log.hasNext() && log.lastPath() != null && !newestCommitId.isNull()) {
+            ContinuationToken next = new ContinuationToken("log", newestCommitId,
+                    ObjectId.valueOf(log.lastPath()), tokenFilter(), "", log.position());
+            CursorCache.put(geogit, next, log);
+            out.writeNextToken("nextToken", next);
+        }
+    }
+
+    /**
+     * @return the options restricting the log besides its newest commit, which continuation
+     *         tokens are bound to
+     */
+    private String tokenFilter() {
+        List<String> filter = Lists.newArrayList();
+        if (since != null) {
+            filter.add("since " + since);
+        }
+        if (sinceTime != null) {
+            filter.add("sinceTime " + sinceTime);
+        }
+        if (untilTime != null) {
+            filter.add("untilTime " + untilTime);
+        }
+        if (firstParentOnly) {
+            filter.add("firstParentOnly");
+        }
+        if (paths != null) {
+            for (String path : paths) {
+                filter.add("path " + path);
+            }
+        }
+        return Joiner.on('\n').join(filter);
+    }
+
+    private static final Function<RevCommit, String> COMMIT_ID = new Function<RevCommit, String>() {
+        @Override
+        public String apply(RevCommit commit) {
+            return commit.getId().toString();
+        }
+    };
+
     private void writeCSV(GeoGIT geogit, Writer out, Iterator<RevCommit> log) throws Exception {
         String response = "ChangeType,FeatureId,CommitId,Parent CommitIds,Author Name,Author Email,Author Commit Time,Committer Name,Committer Email,Committer Commit Time,Commit Message";
         out.write(response);
@@ -9,17 +9,25 @@ import java.util.List;
 
 import org.geogit.api.Context;
 import org.geogit.api.NodeRef;
+import org.geogit.api.ObjectId;
 import org.geogit.api.plumbing.LsTreeOp;
 import org.geogit.web.api.AbstractWebAPICommand;
 import org.geogit.web.api.CommandContext;
 import org.geogit.web.api.CommandResponse;
+import org.geogit.web.api.ContinuationToken;
+import org.geogit.web.api.CursorCache;
+import org.geogit.web.api.ReadOnly;
 import org.geogit.web.api.ResponseWriter;
 
+import com.google.common.base.Function;
+import com.google.common.base.Strings;
+
 /**
  * Interface for the Ls-Tree operation in GeoGit
  * 
  * Web interface for {@link LsTreeOp}
  */
+@ReadOnly
 public class LsTree extends AbstractWebAPICommand {
 
     boolean includeTrees;
@@ -32,6 +40,10 @@ public class LsTree extends AbstractWebAPICommand {
 
     List<String> refList;
 
+    int elementsPerPage = -1;
+
+    String token;
+
     /**
      * Mutator for the includeTrees variable
      * 
@@ -77,6 +89,26 @@ public class LsTree extends AbstractWebAPICommand {
         this.refList = refList;
     }
 
+    /**
+     * Mutator for the elementsPerPage variable
+     * 
+     * @param elementsPerPage - the number of nodes to display in the response, a negative value
+     *        meaning all of them
+     */
+    public void setElementsPerPage(int elementsPerPage) {
+        this.elementsPerPage = elementsPerPage;
+    }
+
+    /**
+     * Mutator for the token variable
+     * 
+     * @param token - a continuation token returned with a previous page, to list the nodes that
+     *        follow it
+     */
+    public void setToken(String token) {
+        this.token = token;
+    }
+
     /**
      * Runs the command and builds the appropriate response
      * 
@@ -105,19 +137,46 @@ public class LsTree extends AbstractWebAPICommand {
 
         final Context geogit = this.getCommandLocator(context);
 
-        final Iterator<NodeRef> iter = geogit.command(LsTreeOp.class).setReference(ref)
-                .setStrategy(lsStrategy).call();
+        // tokens are bound to the listing they were handed out for
+        final String tokenKind = "ls-tree " + lsStrategy + " " + Strings.nullToEmpty(ref);
+        final ContinuationToken resumeToken = token == null ? null : ContinuationToken.decode(
+                token, tokenKind);
+
+        ContinuationToken.Tracker<NodeRef> cursor = null;
+        if (resumeToken != null) {
+            cursor = CursorCache.take(geogit, resumeToken);
+        }
+        if (cursor == null) {
+            Iterator<NodeRef> nodes = geogit.command(LsTreeOp.class).setReference(ref)
+                    .setStrategy(lsStrategy)
+                    .setResumeAfter(resumeToken == null ? null : resumeToken.lastPath()).call();
+            cursor = new ContinuationToken.Tracker<NodeRef>(nodes, PATH,
+                    resumeToken == null ? 0 : resumeToken.position());
+        }
+        final ContinuationToken.Tracker<NodeRef> iter = cursor;
 
         context.setResponseContent(new CommandResponse() {
 
             @Override
             public void write(ResponseWriter out) throws Exception {
                 out.start(true);
-                out.writeLsTreeResponse(iter, verbose);
+                out.writeLsTreeResponse(iter, verbose, elementsPerPage);
+                if (iter.hasNext() && iter.lastPath() != null) {
+                    ContinuationToken next = new ContinuationToken(tokenKind, ObjectId.NULL,
+                            ObjectId.NULL, iter.lastPath(), iter.position());
+                    CursorCache.put(geogit, next, iter);
+                    out.writeNextToken("nextToken", next);
+                }
                 out.finish();
             }
         });
 
     }
 
+    private static final Function<NodeRef, String> PATH = new Function<NodeRef, String>() {
+        @Override
+        public String apply(NodeRef node) {
+            return node.path();
+        }
+    };
 }
@@ -101,6 +101,7 @@ public class PullWebOp extends AbstractWebAPICommand {
         PullOp command = geogit.command(PullOp.class)
                 .setAuthor(authorName.orNull(), authorEmail.orNull()).setRemote(remoteName)
                 .setAll(fetchAll).addRefSpec(refSpec);
+        command.setProgressListener(getProgressListener());
         try {
             final PullResult result = command.call();
             final Iterator<DiffEntry> iter;
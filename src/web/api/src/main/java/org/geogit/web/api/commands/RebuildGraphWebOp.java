@@ -42,7 +42,9 @@ public class RebuildGraphWebOp extends AbstractWebAPICommand {
     public void run(CommandContext context) {
         final Context geogit = this.getCommandLocator(context);
 
-        final ImmutableList<ObjectId> updatedObjects = geogit.command(RebuildGraphOp.class).call();
+        RebuildGraphOp command = geogit.command(RebuildGraphOp.class);
+        command.setProgressListener(getProgressListener());
+        final ImmutableList<ObjectId> updatedObjects = command.call();
 
         context.setResponseContent(new CommandResponse() {
             @Override
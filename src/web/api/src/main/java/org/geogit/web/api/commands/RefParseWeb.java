@@ -11,6 +11,7 @@ import org.geogit.web.api.AbstractWebAPICommand;
 import org.geogit.web.api.CommandContext;
 import org.geogit.web.api.CommandResponse;
 import org.geogit.web.api.CommandSpecException;
+import org.geogit.web.api.ReadOnly;
 import org.geogit.web.api.ResponseWriter;
 
 import com.google.common.base.Optional;
@@ -21,6 +22,7 @@ import com.google.common.base.Optional;
  * Web interface for {@link RefParse}
  */
 
+@ReadOnly
 public class RefParseWeb extends AbstractWebAPICommand {
 
     private String refSpec;
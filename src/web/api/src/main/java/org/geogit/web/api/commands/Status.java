@@ -5,15 +5,16 @@
 package org.geogit.web.api.commands;
 
 import org.geogit.api.Context;
+import org.geogit.api.ObjectId;
 import org.geogit.api.Ref;
 import org.geogit.api.SymRef;
-import org.geogit.api.plumbing.DiffIndex;
-import org.geogit.api.plumbing.DiffWorkTree;
 import org.geogit.api.plumbing.RefParse;
+import org.geogit.api.plumbing.diff.DiffEntry;
 import org.geogit.api.plumbing.merge.ConflictsReadOp;
 import org.geogit.web.api.AbstractWebAPICommand;
 import org.geogit.web.api.CommandContext;
 import org.geogit.web.api.CommandResponse;
+import org.geogit.web.api.ContinuationToken;
 import org.geogit.web.api.ResponseWriter;
 
 import com.google.common.base.Optional;
@@ -30,6 +31,10 @@ public class Status extends AbstractWebAPICommand {
 
     int limit = -1;
 
+    String stagedToken;
+
+    String unstagedToken;
+
     /**
      * Mutator for the offset variable
      * 
@@ -48,6 +53,26 @@ public class Status extends AbstractWebAPICommand {
         this.limit = limit;
     }
 
+    /**
+     * Mutator for the stagedToken variable
+     * 
+     * @param stagedToken - a continuation token returned with a previous page of staged changes,
+     *        if given the offset is ignored for the staged changes
+     */
+    public void setStagedToken(String stagedToken) {
+        this.stagedToken = stagedToken;
+    }
+
+    /**
+     * Mutator for the unstagedToken variable
+     * 
+     * @param unstagedToken - a continuation token returned with a previous page of unstaged
+     *        changes, if given the offset is ignored for the unstaged changes
+     */
+    public void setUnstagedToken(String unstagedToken) {
+        this.unstagedToken = unstagedToken;
+    }
+
     /**
      * Runs the command builds the appropriate command
      * 
@@ -60,6 +85,23 @@ public class Status extends AbstractWebAPICommand {
         final String pathFilter = null;
         final Optional<Ref> currHead = geogit.command(RefParse.class).setName(Ref.HEAD).call();
 
+        final ObjectId indexTreeId = DiffPager.treeId(geogit.index().getTree());
+        final DiffPager staged;
+        if (stagedToken == null) {
+            ObjectId headTreeId = currHead.isPresent() ? DiffPager.resolveTree(geogit, Ref.HEAD)
+                    : ObjectId.NULL;
+            staged = new DiffPager("staged", headTreeId, indexTreeId, pathFilter);
+        } else {
+            staged = new DiffPager("staged", stagedToken, pathFilter);
+        }
+        final DiffPager unstaged;
+        if (unstagedToken == null) {
+            ObjectId workTreeId = DiffPager.treeId(geogit.workingTree().getTree());
+            unstaged = new DiffPager("unstaged", indexTreeId, workTreeId, pathFilter);
+        } else {
+            unstaged = new DiffPager("unstaged", unstagedToken, pathFilter);
+        }
+
         context.setResponseContent(new CommandResponse() {
             @Override
             public void write(ResponseWriter writer) throws Exception {
@@ -73,10 +115,14 @@ public class Status extends AbstractWebAPICommand {
                     }
                 }
 
-                writer.writeStaged(geogit.command(DiffIndex.class).addFilter(pathFilter), offset,
-                        limit);
-                writer.writeUnstaged(geogit.command(DiffWorkTree.class).setFilter(pathFilter),
-                        offset, limit);
+                ContinuationToken.Tracker<DiffEntry> stagedDiff = staged.open(geogit, offset);
+                writer.writeDiffEntries("staged", 0, limit, stagedDiff);
+                staged.writeNextToken(writer, "stagedNextToken", geogit, stagedDiff);
+
+                ContinuationToken.Tracker<DiffEntry> unstagedDiff = unstaged.open(geogit, offset);
+                writer.writeDiffEntries("unstaged", 0, limit, unstagedDiff);
+                unstaged.writeNextToken(writer, "unstagedNextToken", geogit, unstagedDiff);
+
                 writer.writeUnmerged(geogit.command(ConflictsReadOp.class).call(), offset, limit);
 
                 writer.finish();
@@ -84,5 +130,4 @@ public class Status extends AbstractWebAPICommand {
         });
 
     }
-
 }
@@ -0,0 +1,246 @@
+/* Copyright (c) 2014 OpenPlans. All rights reserved.
+ * This code is licensed under the GNU GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geogit.rest.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.geogit.api.DefaultProgressListener;
+import org.geogit.rest.repository.JobManager.Job;
+import org.geogit.rest.repository.JobManager.JobStatus;
+import org.geogit.web.api.CommandSpecException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.resource.Representation;
+import org.restlet.resource.StringRepresentation;
+
+import com.google.common.collect.Lists;
+
+public class JobManagerTest {
+
+    private String repository;
+
+    private CountDownLatch release;
+
+    private List<Job> jobs;
+
+    @Before
+    public void setUp() {
+        repository = UUID.randomUUID().toString();
+        release = new CountDownLatch(1);
+        jobs = Lists.newArrayList();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        for (Job job : jobs) {
+            JobManager.cancel(job);
+            waitFor(job);
+        }
+    }
+
+    /**
+     * Runs until {@link #release} is counted down
+     */
+    private class Blocking implements Callable<Representation> {
+
+        final CountDownLatch started = new CountDownLatch(1);
+
+        @Override
+        public Representation call() throws Exception {
+            started.countDown();
+            assertTrue(release.await(10, TimeUnit.SECONDS));
+            return new StringRepresentation("done", MediaType.TEXT_PLAIN);
+        }
+    }
+
+    private Job submit(String repository, Callable<Representation> work) {
+        Job job = JobManager.submit(repository, "test", work, new DefaultProgressListener());
+        jobs.add(job);
+        return job;
+    }
+
+    private static Job submitFailing(String repository, final Exception error) {
+        Job job = JobManager.submit(repository, "test", new Callable<Representation>() {
+            @Override
+            public Representation call() throws Exception {
+                throw error;
+            }
+        }, new DefaultProgressListener());
+        waitFor(job);
+        return job;
+    }
+
+    private static void waitFor(Job job) throws InterruptedException {
+        for (int i = 0; i < 1000; i++) {
+            JobStatus status = job.getStatus();
+            if (status != JobStatus.WAITING && status != JobStatus.RUNNING) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("Job " + job.getId() + " still " + job.getStatus());
+    }
+
+    private static String read(Representation representation) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        representation.write(out);
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    public void testSubmitAndPoll() throws Exception {
+        Blocking work = new Blocking();
+        Job job = submit(repository, work);
+        assertTrue(work.started.await(10, TimeUnit.SECONDS));
+
+        assertSame(job, JobManager.get(repository, job.getId()));
+        assertNull(JobManager.get("another repository", job.getId()));
+        assertNull(JobManager.get(repository, "unknown"));
+        assertEquals(JobStatus.RUNNING, job.getStatus());
+        assertNull(job.getResult());
+
+        release.countDown();
+        waitFor(job);
+        assertEquals(JobStatus.FINISHED, job.getStatus());
+        assertNull(job.getError());
+        Representation result = job.getResult();
+        assertNotNull(result);
+        assertEquals(MediaType.TEXT_PLAIN, result.getMediaType());
+        assertEquals("done", read(result));
+        // the result can be read more than once
+        assertEquals("done", read(job.getResult()));
+    }
+
+    @Test
+    public void testFailures() throws Exception {
+        Job job = submitFailing(repository, new CommandSpecException("wrong argument"));
+        assertEquals(JobStatus.FAILED, job.getStatus());
+        assertEquals("wrong argument", job.getError());
+        assertTrue(job.isClientError());
+        assertNull(job.getResult());
+
+        job = submitFailing(repository, new IllegalArgumentException("illegal argument"));
+        assertEquals(JobStatus.FAILED, job.getStatus());
+        assertTrue(job.isClientError());
+
+        job = submitFailing(repository, new RuntimeException("unexpected"));
+        assertEquals(JobStatus.FAILED, job.getStatus());
+        assertEquals("unexpected", job.getError());
+        assertFalse(job.isClientError());
+    }
+
+    @Test
+    public void testPerRepositoryLimit() throws Exception {
+        List<Blocking> running = Lists.newArrayList();
+        for (int i = 0; i < JobManager.MAX_PER_REPOSITORY; i++) {
+            Blocking work = new Blocking();
+            submit(repository, work);
+            running.add(work);
+        }
+        for (Blocking work : running) {
+            assertTrue(work.started.await(10, TimeUnit.SECONDS));
+        }
+
+        Blocking waiting = new Blocking();
+        Job waitingJob = submit(repository, waiting);
+        // jobs against other repositories are not held back
+        Blocking other = new Blocking();
+        submit(UUID.randomUUID().toString(), other);
+        assertTrue(other.started.await(10, TimeUnit.SECONDS));
+        assertEquals(JobStatus.WAITING, waitingJob.getStatus());
+        assertFalse(waiting.started.await(100, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertTrue(waiting.started.await(10, TimeUnit.SECONDS));
+        waitFor(waitingJob);
+        assertEquals(JobStatus.FINISHED, waitingJob.getStatus());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        Blocking first = new Blocking();
+        Job running = submit(repository, first);
+        for (int i = 1; i < JobManager.MAX_PER_REPOSITORY; i++) {
+            submit(repository, new Blocking());
+        }
+        assertTrue(first.started.await(10, TimeUnit.SECONDS));
+        Blocking never = new Blocking();
+        Job waiting = submit(repository, never);
+        assertEquals(JobStatus.WAITING, waiting.getStatus());
+
+        // a waiting job is dropped right away
+        JobManager.cancel(waiting);
+        assertEquals(JobStatus.CANCELLED, waiting.getStatus());
+        assertTrue(waiting.getProgress().isCanceled());
+
+        // a running one is asked to stop, which the command may or may not check
+        JobManager.cancel(running);
+        assertEquals(JobStatus.RUNNING, running.getStatus());
+        assertTrue(running.getProgress().isCanceled());
+
+        release.countDown();
+        waitFor(running);
+        assertEquals(JobStatus.CANCELLED, running.getStatus());
+        assertEquals(1, never.started.getCount());
+    }
+
+    @Test
+    public void testTooManyJobs() throws Exception {
+        for (int i = 0; i < JobManager.MAX_JOBS; i++) {
+            submit(repository, new Blocking());
+        }
+        try {
+            submit(repository, new Blocking());
+            fail("Expected RestletException");
+        } catch (RestletException e) {
+            assertEquals(Status.SERVER_ERROR_SERVICE_UNAVAILABLE, e.getStatus());
+        }
+
+        release.countDown();
+        for (Job job : jobs) {
+            waitFor(job);
+            assertEquals(JobStatus.FINISHED, job.getStatus());
+        }
+        // room for new jobs once they're done
+        release = new CountDownLatch(0);
+        Job job = submit(repository, new Blocking());
+        waitFor(job);
+        assertEquals(JobStatus.FINISHED, job.getStatus());
+    }
+
+    @Test
+    public void testPurge() throws Exception {
+        release.countDown();
+        Job job = submit(repository, new Blocking());
+        waitFor(job);
+        assertNotNull(job.getResult());
+
+        // not expired yet
+        JobManager.purge(System.currentTimeMillis());
+        assertSame(job, JobManager.get(repository, job.getId()));
+
+        JobManager.purge(System.currentTimeMillis() + JobManager.TIMEOUT_MILLIS + 1000);
+        assertNull(JobManager.get(repository, job.getId()));
+        // the response is deleted along with the job
+        assertNull(job.getResult());
+    }
+}
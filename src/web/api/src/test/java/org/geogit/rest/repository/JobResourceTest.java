@@ -0,0 +1,95 @@
+/* Copyright (c) 2014 OpenPlans. All rights reserved.
+ * This code is licensed under the GNU GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geogit.rest.repository;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.Callable;
+
+import org.geogit.api.DefaultProgressListener;
+import org.geogit.api.GeoGIT;
+import org.geogit.rest.repository.JobManager.Job;
+import org.geogit.rest.repository.JobManager.JobStatus;
+import org.geogit.test.integration.RepositoryTestCase;
+import org.geogit.web.api.CommandSpecException;
+import org.junit.Test;
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.resource.Representation;
+import org.restlet.resource.Variant;
+
+import com.google.common.base.Optional;
+
+public class JobResourceTest extends RepositoryTestCase {
+
+    @Override
+    protected void setUpInternal() throws Exception {
+    }
+
+    private Job failedJob(final Exception error) throws Exception {
+        Job job = JobManager.submit(JobManager.repositoryKey(geogit), "test",
+                new Callable<Representation>() {
+                    @Override
+                    public Representation call() throws Exception {
+                        throw error;
+                    }
+                }, new DefaultProgressListener());
+        for (int i = 0; i < 1000 && job.getStatus() != JobStatus.FAILED; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(JobStatus.FAILED, job.getStatus());
+        return job;
+    }
+
+    private Response getResult(Job job) throws Exception {
+        Request request = new Request(Method.GET, "http://localhost/jobs/" + job.getId()
+                + "/result");
+        request.getAttributes().put("jobId", job.getId());
+        request.getAttributes().put(RepositoryProvider.KEY, new RepositoryProvider() {
+            @Override
+            public Optional<GeoGIT> getGeogit(Request request) {
+                return Optional.of(geogit);
+            }
+
+            @Override
+            public Optional<GeoGIT> getReadOnlyGeogit(Request request) {
+                return Optional.of(geogit);
+            }
+        });
+        Response response = new Response(request);
+        JobResource resource = new JobResource();
+        resource.init(null, request, response);
+        Representation representation = resource.getRepresentation(new Variant(
+                MediaType.APPLICATION_JSON));
+        response.setEntity(representation);
+        return response;
+    }
+
+    private static String read(Representation representation) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        representation.write(out);
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    public void testClientErrorIsBadRequest() throws Exception {
+        Response response = getResult(failedJob(new CommandSpecException("wrong argument")));
+        assertEquals(Status.CLIENT_ERROR_BAD_REQUEST, response.getStatus());
+        assertTrue(read(response.getEntity()).contains("wrong argument"));
+
+        response = getResult(failedJob(new IllegalArgumentException("illegal argument")));
+        assertEquals(Status.CLIENT_ERROR_BAD_REQUEST, response.getStatus());
+        assertTrue(read(response.getEntity()).contains("illegal argument"));
+    }
+
+    @Test
+    public void testUnexpectedErrorIsServerError() throws Exception {
+        Response response = getResult(failedJob(new RuntimeException("unexpected")));
+        assertEquals(Status.SERVER_ERROR_INTERNAL, response.getStatus());
+        assertTrue(read(response.getEntity()).contains("unexpected"));
+    }
+}
@@ -0,0 +1,100 @@
+/* Copyright (c) 2014 OpenPlans. All rights reserved.
+ * This code is licensed under the GNU GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geogit.rest.repository;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import org.geogit.api.CommitBuilder;
+import org.geogit.api.GeoGIT;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevCommit;
+import org.geogit.test.integration.RepositoryTestCase;
+import org.junit.Test;
+import org.restlet.data.Method;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.resource.Representation;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+public class ParentResourceTest extends RepositoryTestCase {
+
+    @Override
+    protected void setUpInternal() throws Exception {
+    }
+
+    private Representation getParents(ObjectId commitId) {
+        Request request = new Request(Method.GET, "http://localhost/repo/getparents?commitId="
+                + commitId);
+        request.getAttributes().put(RepositoryProvider.KEY, new RepositoryProvider() {
+            @Override
+            public Optional<GeoGIT> getGeogit(Request request) {
+                return Optional.of(geogit);
+            }
+
+            @Override
+            public Optional<GeoGIT> getReadOnlyGeogit(Request request) {
+                return Optional.of(geogit);
+            }
+        });
+        Response response = new Response(request);
+        ParentResource resource = new ParentResource();
+        resource.init(null, request, response);
+        return resource.getRepresentation(resource.getVariants().get(0));
+    }
+
+    private static String write(Representation representation) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        representation.write(out);
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    public void testKnownCommitCached() throws Exception {
+        List<RevCommit> commits = populate(true, points1, points2);
+        RevCommit first = commits.get(0);
+        RevCommit second = commits.get(1);
+
+        Representation representation = getParents(second.getId());
+        assertNotNull(representation.getTag());
+        assertEquals(first.getId() + "\n", write(representation));
+
+        // served from the cache the second time
+        representation = getParents(second.getId());
+        assertNotNull(representation.getTag());
+        assertEquals(first.getId() + "\n", write(representation));
+    }
+
+    @Test
+    public void testUnknownCommitNotCached() throws Exception {
+        RevCommit parent = populate(true, points1).get(0);
+
+        Representation representation = getParents(ObjectId.forString("not a commit"));
+        assertNull(representation.getTag());
+        assertEquals("", write(representation));
+
+        // a commit being pushed, in the object database but not in the graph yet
+        CommitBuilder builder = new CommitBuilder();
+        builder.setTreeId(parent.getTreeId());
+        builder.setParentIds(ImmutableList.of(parent.getId()));
+        builder.setAuthor("groldan");
+        builder.setCommitter("groldan");
+        builder.setMessage("pushed");
+        RevCommit pushed = builder.build();
+        getRepository().objectDatabase().put(pushed);
+
+        representation = getParents(pushed.getId());
+        assertNull(representation.getTag());
+        assertEquals("", write(representation));
+
+        // once the push completes, its actual parents are served and cached
+        getRepository().graphDatabase().put(pushed.getId(), ImmutableList.of(parent.getId()));
+        representation = getParents(pushed.getId());
+        assertNotNull(representation.getTag());
+        assertEquals(parent.getId() + "\n", write(representation));
+    }
+}
@@ -0,0 +1,319 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.web.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.StringWriter;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamWriter;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.codehaus.jettison.mapped.MappedNamespaceConvention;
+import org.codehaus.jettison.mapped.MappedXMLStreamWriter;
+import org.geogit.api.CommitBuilder;
+import org.geogit.api.Node;
+import org.geogit.api.NodeRef;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevCommit;
+import org.geogit.api.RevObject.TYPE;
+import org.geogit.api.plumbing.diff.DiffEntry;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Checks that {@link StreamingJSONWriter} writes the same JSON as Jettison's
+ * {@link MappedXMLStreamWriter} for what {@link ResponseWriter} writes.
+ */
+public class StreamingJSONWriterTest {
+
+    private static RevCommit commit(String message, ObjectId... parents) {
+        CommitBuilder builder = new CommitBuilder();
+        builder.setTreeId(ObjectId.forString("tree " + message));
+        builder.setParentIds(ImmutableList.copyOf(parents));
+        builder.setAuthor("groldan");
+        builder.setAuthorEmail("groldan@opengeo.org");
+        builder.setCommitter("jdeolive");
+        builder.setCommitterEmail(null);
+        builder.setAuthorTimestamp(1000);
+        builder.setCommitterTimestamp(2000);
+        builder.setCommitterTimeZoneOffset(-3600000);
+        builder.setMessage(message);
+        return builder.build();
+    }
+
+    private static NodeRef node(String parent, String name, TYPE type) {
+        ObjectId metadataId = ObjectId.forString(parent);
+        return new NodeRef(Node.create(name, ObjectId.forString(parent + name), metadataId, type,
+                null), parent, metadataId);
+    }
+
+    private static void assertSameAsJettison(CommandResponse response) throws Exception {
+        StringWriter expected = new StringWriter();
+        XMLStreamWriter jettison = new MappedXMLStreamWriter(new MappedNamespaceConvention(),
+                expected);
+        response.write(new ResponseWriter(jettison));
+        jettison.flush();
+
+        StringWriter actual = new StringWriter();
+        XMLStreamWriter streaming = new StreamingJSONWriter(actual);
+        response.write(new ResponseWriter(streaming));
+        streaming.flush();
+
+        assertEquals(expected + " != " + actual, parse(expected.toString()),
+                parse(actual.toString()));
+    }
+
+    /**
+     * @return the JSON document as maps and lists, that compare regardless of the field order
+     */
+    private static Object parse(String json) throws JSONException {
+        return toJava(new JSONObject(json));
+    }
+
+    private static Object toJava(Object json) throws JSONException {
+        if (json instanceof JSONObject) {
+            JSONObject object = (JSONObject) json;
+            Map<String, Object> map = Maps.newHashMap();
+            for (Iterator<?> keys = object.keys(); keys.hasNext();) {
+                String key = (String) keys.next();
+                map.put(key, toJava(object.get(key)));
+            }
+            return map;
+        }
+        if (json instanceof JSONArray) {
+            JSONArray array = (JSONArray) json;
+            List<Object> list = Lists.newArrayList();
+            for (int i = 0; i < array.length(); i++) {
+                list.add(toJava(array.get(i)));
+            }
+            return list;
+        }
+        return json;
+    }
+
+    @Test
+    public void testCommits() throws Exception {
+        RevCommit first = commit("first");
+        RevCommit second = commit("second", first.getId());
+        RevCommit merge = commit("merge", second.getId(), first.getId());
+        final List<RevCommit> commits = ImmutableList.of(merge, second, first);
+        assertSameAsJettison(new CommandResponse() {
+            @Override
+            public void write(ResponseWriter out) throws Exception {
+                out.start();
+                out.writeCommits(commits.iterator(), 2, false);
+                out.finish();
+            }
+        });
+        assertSameAsJettison(new CommandResponse() {
+            @Override
+            public void write(ResponseWriter out) throws Exception {
+                out.start();
+                out.writeCommits(commits.iterator(), 10, true);
+                out.finish();
+            }
+        });
+    }
+
+    @Test
+    public void testSingleElementLists() throws Exception {
+        final RevCommit commit = commit("single", ObjectId.forString("parent"));
+        final NodeRef node = node("Points", "Points.1", TYPE.FEATURE);
+        assertSameAsJettison(new CommandResponse() {
+            @Override
+            public void write(ResponseWriter out) throws Exception {
+                out.start();
+                out.writeCommits(ImmutableList.of(commit).iterator(), 10, false);
+                out.writeDiffEntries("diff", 0, -1,
+                        ImmutableList.of(new DiffEntry(null, node)).iterator());
+                out.writeLsTreeResponse(ImmutableList.of(node).iterator(), false, -1);
+                out.finish();
+            }
+        });
+    }
+
+    @Test
+    public void testDiffEntries() throws Exception {
+        final List<DiffEntry> entries = ImmutableList.of(
+                new DiffEntry(null, node("Points", "Points.1", TYPE.FEATURE)),
+                new DiffEntry(node("Points", "Points.2", TYPE.FEATURE), null),
+                new DiffEntry(node("Points", "Points.3", TYPE.FEATURE), node("Points",
+                        "Points.3", TYPE.FEATURE)),
+                new DiffEntry(null, node("", "Lines", TYPE.TREE)));
+        assertSameAsJettison(new CommandResponse() {
+            @Override
+            public void write(ResponseWriter out) throws Exception {
+                out.start();
+                out.writeDiffEntries("diff", 0, -1, entries.iterator());
+                out.finish();
+            }
+        });
+        assertSameAsJettison(new CommandResponse() {
+            @Override
+            public void write(ResponseWriter out) throws Exception {
+                out.start();
+                out.writeDiffEntries("diff", 1, 2, entries.iterator());
+                out.writeNextToken("next", new ContinuationToken("diff",
+                        ObjectId.forString("left"), ObjectId.forString("right"), "Points",
+                        "Points/Points.3", 3));
+                out.finish();
+            }
+        });
+    }
+
+    @Test
+    public void testLsTree() throws Exception {
+        final List<NodeRef> nodes = ImmutableList.of(node("", "Points", TYPE.TREE),
+                node("Points", "Points.1", TYPE.FEATURE), node("Points", "Points.2",
+                        TYPE.FEATURE));
+        for (final boolean verbose : new boolean[] { true, false }) {
+            assertSameAsJettison(new CommandResponse() {
+                @Override
+                public void write(ResponseWriter out) throws Exception {
+                    out.start();
+                    out.writeLsTreeResponse(nodes.iterator(), verbose, 2);
+                    out.finish();
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testEmptyElements() throws Exception {
+        assertSameAsJettison(new CommandResponse() {
+            @Override
+            public void write(ResponseWriter out) throws Exception {
+                out.start(false);
+                out.writeElement("missing", null);
+                out.writeElement("blank", "");
+                out.getWriter().writeStartElement("open");
+                out.getWriter().writeEndElement();
+                out.getWriter().writeEmptyElement("empty");
+                out.getWriter().writeStartElement("nested");
+                out.getWriter().writeStartElement("inner");
+                out.getWriter().writeEndElement();
+                out.getWriter().writeEndElement();
+                out.finish();
+            }
+        });
+    }
+
+    @Test
+    public void testEscaping() throws Exception {
+        assertSameAsJettison(new CommandResponse() {
+            @Override
+            public void write(ResponseWriter out) throws Exception {
+                out.start();
+                out.writeElement("quotes", "say \"hi\"");
+                out.writeElement("backslash", "C:\\data\\points");
+                out.writeElement("whitespace", "tab\tnew\nline\rreturn\bback\fform");
+                out.writeElement("control", "\u0000\u0001\u001f end");
+                out.writeElement("script", "</script><script>");
+                out.writeElement("slash", "a/b");
+                out.writeElement("unicode", "\u00f1and\u00fa \u4e2d \ud83d\ude00");
+                out.getWriter().writeStartElement("cdata");
+                out.getWriter().writeCData("multi\nline \"message\"");
+                out.getWriter().writeEndElement();
+                out.finish();
+            }
+        });
+    }
+
+    @Test
+    public void testPrimitives() throws Exception {
+        final String[] values = { "0", "12", "-3", "9223372036854775807", "1.5", "-0.25",
+                "true", "false", "007", "1.50", "1e5", "+1", "TRUE", "True", "1.0", "10.0",
+                "-0.0", "1.0E10", "12abc", "-", " 1", "99999999999999999999" };
+        assertSameAsJettison(new CommandResponse() {
+            @Override
+            public void write(ResponseWriter out) throws Exception {
+                out.start();
+                for (int i = 0; i < values.length; i++) {
+                    out.writeElement("value" + i, values[i]);
+                }
+                out.getWriter().writeStartElement("values");
+                for (String value : values) {
+                    out.writeElement("value", value);
+                }
+                out.getWriter().writeEndElement();
+                out.finish();
+            }
+        });
+    }
+
+    @Test
+    public void testNonFiniteNumbersQuoted() throws Exception {
+        StringWriter out = new StringWriter();
+        ResponseWriter writer = new ResponseWriter(new StreamingJSONWriter(out));
+        writer.start();
+        writer.writeElement("nan", "NaN");
+        writer.writeElement("infinity", "Infinity");
+        writer.writeElement("negativeInfinity", "-Infinity");
+        writer.finish();
+
+        JSONObject response = new JSONObject(out.toString()).getJSONObject("response");
+        assertEquals("NaN", response.get("nan"));
+        assertEquals("Infinity", response.get("infinity"));
+        assertEquals("-Infinity", response.get("negativeInfinity"));
+    }
+
+    @Test
+    public void testAttributes() throws Exception {
+        assertSameAsJettison(new CommandResponse() {
+            @Override
+            public void write(ResponseWriter out) throws Exception {
+                out.start();
+                out.getWriter().writeStartElement("feature");
+                out.getWriter().writeAttribute("id", "Points.1");
+                out.getWriter().writeAttribute("version", "2");
+                out.writeElement("name", "point");
+                out.getWriter().writeEndElement();
+                out.finish();
+            }
+        });
+    }
+
+    @Test
+    public void testTextWithAttributesUnsupported() throws Exception {
+        StreamingJSONWriter writer = new StreamingJSONWriter(new StringWriter());
+        writer.writeStartDocument();
+        writer.writeStartElement("response");
+        writer.writeStartElement("feature");
+        writer.writeAttribute("id", "Points.1");
+        writer.writeCharacters("text");
+        try {
+            writer.writeEndElement();
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // text would be dropped otherwise
+        }
+    }
+
+    @Test
+    public void testTextWithChildrenUnsupported() throws Exception {
+        StreamingJSONWriter writer = new StreamingJSONWriter(new StringWriter());
+        writer.writeStartDocument();
+        writer.writeStartElement("response");
+        writer.writeStartElement("message");
+        writer.writeCharacters("text");
+        writer.writeElement("child", "value");
+        try {
+            writer.writeEndElement();
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // text would be dropped otherwise
+        }
+    }
+}
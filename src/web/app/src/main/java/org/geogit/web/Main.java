@@ -19,12 +19,16 @@ import org.geogit.api.plumbing.ResolveGeogitDir;
 import org.geogit.di.GeogitModule;
 import org.geogit.repository.Hints;
 import org.geogit.rest.repository.CommandResource;
+import org.geogit.rest.repository.JobResource;
+import org.geogit.rest.repository.LeasingRestlet;
 import org.geogit.rest.repository.RepositoryProvider;
 import org.geogit.rest.repository.RepositoryRouter;
 import org.geogit.storage.bdbje.JEStorageModule;
 import org.geogit.storage.blueprints.BlueprintsGraphModule;
 import org.restlet.Application;
 import org.restlet.Component;
+import org.restlet.Finder;
+import org.restlet.Restlet;
 import org.restlet.Router;
 import org.restlet.data.Protocol;
 import org.restlet.data.Request;
@@ -49,8 +53,12 @@ public class Main extends Application {
     }
 
     public Main(GeoGIT geogit) {
+        this(new SingleRepositoryProvider(geogit));
+    }
+
+    public Main(RepositoryProvider repoProvider) {
         super();
-        this.repoProvider = new SingleRepositoryProvider(geogit);
+        this.repoProvider = repoProvider;
     }
 
     @Override
@@ -69,6 +77,11 @@ public class Main extends Application {
             // .getAttributes().get("org.restlet.ext.servlet.ServletContext");
             // String repo = sc.getInitParameter("repository");
             String repo = null;
+            String repositories = System.getProperty("org.geogit.web.repositories");
+            if (repositories != null) {
+                repoProvider = new MultiRepositoryProvider(new File(repositories));
+                return;
+            }
             if (repo == null) {
                 repo = System.getProperty("org.geogit.web.repository");
             }
@@ -96,9 +109,20 @@ public class Main extends Application {
                 request.getAttributes().put(RepositoryProvider.KEY, repoProvider);
             }
         };
-        router.attach("/repo", new RepositoryRouter());
-        router.attach("/{command}.{extension}", CommandResource.class);
-        router.attach("/{command}", CommandResource.class);
+        String prefix = "";
+        if (repoProvider instanceof MultiRepositoryProvider) {
+            prefix = "/repos/{" + MultiRepositoryProvider.REPOSITORY_KEY + "}";
+        }
+        // lease the repository for the duration of each request, so it isn't closed under it
+        router.attach(prefix + "/repo", new LeasingRestlet(new RepositoryRouter()));
+        Restlet jobs = new LeasingRestlet(new Finder(router.getContext(), JobResource.class));
+        router.attach(prefix + "/jobs/{jobId}/result", jobs);
+        router.attach(prefix + "/jobs/{jobId}.{extension}", jobs);
+        router.attach(prefix + "/jobs/{jobId}", jobs);
+        Restlet commands = new LeasingRestlet(new Finder(router.getContext(),
+                CommandResource.class));
+        router.attach(prefix + "/{command}.{extension}", commands);
+        router.attach(prefix + "/{command}", commands);
         return router;
     }
 
@@ -116,10 +140,9 @@ public class Main extends Application {
         return geogit;
     }
 
-    static void startServer(String repo) throws Exception {
-        GeoGIT geogit = loadGeoGIT(repo);
+    static void startServer(RepositoryProvider repoProvider) throws Exception {
         org.restlet.Context context = new org.restlet.Context();
-        Application application = new Main(geogit);
+        Application application = new Main(repoProvider);
         application.setContext(context);
         Component comp = new Component();
         comp.getDefaultHost().attach(application);
@@ -141,12 +164,21 @@ public class Main extends Application {
 
     public static void main(String[] args) throws Exception {
         LinkedList<String> argList = new LinkedList<String>(Arrays.asList(args));
+        boolean multiRepo = !argList.isEmpty() && argList.peek().equals("--multirepo");
+        if (multiRepo) {
+            argList.pop();
+        }
         if (argList.size() == 0) {
-            System.out.println("provide geogit repo path");
+            System.out.println("provide geogit repo path, or --multirepo and the path of the "
+                    + "directory containing the repositories");
             System.exit(1);
         }
         String repo = argList.pop();
-        startServer(repo);
+        if (multiRepo) {
+            startServer(new MultiRepositoryProvider(new File(repo)));
+        } else {
+            startServer(new SingleRepositoryProvider(loadGeoGIT(repo)));
+        }
     }
 
 }
@@ -0,0 +1,193 @@
+/* Copyright (c) 2014 OpenPlans. All rights reserved.
+ * This code is licensed under the GNU GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geogit.web;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import org.geogit.api.Context;
+import org.geogit.api.GeoGIT;
+import org.geogit.api.GlobalContextBuilder;
+import org.geogit.rest.repository.RESTUtils;
+import org.geogit.rest.repository.RepositoryProvider;
+import org.geogit.web.api.CursorCache;
+import org.geogit.web.api.RepositoryLeases;
+import org.restlet.data.Request;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * A {@link RepositoryProvider} that serves every repository in the direct subdirectories of a root
+ * directory, looking them up by the {@link #REPOSITORY_KEY repository name} request attribute.
+ * <p>
+ * Repositories are opened the first time they're requested and evicted once they haven't been
+ * requested for a while, or when more than the maximum number of repositories are open, the least
+ * recently used first. An evicted repository is only closed once the requests, background jobs
+ * and cached cursors using it have released their {@link RepositoryLeases leases} on it, and is
+ * served again from where it was if requested before that.
+ */
+public class MultiRepositoryProvider implements RepositoryProvider {
+
+    private static final Logger LOGGER = Logger.getLogger(MultiRepositoryProvider.class.getName());
+
+    /**
+     * Key of the request attribute holding the name of the repository, that is the name of its
+     * directory under the root directory
+     */
+    public static final String REPOSITORY_KEY = "repository";
+
+    public static final int DEFAULT_MAX_OPEN = 32;
+
+    public static final long DEFAULT_IDLE_TIMEOUT_SECONDS = 10 * 60;
+
+    private static final Pattern NAME_PATTERN = Pattern.compile("[\\w-][\\w.-]*");
+
+    private final File rootDirectory;
+
+    private final LoadingCache<String, GeoGIT> repositories;
+
+    /**
+     * Evicted repositories waiting for their leases to be released before being closed
+     */
+    private final ConcurrentMap<String, GeoGIT> closing = Maps.newConcurrentMap();
+
+    public MultiRepositoryProvider(File rootDirectory) {
+        this(rootDirectory, DEFAULT_MAX_OPEN, DEFAULT_IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param rootDirectory the directory whose subdirectories are the served repositories
+     * @param maxOpen the maximum number of repositories to keep open
+     * @param idleTimeout how long to keep a repository open since it was last requested
+     */
+    public MultiRepositoryProvider(File rootDirectory, int maxOpen, long idleTimeout,
+            TimeUnit timeUnit) {
+        Preconditions.checkArgument(rootDirectory.isDirectory(), "%s is not a directory",
+                rootDirectory);
+        this.rootDirectory = rootDirectory;
+        this.repositories = CacheBuilder.newBuilder()//
+                .maximumSize(maxOpen)//
+                .expireAfterAccess(idleTimeout, timeUnit)//
+                .removalListener(new CloseOnRemoval())//
+                .build(new Loader());
+    }
+
+    public File getRootDirectory() {
+        return rootDirectory;
+    }
+
+    @Override
+    public Optional<GeoGIT> getGeogit(Request request) {
+        final String name = RESTUtils.getStringAttribute(request, REPOSITORY_KEY);
+        if (name == null || !NAME_PATTERN.matcher(name).matches()) {
+            return Optional.absent();
+        }
+        try {
+            return Optional.of(repositories.get(name));
+        } catch (ExecutionException e) {
+            return notFound(name, e.getCause());
+        } catch (UncheckedExecutionException e) {
+            return notFound(name, e.getCause());
+        }
+    }
+
+    @Override
+    public Optional<GeoGIT> getReadOnlyGeogit(Request request) {
+        Optional<GeoGIT> geogit = getGeogit(request);
+        if (geogit.isPresent()) {
+            return Optional.of(SingleRepositoryProvider.readOnly(geogit.get()));
+        }
+        return geogit;
+    }
+
+    /**
+     * Closes all the open repositories, or has them closed once they're released if they're in
+     * use
+     */
+    public void close() {
+        repositories.invalidateAll();
+        repositories.cleanUp();
+    }
+
+    private Optional<GeoGIT> notFound(String name, Throwable cause) {
+        if (!(cause instanceof RepositoryNotFoundException)) {
+            LOGGER.log(Level.WARNING, "Error opening repository " + name, cause);
+        }
+        return Optional.absent();
+    }
+
+    @SuppressWarnings("serial")
+    private static class RepositoryNotFoundException extends Exception {
+        RepositoryNotFoundException(File directory) {
+            super(directory + " is not a geogit repository");
+        }
+    }
+
+    private class Loader extends CacheLoader<String, GeoGIT> {
+
+        @Override
+        public GeoGIT load(String name) throws Exception {
+            GeoGIT evicted = closing.remove(name);
+            if (evicted != null) {
+                LOGGER.fine("Reusing repository " + name + " before it's closed");
+                return evicted;
+            }
+            final File directory = new File(rootDirectory, name);
+            // don't resolve the repository up the directory tree, only direct subdirectories
+            // are served
+            if (!new File(directory, ".geogit").isDirectory()) {
+                throw new RepositoryNotFoundException(directory);
+            }
+            Context context = GlobalContextBuilder.builder.build();
+            GeoGIT geogit = new GeoGIT(context, directory);
+            if (geogit.getRepository() == null) {
+                geogit.close();
+                throw new RepositoryNotFoundException(directory);
+            }
+            LOGGER.fine("Opened repository " + directory);
+            return geogit;
+        }
+    }
+
+    private class CloseOnRemoval implements RemovalListener<String, GeoGIT> {
+
+        @Override
+        public void onRemoval(RemovalNotification<String, GeoGIT> notification) {
+            final String name = notification.getKey();
+            final GeoGIT geogit = notification.getValue();
+            if (geogit == null) {
+                return;
+            }
+            LOGGER.fine("Evicting repository " + name + " (" + notification.getCause() + ")");
+            Context context = geogit.getContext();
+            // releases the leases of the cached cursors
+            CursorCache.invalidate(context);
+            closing.put(name, geogit);
+            RepositoryLeases.closeWhenReleased(context, new Runnable() {
+                @Override
+                public void run() {
+                    // unless it was requested again in the meantime
+                    if (closing.remove(name, geogit)) {
+                        LOGGER.fine("Closing repository " + name);
+                        geogit.close();
+                    }
+                }
+            });
+        }
+    }
+}
@@ -5,6 +5,8 @@
 package org.geogit.web;
 
 import org.geogit.api.GeoGIT;
+import org.geogit.api.SnapshotContext;
+import org.geogit.repository.Repository;
 import org.geogit.rest.repository.RepositoryProvider;
 import org.restlet.data.Request;
 
@@ -23,4 +25,23 @@ public class SingleRepositoryProvider implements RepositoryProvider {
         return Optional.fromNullable(geogit);
     }
 
+    @Override
+    public Optional<GeoGIT> getReadOnlyGeogit(Request request) {
+        return Optional.fromNullable(geogit == null ? null : readOnly(geogit));
+    }
+
+    /**
+     * @return a facade for {@code geogit}'s repository whose commands run against a new
+     *         {@link SnapshotContext}, or {@code geogit} itself if there's no repository to take a
+     *         snapshot of
+     */
+    static GeoGIT readOnly(GeoGIT geogit) {
+        Repository repository = geogit.getRepository();
+        if (repository == null) {
+            return geogit;
+        }
+        GeoGIT snapshot = new GeoGIT(new SnapshotContext(geogit.getContext()));
+        snapshot.setRepository(repository);
+        return snapshot;
+    }
 }
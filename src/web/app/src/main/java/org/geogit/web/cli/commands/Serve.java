@@ -19,6 +19,7 @@ import org.geogit.cli.GeogitCLI;
 import org.geogit.cli.InvalidParameterException;
 import org.geogit.cli.annotation.RequiresRepository;
 import org.geogit.web.Main;
+import org.geogit.web.MultiRepositoryProvider;
 import org.restlet.Application;
 import org.restlet.Component;
 import org.restlet.data.Protocol;
@@ -31,7 +32,7 @@ import com.beust.jcommander.Parameters;
  * <p>
  * Usage:
  * <ul>
- * <li> {@code geogit serve [-p <port>] [<directory>]}
+ * <li> {@code geogit serve [-p <port>] [--multirepo] [<directory>]}
  * </ul>
  * </p>
  * 
@@ -47,14 +48,26 @@ public class Serve extends AbstractCommand {
     @Parameter(names = { "--port", "-p" }, description = "Port to run server on")
     private int port = 8182;
 
+    @Parameter(names = { "--multirepo", "-m" }, description = "Serve all the repositories in the subdirectories of the given directory")
+    private boolean multiRepo;
+
     @Override
     protected void runInternal(GeogitCLI cli) throws InvalidParameterException,
             CommandFailedException, IOException {
 
         String loc = repo != null && repo.size() > 0 ? repo.get(0) : ".";
 
-        GeoGIT geogit = loadGeoGIT(loc, cli);
-        Application application = new Main(geogit);
+        Application application;
+        if (multiRepo) {
+            File root = new File(loc).getCanonicalFile();
+            if (!root.isDirectory()) {
+                throw new InvalidParameterException(root + " is not a directory");
+            }
+            application = new Main(new MultiRepositoryProvider(root));
+        } else {
+            GeoGIT geogit = loadGeoGIT(loc, cli);
+            application = new Main(geogit);
+        }
 
         Component comp = new Component();
 
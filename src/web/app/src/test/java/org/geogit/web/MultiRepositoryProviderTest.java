@@ -0,0 +1,101 @@
+/* Copyright (c) 2014 OpenPlans. All rights reserved.
+ * This code is licensed under the GNU GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geogit.web;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.geogit.api.GeoGIT;
+import org.geogit.api.GlobalContextBuilder;
+import org.geogit.api.TestPlatform;
+import org.geogit.api.porcelain.InitOp;
+import org.geogit.test.integration.TestContextBuilder;
+import org.geogit.web.api.RepositoryLeases;
+import org.geogit.web.api.RepositoryLeases.Lease;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.restlet.data.Request;
+
+public class MultiRepositoryProviderTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private MultiRepositoryProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+        File root = tempFolder.newFolder("repos").getCanonicalFile();
+        File homeDirectory = tempFolder.newFolder("fakeHomeDir").getCanonicalFile();
+        File repoFolder = new File(root, "repo1");
+        assertTrue(repoFolder.mkdir());
+        GlobalContextBuilder.builder = new TestContextBuilder(new TestPlatform(repoFolder,
+                homeDirectory));
+
+        GeoGIT geogit = new GeoGIT(GlobalContextBuilder.builder.build(), repoFolder);
+        geogit.command(InitOp.class).call();
+        geogit.close();
+
+        provider = new MultiRepositoryProvider(root, 1, 10, TimeUnit.MINUTES);
+    }
+
+    @After
+    public void tearDown() {
+        provider.close();
+    }
+
+    private GeoGIT get(String name) {
+        Request request = new Request();
+        request.getAttributes().put(MultiRepositoryProvider.REPOSITORY_KEY, name);
+        return provider.getGeogit(request).get();
+    }
+
+    @Test
+    public void testEvictionClosesUnleasedRepository() {
+        GeoGIT geogit = get("repo1");
+        assertTrue(geogit.isOpen());
+        provider.close();
+        assertFalse(geogit.isOpen());
+    }
+
+    @Test
+    public void testEvictionWaitsForLeases() {
+        GeoGIT geogit = get("repo1");
+        Lease lease = RepositoryLeases.acquire(geogit.getContext());
+        Lease other = RepositoryLeases.acquire(geogit.getContext());
+
+        provider.close();
+        assertTrue(geogit.isOpen());
+
+        lease.close();
+        // releasing twice has no effect
+        lease.close();
+        assertTrue(geogit.isOpen());
+
+        other.close();
+        assertFalse(geogit.isOpen());
+    }
+
+    @Test
+    public void testEvictedRepositoryReusedWhileLeased() {
+        GeoGIT geogit = get("repo1");
+        Lease lease = RepositoryLeases.acquire(geogit.getContext());
+        provider.close();
+
+        assertSame(geogit, get("repo1"));
+        lease.close();
+        assertTrue(geogit.isOpen());
+
+        provider.close();
+        assertFalse(geogit.isOpen());
+    }
+}